@@ -0,0 +1,26 @@
+package com.syab.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Entry point for the benchmark suite.
+ * Accepts the regular JMH command line, but always attaches the GC profiler (allocation rate
+ * per operation) and writes JSON results so runs can be compared between releases.
+ */
+public class BenchmarkMain {
+    public static void main(String[] args) throws Exception {
+        CommandLineOptions cli = new CommandLineOptions(args);
+        Options options = new OptionsBuilder()
+                .parent(cli)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(cli.getResult().orElse("jmh-result.json"))
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,92 @@
+package com.syab.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syab.documentediting.dto.EditDocumentRequest;
+import com.syab.documentediting.service.DocumentService;
+import com.syab.documentediting.ws.DocumentWebSocketHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One edit fanned out to N mock subscribers, over SSE (DocumentService) and over WebSocket
+ * (DocumentWebSocketHandler). Each operation waits until all N subscribers received it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class BroadcastFanoutBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class SseState {
+        @Param({"10", "100", "1000"})
+        int subscribers;
+
+        DocumentService documentService;
+        Long documentId;
+        EditDocumentRequest request;
+        final LongAdder delivered = new LongAdder();
+        long expected;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            InMemoryRepositories repositories = new InMemoryRepositories();
+            documentId = repositories.addDocument("benchmark", "", 1L).getId();
+            documentService = repositories.documentService();
+            for (long userId = 1; userId <= subscribers; userId++) {
+                SseConnections.connect(documentService.subscribeToDocument(documentId, userId), delivered);
+            }
+            Thread.sleep(500);
+            expected = delivered.sum();
+            request = new EditDocumentRequest(SampleContent.of(1024), "UPDATE", null);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class WebSocketState {
+        @Param({"10", "100", "1000"})
+        int subscribers;
+
+        DocumentWebSocketHandler handler;
+        CountingWebSocketSession sender;
+        TextMessage editFrame;
+        final LongAdder delivered = new LongAdder();
+        long expected;
+
+        @Setup(Level.Trial)
+        public void setUp() throws Exception {
+            InMemoryRepositories repositories = new InMemoryRepositories();
+            long documentId = repositories.addDocument("benchmark", "", 1L).getId();
+            handler = new DocumentWebSocketHandler(repositories.documentService(), repositories.heartbeats(), repositories.rateLimiter(), repositories.meterRegistry(), repositories.observationRegistry(), repositories.documentGauges());
+            sender = new CountingWebSocketSession("sender", documentId, 1L, new LongAdder());
+            handler.afterConnectionEstablished(sender);
+            for (int i = 0; i < subscribers; i++) {
+                handler.afterConnectionEstablished(new CountingWebSocketSession("s" + i, documentId, i + 2L, delivered));
+            }
+            editFrame = new TextMessage(new ObjectMapper().writeValueAsString(Map.of(
+                    "documentId", documentId,
+                    "userId", 1L,
+                    "content", SampleContent.of(1024),
+                    "operationType", "UPDATE")));
+        }
+    }
+
+    @Benchmark
+    public void sseFanout(SseState state) throws Exception {
+        state.documentService.editDocument(state.documentId, 1L, state.request);
+        state.expected += state.subscribers;
+        Deliveries.await(state.delivered, state.expected);
+    }
+
+    @Benchmark
+    public void webSocketFanout(WebSocketState state) throws Exception {
+        state.handler.handleMessage(state.sender, state.editFrame);
+        state.expected += state.subscribers;
+        Deliveries.await(state.delivered, state.expected);
+    }
+}
@@ -0,0 +1,53 @@
+package com.syab.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syab.documentediting.ws.ClientMessage;
+import com.syab.documentediting.ws.ClientMessageDecoder;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Edit frame decoding: the streaming {@link ClientMessageDecoder} against the Map-based parsing
+ * the WebSocket handler used before. Compare {@code gc.alloc.rate.norm} for bytes per frame.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClientMessageDecoderBenchmark {
+    @Param({"64", "4096"})
+    private int contentLength;
+
+    private final ClientMessageDecoder decoder = new ClientMessageDecoder();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private String frame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        frame = objectMapper.writeValueAsString(Map.of(
+                "documentId", 42L,
+                "userId", 7L,
+                "content", SampleContent.of(contentLength),
+                "operationType", "UPDATE"));
+    }
+
+    @Benchmark
+    public ClientMessage typed() throws Exception {
+        return decoder.decode(frame);
+    }
+
+    @Benchmark
+    @SuppressWarnings("unchecked")
+    public Object[] mapBaseline() throws Exception {
+        Map<String, Object> payload = objectMapper.readValue(frame, Map.class);
+        Long documentId = payload.get("documentId") == null ? null : Long.valueOf(String.valueOf(payload.get("documentId")));
+        Long userId = payload.get("userId") == null ? null : Long.valueOf(String.valueOf(payload.get("userId")));
+        String content = (String) payload.get("content");
+        String operationType = payload.getOrDefault("operationType", "UPDATE").toString();
+        return new Object[] {documentId, userId, content, operationType};
+    }
+}
@@ -0,0 +1,26 @@
+package com.syab.benchmarks;
+
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fanout happens on background threads; benchmarks wait here until every expected message has
+ * reached a mock subscriber so the measured time covers the whole broadcast.
+ */
+final class Deliveries {
+    private static final long TIMEOUT_NANOS = 10_000_000_000L;
+
+    private Deliveries() {
+    }
+
+    static void await(LongAdder delivered, long expected) throws TimeoutException {
+        long deadline = System.nanoTime() + TIMEOUT_NANOS;
+        while (delivered.sum() < expected) {
+            if (System.nanoTime() > deadline) {
+                throw new TimeoutException("Only " + delivered.sum() + " of " + expected + " messages delivered");
+            }
+            LockSupport.parkNanos(1_000);
+        }
+    }
+}
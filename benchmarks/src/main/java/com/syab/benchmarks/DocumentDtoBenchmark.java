@@ -0,0 +1,44 @@
+package com.syab.benchmarks;
+
+import com.syab.documentediting.dto.DocumentDTO;
+import com.syab.documentediting.service.DocumentService;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity to DTO conversion as seen by the read endpoints, with repositories stubbed out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentDtoBenchmark {
+    @Param({"10", "100"})
+    private int documentsPerUser;
+
+    private DocumentService documentService;
+    private Long documentId;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        InMemoryRepositories repositories = new InMemoryRepositories();
+        for (int i = 0; i < documentsPerUser; i++) {
+            documentId = repositories.addDocument("doc-" + i, SampleContent.of(1024), 1L).getId();
+        }
+        documentService = repositories.documentService();
+    }
+
+    @Benchmark
+    public DocumentDTO getDocument() {
+        return documentService.getDocument(documentId);
+    }
+
+    @Benchmark
+    public List<DocumentDTO> getUserDocuments() {
+        return documentService.getUserDocuments(1L);
+    }
+}
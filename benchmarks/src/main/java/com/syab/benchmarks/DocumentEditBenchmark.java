@@ -0,0 +1,54 @@
+package com.syab.benchmarks;
+
+import com.syab.documentediting.DocumentEditingApplication;
+import com.syab.documentediting.dto.DocumentDTO;
+import com.syab.documentediting.dto.EditDocumentRequest;
+import com.syab.documentediting.service.DocumentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.boot.WebApplicationType;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link DocumentService#editDocument} end to end against the in-memory H2 profile:
+ * entity load, content update, change-log insert and (empty) SSE broadcast.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DocumentEditBenchmark {
+    @Param({"256", "16384"})
+    private int contentLength;
+
+    private ConfigurableApplicationContext context;
+    private DocumentService documentService;
+    private Long documentId;
+    private EditDocumentRequest request;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        context = new SpringApplicationBuilder(DocumentEditingApplication.class)
+                .profiles("h2")
+                .web(WebApplicationType.NONE)
+                .logStartupInfo(false)
+                .run("--spring.main.banner-mode=off");
+        documentService = context.getBean(DocumentService.class);
+        documentId = documentService.createDocument("benchmark", 1L).getId();
+        request = new EditDocumentRequest(SampleContent.of(contentLength), "UPDATE", null);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        context.close();
+    }
+
+    @Benchmark
+    public DocumentDTO editDocument() {
+        return documentService.editDocument(documentId, 1L, request);
+    }
+}
@@ -0,0 +1,167 @@
+package com.syab.benchmarks;
+
+import com.syab.documentediting.checkpoint.VersionCheckpointPublisher;
+import com.syab.documentediting.config.DocumentGauges;
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import com.syab.documentediting.heartbeat.HeartbeatScheduler;
+import com.syab.documentediting.model.Document;
+import com.syab.documentediting.model.DocumentChange;
+import com.syab.documentediting.model.DocumentShare;
+import com.syab.documentediting.repository.DocumentChangeRepository;
+import com.syab.documentediting.repository.DocumentRepository;
+import com.syab.documentediting.repository.DocumentShareRepository;
+import com.syab.documentediting.service.DocumentService;
+import com.syab.documentediting.ws.EditRateLimiter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.AbstractPlatformTransactionManager;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+import org.springframework.web.client.RestTemplate;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Map-backed stand-ins for the JPA repositories, so benchmarks that are not about the database
+ * measure only the service code. Only the methods DocumentService calls are implemented.
+ */
+public final class InMemoryRepositories {
+    private final Map<Long, Document> documents = new ConcurrentHashMap<>();
+    private final AtomicLong documentIds = new AtomicLong();
+    private final AtomicLong changeIds = new AtomicLong();
+    // a real registry, so the numbers include the cost of the service's own instrumentation
+    private final MeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final HashedTimingWheel timingWheel = new HashedTimingWheel("benchmark-wheel", 100, TimeUnit.MILLISECONDS, 512);
+    private final HeartbeatScheduler heartbeats = new HeartbeatScheduler(timingWheel,
+            Duration.ofSeconds(25), Duration.ofSeconds(60), Duration.ofSeconds(15), meterRegistry);
+    // limits high enough never to throttle: benchmarks measure the unthrottled path
+    private final EditRateLimiter rateLimiter = new EditRateLimiter(timingWheel,
+            1e9, 1_000_000, 1e9, 1_000_000, 1e9, 1_000_000, 1, meterRegistry);
+    private final DocumentGauges documentGauges = new DocumentGauges(meterRegistry, 500);
+
+    // disabled: there is no version-control-service to post checkpoints to
+    private final VersionCheckpointPublisher checkpoints = new VersionCheckpointPublisher(new RestTemplate(), timingWheel,
+            false, "http://localhost/unused", 50, 4096, Duration.ofSeconds(30), meterRegistry);
+
+    public Document addDocument(String title, String content, Long ownerId) {
+        Document document = new Document();
+        document.setId(documentIds.incrementAndGet());
+        document.setTitle(title);
+        document.setContent(content);
+        document.setOwnerId(ownerId);
+        document.setIsShared(false);
+        documents.put(document.getId(), document);
+        return document;
+    }
+
+    public DocumentService documentService() {
+        return new DocumentService(documentRepository(), changeRepository(), shareRepository(), meterRegistry,
+                ObservationRegistry.NOOP, new RestTemplate(), heartbeats, new NoOpTransactionManager(), checkpoints, documentGauges);
+    }
+
+    public DocumentGauges documentGauges() {
+        return documentGauges;
+    }
+
+    public MeterRegistry meterRegistry() {
+        return meterRegistry;
+    }
+
+    public HeartbeatScheduler heartbeats() {
+        return heartbeats;
+    }
+
+    public EditRateLimiter rateLimiter() {
+        return rateLimiter;
+    }
+
+    public ObservationRegistry observationRegistry() {
+        return ObservationRegistry.NOOP;
+    }
+
+    private DocumentRepository documentRepository() {
+        return proxy(DocumentRepository.class, (self, method, args) -> switch (method.getName()) {
+            case "findById", "findByIdForUpdate" -> Optional.ofNullable(documents.get((Long) args[0]));
+            case "save", "saveAndFlush" -> {
+                Document document = (Document) args[0];
+                if (document.getId() == null) document.setId(documentIds.incrementAndGet());
+                // what Hibernate does with the @Version column
+                document.setRevision(document.getRevision() == null ? 0L : document.getRevision() + 1);
+                documents.put(document.getId(), document);
+                yield document;
+            }
+            case "findByOwnerId" -> {
+                List<Document> owned = new ArrayList<>();
+                for (Document d : documents.values()) {
+                    if (d.getOwnerId().equals(args[0])) owned.add(d);
+                }
+                yield owned;
+            }
+            default -> objectMethod(self, method.getName(), args);
+        });
+    }
+
+    private DocumentChangeRepository changeRepository() {
+        return proxy(DocumentChangeRepository.class, (self, method, args) -> {
+            if ("save".equals(method.getName())) {
+                DocumentChange change = (DocumentChange) args[0];
+                change.setId(changeIds.incrementAndGet());
+                return change;
+            }
+            return objectMethod(self, method.getName(), args);
+        });
+    }
+
+    private DocumentShareRepository shareRepository() {
+        return proxy(DocumentShareRepository.class, (self, method, args) -> {
+            if ("findByDocumentIdAndUserId".equals(method.getName())) {
+                return Optional.<DocumentShare>empty();
+            }
+            return objectMethod(self, method.getName(), args);
+        });
+    }
+
+    private static Object objectMethod(Object self, String name, Object[] args) {
+        return switch (name) {
+            case "hashCode" -> System.identityHashCode(self);
+            case "equals" -> self == args[0];
+            case "toString" -> "InMemoryRepository";
+            default -> throw new UnsupportedOperationException(name + " is not stubbed for benchmarks");
+        };
+    }
+
+    /** DocumentService runs edits in a TransactionTemplate; there is nothing to commit here. */
+    private static final class NoOpTransactionManager extends AbstractPlatformTransactionManager {
+        @Override
+        protected Object doGetTransaction() {
+            return new Object();
+        }
+
+        @Override
+        protected void doBegin(Object transaction, TransactionDefinition definition) {
+        }
+
+        @Override
+        protected void doCommit(DefaultTransactionStatus status) {
+        }
+
+        @Override
+        protected void doRollback(DefaultTransactionStatus status) {
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+        return (T) Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler);
+    }
+}
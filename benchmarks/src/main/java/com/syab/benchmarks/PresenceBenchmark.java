@@ -0,0 +1,53 @@
+package com.syab.benchmarks;
+
+import com.syab.documentediting.service.DocumentService;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One user joining and leaving a document that already has N SSE subscribers.
+ * Each operation produces two presence broadcasts, both awaited on the N existing subscribers.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PresenceBenchmark {
+    private static final long VISITOR_ID = 1_000_000L;
+
+    @Param({"10", "100", "1000"})
+    private int subscribers;
+
+    private DocumentService documentService;
+    private Long documentId;
+    private final LongAdder delivered = new LongAdder();
+    private final LongAdder visitorDelivered = new LongAdder();
+    private long expected;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InMemoryRepositories repositories = new InMemoryRepositories();
+        documentId = repositories.addDocument("benchmark", SampleContent.of(1024), 1L).getId();
+        documentService = repositories.documentService();
+        for (long userId = 1; userId <= subscribers; userId++) {
+            SseConnections.connect(documentService.subscribeToDocument(documentId, userId), delivered);
+        }
+        // let the join broadcasts from setup drain before measuring
+        Thread.sleep(500);
+        expected = delivered.sum();
+    }
+
+    @Benchmark
+    public void joinAndLeave() throws Exception {
+        SseEmitter visitor = documentService.subscribeToDocument(documentId, VISITOR_ID);
+        Runnable leave = SseConnections.connect(visitor, visitorDelivered);
+        leave.run();
+        expected += 2L * subscribers;
+        Deliveries.await(delivered, expected);
+    }
+}
@@ -0,0 +1,21 @@
+package com.syab.benchmarks;
+
+/**
+ * Deterministic, markup-like document text of a given length.
+ */
+final class SampleContent {
+    private static final String PARAGRAPH =
+            "<p>The quick brown fox jumps over the lazy dog while the team reviews section 4.2 of the draft.</p>\n";
+
+    private SampleContent() {
+    }
+
+    static String of(int length) {
+        StringBuilder sb = new StringBuilder(length);
+        while (sb.length() < length) {
+            sb.append(PARAGRAPH);
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
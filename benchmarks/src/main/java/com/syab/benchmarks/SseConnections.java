@@ -0,0 +1,96 @@
+package com.syab.benchmarks;
+
+import com.syab.documentediting.controller.DocumentController;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.core.MethodParameter;
+import org.springframework.http.converter.StringHttpMessageConverter;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.context.request.async.StandardServletAsyncWebRequest;
+import org.springframework.web.context.request.async.WebAsyncUtils;
+import org.springframework.web.method.support.ModelAndViewContainer;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitterReturnValueHandler;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Connects an {@link SseEmitter} to a mock client the way Spring MVC does when
+ * {@link DocumentController#streamDocument} returns it: through {@link ResponseBodyEmitterReturnValueHandler}
+ * onto an async mock request. Each flushed event is counted and its bytes are discarded, so a long
+ * run does not measure a growing response buffer.
+ */
+public final class SseConnections {
+    private static final ResponseBodyEmitterReturnValueHandler HANDLER = new ResponseBodyEmitterReturnValueHandler(
+            List.of(new StringHttpMessageConverter(), new MappingJackson2HttpMessageConverter()));
+    private static final MethodParameter RETURN_TYPE = streamReturnType();
+
+    private SseConnections() {
+    }
+
+    /**
+     * Streams {@code emitter} to a client that counts events into {@code delivered}, and returns a
+     * callback that simulates the client going away (completes the async request).
+     */
+    public static Runnable connect(SseEmitter emitter, LongAdder delivered) throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/documents/stream");
+        request.setAsyncSupported(true);
+        StandardServletAsyncWebRequest webRequest = new StandardServletAsyncWebRequest(request,
+                new CountingResponse(delivered));
+        WebAsyncUtils.getAsyncManager(webRequest).setAsyncWebRequest(webRequest);
+        HANDLER.handleReturnValue(emitter, RETURN_TYPE, new ModelAndViewContainer(), webRequest);
+        return () -> request.getAsyncContext().complete();
+    }
+
+    private static MethodParameter streamReturnType() {
+        try {
+            return new MethodParameter(DocumentController.class.getMethod("streamDocument", Long.class, Long.class), -1);
+        } catch (NoSuchMethodException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // the emitter flushes once per event, after writing all of its lines
+    private static final class CountingResponse extends HttpServletResponseWrapper {
+        private final LongAdder delivered;
+        private final ServletOutputStream body = new DiscardingOutputStream();
+
+        CountingResponse(LongAdder delivered) {
+            super(new MockHttpServletResponse());
+            this.delivered = delivered;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return body;
+        }
+
+        @Override
+        public void flushBuffer() {
+            delivered.increment();
+        }
+    }
+
+    private static final class DiscardingOutputStream extends ServletOutputStream {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+        }
+    }
+}
@@ -0,0 +1,103 @@
+package com.syab.benchmarks;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import com.syab.common.compression.TextCodec;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of packing and unpacking document text as stored: plain UTF-8 ({@code none}), zstd without
+ * a dictionary and zstd with a dictionary trained on similar documents. The compression ratio of
+ * each setting is printed at setup, since JMH only reports time.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextCompressionBenchmark {
+    private static final int DOCUMENTS = 64;
+    private static final String[] BLOCKS = {
+            "<h2 class=\"section-title\">Section %d: %s</h2>\n",
+            "<p class=\"body\">The %s team reviewed the %s draft and agreed to revise section %d before the next meeting.</p>\n",
+            "<ul class=\"checklist\">\n  <li data-owner=\"%s\">Update the %s figures</li>\n  <li data-owner=\"%s\">Check item %d</li>\n</ul>\n",
+            "<blockquote cite=\"%s\">Comment %d on the %s paragraph.</blockquote>\n",
+            "<table class=\"grid\"><tr><td>%s</td><td>%d</td><td>%s</td></tr></table>\n",
+    };
+    private static final String[] WORDS = {"design", "platform", "budget", "release", "editorial", "quarterly",
+            "legal", "security", "onboarding", "roadmap", "research", "marketing"};
+
+    @Param({"none", "zstd", "zstd-dict"})
+    private String codec;
+
+    @Param({"2048", "32768"})
+    private int length;
+
+    private String[] texts;
+    private byte[][] stored;
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        texts = new String[DOCUMENTS];
+        for (int i = 0; i < DOCUMENTS; i++) {
+            texts[i] = document(new Random(i), length);
+        }
+        TextCodec.configure(0, 3);
+        if (codec.equals("zstd-dict")) {
+            // trained on other documents than the ones measured
+            ZstdDictTrainer trainer = new ZstdDictTrainer(4 << 20, 16 * 1024);
+            for (int i = 0; i < 1000; i++) {
+                trainer.addSample(document(new Random(1_000_000 + i), 4096).getBytes(StandardCharsets.UTF_8));
+            }
+            TextCodec.useDictionary(1, trainer.trainSamples());
+        }
+        stored = new byte[DOCUMENTS][];
+        long raw = 0;
+        long packed = 0;
+        for (int i = 0; i < DOCUMENTS; i++) {
+            stored[i] = pack(texts[i]);
+            raw += texts[i].getBytes(StandardCharsets.UTF_8).length;
+            packed += stored[i].length;
+        }
+        System.out.printf("%n%s, %d chars: %d bytes stored for %d (ratio %.2f)%n", codec, length, packed, raw, (double) raw / packed);
+    }
+
+    @Benchmark
+    public byte[] write() {
+        return pack(texts[next++ & (DOCUMENTS - 1)]);
+    }
+
+    @Benchmark
+    public String read() {
+        byte[] value = stored[next++ & (DOCUMENTS - 1)];
+        return codec.equals("none") ? new String(value, StandardCharsets.UTF_8) : TextCodec.unpack(value);
+    }
+
+    private byte[] pack(String text) {
+        if (codec.equals("none")) return text.getBytes(StandardCharsets.UTF_8);
+        byte[] packed = TextCodec.pack(text);
+        if (packed == null) throw new IllegalStateException("Text did not compress");
+        return packed;
+    }
+
+    // markup of the kind the editor stores: repeated structure, varying words and numbers
+    private static String document(Random random, int length) {
+        StringBuilder sb = new StringBuilder(length + 256);
+        while (sb.length() < length) {
+            String block = BLOCKS[random.nextInt(BLOCKS.length)];
+            Object[] args = new Object[4];
+            int a = 0;
+            for (int i = block.indexOf('%'); i >= 0; i = block.indexOf('%', i + 1)) {
+                args[a++] = block.charAt(i + 1) == 'd' ? (Object) random.nextInt(100) : WORDS[random.nextInt(WORDS.length)];
+            }
+            sb.append(String.format(block, args));
+        }
+        sb.setLength(length);
+        return sb.toString();
+    }
+}
@@ -0,0 +1,55 @@
+package com.syab.benchmarks;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syab.documentediting.ws.DocumentWebSocketHandler;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.web.socket.TextMessage;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Inbound frame handling in {@link DocumentWebSocketHandler}: JSON decoding and dispatch.
+ * The edit path runs against in-memory repositories with no other subscribers, so the
+ * numbers are dominated by parsing, logging and DTO work rather than the database.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WebSocketMessageBenchmark {
+    @Param({"64", "4096"})
+    private int contentLength;
+
+    private DocumentWebSocketHandler handler;
+    private CountingWebSocketSession session;
+    private TextMessage pingFrame;
+    private TextMessage editFrame;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        InMemoryRepositories repositories = new InMemoryRepositories();
+        long documentId = repositories.addDocument("benchmark", "", 1L).getId();
+        handler = new DocumentWebSocketHandler(repositories.documentService(), repositories.heartbeats(), repositories.rateLimiter(), repositories.meterRegistry(), repositories.observationRegistry(), repositories.documentGauges());
+        session = new CountingWebSocketSession("sender", documentId, 1L, new LongAdder());
+        pingFrame = new TextMessage("{\"type\":\"ping\"}");
+        editFrame = new TextMessage(new ObjectMapper().writeValueAsString(Map.of(
+                "documentId", documentId,
+                "userId", 1L,
+                "content", SampleContent.of(contentLength),
+                "operationType", "UPDATE")));
+    }
+
+    @Benchmark
+    public void ping() throws Exception {
+        handler.handleMessage(session, pingFrame);
+    }
+
+    @Benchmark
+    public void edit() throws Exception {
+        handler.handleMessage(session, editFrame);
+    }
+}
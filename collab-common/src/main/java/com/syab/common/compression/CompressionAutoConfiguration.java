@@ -0,0 +1,19 @@
+package com.syab.common.compression;
+
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.boot.autoconfigure.AutoConfigurationPackage;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateJpaAutoConfiguration;
+import org.springframework.context.annotation.Import;
+
+/**
+ * Compressed text columns for the services that store long texts, which turn it on with
+ * {@code collab.compression.enabled}. Adds this package to the service's entity and repository scan,
+ * for {@link CompressionDictionary}.
+ */
+@AutoConfiguration(before = HibernateJpaAutoConfiguration.class)
+@AutoConfigurationPackage
+@ConditionalOnProperty(prefix = "collab.compression", name = "enabled", havingValue = "true")
+@Import(TextCompression.class)
+public class CompressionAutoConfiguration {
+}
@@ -0,0 +1,32 @@
+package com.syab.common.compression;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * A zstd dictionary trained on recent texts of the service. Packed texts name the dictionary they were
+ * compressed with, so rows are kept for as long as any text may use them.
+ */
+@Entity
+@Table(name = "compression_dictionaries")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CompressionDictionary {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Integer id;
+
+    @Column(name = "dictionary", nullable = false, columnDefinition = "bytea")
+    private byte[] dictionary;
+
+    // texts it was trained on
+    @Column(name = "samples", nullable = false)
+    private Integer samples;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+}
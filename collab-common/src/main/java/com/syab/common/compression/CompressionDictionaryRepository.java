@@ -0,0 +1,11 @@
+package com.syab.common.compression;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface CompressionDictionaryRepository extends JpaRepository<CompressionDictionary, Integer> {
+    Optional<CompressionDictionary> findFirstByOrderByIdDesc();
+}
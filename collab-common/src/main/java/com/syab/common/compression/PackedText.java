@@ -0,0 +1,60 @@
+package com.syab.common.compression;
+
+import jakarta.persistence.Embeddable;
+
+/**
+ * A text column as stored: short texts as they are in {@code inline}, long ones packed by
+ * {@link TextCodec} into {@code packed} with {@code inline} left empty. Unpacked on first read, so
+ * rows that are loaded but never read cost no decompression. Entities map both columns with
+ * attribute overrides and expose the text through their own getter and setter.
+ */
+@Embeddable
+public class PackedText {
+    private String inline;
+
+    private byte[] packed;
+
+    private transient String text;
+
+    protected PackedText() {
+    }
+
+    public static PackedText of(String text) {
+        if (text == null) return null;
+        PackedText value = new PackedText();
+        value.packed = TextCodec.pack(text);
+        value.inline = value.packed == null ? text : "";
+        value.text = text;
+        return value;
+    }
+
+    /** The text column: the text itself, or empty if packed. */
+    public String inline() {
+        return inline;
+    }
+
+    /** The packed column, {@code null} unless packed. */
+    public byte[] packed() {
+        return packed;
+    }
+
+    /** Another value with the same stored form, for a second column holding the same text: packed once. */
+    public PackedText copy() {
+        PackedText value = new PackedText();
+        value.inline = inline;
+        value.packed = packed;
+        value.text = text;
+        return value;
+    }
+
+    public String text() {
+        if (text == null) {
+            text = packed != null ? TextCodec.unpack(packed) : inline;
+        }
+        return text;
+    }
+
+    public static String textOf(PackedText value) {
+        return value == null ? null : value.text();
+    }
+}
@@ -0,0 +1,149 @@
+package com.syab.common.compression;
+
+import com.github.luben.zstd.Zstd;
+import com.github.luben.zstd.ZstdCompressCtx;
+import com.github.luben.zstd.ZstdDecompressCtx;
+import com.github.luben.zstd.ZstdDictCompress;
+import com.github.luben.zstd.ZstdDictDecompress;
+import com.github.luben.zstd.ZstdException;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Compresses long texts with zstd, using the newest dictionary trained on this service's own
+ * texts. A packed value starts with a format byte, the id of its dictionary (0 for none) and the
+ * UTF-8 length, so it stays readable after newer dictionaries are trained; dictionaries this
+ * instance has not seen are loaded on first use.
+ * <p>
+ * Static because it is called from entities, which are not beans; {@link TextCompression} configures
+ * it at startup. Until then, and for texts shorter than {@code minChars} or that do not shrink,
+ * {@link #pack} returns {@code null} and the text is stored as it is.
+ */
+public final class TextCodec {
+    private static final byte FORMAT = 1;
+
+    private static volatile Settings settings = new Settings(Integer.MAX_VALUE, 3, 0, null);
+    private static final Map<Integer, ZstdDictDecompress> decompressors = new ConcurrentHashMap<>();
+    private static volatile IntFunction<byte[]> dictionaryLoader = id -> null;
+    private static volatile Consumer<byte[]> sampler = sample -> { };
+    // a context costs more to set up than a small text takes to compress
+    private static final ThreadLocal<ZstdCompressCtx> compressors = ThreadLocal.withInitial(ZstdCompressCtx::new);
+    private static final ThreadLocal<ZstdDecompressCtx> decompressContexts = ThreadLocal.withInitial(ZstdDecompressCtx::new);
+    private static final LongAdder rawBytes = new LongAdder();
+    private static final LongAdder storedBytes = new LongAdder();
+
+    private record Settings(int minChars, int level, int dictionaryId, ZstdDictCompress dictionary) {
+    }
+
+    private TextCodec() {
+    }
+
+    /** Packs texts of at least {@code minChars} characters at zstd {@code level}, without a dictionary until one is set. */
+    public static void configure(int minChars, int level) {
+        settings = new Settings(minChars, level, 0, null);
+    }
+
+    /** Packs with this dictionary from now on. */
+    public static void useDictionary(int id, byte[] dictionary) {
+        Settings current = settings;
+        decompressors.putIfAbsent(id, new ZstdDictDecompress(dictionary));
+        settings = new Settings(current.minChars(), current.level(), id, new ZstdDictCompress(dictionary, current.level()));
+    }
+
+    /** Where dictionaries trained elsewhere are read from; returns {@code null} for an unknown id. */
+    public static void setDictionaryLoader(IntFunction<byte[]> loader) {
+        dictionaryLoader = loader;
+    }
+
+    /** Receives the UTF-8 bytes of every text considered for packing, to train dictionaries on. */
+    public static void setSampler(Consumer<byte[]> consumer) {
+        sampler = consumer;
+    }
+
+    /** @return the packed text, or {@code null} if it is better stored as it is */
+    public static byte[] pack(String text) {
+        Settings current = settings;
+        if (text == null || text.length() < current.minChars()) return null;
+        byte[] raw = text.getBytes(StandardCharsets.UTF_8);
+        sampler.accept(raw);
+        byte[] out = new byte[10 + (int) Zstd.compressBound(raw.length)];
+        out[0] = FORMAT;
+        int pos = writeVarint(out, 1, current.dictionaryId());
+        pos = writeVarint(out, pos, raw.length);
+        ZstdCompressCtx ctx = compressors.get();
+        ctx.reset();
+        ctx.setLevel(current.level());
+        if (current.dictionary() != null) ctx.loadDict(current.dictionary());
+        int size = ctx.compressByteArray(out, pos, out.length - pos, raw, 0, raw.length);
+        byte[] packed = pos + size < raw.length ? Arrays.copyOf(out, pos + size) : null;
+        rawBytes.add(raw.length);
+        storedBytes.add(packed != null ? packed.length : raw.length);
+        return packed;
+    }
+
+    public static String unpack(byte[] packed) {
+        if (packed[0] != FORMAT) {
+            throw new IllegalStateException("Unknown packed text format " + packed[0]);
+        }
+        int[] pos = {1};
+        int dictionaryId = readVarint(packed, pos);
+        int length = readVarint(packed, pos);
+        byte[] raw = new byte[length];
+        ZstdDecompressCtx ctx = decompressContexts.get();
+        ctx.reset();
+        if (dictionaryId != 0) ctx.loadDict(decompressor(dictionaryId));
+        int size;
+        try {
+            size = ctx.decompressByteArray(raw, 0, length, packed, pos[0], packed.length - pos[0]);
+        } catch (ZstdException e) {
+            throw new IllegalStateException("Packed text is corrupt", e);
+        }
+        if (size != length) {
+            throw new IllegalStateException("Packed text is corrupt: " + size + " of " + length + " bytes");
+        }
+        return new String(raw, StandardCharsets.UTF_8);
+    }
+
+    /** UTF-8 bytes of the texts packed so far, and what was stored for them. */
+    public static long rawBytes() {
+        return rawBytes.sum();
+    }
+
+    public static long storedBytes() {
+        return storedBytes.sum();
+    }
+
+    private static ZstdDictDecompress decompressor(int id) {
+        return decompressors.computeIfAbsent(id, key -> {
+            byte[] dictionary = dictionaryLoader.apply(key);
+            if (dictionary == null) {
+                throw new IllegalStateException("Compression dictionary " + key + " not found");
+            }
+            return new ZstdDictDecompress(dictionary);
+        });
+    }
+
+    private static int writeVarint(byte[] out, int pos, int value) {
+        while ((value & ~0x7F) != 0) {
+            out[pos++] = (byte) ((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out[pos++] = (byte) value;
+        return pos;
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
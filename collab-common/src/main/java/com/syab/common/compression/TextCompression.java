@@ -0,0 +1,143 @@
+package com.syab.common.compression;
+
+import com.github.luben.zstd.ZstdDictTrainer;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sets up {@link TextCodec} and keeps its dictionary trained on the texts this service stores. When
+ * there is no dictionary yet, or the current one is older than {@code retrain-interval}, the next
+ * {@code samples} texts written are kept (their first 16 KB) and a new dictionary is trained from
+ * them in the background. Texts packed with older dictionaries stay readable.
+ * <p>
+ * Set up by {@link CompressionAutoConfiguration} in services that enable {@code collab.compression}.
+ */
+public class TextCompression {
+    private static final Logger log = LoggerFactory.getLogger(TextCompression.class);
+    private static final long CHECK_INTERVAL_MS = 60_000;
+    private static final int MAX_SAMPLE_BYTES = 16 * 1024;
+
+    private final CompressionDictionaryRepository dictionaryRepository;
+    private final boolean enabled;
+    private final int minChars;
+    private final int level;
+    private final int dictionarySize;
+    private final Duration retrainInterval;
+    private final byte[][] samples;
+    private int sampled;
+    private volatile boolean collecting;
+    private volatile LocalDateTime trainedAt;
+    private final Counter trained;
+    private final ScheduledExecutorService trainer;
+
+    public TextCompression(CompressionDictionaryRepository dictionaryRepository,
+                           @Value("${collab.compression.enabled:true}") boolean enabled,
+                           @Value("${collab.compression.min-chars:256}") int minChars,
+                           @Value("${collab.compression.level:3}") int level,
+                           @Value("${collab.compression.dictionary.size:16384}") int dictionarySize,
+                           @Value("${collab.compression.dictionary.samples:1000}") int samples,
+                           @Value("${collab.compression.dictionary.retrain-interval:24h}") Duration retrainInterval,
+                           MeterRegistry meterRegistry) {
+        this.dictionaryRepository = dictionaryRepository;
+        this.enabled = enabled;
+        this.minChars = minChars;
+        this.level = level;
+        this.dictionarySize = dictionarySize;
+        this.retrainInterval = retrainInterval;
+        this.samples = new byte[samples][];
+        this.trained = Counter.builder("collab.compression.dictionaries.trained").register(meterRegistry);
+        FunctionCounter.builder("collab.compression.raw.bytes", this, c -> TextCodec.rawBytes()).register(meterRegistry);
+        FunctionCounter.builder("collab.compression.stored.bytes", this, c -> TextCodec.storedBytes()).register(meterRegistry);
+        this.trainer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "dictionary-trainer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    // before any entity is written
+    @PostConstruct
+    public void install() {
+        if (!enabled) return;
+        TextCodec.configure(minChars, level);
+        TextCodec.setDictionaryLoader(id -> dictionaryRepository.findById(id).map(CompressionDictionary::getDictionary).orElse(null));
+        TextCodec.setSampler(this::sample);
+        dictionaryRepository.findFirstByOrderByIdDesc().ifPresent(this::use);
+        collecting = trainedAt == null;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        trainer.scheduleWithFixedDelay(this::trainIfDue, CHECK_INTERVAL_MS, CHECK_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+
+    private void sample(byte[] text) {
+        if (!collecting) return;
+        byte[] sample = text.length > MAX_SAMPLE_BYTES ? Arrays.copyOf(text, MAX_SAMPLE_BYTES) : text;
+        synchronized (samples) {
+            if (sampled < samples.length) samples[sampled++] = sample;
+        }
+    }
+
+    /** Trains a new dictionary if one is due and enough texts have been sampled. */
+    public void trainIfDue() {
+        try {
+            if (!collecting) {
+                collecting = trainedAt == null || !trainedAt.plus(retrainInterval).isAfter(LocalDateTime.now());
+                return;
+            }
+            byte[][] batch;
+            synchronized (samples) {
+                if (sampled < samples.length) return;
+                batch = samples.clone();
+                Arrays.fill(samples, null);
+                sampled = 0;
+            }
+            collecting = false;
+            train(batch);
+        } catch (RuntimeException e) {
+            // keep the schedule alive; samples are collected again
+            collecting = true;
+            log.warn("Compression dictionary training failed", e);
+        }
+    }
+
+    private void train(byte[][] batch) {
+        long total = 0;
+        for (byte[] sample : batch) total += sample.length;
+        ZstdDictTrainer dictTrainer = new ZstdDictTrainer((int) total, dictionarySize);
+        for (byte[] sample : batch) dictTrainer.addSample(sample);
+        byte[] dictionary = dictTrainer.trainSamples();
+        CompressionDictionary saved = dictionaryRepository.save(
+                new CompressionDictionary(null, dictionary, batch.length, LocalDateTime.now()));
+        use(saved);
+        trained.increment();
+        log.info("Trained compression dictionary {} ({} bytes) on {} texts", saved.getId(), dictionary.length, batch.length);
+    }
+
+    private void use(CompressionDictionary dictionary) {
+        TextCodec.useDictionary(dictionary.getId(), dictionary.getDictionary());
+        trainedAt = dictionary.getCreatedAt() != null ? dictionary.getCreatedAt() : LocalDateTime.now();
+    }
+
+    @PreDestroy
+    public void close() {
+        trainer.shutdownNow();
+    }
+}
@@ -0,0 +1,131 @@
+package com.syab.common.tracing;
+
+import io.opentelemetry.api.trace.SpanContext;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Tail-based sampling in front of another exporter. Spans are held back per trace until the
+ * local root span (no parent, or a parent from another service) ends; the whole trace is then
+ * exported only if the root took longer than the threshold or any of its spans failed.
+ * Spans that end after a kept root (async fanout) are exported as they arrive, and those that end
+ * after a dropped root are discarded, so they do not wait out the TTL as pending traces.
+ * <p>
+ * The decision is made by each service for its own part of a trace: a trace slow at the gateway
+ * keeps the gateway's spans, not the fast spans of the services behind it.
+ * <p>
+ * The batch span processor never calls {@link #export} concurrently, so plain maps are enough.
+ */
+public class TailSamplingSpanExporter implements SpanExporter {
+    private static final long PENDING_TTL_NANOS = Duration.ofMinutes(1).toNanos();
+
+    private final SpanExporter delegate;
+    private final long slowThresholdNanos;
+    private final int maxPendingTraces;
+
+    // traceId -> spans that ended before their local root, in arrival order
+    private final LinkedHashMap<String, PendingTrace> pending = new LinkedHashMap<>();
+    private final Map<String, Boolean> keptTraces;
+    private final Map<String, Boolean> droppedTraces;
+
+    public TailSamplingSpanExporter(SpanExporter delegate, Duration slowThreshold, int maxPendingTraces) {
+        this.delegate = delegate;
+        this.slowThresholdNanos = slowThreshold.toNanos();
+        this.maxPendingTraces = maxPendingTraces;
+        this.keptTraces = recentTraces(maxPendingTraces);
+        this.droppedTraces = recentTraces(maxPendingTraces);
+    }
+
+    // the last {@code max} trace ids decided on
+    private static Map<String, Boolean> recentTraces(int max) {
+        return new LinkedHashMap<>(16, 0.75f, false) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Boolean> eldest) {
+                return size() > max;
+            }
+        };
+    }
+
+    @Override
+    public CompletableResultCode export(Collection<SpanData> spans) {
+        List<SpanData> out = new ArrayList<>();
+        for (SpanData span : spans) {
+            String traceId = span.getTraceId();
+            if (keptTraces.containsKey(traceId)) {
+                out.add(span);
+            } else if (droppedTraces.containsKey(traceId)) {
+                continue;
+            } else if (isLocalRoot(span)) {
+                PendingTrace trace = pending.remove(traceId);
+                boolean failed = isError(span) || (trace != null && trace.failed);
+                if (failed || span.getEndEpochNanos() - span.getStartEpochNanos() >= slowThresholdNanos) {
+                    keptTraces.put(traceId, Boolean.TRUE);
+                    if (trace != null) out.addAll(trace.spans);
+                    out.add(span);
+                } else {
+                    droppedTraces.put(traceId, Boolean.TRUE);
+                }
+            } else {
+                PendingTrace trace = pending.get(traceId);
+                if (trace == null) {
+                    if (pending.size() >= maxPendingTraces) continue; // shed rather than grow
+                    trace = new PendingTrace(System.nanoTime());
+                    pending.put(traceId, trace);
+                }
+                trace.spans.add(span);
+                trace.failed |= isError(span);
+            }
+        }
+        evictStale();
+        return out.isEmpty() ? CompletableResultCode.ofSuccess() : delegate.export(out);
+    }
+
+    /** Drops traces whose root never arrived (e.g. it was sampled out or the request was aborted). */
+    private void evictStale() {
+        long cutoff = System.nanoTime() - PENDING_TTL_NANOS;
+        Iterator<PendingTrace> it = pending.values().iterator();
+        while (it.hasNext() && it.next().createdAt < cutoff) {
+            it.remove();
+        }
+    }
+
+    private static boolean isLocalRoot(SpanData span) {
+        SpanContext parent = span.getParentSpanContext();
+        return !parent.isValid() || parent.isRemote();
+    }
+
+    private static boolean isError(SpanData span) {
+        return span.getStatus().getStatusCode() == StatusCode.ERROR;
+    }
+
+    @Override
+    public CompletableResultCode flush() {
+        return delegate.flush();
+    }
+
+    @Override
+    public CompletableResultCode shutdown() {
+        pending.clear();
+        return delegate.shutdown();
+    }
+
+    private static final class PendingTrace {
+        final long createdAt;
+        final List<SpanData> spans = new ArrayList<>();
+        boolean failed;
+
+        PendingTrace(long createdAt) {
+            this.createdAt = createdAt;
+        }
+    }
+}
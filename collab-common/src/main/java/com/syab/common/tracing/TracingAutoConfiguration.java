@@ -0,0 +1,24 @@
+package com.syab.common.tracing;
+
+import io.opentelemetry.exporter.logging.LoggingSpanExporter;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.AutoConfiguration;
+import org.springframework.context.annotation.Bean;
+
+import java.time.Duration;
+
+/**
+ * Every request is traced (sampling probability 1.0), but only slow or failed traces are
+ * written to the log, so no external collector is needed. Picked up by every service that
+ * depends on this module.
+ */
+@AutoConfiguration
+public class TracingAutoConfiguration {
+
+    @Bean
+    public SpanExporter tailSamplingSpanExporter(@Value("${collab.tracing.slow-threshold:500ms}") Duration slowThreshold,
+                                                 @Value("${collab.tracing.max-pending-traces:10000}") int maxPendingTraces) {
+        return new TailSamplingSpanExporter(LoggingSpanExporter.create(), slowThreshold, maxPendingTraces);
+    }
+}
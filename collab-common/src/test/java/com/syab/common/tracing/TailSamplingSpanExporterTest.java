@@ -0,0 +1,104 @@
+package com.syab.common.tracing;
+
+import io.opentelemetry.api.trace.Span;
+import io.opentelemetry.api.trace.StatusCode;
+import io.opentelemetry.api.trace.Tracer;
+import io.opentelemetry.context.Context;
+import io.opentelemetry.sdk.common.CompletableResultCode;
+import io.opentelemetry.sdk.trace.SdkTracerProvider;
+import io.opentelemetry.sdk.trace.data.SpanData;
+import io.opentelemetry.sdk.trace.export.SimpleSpanProcessor;
+import io.opentelemetry.sdk.trace.export.SpanExporter;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TailSamplingSpanExporterTest {
+    private final List<SpanData> exported = new ArrayList<>();
+    private final SpanExporter delegate = new SpanExporter() {
+        @Override
+        public CompletableResultCode export(Collection<SpanData> spans) {
+            exported.addAll(spans);
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode flush() {
+            return CompletableResultCode.ofSuccess();
+        }
+
+        @Override
+        public CompletableResultCode shutdown() {
+            return CompletableResultCode.ofSuccess();
+        }
+    };
+    private SdkTracerProvider provider;
+
+    @AfterEach
+    void tearDown() {
+        provider.close();
+    }
+
+    private Tracer tracer(int maxPendingTraces) {
+        provider = SdkTracerProvider.builder()
+                .addSpanProcessor(SimpleSpanProcessor.create(
+                        new TailSamplingSpanExporter(delegate, Duration.ofMillis(500), maxPendingTraces)))
+                .build();
+        return provider.get("test");
+    }
+
+    private List<String> exportedNames() {
+        return exported.stream().map(SpanData::getName).toList();
+    }
+
+    @Test
+    void testSlowTraceExportedWithSpansThatEndedBeforeTheRoot() {
+        Tracer tracer = tracer(10);
+        Instant start = Instant.now();
+        Span root = tracer.spanBuilder("slow request").setStartTimestamp(start).startSpan();
+        tracer.spanBuilder("query").setParent(Context.current().with(root)).startSpan().end();
+        assertTrue(exported.isEmpty());
+
+        root.end(start.plusSeconds(1));
+
+        assertEquals(List.of("query", "slow request"), exportedNames());
+    }
+
+    @Test
+    void testFastTraceDroppedUnlessSomethingFailed() {
+        Tracer tracer = tracer(10);
+        Span fast = tracer.spanBuilder("fast request").startSpan();
+        fast.end();
+        Span failed = tracer.spanBuilder("failed request").startSpan();
+        tracer.spanBuilder("query").setParent(Context.current().with(failed)).startSpan()
+                .setStatus(StatusCode.ERROR).end();
+        failed.end();
+
+        assertEquals(List.of("query", "failed request"), exportedNames());
+    }
+
+    @Test
+    void testLateSpansOfADroppedTraceDoNotCrowdOutPendingOnes() {
+        // room for one pending trace
+        Tracer tracer = tracer(1);
+        Span fast = tracer.spanBuilder("fast request").startSpan();
+        Span fanout = tracer.spanBuilder("fanout").setParent(Context.current().with(fast)).startSpan();
+        fast.end();
+        // ends after its root was dropped: discarded, not held as a pending trace
+        fanout.end();
+
+        Instant start = Instant.now();
+        Span slow = tracer.spanBuilder("slow request").setStartTimestamp(start).startSpan();
+        tracer.spanBuilder("query").setParent(Context.current().with(slow)).startSpan().end();
+        slow.end(start.plusSeconds(1));
+
+        assertEquals(List.of("query", "slow request"), exportedNames());
+    }
+}
@@ -0,0 +1,219 @@
+package com.syab.documentediting.checkpoint;
+
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Asks version-control-service to snapshot a document once enough has changed: after a number of
+ * edits, a number of changed characters, or once editing has gone quiet. Checkpoints are posted from
+ * one background thread, so edits never wait on version-control; one that cannot be delivered is
+ * folded back into the document's pending state and retried at its next trigger. Each checkpoint
+ * carries the edits since the last one, as per-user counts that version-control adds to contributions
+ * and as text replacements it uses to keep track of who wrote what. Edits are reported after their
+ * transaction, so two that commit back to back may arrive in either order; each carries its revision,
+ * replacements are kept in revision order and the content is that of the highest revision.
+ * <p>
+ * Like the idle checks of {@link com.syab.documentediting.heartbeat.HeartbeatScheduler}, each pending
+ * document has a single check on the timing wheel that re-arms itself while edits keep coming.
+ */
+@Component
+public class VersionCheckpointPublisher {
+    private static final Logger log = LoggerFactory.getLogger(VersionCheckpointPublisher.class);
+
+    private final RestTemplate restTemplate;
+    private final HashedTimingWheel wheel;
+    private final boolean enabled;
+    private final String url;
+    private final int maxEdits;
+    private final long maxChangedChars;
+    private final long idleNanos;
+    private final MeterRegistry meterRegistry;
+    private final Counter failures;
+    private final Map<Long, Pending> pending = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor sender;
+
+    public VersionCheckpointPublisher(RestTemplate restTemplate, HashedTimingWheel wheel,
+                                      @Value("${collab.checkpoint.enabled:true}") boolean enabled,
+                                      @Value("${collab.checkpoint.url:http://localhost:8081/api/versions/checkpoints}") String url,
+                                      @Value("${collab.checkpoint.edits:50}") int maxEdits,
+                                      @Value("${collab.checkpoint.changed-chars:4096}") long maxChangedChars,
+                                      @Value("${collab.checkpoint.idle:30s}") Duration idle,
+                                      MeterRegistry meterRegistry) {
+        this.restTemplate = restTemplate;
+        this.wheel = wheel;
+        this.enabled = enabled;
+        this.url = url;
+        this.maxEdits = maxEdits;
+        this.maxChangedChars = maxChangedChars;
+        this.idleNanos = idle.toNanos();
+        this.meterRegistry = meterRegistry;
+        this.failures = Counter.builder("collab.checkpoint.failures").register(meterRegistry);
+        this.sender = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(1024), r -> {
+            Thread thread = new Thread(r, "version-checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Records a committed edit; called once per edit, after the transaction. */
+    public void editCommitted(long documentId, long userId, long revision, String before, String after) {
+        if (!enabled) return;
+        Splice splice = splice(before == null ? "" : before, after == null ? "" : after, userId);
+        int changed = Math.max(splice.removed(), splice.inserted());
+        Pending[] due = new Pending[1];
+        pending.compute(documentId, (id, p) -> {
+            if (p == null) {
+                p = new Pending(id);
+                Pending armed = p;
+                wheel.schedule(() -> idleCheck(armed), idleNanos, TimeUnit.NANOSECONDS);
+            }
+            p.edits++;
+            p.editsByUser.merge(userId, 1, Integer::sum);
+            if (splice.removed() > 0 || splice.inserted() > 0) p.splices.put(revision, splice);
+            p.changedChars += changed;
+            if (revision > p.revision) {
+                p.revision = revision;
+                p.userId = userId;
+                p.content = after;
+            }
+            p.lastEditNanos = System.nanoTime();
+            if (p.edits >= maxEdits || p.changedChars >= maxChangedChars) {
+                due[0] = p;
+                return null;
+            }
+            return p;
+        });
+        if (due[0] != null) publish(due[0], due[0].edits >= maxEdits ? "edits" : "changed-chars");
+    }
+
+    private void idleCheck(Pending armed) {
+        Pending[] due = new Pending[1];
+        pending.computeIfPresent(armed.documentId, (id, p) -> {
+            // a checkpoint was published meanwhile and a new pending state has its own check
+            if (p != armed) return p;
+            long quietFor = System.nanoTime() - p.lastEditNanos;
+            if (quietFor >= idleNanos) {
+                due[0] = p;
+                return null;
+            }
+            wheel.schedule(() -> idleCheck(armed), idleNanos - quietFor, TimeUnit.NANOSECONDS);
+            return p;
+        });
+        if (due[0] != null) publish(due[0], "idle");
+    }
+
+    private void publish(Pending checkpoint, String trigger) {
+        try {
+            sender.execute(() -> send(checkpoint, trigger));
+        } catch (RejectedExecutionException e) {
+            failures.increment();
+            retryLater(checkpoint);
+        }
+    }
+
+    private void send(Pending checkpoint, String trigger) {
+        Map<String, Object> body = Map.of(
+                "documentId", checkpoint.documentId,
+                "userId", checkpoint.userId,
+                "content", checkpoint.content == null ? "" : checkpoint.content,
+                "description", "Automatic checkpoint (" + checkpoint.edits + " edits, " + trigger + ")",
+                "contributions", checkpoint.editsByUser,
+                "splices", List.copyOf(checkpoint.splices.values()));
+        try {
+            restTemplate.postForEntity(url, body, Void.class);
+            Counter.builder("collab.checkpoint.published").tag("trigger", trigger).register(meterRegistry).increment();
+        } catch (RestClientException e) {
+            failures.increment();
+            log.debug("Checkpoint for document {} not delivered: {}", checkpoint.documentId, e.getMessage());
+            retryLater(checkpoint);
+        }
+    }
+
+    private void retryLater(Pending failed) {
+        pending.compute(failed.documentId, (id, p) -> {
+            if (p == null) {
+                // nothing newer: wait another idle period and try again
+                failed.lastEditNanos = System.nanoTime();
+                wheel.schedule(() -> idleCheck(failed), idleNanos, TimeUnit.NANOSECONDS);
+                return failed;
+            }
+            // edits arrived meanwhile; keep the counts, and the content of whichever is newer
+            p.edits += failed.edits;
+            failed.editsByUser.forEach((userId, edits) -> p.editsByUser.merge(userId, edits, Integer::sum));
+            p.splices.putAll(failed.splices);
+            p.changedChars += failed.changedChars;
+            if (failed.revision > p.revision) {
+                p.revision = failed.revision;
+                p.userId = failed.userId;
+                p.content = failed.content;
+            }
+            return p;
+        });
+    }
+
+    /** The edit as one replacement: the region that differs once the common prefix and suffix are removed. */
+    static Splice splice(String before, String after, long userId) {
+        int prefix = 0;
+        int max = Math.min(before.length(), after.length());
+        while (prefix < max && before.charAt(prefix) == after.charAt(prefix)) prefix++;
+        int suffix = 0;
+        while (suffix < max - prefix
+                && before.charAt(before.length() - 1 - suffix) == after.charAt(after.length() - 1 - suffix)) {
+            suffix++;
+        }
+        return new Splice(prefix, before.length() - prefix - suffix, after.length() - prefix - suffix, userId);
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        // hand over what is still pending rather than lose it with the process
+        List<Long> documents = List.copyOf(pending.keySet());
+        for (Long documentId : documents) {
+            Pending p = pending.remove(documentId);
+            if (p != null) publish(p, "shutdown");
+        }
+        sender.shutdown();
+        sender.awaitTermination(5, TimeUnit.SECONDS);
+    }
+
+    /** {@code removed} characters at {@code offset} replaced by {@code inserted} ones. */
+    record Splice(int offset, int removed, int inserted, long userId) {
+    }
+
+    private static final class Pending {
+        final long documentId;
+        int edits;
+        final Map<Long, Integer> editsByUser = new HashMap<>();
+        // by the revision of the edit
+        final NavigableMap<Long, Splice> splices = new TreeMap<>();
+        long changedChars;
+        long revision = Long.MIN_VALUE;
+        long userId;
+        String content;
+        long lastEditNanos;
+
+        Pending(long documentId) {
+            this.documentId = documentId;
+        }
+    }
+}
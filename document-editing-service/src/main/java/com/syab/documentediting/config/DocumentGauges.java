@@ -0,0 +1,40 @@
+package com.syab.documentediting.config;
+
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Per-document connection gauges, at most {@code maxGauges} at a time. A gauge is removed when the
+ * document's last connection closes, which frees its slot for another document.
+ */
+public class DocumentGauges {
+    private final MeterRegistry meterRegistry;
+    private final int maxGauges;
+    private final AtomicInteger live = new AtomicInteger();
+
+    public DocumentGauges(MeterRegistry meterRegistry, int maxGauges) {
+        this.meterRegistry = meterRegistry;
+        this.maxGauges = maxGauges;
+    }
+
+    /** @return the gauge, or null when the cap is reached and the document goes unreported */
+    public Meter register(String name, Long documentId, List<?> connections) {
+        if (live.incrementAndGet() > maxGauges) {
+            live.decrementAndGet();
+            return null;
+        }
+        return Gauge.builder(name, connections, List::size)
+                .tag("document", String.valueOf(documentId))
+                .register(meterRegistry);
+    }
+
+    public void remove(Meter gauge) {
+        if (gauge == null) return;
+        meterRegistry.remove(gauge);
+        live.decrementAndGet();
+    }
+}
@@ -0,0 +1,20 @@
+package com.syab.documentediting.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+/**
+ * Connection gauges are tagged per document. Cap the number of documents reported at once
+ * so a busy instance cannot blow up the number of exported series.
+ */
+@Configuration
+public class MetricsConfig {
+
+    @Bean
+    public DocumentGauges documentGauges(MeterRegistry meterRegistry,
+                                         @Value("${collab.metrics.max-document-tags:500}") int maxDocumentTags) {
+        return new DocumentGauges(meterRegistry, maxDocumentTags);
+    }
+}
@@ -0,0 +1,26 @@
+package com.syab.documentediting.config;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.client.RestTemplateBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+
+/**
+ * Built from Boot's RestTemplateBuilder so outgoing calls are observed and carry the trace context.
+ * Calls time out, so a hung peer cannot hold the checkpoint sender thread indefinitely; the read
+ * timeout stays above version-control's {@code collab.checkpoint.max-wait}, which a checkpoint may
+ * legitimately take.
+ */
+@Configuration
+public class RestTemplateConfig {
+
+    @Bean
+    public RestTemplate restTemplate(RestTemplateBuilder builder,
+                                     @Value("${collab.http.connect-timeout:2s}") Duration connectTimeout,
+                                     @Value("${collab.http.read-timeout:45s}") Duration readTimeout) {
+        return builder.connectTimeout(connectTimeout).readTimeout(readTimeout).build();
+    }
+}
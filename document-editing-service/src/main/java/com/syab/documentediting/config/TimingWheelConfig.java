@@ -0,0 +1,22 @@
+package com.syab.documentediting.config;
+
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The single timer thread of the service, shared by connection heartbeats and edit rate limiting.
+ */
+@Configuration
+public class TimingWheelConfig {
+
+    @Bean(destroyMethod = "close")
+    public HashedTimingWheel timingWheel(@Value("${collab.timing-wheel.tick:100ms}") Duration tick,
+                                        @Value("${collab.timing-wheel.size:512}") int wheelSize) {
+        return new HashedTimingWheel("timing-wheel", tick.toNanos(), TimeUnit.NANOSECONDS, wheelSize);
+    }
+}
@@ -1,15 +1,27 @@
 package com.syab.documentediting.controller;
 
+import com.syab.documentediting.dto.BatchCreateRequest;
+import com.syab.documentediting.dto.BatchShareRequest;
+import com.syab.documentediting.dto.BulkItemResult;
 import com.syab.documentediting.dto.DocumentChangeDTO;
 import com.syab.documentediting.dto.DocumentDTO;
 import com.syab.documentediting.dto.EditDocumentRequest;
 import com.syab.documentediting.service.DocumentService;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.TemporalAccessor;
 import java.util.List;
 
 @RestController
@@ -36,14 +48,21 @@ public class DocumentController {
     /**
      * Operation 2: Edit an existing document
      * PUT /api/documents/{documentId}/edit
+     * With a stale baseRevision the response body is the rebased content, flagged by X-Rebased-From.
+     * A repeated Idempotency-Key header is not applied twice; the current document is returned instead.
      */
     @PutMapping("/{documentId}/edit")
     public ResponseEntity<DocumentDTO> editDocument(
             @PathVariable Long documentId,
             @RequestParam Long userId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey,
             @Valid @RequestBody EditDocumentRequest request) {
-        DocumentDTO document = documentService.editDocument(documentId, userId, request);
-        return ResponseEntity.ok(document);
+        DocumentService.EditResult result = documentService.editDocument(documentId, userId, request, idempotencyKey);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok().eTag(etag(result.document().getRevision()));
+        if (result.rebased()) {
+            response.header("X-Rebased-From", String.valueOf(result.rebasedFrom()));
+        }
+        return response.body(result.document());
     }
 
     /**
@@ -51,9 +70,14 @@ public class DocumentController {
      * GET /api/documents/{documentId}/changes
      */
     @GetMapping("/{documentId}/changes")
-    public ResponseEntity<List<DocumentChangeDTO>> getDocumentChanges(@PathVariable Long documentId) {
+    public ResponseEntity<List<DocumentChangeDTO>> getDocumentChanges(@PathVariable Long documentId, WebRequest webRequest) {
+        // every edit bumps the revision, so it also versions the change list
+        Long revision = documentService.getRevision(documentId);
+        if (revision != null && webRequest.checkNotModified(etag(revision))) {
+            return notModified();
+        }
         List<DocumentChangeDTO> changes = documentService.getDocumentChanges(documentId);
-        return ResponseEntity.ok(changes);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag(revision)).body(changes);
     }
 
     /**
@@ -61,9 +85,32 @@ public class DocumentController {
      * GET /api/documents/{documentId}
      */
     @GetMapping("/{documentId}")
-    public ResponseEntity<DocumentDTO> getDocument(@PathVariable Long documentId) {
+    public ResponseEntity<DocumentDTO> getDocument(@PathVariable Long documentId, WebRequest webRequest) {
+        // If-None-Match is answered from the cached revision, without loading the content
+        Long revision = documentService.getRevision(documentId);
+        if (revision != null && webRequest.checkNotModified(etag(revision))) {
+            return notModified();
+        }
         DocumentDTO document = documentService.getDocument(documentId);
-        return ResponseEntity.ok(document);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag(document.getRevision())).body(document);
+    }
+
+    /**
+     * The document as it was at a point in time, e.g. {@code ts=2024-05-01T14:32:00} (server time)
+     * or with an offset such as {@code Z}
+     * GET /api/documents/{documentId}/at?ts=
+     */
+    @GetMapping("/{documentId}/at")
+    public ResponseEntity<DocumentDTO> getDocumentAt(@PathVariable Long documentId, @RequestParam String ts) {
+        return ResponseEntity.ok(documentService.getDocumentAt(documentId, parseTimestamp(ts)));
+    }
+
+    private static LocalDateTime parseTimestamp(String ts) {
+        TemporalAccessor parsed = DateTimeFormatter.ISO_DATE_TIME.parseBest(ts, OffsetDateTime::from, LocalDateTime::from);
+        if (parsed instanceof OffsetDateTime offset) {
+            return offset.atZoneSameInstant(ZoneId.systemDefault()).toLocalDateTime();
+        }
+        return (LocalDateTime) parsed;
     }
 
     /**
@@ -86,6 +133,33 @@ public class DocumentController {
         return ResponseEntity.ok(documents);
     }
 
+    /**
+     * Bulk: get several documents in one call, with a result per requested id
+     * GET /api/documents?ids=1,2,3
+     */
+    @GetMapping(params = "ids")
+    public ResponseEntity<List<BulkItemResult>> getDocuments(@RequestParam @NotEmpty @Size(max = 100) List<Long> ids) {
+        return ResponseEntity.ok(documentService.getDocuments(ids));
+    }
+
+    /**
+     * Bulk: create several documents for one owner
+     * POST /api/documents/batch
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<List<BulkItemResult>> createDocuments(@Valid @RequestBody BatchCreateRequest request) {
+        return ResponseEntity.ok(documentService.createDocuments(request.getUserId(), request.getDocuments()));
+    }
+
+    /**
+     * Bulk: share documents with users
+     * POST /api/documents/batch/share
+     */
+    @PostMapping("/batch/share")
+    public ResponseEntity<List<BulkItemResult>> shareDocuments(@Valid @RequestBody BatchShareRequest request) {
+        return ResponseEntity.ok(documentService.shareDocuments(request.getInvitedBy(), request.getShares()));
+    }
+
     /**
      * Invite a user by email to collaborate on a document.
      * POST /api/documents/{documentId}/invite?email=someone@example.com&inviterId=1
@@ -108,4 +182,13 @@ public class DocumentController {
     public SseEmitter streamDocument(@PathVariable Long documentId, @RequestParam(required = false) Long userId) {
         return documentService.subscribeToDocument(documentId, userId);
     }
+
+    private static String etag(Long revision) {
+        return "\"" + revision + "\"";
+    }
+
+    private static <T> ResponseEntity<T> notModified() {
+        // checkNotModified has already written the ETag header
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CacheControl.noCache()).build();
+    }
 }
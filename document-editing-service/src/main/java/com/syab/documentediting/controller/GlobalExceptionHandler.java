@@ -1,11 +1,18 @@
 package com.syab.documentediting.controller;
 
+import com.syab.documentediting.dto.DocumentDTO;
+import com.syab.documentediting.service.EditConflictException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.web.bind.annotation.ControllerAdvice;
+import org.springframework.web.bind.MethodArgumentNotValidException;
 import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.method.annotation.HandlerMethodValidationException;
+
+import java.time.format.DateTimeParseException;
 
 @ControllerAdvice
 public class GlobalExceptionHandler {
@@ -17,6 +24,29 @@ public class GlobalExceptionHandler {
         return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ex.getMessage());
     }
 
+    @ExceptionHandler(EditConflictException.class)
+    public ResponseEntity<DocumentDTO> handleEditConflict(EditConflictException ex) {
+        log.debug("Edit conflict: {}", ex.getMessage());
+        DocumentDTO current = ex.getCurrent();
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(HttpStatus.CONFLICT);
+        if (current != null) {
+            response.eTag("\"" + current.getRevision() + "\"");
+        }
+        return response.body(current);
+    }
+
+    @ExceptionHandler(ObjectOptimisticLockingFailureException.class)
+    public ResponseEntity<String> handleOptimisticLock(ObjectOptimisticLockingFailureException ex) {
+        log.debug("Concurrent modification: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.CONFLICT).body("Document was modified concurrently");
+    }
+
+    @ExceptionHandler({MethodArgumentNotValidException.class, HandlerMethodValidationException.class, DateTimeParseException.class})
+    public ResponseEntity<String> handleValidation(Exception ex) {
+        log.debug("Invalid request: {}", ex.getMessage());
+        return ResponseEntity.status(HttpStatus.BAD_REQUEST).body("Invalid request");
+    }
+
     @ExceptionHandler(Exception.class)
     public ResponseEntity<String> handleOtherExceptions(Exception ex) {
         log.error("Unhandled exception in controller", ex);
@@ -0,0 +1,13 @@
+package com.syab.documentediting.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCreateItem {
+    private String title;
+    private String content; // optional initial content, e.g. from a template
+}
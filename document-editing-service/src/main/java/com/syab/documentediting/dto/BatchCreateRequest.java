@@ -0,0 +1,23 @@
+package com.syab.documentediting.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchCreateRequest {
+    @NotNull(message = "userId is required")
+    private Long userId;
+
+    // items are validated one by one so a bad title fails only its own item
+    @NotEmpty(message = "documents are required")
+    @Size(max = 100, message = "At most 100 documents per batch")
+    private List<BatchCreateItem> documents;
+}
@@ -0,0 +1,20 @@
+package com.syab.documentediting.dto;
+
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Size;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchShareRequest {
+    private Long invitedBy;
+
+    @NotEmpty(message = "shares are required")
+    @Size(max = 100, message = "At most 100 shares per batch")
+    private List<BatchShareItem> shares;
+}
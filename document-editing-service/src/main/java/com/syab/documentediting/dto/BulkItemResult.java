@@ -0,0 +1,20 @@
+package com.syab.documentediting.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Per-item result of a bulk request. {@code index} is the item's position in the request,
+ * {@code document} is set for successful items and {@code error} for failed ones.
+ */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BulkItemResult {
+    private int index;
+    private Long documentId;
+    private BulkItemStatus status;
+    private DocumentDTO document;
+    private String error;
+}
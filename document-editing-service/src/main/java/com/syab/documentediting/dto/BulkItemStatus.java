@@ -0,0 +1,12 @@
+package com.syab.documentediting.dto;
+
+/**
+ * Outcome of one item in a bulk request.
+ */
+public enum BulkItemStatus {
+    OK,
+    CREATED,
+    ALREADY_SHARED,
+    NOT_FOUND,
+    INVALID
+}
@@ -13,4 +13,5 @@ public class DocumentChangeDTO {
     private Long userId;
     private String changeContent;
     private String operationType;
+    private Long revision;
 }
@@ -14,4 +14,8 @@ public class EditDocumentRequest {
     
     @NotBlank(message = "Operation type is required")
     private String operationType; // "INSERT", "DELETE", "UPDATE"
+
+    // revision the client edited; when stale the edit is rebased onto the current content.
+    // Omit it to overwrite unconditionally.
+    private Long baseRevision;
 }
@@ -0,0 +1,125 @@
+package com.syab.documentediting.heartbeat;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hashed timing wheel: one worker thread and a ring of buckets instead of a timer per connection.
+ * Scheduling is an enqueue on a lock-free queue; the worker moves new timeouts into their bucket
+ * once per tick and runs the ones that are due. Expiry is accurate to one tick.
+ * <p>
+ * Tasks run on the worker thread and must be short; hand any I/O to another executor.
+ */
+public final class HashedTimingWheel implements AutoCloseable {
+    private static final Logger log = LoggerFactory.getLogger(HashedTimingWheel.class);
+    // bounds the work done per tick when a burst of timeouts is scheduled at once
+    private static final int MAX_TRANSFERS_PER_TICK = 100_000;
+
+    private final long tickNanos;
+    private final ArrayDeque<Timeout>[] wheel;
+    private final int mask;
+    private final Queue<Timeout> pending = new ConcurrentLinkedQueue<>();
+    private final Thread worker;
+    private final long startNanos;
+    private volatile boolean running = true;
+    // worker thread only
+    private long tick;
+
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(String name, long tickDuration, TimeUnit unit, int wheelSize) {
+        if (tickDuration <= 0 || wheelSize <= 0) {
+            throw new IllegalArgumentException("tickDuration and wheelSize must be positive");
+        }
+        int size = Integer.highestOneBit(wheelSize - 1) << 1; // round up to a power of two
+        this.tickNanos = unit.toNanos(tickDuration);
+        this.wheel = new ArrayDeque[Math.max(size, 1)];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+        this.mask = wheel.length - 1;
+        this.startNanos = System.nanoTime();
+        this.worker = new Thread(this::run, name);
+        this.worker.setDaemon(true);
+        this.worker.start();
+    }
+
+    /** Runs {@code task} on the wheel thread after roughly {@code delay}. */
+    public Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        Timeout timeout = new Timeout(task, System.nanoTime() + unit.toNanos(Math.max(delay, 0)));
+        pending.add(timeout);
+        return timeout;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        worker.interrupt();
+    }
+
+    private void run() {
+        while (running) {
+            long deadline = startNanos + (tick + 1) * tickNanos;
+            long sleep;
+            while (running && (sleep = deadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            if (!running) break;
+            transferPending();
+            expire(wheel[(int) (tick & mask)]);
+            tick++;
+        }
+        pending.clear();
+    }
+
+    private void transferPending() {
+        for (int i = 0; i < MAX_TRANSFERS_PER_TICK; i++) {
+            Timeout timeout = pending.poll();
+            if (timeout == null) return;
+            if (timeout.cancelled) continue;
+            long ticks = Math.max((timeout.deadlineNanos - startNanos + tickNanos - 1) / tickNanos - 1, tick);
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            wheel[(int) (ticks & mask)].add(timeout);
+        }
+    }
+
+    private void expire(ArrayDeque<Timeout> bucket) {
+        for (int n = bucket.size(); n > 0; n--) {
+            Timeout timeout = bucket.poll();
+            if (timeout.cancelled) continue;
+            if (timeout.remainingRounds > 0) {
+                timeout.remainingRounds--;
+                bucket.add(timeout);
+                continue;
+            }
+            try {
+                timeout.task.run();
+            } catch (Throwable t) {
+                log.warn("Timing wheel task failed", t);
+            }
+        }
+    }
+
+    public static final class Timeout {
+        private final Runnable task;
+        private final long deadlineNanos;
+        private volatile boolean cancelled;
+        // worker thread only
+        private long remainingRounds;
+
+        private Timeout(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        /** Cancelled timeouts are dropped lazily when the worker reaches their bucket. */
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
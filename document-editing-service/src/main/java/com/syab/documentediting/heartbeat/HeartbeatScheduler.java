@@ -0,0 +1,118 @@
+package com.syab.documentediting.heartbeat;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Server-driven liveness for WebSocket and SSE connections, on a single {@link HashedTimingWheel}.
+ * <p>
+ * WebSocket: every inbound frame (including pongs) only records a timestamp. One check per
+ * connection sits on the wheel; when it fires it pings a connection that has been quiet for a
+ * ping interval, closes one that has been quiet for the idle timeout, and otherwise re-arms itself
+ * for when the connection would next become quiet. SSE streams get a comment line every interval,
+ * and a failed write drops the subscriber.
+ */
+@Component
+public class HeartbeatScheduler {
+    private static final Logger log = LoggerFactory.getLogger(HeartbeatScheduler.class);
+
+    private final HashedTimingWheel wheel;
+    private final long pingIntervalNanos;
+    private final long idleTimeoutNanos;
+    private final long sseIntervalNanos;
+    private final Counter webSocketTimeouts;
+
+    public HeartbeatScheduler(HashedTimingWheel wheel,
+                              @Value("${collab.heartbeat.ws-ping-interval:25s}") Duration pingInterval,
+                              @Value("${collab.heartbeat.ws-idle-timeout:60s}") Duration idleTimeout,
+                              @Value("${collab.heartbeat.sse-interval:15s}") Duration sseInterval,
+                              MeterRegistry meterRegistry) {
+        if (idleTimeout.compareTo(pingInterval) <= 0) {
+            throw new IllegalArgumentException("collab.heartbeat.ws-idle-timeout must be longer than ws-ping-interval");
+        }
+        this.wheel = wheel;
+        this.pingIntervalNanos = pingInterval.toNanos();
+        this.idleTimeoutNanos = idleTimeout.toNanos();
+        this.sseIntervalNanos = sseInterval.toNanos();
+        this.webSocketTimeouts = Counter.builder("collab.heartbeat.timeouts").tag("transport", "ws").register(meterRegistry);
+    }
+
+    /**
+     * Starts liveness checks for a WebSocket session. {@code session} should be safe for
+     * concurrent sends, since pings are written from another thread.
+     */
+    public Liveness watch(WebSocketSession session) {
+        Liveness liveness = new Liveness(session);
+        wheel.schedule(liveness, pingIntervalNanos, TimeUnit.NANOSECONDS);
+        return liveness;
+    }
+
+    /** Calls {@code heartbeat} every SSE interval for as long as {@code subscribed} holds. */
+    public void keepAlive(BooleanSupplier subscribed, Runnable heartbeat) {
+        wheel.schedule(new Runnable() {
+            @Override
+            public void run() {
+                if (!subscribed.getAsBoolean()) return;
+                CompletableFuture.runAsync(heartbeat);
+                wheel.schedule(this, sseIntervalNanos, TimeUnit.NANOSECONDS);
+            }
+        }, sseIntervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    public final class Liveness implements Runnable {
+        private final WebSocketSession session;
+        private volatile long lastSeen = System.nanoTime();
+
+        private Liveness(WebSocketSession session) {
+            this.session = session;
+        }
+
+        /** Cheap enough to call for every inbound frame: a single volatile write. */
+        public void markSeen() {
+            lastSeen = System.nanoTime();
+        }
+
+        @Override
+        public void run() {
+            if (!session.isOpen()) return;
+            long idle = System.nanoTime() - lastSeen;
+            if (idle >= idleTimeoutNanos) {
+                webSocketTimeouts.increment();
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        session.close(CloseStatus.SESSION_NOT_RELIABLE.withReason("Heartbeat timeout"));
+                    } catch (Exception e) {
+                        log.debug("Failed to close idle session {}", session.getId(), e);
+                    }
+                });
+                return;
+            }
+            long next;
+            if (idle >= pingIntervalNanos) {
+                CompletableFuture.runAsync(() -> {
+                    try {
+                        session.sendMessage(new PingMessage());
+                    } catch (Exception e) {
+                        log.debug("Failed to ping session {}", session.getId(), e);
+                    }
+                });
+                next = Math.min(pingIntervalNanos, idleTimeoutNanos - idle);
+            } else {
+                next = pingIntervalNanos - idle;
+            }
+            wheel.schedule(this, next, TimeUnit.NANOSECONDS);
+        }
+    }
+}
@@ -1,16 +1,18 @@
 package com.syab.documentediting.model;
 
+import com.syab.common.compression.PackedText;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
 @Table(name = "documents")
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class Document {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -19,8 +21,13 @@ public class Document {
     @Column(nullable = false)
     private String title;
 
-    @Column(columnDefinition = "TEXT")
-    private String content;
+    // long texts are compressed into content_packed
+    @Embedded
+    @AttributeOverride(name = "inline", column = @Column(name = "content", columnDefinition = "TEXT"))
+    @AttributeOverride(name = "packed", column = @Column(name = "content_packed", columnDefinition = "bytea"))
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PackedText content;
 
     @Column(name = "owner_id", nullable = false)
     private Long ownerId;
@@ -34,6 +41,36 @@ public class Document {
     @Column(name = "is_shared")
     private Boolean isShared = false;
 
+    // optimistic lock, incremented by Hibernate on every update; served as the document's ETag
+    @Version
+    @Column(name = "revision", nullable = false, columnDefinition = "bigint default 0")
+    private Long revision;
+
+    public Document(Long id, String title, String content, Long ownerId, LocalDateTime createdAt,
+                    LocalDateTime updatedAt, Boolean isShared, Long revision) {
+        this.id = id;
+        this.title = title;
+        this.content = PackedText.of(content);
+        this.ownerId = ownerId;
+        this.createdAt = createdAt;
+        this.updatedAt = updatedAt;
+        this.isShared = isShared;
+        this.revision = revision;
+    }
+
+    public String getContent() {
+        return PackedText.textOf(content);
+    }
+
+    public void setContent(String content) {
+        this.content = PackedText.of(content);
+    }
+
+    /** The content as stored, to store it again elsewhere without compressing it twice. */
+    public PackedText getPackedContent() {
+        return content;
+    }
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
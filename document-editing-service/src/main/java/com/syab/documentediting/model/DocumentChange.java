@@ -1,16 +1,23 @@
 package com.syab.documentediting.model;
 
+import com.syab.common.compression.PackedText;
 import jakarta.persistence.*;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Data;
+import lombok.Getter;
 import lombok.NoArgsConstructor;
+import lombok.Setter;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "document_changes")
+@Table(name = "document_changes",
+        indexes = {
+                @Index(name = "idx_document_changes_revision", columnList = "document_id, revision"),
+                @Index(name = "idx_document_changes_timestamp", columnList = "document_id, timestamp")
+        },
+        uniqueConstraints = @UniqueConstraint(name = "uk_document_changes_idempotency_key", columnNames = {"document_id", "idempotency_key"}))
 @Data
 @NoArgsConstructor
-@AllArgsConstructor
 public class DocumentChange {
     @Id
     @GeneratedValue(strategy = GenerationType.IDENTITY)
@@ -22,15 +29,52 @@ public class DocumentChange {
     @Column(name = "user_id", nullable = false)
     private Long userId;
 
-    @Column(columnDefinition = "TEXT")
-    private String changeContent;
+    // long texts are compressed into change_content_packed
+    @Embedded
+    @AttributeOverride(name = "inline", column = @Column(name = "change_content", columnDefinition = "TEXT"))
+    @AttributeOverride(name = "packed", column = @Column(name = "change_content_packed", columnDefinition = "bytea"))
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PackedText changeContent;
 
-    @Column(name = "operation_type") // "INSERT", "DELETE", "UPDATE"
+    @Column(name = "operation_type") // "CREATE", "INSERT", "DELETE", "UPDATE"
     private String operationType;
 
+    // document revision this change produced; the base content when rebasing later edits
+    @Column(name = "revision")
+    private Long revision;
+
+    // Idempotency-Key of the request that made this change; a retry with the same key is not applied again
+    @Column(name = "idempotency_key", length = 100)
+    private String idempotencyKey;
+
     @Column(name = "timestamp")
     private LocalDateTime timestamp;
 
+    public DocumentChange(Long id, Long documentId, Long userId, String changeContent, String operationType,
+                          Long revision, String idempotencyKey, LocalDateTime timestamp) {
+        this.id = id;
+        this.documentId = documentId;
+        this.userId = userId;
+        this.changeContent = PackedText.of(changeContent);
+        this.operationType = operationType;
+        this.revision = revision;
+        this.idempotencyKey = idempotencyKey;
+        this.timestamp = timestamp;
+    }
+
+    public String getChangeContent() {
+        return PackedText.textOf(changeContent);
+    }
+
+    public void setChangeContent(String changeContent) {
+        this.changeContent = PackedText.of(changeContent);
+    }
+
+    public void setChangeContent(PackedText changeContent) {
+        this.changeContent = changeContent == null ? null : changeContent.copy();
+    }
+
     @PrePersist
     protected void onCreate() {
         timestamp = LocalDateTime.now();
@@ -4,9 +4,21 @@ import com.syab.documentediting.model.DocumentChange;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Optional;
 
 @Repository
 public interface DocumentChangeRepository extends JpaRepository<DocumentChange, Long> {
     List<DocumentChange> findByDocumentId(Long documentId);
+
+    // content as of a revision: the last change at or before it (shares bump the revision without a change)
+    Optional<DocumentChange> findFirstByDocumentIdAndRevisionLessThanEqualOrderByRevisionDesc(Long documentId, Long revision);
+
+    // content as of a point in time; served by idx_document_changes_timestamp
+    Optional<DocumentChange> findFirstByDocumentIdAndTimestampLessThanEqualOrderByTimestampDescIdDesc(Long documentId, LocalDateTime timestamp);
+
+    boolean existsByDocumentId(Long documentId);
+
+    boolean existsByDocumentIdAndIdempotencyKey(Long documentId, String idempotencyKey);
 }
@@ -1,7 +1,11 @@
 package com.syab.documentediting.repository;
 
 import com.syab.documentediting.model.Document;
+import jakarta.persistence.LockModeType;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import java.util.List;
@@ -12,4 +16,12 @@ public interface DocumentRepository extends JpaRepository<Document, Long> {
     List<Document> findByOwnerId(Long ownerId);
     Optional<Document> findByIdAndOwnerId(Long id, Long ownerId);
     List<Document> findByIsSharedTrue();
+
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select d from Document d where d.id = :id")
+    Optional<Document> findByIdForUpdate(@Param("id") Long id);
+
+    // rows created before the revision column existed have NULL there
+    @Query("select coalesce(d.revision, 0) from Document d where d.id = :id")
+    Optional<Long> findRevisionById(@Param("id") Long id);
 }
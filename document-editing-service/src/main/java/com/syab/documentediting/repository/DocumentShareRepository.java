@@ -4,6 +4,7 @@ import com.syab.documentediting.model.DocumentShare;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
@@ -11,5 +12,6 @@ import java.util.Optional;
 public interface DocumentShareRepository extends JpaRepository<DocumentShare, Long> {
     List<DocumentShare> findByUserId(Long userId);
     List<DocumentShare> findByDocumentId(Long documentId);
+    List<DocumentShare> findByDocumentIdIn(Collection<Long> documentIds);
     Optional<DocumentShare> findByDocumentIdAndUserId(Long documentId, Long userId);
 }
@@ -1,21 +1,45 @@
 package com.syab.documentediting.service;
 
+import com.syab.documentediting.config.DocumentGauges;
+import com.syab.documentediting.dto.BatchCreateItem;
+import com.syab.documentediting.dto.BatchShareItem;
+import com.syab.documentediting.dto.BulkItemResult;
+import com.syab.documentediting.dto.BulkItemStatus;
 import com.syab.documentediting.dto.DocumentChangeDTO;
 import com.syab.documentediting.dto.DocumentDTO;
 import com.syab.documentediting.dto.EditDocumentRequest;
+import com.syab.documentediting.checkpoint.VersionCheckpointPublisher;
+import com.syab.documentediting.heartbeat.HeartbeatScheduler;
 import com.syab.documentediting.model.Document;
 import com.syab.documentediting.model.DocumentChange;
 import com.syab.documentediting.repository.DocumentChangeRepository;
 import com.syab.documentediting.repository.DocumentRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestTemplate;
 import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.time.LocalDateTime;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import java.util.List;
 import org.slf4j.Logger;
@@ -31,13 +55,57 @@ public class DocumentService {
     private final DocumentChangeRepository changeRepository;
     private final com.syab.documentediting.repository.DocumentShareRepository shareRepository;
     private final Map<Long, CopyOnWriteArrayList<SseEmitter>> emitters = new ConcurrentHashMap<>();
+    // documentId -> its collab.sse.connections gauge, changed only inside emitters.compute for that id
+    private final Map<Long, Meter> emitterGauges = new ConcurrentHashMap<>();
     private final Map<SseEmitter, Long> emitterToUser = new ConcurrentHashMap<>();
     private final Map<Long, Set<Long>> onlineUsers = new ConcurrentHashMap<>();
+    // documentId -> latest committed revision, so conditional GETs need no DB read. Like the
+    // SSE registry above this assumes one instance owns a document's writes.
+    private final Map<Long, Long> revisions = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_REVISIONS = 100_000;
+    private static final int MAX_EDIT_ATTEMPTS = 3;
 
-    public DocumentService(DocumentRepository documentRepository, DocumentChangeRepository changeRepository, com.syab.documentediting.repository.DocumentShareRepository shareRepository) {
+    private final MeterRegistry meterRegistry;
+    private final Timer editTimer;
+    private final Timer editDbTimer;
+    private final Timer editChangeLogTimer;
+    private final Timer editBroadcastTimer;
+    private final Timer sseSendTimer;
+    private final Counter sseSendFailures;
+    private final ObservationRegistry observationRegistry;
+    private final RestTemplate restTemplate;
+    private final HeartbeatScheduler heartbeats;
+    private final TransactionTemplate transactionTemplate;
+    private final Counter editRetries;
+    private final VersionCheckpointPublisher checkpoints;
+    private final DocumentGauges documentGauges;
+
+    public DocumentService(DocumentRepository documentRepository, DocumentChangeRepository changeRepository, com.syab.documentediting.repository.DocumentShareRepository shareRepository,
+                           MeterRegistry meterRegistry, ObservationRegistry observationRegistry, RestTemplate restTemplate,
+                           HeartbeatScheduler heartbeats, PlatformTransactionManager transactionManager,
+                           VersionCheckpointPublisher checkpoints, DocumentGauges documentGauges) {
         this.documentRepository = documentRepository;
         this.changeRepository = changeRepository;
         this.shareRepository = shareRepository;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.restTemplate = restTemplate;
+        this.heartbeats = heartbeats;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.checkpoints = checkpoints;
+        this.documentGauges = documentGauges;
+        this.editTimer = Timer.builder("collab.document.edit").description("editDocument end to end").register(meterRegistry);
+        this.editDbTimer = editPhaseTimer("db");
+        this.editChangeLogTimer = editPhaseTimer("changelog");
+        this.editBroadcastTimer = editPhaseTimer("broadcast");
+        this.sseSendTimer = Timer.builder("collab.fanout.send").tag("transport", "sse").register(meterRegistry);
+        this.sseSendFailures = Counter.builder("collab.fanout.failures").tag("transport", "sse").register(meterRegistry);
+        this.editRetries = Counter.builder("collab.document.edit.retries").description("edits retried after an optimistic lock conflict").register(meterRegistry);
+        Gauge.builder("collab.sse.subscribers", emitterToUser, Map::size).register(meterRegistry);
+    }
+
+    private Timer editPhaseTimer(String phase) {
+        return Timer.builder("collab.document.edit.phase").tag("phase", phase).register(meterRegistry);
     }
 
     /**
@@ -55,37 +123,143 @@ public class DocumentService {
     }
 
     /**
-     * Operation 2: Edit an existing document collaboratively and track changes
+     * Operation 2: Edit an existing document collaboratively and track changes.
+     * An edit whose {@code baseRevision} is stale is rebased onto the current content (three-way,
+     * line level) instead of overwriting it. If another edit commits between our read and write, the
+     * edit is retried holding the row lock, so it rebases onto that commit and cannot lose again.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public DocumentDTO editDocument(Long documentId, Long userId, EditDocumentRequest request) {
-        Optional<Document> documentOptional = documentRepository.findById(documentId);
-        if (documentOptional.isEmpty()) {
-            throw new IllegalArgumentException("Document not found");
+        return editDocument(documentId, userId, request, null).document();
+    }
+
+    /** The document after an edit, and the stale base revision it was rebased from, if it was. */
+    public record EditResult(DocumentDTO document, Long rebasedFrom) {
+        public boolean rebased() {
+            return rebasedFrom != null;
         }
+    }
 
-        Document document = documentOptional.get();
-        
-        // Update document content
-        document.setContent(request.getContent());
-        Document updatedDocument = documentRepository.save(document);
+    /**
+     * Edit carrying an idempotency key: if a change with the same key was already applied to the
+     * document, nothing is applied again and the current document is returned. The key is stored
+     * with the change, under a unique constraint, so this holds across restarts and racing retries.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public EditResult editDocument(Long documentId, Long userId, EditDocumentRequest request, String idempotencyKey) {
+        if (idempotencyKey != null && changeRepository.existsByDocumentIdAndIdempotencyKey(documentId, idempotencyKey)) {
+            return replay(documentId);
+        }
+        Timer.Sample sample = Timer.start(meterRegistry);
+        AppliedEdit edit = null;
+        for (int attempt = 1; edit == null; attempt++) {
+            boolean lock = attempt > 1;
+            try {
+                edit = transactionTemplate.execute(status -> applyEdit(documentId, userId, request, idempotencyKey, lock));
+            } catch (ObjectOptimisticLockingFailureException e) {
+                if (attempt == MAX_EDIT_ATTEMPTS) {
+                    throw new EditConflictException("Document is being edited concurrently",
+                            documentRepository.findById(documentId).map(this::convertToDTO).orElse(null));
+                }
+                editRetries.increment();
+            } catch (DataIntegrityViolationException e) {
+                // a racing retry with the same key committed first
+                if (idempotencyKey != null && changeRepository.existsByDocumentIdAndIdempotencyKey(documentId, idempotencyKey)) {
+                    return replay(documentId);
+                }
+                throw e;
+            }
+        }
+        Long revision = edit.document().getRevision();
+        cacheRevision(documentId, revision);
+        checkpoints.editCommitted(documentId, userId, revision == null ? 0L : revision,
+                edit.previousContent(), edit.document().getContent());
+
+        // broadcast the change to SSE subscribers
+        DocumentDTO dto = convertToDTO(edit.document());
+        DocumentChangeDTO changeDto = convertChangeToDTO(edit.change());
+        editBroadcastTimer.record(() -> broadcastDocumentChange(documentId, dto, changeDto));
+
+        sample.stop(editTimer);
+        return new EditResult(dto, edit.rebased() ? request.getBaseRevision() : null);
+    }
+
+    private EditResult replay(Long documentId) {
+        meterRegistry.counter("collab.document.edit.replayed").increment();
+        return new EditResult(getDocument(documentId), null);
+    }
+
+    private record AppliedEdit(Document document, DocumentChange change, String previousContent, boolean rebased) {
+    }
+
+    private AppliedEdit applyEdit(Long documentId, Long userId, EditDocumentRequest request, String idempotencyKey, boolean lock) {
+        String[] previousContent = new String[1];
+        boolean[] rebased = new boolean[1];
+        Document updatedDocument = editDbTimer.record(() -> {
+            Optional<Document> documentOptional = lock ? documentRepository.findByIdForUpdate(documentId) : documentRepository.findById(documentId);
+            if (documentOptional.isEmpty()) {
+                throw new IllegalArgumentException("Document not found");
+            }
+
+            Document document = documentOptional.get();
+            previousContent[0] = document.getContent();
+            rebased[0] = isStale(document, request);
+            document.setContent(rebased[0] ? rebase(document, request) : request.getContent());
+            // flush now so a concurrent commit surfaces here, and the new revision is known
+            return documentRepository.saveAndFlush(document);
+        });
 
         // Track the change in real-time
         DocumentChange change = new DocumentChange();
         change.setDocumentId(documentId);
         change.setUserId(userId);
-        change.setChangeContent(request.getContent());
+        // the text the document holds, compressed once for both
+        change.setChangeContent(updatedDocument.getPackedContent());
         change.setOperationType(request.getOperationType());
-        changeRepository.save(change);
+        change.setRevision(updatedDocument.getRevision());
+        change.setIdempotencyKey(idempotencyKey);
+        editChangeLogTimer.record(() -> changeRepository.save(change));
+        return new AppliedEdit(updatedDocument, change, previousContent[0], rebased[0]);
+    }
 
-        // broadcast the change to SSE subscribers
-        broadcastDocumentChange(documentId, convertToDTO(updatedDocument), convertChangeToDTO(change));
+    private static boolean isStale(Document document, EditDocumentRequest request) {
+        long head = document.getRevision() == null ? 0L : document.getRevision();
+        return request.getBaseRevision() != null && request.getBaseRevision() != head;
+    }
 
-        return convertToDTO(updatedDocument);
+    /** Content to store for a stale {@code request}: merged with what was committed since its base. */
+    private String rebase(Document document, EditDocumentRequest request) {
+        Long base = request.getBaseRevision();
+        long head = document.getRevision() == null ? 0L : document.getRevision();
+        String baseContent = base > head ? null : changeRepository
+                .findFirstByDocumentIdAndRevisionLessThanEqualOrderByRevisionDesc(document.getId(), base)
+                .map(DocumentChange::getChangeContent)
+                .orElse(null);
+        if (baseContent == null) {
+            rebaseCounter("unavailable").increment();
+            throw new EditConflictException("Base revision " + base + " is not available for rebase", convertToDTO(document));
+        }
+        String current = document.getContent() == null ? "" : document.getContent();
+        ThreeWayMerge.Result merged = ThreeWayMerge.merge(baseContent, request.getContent(), current);
+        rebaseCounter(merged.conflicts() == 0 ? "clean" : "conflict").increment();
+        return merged.content();
+    }
+
+    private Counter rebaseCounter(String outcome) {
+        return Counter.builder("collab.document.edit.rebase").tag("outcome", outcome).register(meterRegistry);
     }
 
     public SseEmitter subscribeToDocument(Long documentId, Long userId) {
         SseEmitter emitter = new SseEmitter(0L); // no timeout
-        emitters.computeIfAbsent(documentId, k -> new CopyOnWriteArrayList<>()).add(emitter);
+        emitters.compute(documentId, (id, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+                Meter gauge = documentGauges.register("collab.sse.connections", id, list);
+                if (gauge != null) emitterGauges.put(id, gauge);
+            }
+            list.add(emitter);
+            return list;
+        });
         emitterToUser.put(emitter, userId);
         onlineUsers.computeIfAbsent(documentId, k -> ConcurrentHashMap.newKeySet()).add(userId);
         // broadcast updated presence
@@ -94,6 +268,9 @@ public class DocumentService {
         emitter.onCompletion(() -> removeEmitter(documentId, emitter));
         emitter.onTimeout(() -> removeEmitter(documentId, emitter));
         emitter.onError((e) -> removeEmitter(documentId, emitter));
+        // comment lines keep proxies from timing out quiet streams; a failed write drops the subscriber
+        heartbeats.keepAlive(() -> emitterToUser.containsKey(emitter),
+                () -> send(documentId, emitter, SseEmitter.event().comment("heartbeat")));
 
         // Optionally, send a welcome event with current document state
         try {
@@ -107,10 +284,13 @@ public class DocumentService {
     }
 
     private void removeEmitter(Long documentId, SseEmitter emitter) {
-        List<SseEmitter> list = emitters.get(documentId);
-        if (list != null) {
+        // the last subscriber takes the document's list and gauge with it
+        emitters.computeIfPresent(documentId, (id, list) -> {
             list.remove(emitter);
-        }
+            if (!list.isEmpty()) return list;
+            documentGauges.remove(emitterGauges.remove(id));
+            return null;
+        });
         Long uid = emitterToUser.remove(emitter);
         if (uid != null) {
             Set<Long> users = onlineUsers.get(documentId);
@@ -144,13 +324,7 @@ public class DocumentService {
         List<Long> userList = users == null ? List.of() : List.copyOf(users);
 
         for (SseEmitter emitter : list) {
-            CompletableFuture.runAsync(() -> {
-                try {
-                    emitter.send(SseEmitter.event().name("presence").data(userList));
-                } catch (Exception e) {
-                    removeEmitter(documentId, emitter);
-                }
-            });
+            CompletableFuture.runAsync(() -> send(documentId, emitter, SseEmitter.event().name("presence").data(userList)));
         }
     }
 
@@ -158,15 +332,29 @@ public class DocumentService {
         List<SseEmitter> list = emitters.get(documentId);
         if (list == null) return;
 
+        var payload = Map.of("document", documentDTO, "change", changeDTO);
+        // one span for the whole fanout, ended when the last async send finishes
+        Observation observation = Observation.createNotStarted("collab.broadcast", observationRegistry)
+                .lowCardinalityKeyValue("transport", "sse")
+                .highCardinalityKeyValue("document", String.valueOf(documentId))
+                .start();
+        List<CompletableFuture<Void>> sends = new java.util.ArrayList<>();
         for (SseEmitter emitter : list) {
-            CompletableFuture.runAsync(() -> {
-                try {
-                    var payload = Map.of("document", documentDTO, "change", changeDTO);
-                    emitter.send(SseEmitter.event().name("document").data(payload));
-                } catch (Exception e) {
-                    removeEmitter(documentId, emitter);
-                }
-            });
+            sends.add(CompletableFuture.runAsync(() -> observation.scoped(
+                    () -> send(documentId, emitter, SseEmitter.event().name("document").data(payload)))));
+        }
+        CompletableFuture.allOf(sends.toArray(CompletableFuture[]::new)).whenComplete((ignored, error) -> observation.stop());
+    }
+
+    private void send(Long documentId, SseEmitter emitter, SseEmitter.SseEventBuilder event) {
+        long start = System.nanoTime();
+        try {
+            emitter.send(event);
+        } catch (Exception e) {
+            sseSendFailures.increment();
+            removeEmitter(documentId, emitter);
+        } finally {
+            sseSendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
         }
     }
 
@@ -191,6 +379,69 @@ public class DocumentService {
         return convertToDTO(document.get());
     }
 
+    /**
+     * The document as it was at {@code at}: the content of the last change made at or before then,
+     * found through the (document_id, timestamp) index. Every change holds the full content it
+     * produced, so nothing is replayed and the cost does not grow with the history.
+     */
+    @Transactional(readOnly = true)
+    public DocumentDTO getDocumentAt(Long documentId, LocalDateTime at) {
+        Document document = documentRepository.findById(documentId)
+                .orElseThrow(() -> new IllegalArgumentException("Document not found"));
+        if (document.getCreatedAt() != null && at.isBefore(document.getCreatedAt())) {
+            throw new IllegalArgumentException("Document did not exist at " + at);
+        }
+        DocumentDTO dto = convertToDTO(document);
+        Optional<DocumentChange> change = changeRepository
+                .findFirstByDocumentIdAndTimestampLessThanEqualOrderByTimestampDescIdDesc(documentId, at);
+        if (change.isPresent()) {
+            dto.setContent(change.get().getChangeContent());
+            dto.setRevision(change.get().getRevision() == null ? 0L : change.get().getRevision());
+            dto.setUpdatedAt(change.get().getTimestamp() != null ? change.get().getTimestamp().toString() : null);
+        } else if (changeRepository.existsByDocumentId(documentId)) {
+            // edited only later: still as created, which is empty unless a CREATE change says otherwise
+            dto.setContent("");
+            dto.setRevision(0L);
+            dto.setUpdatedAt(document.getCreatedAt() != null ? document.getCreatedAt().toString() : null);
+        }
+        return dto;
+    }
+
+    /**
+     * Current revision of a document, from memory when possible, or {@code null} if it does not exist.
+     */
+    @Transactional(readOnly = true)
+    public Long getRevision(Long documentId) {
+        Long cached = revisions.get(documentId);
+        if (cached != null) return cached;
+        Optional<Long> revision = documentRepository.findRevisionById(documentId);
+        revision.ifPresent(r -> cacheRevision(documentId, r));
+        return revision.orElse(null);
+    }
+
+    private void cacheRevisionAfterCommit(Document document) {
+        // publish only once the new state is visible to readers; Hibernate has bumped it by then
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheRevision(document.getId(), document.getRevision());
+                }
+            });
+        } else {
+            cacheRevision(document.getId(), document.getRevision());
+        }
+    }
+
+    private void cacheRevision(Long documentId, Long revision) {
+        if (revision == null) return;
+        if (revisions.size() >= MAX_CACHED_REVISIONS && !revisions.containsKey(documentId)) {
+            revisions.clear(); // crude bound; a miss only costs one indexed lookup
+        }
+        // revisions only grow, so a slow reader can never put back an older value
+        revisions.merge(documentId, revision, Math::max);
+    }
+
     public List<DocumentDTO> getUserDocuments(Long userId) {
         List<Document> documents = documentRepository.findByOwnerId(userId);
         return documents.stream().map(this::convertToDTO).collect(Collectors.toList());
@@ -205,17 +456,130 @@ public class DocumentService {
         return documents.stream().map(this::convertToDTO).collect(Collectors.toList());
     }
 
+    /**
+     * Bulk: fetch many documents with one query. Results follow the order of {@code ids}.
+     */
+    @Transactional(readOnly = true)
+    public List<BulkItemResult> getDocuments(List<Long> ids) {
+        Map<Long, Document> found = documentRepository.findAllById(new java.util.HashSet<>(ids)).stream()
+                .collect(Collectors.toMap(Document::getId, d -> d));
+        List<BulkItemResult> results = new java.util.ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            Document document = found.get(id);
+            results.add(document == null
+                    ? new BulkItemResult(i, id, BulkItemStatus.NOT_FOUND, null, "Document not found")
+                    : new BulkItemResult(i, id, BulkItemStatus.OK, convertToDTO(document), null));
+        }
+        return results;
+    }
+
+    /**
+     * Bulk: create several documents for one owner in a single transaction.
+     * Items without a title are reported as INVALID and the rest are still created.
+     */
+    public List<BulkItemResult> createDocuments(Long ownerId, List<BatchCreateItem> items) {
+        List<Document> toSave = new java.util.ArrayList<>();
+        List<Integer> savedIndexes = new java.util.ArrayList<>();
+        BulkItemResult[] results = new BulkItemResult[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            BatchCreateItem item = items.get(i);
+            if (item == null || item.getTitle() == null || item.getTitle().isBlank()) {
+                results[i] = new BulkItemResult(i, null, BulkItemStatus.INVALID, null, "Title is required");
+                continue;
+            }
+            Document document = new Document();
+            document.setTitle(item.getTitle());
+            document.setContent(item.getContent() == null ? "" : item.getContent());
+            document.setOwnerId(ownerId);
+            document.setIsShared(false);
+            toSave.add(document);
+            savedIndexes.add(i);
+        }
+        List<Document> saved = documentRepository.saveAll(toSave);
+        // initial content is recorded as a change, so reads as of an earlier time can find it
+        List<DocumentChange> initial = saved.stream()
+                .filter(document -> !document.getContent().isEmpty())
+                .map(document -> new DocumentChange(null, document.getId(), ownerId, document.getContent(), "CREATE",
+                        document.getRevision(), null, null))
+                .toList();
+        if (!initial.isEmpty()) {
+            changeRepository.saveAll(initial);
+        }
+        for (int j = 0; j < saved.size(); j++) {
+            Document document = saved.get(j);
+            int i = savedIndexes.get(j);
+            results[i] = new BulkItemResult(i, document.getId(), BulkItemStatus.CREATED, convertToDTO(document), null);
+        }
+        return List.of(results);
+    }
+
+    /**
+     * Bulk: share documents with users. Looks up the documents and the existing shares with one
+     * query each, then inserts the new shares and flags the documents as shared in one go.
+     */
+    public List<BulkItemResult> shareDocuments(Long invitedBy, List<BatchShareItem> items) {
+        Set<Long> documentIds = new java.util.HashSet<>();
+        for (BatchShareItem item : items) {
+            if (item != null && item.getDocumentId() != null) documentIds.add(item.getDocumentId());
+        }
+        Map<Long, Document> documents = documentRepository.findAllById(documentIds).stream()
+                .collect(Collectors.toMap(Document::getId, d -> d));
+        // "documentId:userId" of every share that already exists or is created by this batch
+        Set<String> shared = shareRepository.findByDocumentIdIn(documentIds).stream()
+                .map(share -> share.getDocumentId() + ":" + share.getUserId())
+                .collect(Collectors.toSet());
+
+        List<com.syab.documentediting.model.DocumentShare> newShares = new java.util.ArrayList<>();
+        Map<Long, Document> newlyShared = new java.util.LinkedHashMap<>();
+        BulkItemResult[] results = new BulkItemResult[items.size()];
+        for (int i = 0; i < items.size(); i++) {
+            BatchShareItem item = items.get(i);
+            if (item == null || item.getDocumentId() == null || item.getUserId() == null) {
+                results[i] = new BulkItemResult(i, item == null ? null : item.getDocumentId(), BulkItemStatus.INVALID, null, "documentId and userId are required");
+                continue;
+            }
+            Document document = documents.get(item.getDocumentId());
+            if (document == null) {
+                results[i] = new BulkItemResult(i, item.getDocumentId(), BulkItemStatus.NOT_FOUND, null, "Document not found");
+                continue;
+            }
+            if (!shared.add(item.getDocumentId() + ":" + item.getUserId())) {
+                results[i] = new BulkItemResult(i, item.getDocumentId(), BulkItemStatus.ALREADY_SHARED, null, null);
+                continue;
+            }
+            com.syab.documentediting.model.DocumentShare share = new com.syab.documentediting.model.DocumentShare();
+            share.setDocumentId(item.getDocumentId());
+            share.setUserId(item.getUserId());
+            share.setInvitedBy(invitedBy);
+            newShares.add(share);
+            if (!Boolean.TRUE.equals(document.getIsShared())) {
+                document.setIsShared(true);
+                cacheRevisionAfterCommit(document);
+                newlyShared.put(document.getId(), document);
+            }
+            results[i] = new BulkItemResult(i, item.getDocumentId(), BulkItemStatus.CREATED, null, null);
+        }
+        shareRepository.saveAll(newShares);
+        documentRepository.saveAllAndFlush(newlyShared.values());
+        for (BulkItemResult result : results) {
+            if (result.getStatus() == BulkItemStatus.CREATED || result.getStatus() == BulkItemStatus.ALREADY_SHARED) {
+                result.setDocument(convertToDTO(documents.get(result.getDocumentId())));
+            }
+        }
+        return List.of(results);
+    }
+
     public DocumentDTO inviteUserByEmail(Long documentId, String email, Long invitedBy) {
         Optional<com.syab.documentediting.model.Document> docOpt = documentRepository.findById(documentId);
         if (docOpt.isEmpty()) throw new IllegalArgumentException("Document not found");
         var doc = docOpt.get();
         // call user-management-service via gateway to find user by email
             try {
-            org.springframework.web.client.RestTemplate rest = new org.springframework.web.client.RestTemplate();
             // call user-management service via gateway
             String url = String.format("http://localhost:8081/api/users/by-email?email=%s", email);
             log.debug("Inviting user by email - calling URL: {}", url);
-            var resp = rest.getForEntity(url, java.util.Map.class);
+            var resp = restTemplate.getForEntity(url, java.util.Map.class);
             log.debug("Invite lookup GET returned status={}, body={}", resp.getStatusCode(), resp.getBody());
             if (resp.getStatusCode().is2xxSuccessful() && resp.getBody() != null) {
                 Object idObj = resp.getBody().get("id");
@@ -230,8 +594,11 @@ public class DocumentService {
                     shareRepository.save(share);
                 }
                 // mark doc shared
-                doc.setIsShared(true);
-                documentRepository.save(doc);
+                if (!Boolean.TRUE.equals(doc.getIsShared())) {
+                    doc.setIsShared(true);
+                    cacheRevisionAfterCommit(doc);
+                }
+                documentRepository.saveAndFlush(doc);
                 return convertToDTO(doc);
             } else {
                 throw new IllegalArgumentException("No user with that email");
@@ -269,12 +636,13 @@ public class DocumentService {
             document.getContent(),
             document.getOwnerId(),
             document.getIsShared(),
-            document.getUpdatedAt() != null ? document.getUpdatedAt().toString() : null
+            document.getUpdatedAt() != null ? document.getUpdatedAt().toString() : null,
+            document.getRevision() == null ? 0L : document.getRevision()
         );
     }
 
     private DocumentChangeDTO convertChangeToDTO(DocumentChange change) {
         return new DocumentChangeDTO(change.getId(), change.getDocumentId(), change.getUserId(),
-                change.getChangeContent(), change.getOperationType());
+                change.getChangeContent(), change.getOperationType(), change.getRevision());
     }
 }
@@ -0,0 +1,21 @@
+package com.syab.documentediting.service;
+
+import com.syab.documentediting.dto.DocumentDTO;
+
+/**
+ * An edit could not be rebased onto the current revision, either because the content of its base
+ * revision is no longer known or because concurrent writers kept winning. Carries the current
+ * document so the client can redo the edit without another round trip.
+ */
+public class EditConflictException extends RuntimeException {
+    private final DocumentDTO current;
+
+    public EditConflictException(String message, DocumentDTO current) {
+        super(message);
+        this.current = current;
+    }
+
+    public DocumentDTO getCurrent() {
+        return current;
+    }
+}
@@ -0,0 +1,137 @@
+package com.syab.documentediting.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line-based three-way merge (diff3), used to rebase an edit made against an older revision onto
+ * the current content. Where both sides changed the same lines the incoming edit wins and the
+ * overlap is counted as a conflict; two insertions at the same place are both kept.
+ */
+final class ThreeWayMerge {
+    // cells of the LCS table per side; beyond this the differing middle is treated as one hunk
+    private static final long MAX_LCS_CELLS = 1_000_000L;
+
+    record Result(String content, int conflicts) {}
+
+    private ThreeWayMerge() {
+    }
+
+    static Result merge(String base, String ours, String theirs) {
+        if (ours.equals(theirs) || theirs.equals(base)) return new Result(ours, 0);
+        if (ours.equals(base)) return new Result(theirs, 0);
+
+        Map<String, Integer> ids = new HashMap<>();
+        int[] b = lines(base, ids);
+        int[] o = lines(ours, ids);
+        int[] t = lines(theirs, ids);
+        String[] text = new String[ids.size()];
+        ids.forEach((line, id) -> text[id] = line);
+
+        int[] toOurs = match(b, o);
+        int[] toTheirs = match(b, t);
+        StringBuilder out = new StringBuilder(Math.max(ours.length(), theirs.length()));
+        int conflicts = 0;
+        int i = 0, io = 0, it = 0;
+        while (i < b.length || io < o.length || it < t.length) {
+            if (i < b.length && toOurs[i] == io && toTheirs[i] == it) {
+                out.append(text[b[i]]);
+                i++;
+                io++;
+                it++;
+                continue;
+            }
+            // unstable chunk: runs up to the next base line that both sides kept
+            int next = i;
+            while (next < b.length && (toOurs[next] < 0 || toTheirs[next] < 0)) next++;
+            int oEnd = next < b.length ? toOurs[next] : o.length;
+            int tEnd = next < b.length ? toTheirs[next] : t.length;
+            boolean oursChanged = !same(b, i, next, o, io, oEnd);
+            boolean theirsChanged = !same(b, i, next, t, it, tEnd);
+            if (!oursChanged) {
+                append(out, text, t, it, tEnd);
+            } else if (!theirsChanged || same(o, io, oEnd, t, it, tEnd)) {
+                append(out, text, o, io, oEnd);
+            } else if (next - i == oEnd - io && next - i == tEnd - it) {
+                // same shape on all sides (lines edited in place): resolve line by line, so
+                // edits to neighbouring lines do not conflict
+                for (int k = 0; k < next - i; k++) {
+                    int line = o[io + k] == b[i + k] ? t[it + k] : o[io + k];
+                    if (o[io + k] != b[i + k] && t[it + k] != b[i + k] && o[io + k] != t[it + k]) conflicts++;
+                    out.append(text[line]);
+                }
+            } else {
+                conflicts++;
+                if (i == next) append(out, text, t, it, tEnd); // both inserted here
+                append(out, text, o, io, oEnd);
+            }
+            i = next;
+            io = oEnd;
+            it = tEnd;
+        }
+        return new Result(out.toString(), conflicts);
+    }
+
+    /** Splits into lines (each keeping its '\n') and maps every distinct line to an int. */
+    private static int[] lines(String content, Map<String, Integer> ids) {
+        List<Integer> lines = new ArrayList<>();
+        int start = 0;
+        while (start < content.length()) {
+            int end = content.indexOf('\n', start);
+            end = end < 0 ? content.length() : end + 1;
+            lines.add(ids.computeIfAbsent(content.substring(start, end), k -> ids.size()));
+            start = end;
+        }
+        return lines.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /** For each line of {@code a}, the index of the line it is matched with in {@code b}, or -1. */
+    private static int[] match(int[] a, int[] b) {
+        int[] result = new int[a.length];
+        Arrays.fill(result, -1);
+        int prefix = 0;
+        while (prefix < a.length && prefix < b.length && a[prefix] == b[prefix]) {
+            result[prefix] = prefix;
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.length - prefix && suffix < b.length - prefix
+                && a[a.length - 1 - suffix] == b[b.length - 1 - suffix]) {
+            result[a.length - 1 - suffix] = b.length - 1 - suffix;
+            suffix++;
+        }
+        int n = a.length - prefix - suffix;
+        int m = b.length - prefix - suffix;
+        if (n == 0 || m == 0 || (long) n * m > MAX_LCS_CELLS) return result;
+
+        int[][] lcs = new int[n + 1][m + 1];
+        for (int x = n - 1; x >= 0; x--) {
+            for (int y = m - 1; y >= 0; y--) {
+                lcs[x][y] = a[prefix + x] == b[prefix + y] ? lcs[x + 1][y + 1] + 1 : Math.max(lcs[x + 1][y], lcs[x][y + 1]);
+            }
+        }
+        for (int x = 0, y = 0; x < n && y < m; ) {
+            if (a[prefix + x] == b[prefix + y]) {
+                result[prefix + x] = prefix + y;
+                x++;
+                y++;
+            } else if (lcs[x + 1][y] >= lcs[x][y + 1]) {
+                x++;
+            } else {
+                y++;
+            }
+        }
+        return result;
+    }
+
+    private static boolean same(int[] a, int aFrom, int aTo, int[] b, int bFrom, int bTo) {
+        return Arrays.equals(a, aFrom, aTo, b, bFrom, bTo);
+    }
+
+    private static void append(StringBuilder out, String[] text, int[] lines, int from, int to) {
+        for (int k = from; k < to; k++) out.append(text[lines[k]]);
+    }
+}
@@ -0,0 +1,16 @@
+package com.syab.documentediting.ws;
+
+/**
+ * Messages a client can send over the document WebSocket, as decoded by {@link ClientMessageDecoder}.
+ */
+public sealed interface ClientMessage {
+
+    /** {@code {"type":"ping"}} from clients that predate server-driven heartbeats. */
+    record Ping() implements ClientMessage {
+        static final Ping INSTANCE = new Ping();
+    }
+
+    /** {@code {"documentId":1,"userId":1,"content":"...","operationType":"UPDATE","baseRevision":3}}; baseRevision is optional */
+    record Edit(long documentId, long userId, String content, String operationType, Long baseRevision) implements ClientMessage {
+    }
+}
@@ -0,0 +1,63 @@
+package com.syab.documentediting.ws;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+
+/**
+ * Decodes WebSocket frames into {@link ClientMessage}s with Jackson's streaming parser: fields are
+ * read straight into the record components, with no intermediate Map and no boxing or string
+ * round-trips for numbers. Unknown fields are skipped.
+ * <p>
+ * Stateless and thread-safe; one instance is shared by all sessions.
+ */
+public class ClientMessageDecoder {
+    private static final long MISSING = Long.MIN_VALUE;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    /**
+     * @return the decoded message, or {@code null} for a frame that is not a message we
+     * understand (unknown type, or an edit without documentId, userId or content)
+     */
+    public ClientMessage decode(String frame) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(frame)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) return null;
+            String type = null;
+            long documentId = MISSING;
+            long userId = MISSING;
+            String content = null;
+            String operationType = "UPDATE";
+            long baseRevision = MISSING;
+            String field;
+            while ((field = parser.nextFieldName()) != null) {
+                JsonToken value = parser.nextToken();
+                switch (field) {
+                    case "type" -> type = parser.getValueAsString();
+                    case "documentId" -> documentId = longValue(parser, value);
+                    case "userId" -> userId = longValue(parser, value);
+                    case "content" -> content = value == JsonToken.VALUE_NULL ? null : parser.getValueAsString();
+                    case "operationType" -> {
+                        if (value != JsonToken.VALUE_NULL) operationType = parser.getValueAsString();
+                    }
+                    case "baseRevision" -> baseRevision = longValue(parser, value);
+                    default -> parser.skipChildren();
+                }
+            }
+            if ("ping".equals(type)) return ClientMessage.Ping.INSTANCE;
+            if (documentId == MISSING || userId == MISSING || content == null) return null;
+            return new ClientMessage.Edit(documentId, userId, content, operationType,
+                    baseRevision == MISSING ? null : baseRevision);
+        }
+    }
+
+    // accepts 1 as well as "1", like the Map-based parsing this replaced
+    private static long longValue(JsonParser parser, JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NUMBER_INT) return parser.getLongValue();
+        if (value == JsonToken.VALUE_STRING) return Long.parseLong(parser.getText().trim());
+        if (value == JsonToken.START_OBJECT || value == JsonToken.START_ARRAY) parser.skipChildren();
+        return MISSING;
+    }
+}
@@ -1,24 +1,37 @@
 package com.syab.documentediting.ws;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.syab.documentediting.config.DocumentGauges;
 import com.syab.documentediting.dto.DocumentChangeDTO;
 import com.syab.documentediting.dto.DocumentDTO;
 import com.syab.documentediting.dto.EditDocumentRequest;
+import com.syab.documentediting.heartbeat.HeartbeatScheduler;
 import com.syab.documentediting.service.DocumentService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Meter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.observation.Observation;
+import io.micrometer.observation.ObservationRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.springframework.web.socket.CloseStatus;
 import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
 import org.springframework.web.socket.WebSocketSession;
+import org.springframework.web.socket.handler.ConcurrentWebSocketSessionDecorator;
 import org.springframework.web.socket.handler.TextWebSocketHandler;
 
+import java.io.IOException;
 import java.net.URI;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Very small and simple WebSocket handler for document edits.
@@ -27,14 +40,44 @@ import java.util.concurrent.CopyOnWriteArrayList;
 @Component
 public class DocumentWebSocketHandler extends TextWebSocketHandler {
     private static final Logger log = LoggerFactory.getLogger(DocumentWebSocketHandler.class);
+    // session attributes: the thread-safe sending side of the session and its liveness check
+    private static final String SENDER_ATTRIBUTE = "collab.sender";
+    private static final String LIVENESS_ATTRIBUTE = "collab.liveness";
+    private static final String PARTIAL_ATTRIBUTE = "collab.partial";
+    private static final String LIMITER_ATTRIBUTE = "collab.limiter";
+    static final int MAX_MESSAGE_CHARS = 1024 * 1024;
+    // a subscriber that cannot take a broadcast within these limits is disconnected
+    private static final int SEND_TIME_LIMIT_MS = 10_000;
+    private static final int SEND_BUFFER_LIMIT_BYTES = 512 * 1024;
+    private static final TextMessage PONG = new TextMessage("{\"type\":\"pong\"}");
+
     private final DocumentService documentService;
+    private final HeartbeatScheduler heartbeats;
+    private final EditRateLimiter rateLimiter;
     private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ClientMessageDecoder decoder = new ClientMessageDecoder();
 
     // documentId -> sessions
     private final Map<Long, CopyOnWriteArrayList<WebSocketSession>> sessions = new ConcurrentHashMap<>();
+    // documentId -> its collab.ws.connections gauge, changed only inside sessions.compute for that id
+    private final Map<Long, Meter> sessionGauges = new ConcurrentHashMap<>();
+
+    private final MeterRegistry meterRegistry;
+    private final Timer sendTimer;
+    private final Counter sendFailures;
+    private final ObservationRegistry observationRegistry;
+    private final DocumentGauges documentGauges;
 
-    public DocumentWebSocketHandler(DocumentService documentService) {
+    public DocumentWebSocketHandler(DocumentService documentService, HeartbeatScheduler heartbeats, EditRateLimiter rateLimiter,
+                                    MeterRegistry meterRegistry, ObservationRegistry observationRegistry, DocumentGauges documentGauges) {
         this.documentService = documentService;
+        this.heartbeats = heartbeats;
+        this.rateLimiter = rateLimiter;
+        this.meterRegistry = meterRegistry;
+        this.observationRegistry = observationRegistry;
+        this.documentGauges = documentGauges;
+        this.sendTimer = Timer.builder("collab.fanout.send").tag("transport", "ws").register(meterRegistry);
+        this.sendFailures = Counter.builder("collab.fanout.failures").tag("transport", "ws").register(meterRegistry);
     }
 
     @Override
@@ -49,7 +92,18 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
             try { session.close(CloseStatus.NOT_ACCEPTABLE.withReason("Missing documentId query param")); } catch (Exception e) { log.error("Failed to close session", e); }
             return;
         }
-        sessions.computeIfAbsent(documentId, k -> new CopyOnWriteArrayList<>()).add(session);
+        WebSocketSession sender = new ConcurrentWebSocketSessionDecorator(session, SEND_TIME_LIMIT_MS, SEND_BUFFER_LIMIT_BYTES);
+        session.getAttributes().put(SENDER_ATTRIBUTE, sender);
+        session.getAttributes().put(LIVENESS_ATTRIBUTE, heartbeats.watch(sender));
+        sessions.compute(documentId, (id, list) -> {
+            if (list == null) {
+                list = new CopyOnWriteArrayList<>();
+                Meter gauge = documentGauges.register("collab.ws.connections", id, list);
+                if (gauge != null) sessionGauges.put(id, gauge);
+            }
+            list.add(sender);
+            return list;
+        });
         log.debug("WebSocket connected: docId={} sessionId={}", documentId, session.getId());
     }
 
@@ -58,59 +112,143 @@ public class DocumentWebSocketHandler extends TextWebSocketHandler {
         URI uri = session.getUri();
         Long documentId = parseDocumentId(uri);
         if (documentId != null) {
-            List<WebSocketSession> list = sessions.get(documentId);
-            if (list != null) list.remove(session);
+            WebSocketSession sender = sender(session);
+            // the last session takes the document's list and gauge with it
+            sessions.computeIfPresent(documentId, (id, list) -> {
+                list.remove(sender);
+                if (!list.isEmpty()) return list;
+                documentGauges.remove(sessionGauges.remove(id));
+                return null;
+            });
         }
         log.debug("WebSocket disconnected: docId={} sessionId={}", documentId, session.getId());
     }
 
+    @Override
+    public void handleMessage(WebSocketSession session, WebSocketMessage<?> message) throws Exception {
+        // any frame, including pongs to our pings, proves the connection is alive
+        Object liveness = session.getAttributes().get(LIVENESS_ATTRIBUTE);
+        if (liveness != null) ((HeartbeatScheduler.Liveness) liveness).markSeen();
+        super.handleMessage(session, message);
+    }
+
+    @Override
+    public boolean supportsPartialMessages() {
+        // large edits arrive in fragments instead of being rejected by the container's message buffer
+        return true;
+    }
+
     @Override
     protected void handleTextMessage(WebSocketSession session, TextMessage message) throws Exception {
         try {
-            log.debug("WS message from session {}: {}", session.getId(), message.getPayload());
-            Map<String, Object> payload = objectMapper.readValue(message.getPayload(), Map.class);
-            // Heartbeat support: respond to ping
-            if ("ping".equals(payload.get("type"))) {
-                session.sendMessage(new TextMessage("{\"type\":\"pong\"}"));
+            String frame = assemble(session, message);
+            if (frame == null) return; // more fragments to come
+            // Older clients still send {"type":"ping"}; answer without parsing it.
+            // Liveness itself is driven by WebSocket ping/pong frames from HeartbeatScheduler.
+            if (isLegacyPing(frame)) {
+                sender(session).sendMessage(PONG);
                 return;
             }
-
-            Long documentId = payload.get("documentId") == null ? null : Long.valueOf(String.valueOf(payload.get("documentId")));
-            Long userId = payload.get("userId") == null ? null : Long.valueOf(String.valueOf(payload.get("userId")));
-            String content = (String) payload.get("content");
-            String operationType = payload.getOrDefault("operationType", "UPDATE").toString();
-            if (documentId == null || userId == null || content == null) return;
-
-            // Persist the change and broadcast using service (SSE). Keep websocket echo minimal.
-            EditDocumentRequest req = new EditDocumentRequest(content, operationType);
-            DocumentDTO updated = documentService.editDocument(documentId, userId, req);
-
-            // Construct change DTO (service saved via changeRepository internally)
-            // Prepare payload
-            var changeDTO = new DocumentChangeDTO(null, documentId, userId, content, operationType);
-            var payloadOut = Map.of("document", updated, "change", changeDTO);
-
-            String json = objectMapper.writeValueAsString(payloadOut);
-            // Broadcast to sessions for this document, excluding sender
-            List<WebSocketSession> list = sessions.get(documentId);
-            if (list != null) {
-                CompletableFuture.runAsync(() -> {
-                    for (WebSocketSession s : list) {
-                        if (!s.isOpen() || s.getId().equals(session.getId())) continue;
-                        try {
-                            s.sendMessage(new TextMessage(json));
-                            log.debug("WS broadcast to session {}: {}", s.getId(), json);
-                        } catch (Exception e) {
-                            log.error("Failed to send ws message", e);
-                        }
-                    }
-                });
+            log.debug("WS message from session {}: {} chars", session.getId(), frame.length());
+            ClientMessage decoded = decoder.decode(frame);
+            if (decoded instanceof ClientMessage.Ping) {
+                sender(session).sendMessage(PONG);
+            } else if (decoded instanceof ClientMessage.Edit edit) {
+                limiter(session).submit(edit);
             }
         } catch (Exception e) {
             log.error("ws handler error", e);
         }
     }
 
+    /**
+     * Joins fragments of a partial message. Returns the whole message once the last fragment is in,
+     * or {@code null} while more are expected. A message over {@link #MAX_MESSAGE_CHARS} closes the session.
+     */
+    private String assemble(WebSocketSession session, TextMessage message) throws IOException {
+        StringBuilder partial = (StringBuilder) session.getAttributes().get(PARTIAL_ATTRIBUTE);
+        if (partial == null && message.isLast()) return message.getPayload();
+        if (partial == null) {
+            partial = new StringBuilder(message.getPayloadLength() * 2);
+            session.getAttributes().put(PARTIAL_ATTRIBUTE, partial);
+        }
+        if (partial.length() + message.getPayloadLength() > MAX_MESSAGE_CHARS) {
+            session.getAttributes().remove(PARTIAL_ATTRIBUTE);
+            session.close(CloseStatus.TOO_BIG_TO_PROCESS.withReason("Message exceeds " + MAX_MESSAGE_CHARS + " characters"));
+            return null;
+        }
+        partial.append(message.getPayload());
+        if (!message.isLast()) return null;
+        session.getAttributes().remove(PARTIAL_ATTRIBUTE);
+        return partial.toString();
+    }
+
+    private EditRateLimiter.SessionLimiter limiter(WebSocketSession session) {
+        return (EditRateLimiter.SessionLimiter) session.getAttributes().computeIfAbsent(LIMITER_ATTRIBUTE,
+                key -> rateLimiter.newSession(parseUserId(session.getUri()), edit -> observeEdit(session, edit)));
+    }
+
+    private void observeEdit(WebSocketSession session, ClientMessage.Edit edit) {
+        // WebSocket frames carry no trace headers, so each edit starts its own trace
+        Observation.createNotStarted("collab.ws.edit", observationRegistry)
+                .highCardinalityKeyValue("document", String.valueOf(edit.documentId()))
+                .observe(() -> applyEdit(session, edit));
+    }
+
+    private void applyEdit(WebSocketSession session, ClientMessage.Edit edit) {
+        long documentId = edit.documentId();
+        long userId = edit.userId();
+        String content = edit.content();
+        String operationType = edit.operationType();
+        // Persist the change and broadcast using service (SSE). Keep websocket echo minimal.
+        EditDocumentRequest req = new EditDocumentRequest(content, operationType, edit.baseRevision());
+        DocumentDTO updated = documentService.editDocument(documentId, userId, req);
+
+        // Construct change DTO (service saved via changeRepository internally)
+        // Prepare payload
+        var changeDTO = new DocumentChangeDTO(null, documentId, userId, updated.getContent(), operationType, updated.getRevision());
+        var payloadOut = Map.of("document", updated, "change", changeDTO);
+
+        String json;
+        try {
+            json = objectMapper.writeValueAsString(payloadOut);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize edit broadcast", e);
+        }
+        // Broadcast to sessions for this document, excluding sender
+        List<WebSocketSession> list = sessions.get(documentId);
+        if (list != null) {
+            // started on the async thread, so the parent has to be captured here
+            Observation broadcast = Observation.createNotStarted("collab.broadcast", observationRegistry)
+                    .parentObservation(observationRegistry.getCurrentObservation())
+                    .lowCardinalityKeyValue("transport", "ws")
+                    .highCardinalityKeyValue("document", String.valueOf(documentId));
+            CompletableFuture.runAsync(() -> broadcast.observe(() -> {
+                for (WebSocketSession s : list) {
+                    if (!s.isOpen() || s.getId().equals(session.getId())) continue;
+                    long start = System.nanoTime();
+                    try {
+                        s.sendMessage(new TextMessage(json));
+                    } catch (Exception e) {
+                        sendFailures.increment();
+                        log.error("Failed to send ws message", e);
+                    } finally {
+                        sendTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+                    }
+                }
+            }));
+        }
+    }
+
+    private static boolean isLegacyPing(String payload) {
+        return payload.length() <= 32 && payload.contains("\"ping\"");
+    }
+
+    private static WebSocketSession sender(WebSocketSession session) {
+        Object sender = session.getAttributes().get(SENDER_ATTRIBUTE);
+        return sender != null ? (WebSocketSession) sender : session;
+    }
+
     private Long parseDocumentId(URI uri) {
         if (uri == null) return null;
         String query = uri.getQuery();
@@ -0,0 +1,231 @@
+package com.syab.documentediting.ws;
+
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Token-bucket limits for WebSocket edits per session, per user and per document.
+ * <p>
+ * An edit over the limit is not dropped. It is parked as the session's pending edit for that
+ * document, and a newer edit for the same document replaces it. Edits carry the full content, so
+ * only the latest one matters. Parked edits are applied from the timing wheel once tokens are
+ * available again, so a flooding client is slowed to the configured rate and gets its last
+ * state persisted. The user limit applies to the user a session connected as, whatever ids its
+ * frames carry.
+ * <p>
+ * Parked edits are applied on a small pool of {@code flush-threads}, not on the wheel thread, since
+ * each one is a database transaction and a broadcast.
+ */
+@Component
+public class EditRateLimiter {
+    private static final Logger log = LoggerFactory.getLogger(EditRateLimiter.class);
+    private static final long SWEEP_INTERVAL_NANOS = TimeUnit.MINUTES.toNanos(1);
+    private static final long FLUSH_RETRY_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private final HashedTimingWheel wheel;
+    private final double sessionRate;
+    private final int sessionBurst;
+    private final double userRate;
+    private final int userBurst;
+    private final double documentRate;
+    private final int documentBurst;
+
+    private final Map<Long, TokenBucket> userBuckets = new ConcurrentHashMap<>();
+    private final Map<Long, TokenBucket> documentBuckets = new ConcurrentHashMap<>();
+    private final AtomicInteger throttledSessions = new AtomicInteger();
+    private final Counter sessionLimited;
+    private final Counter userLimited;
+    private final Counter documentLimited;
+    private final Counter coalesced;
+    private final ThreadPoolExecutor flushExecutor;
+
+    public EditRateLimiter(HashedTimingWheel wheel,
+                           @Value("${collab.ratelimit.session.rate:20}") double sessionRate,
+                           @Value("${collab.ratelimit.session.burst:40}") int sessionBurst,
+                           @Value("${collab.ratelimit.user.rate:30}") double userRate,
+                           @Value("${collab.ratelimit.user.burst:60}") int userBurst,
+                           @Value("${collab.ratelimit.document.rate:100}") double documentRate,
+                           @Value("${collab.ratelimit.document.burst:200}") int documentBurst,
+                           @Value("${collab.ratelimit.flush-threads:4}") int flushThreads,
+                           MeterRegistry meterRegistry) {
+        this.wheel = wheel;
+        this.sessionRate = sessionRate;
+        this.sessionBurst = sessionBurst;
+        this.userRate = userRate;
+        this.userBurst = userBurst;
+        this.documentRate = documentRate;
+        this.documentBurst = documentBurst;
+        this.sessionLimited = limitedCounter("session", meterRegistry);
+        this.userLimited = limitedCounter("user", meterRegistry);
+        this.documentLimited = limitedCounter("document", meterRegistry);
+        this.coalesced = Counter.builder("collab.ratelimit.coalesced")
+                .description("Throttled edits replaced by a newer edit before being applied")
+                .register(meterRegistry);
+        Gauge.builder("collab.ratelimit.throttled.sessions", throttledSessions, AtomicInteger::get)
+                .description("Sessions with edits waiting for tokens")
+                .register(meterRegistry);
+        AtomicInteger threads = new AtomicInteger();
+        // at most one flush per throttled session is queued
+        this.flushExecutor = new ThreadPoolExecutor(flushThreads, flushThreads, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(1024), r -> {
+                    Thread thread = new Thread(r, "ratelimit-flush-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        wheel.schedule(this::sweep, SWEEP_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    private static Counter limitedCounter(String scope, MeterRegistry meterRegistry) {
+        return Counter.builder("collab.ratelimit.limited").tag("scope", scope).register(meterRegistry);
+    }
+
+    /**
+     * Creates the limiter state of one WebSocket session; {@code apply} persists and broadcasts an edit.
+     *
+     * @param userId the user the session connected as, or {@code null} to apply no user limit
+     */
+    public SessionLimiter newSession(Long userId, Consumer<ClientMessage.Edit> apply) {
+        return new SessionLimiter(userId, apply);
+    }
+
+    /**
+     * Takes a token from the session, user and document buckets, or none of them.
+     *
+     * @return 0 if the edit may go ahead, otherwise nanoseconds to wait before trying again
+     */
+    private long tryAcquire(TokenBucket sessionBucket, Long userId, ClientMessage.Edit edit) {
+        long now = System.nanoTime();
+        long wait = sessionBucket.tryAcquire(now);
+        if (wait > 0) {
+            sessionLimited.increment();
+            return wait;
+        }
+        TokenBucket userBucket = userId == null ? null
+                : userBuckets.computeIfAbsent(userId, id -> new TokenBucket(userRate, userBurst));
+        wait = userBucket == null ? 0 : userBucket.tryAcquire(now);
+        if (wait > 0) {
+            userLimited.increment();
+            sessionBucket.refund();
+            return wait;
+        }
+        TokenBucket documentBucket = documentBuckets.computeIfAbsent(edit.documentId(), id -> new TokenBucket(documentRate, documentBurst));
+        wait = documentBucket.tryAcquire(now);
+        if (wait > 0) {
+            documentLimited.increment();
+            if (userBucket != null) userBucket.refund();
+            sessionBucket.refund();
+        }
+        return wait;
+    }
+
+    // the wheel thread only hands off; the edits themselves run on the flush pool
+    private void flushLater(Runnable flush, long delayNanos) {
+        wheel.schedule(() -> {
+            if (flushExecutor.isShutdown()) return;
+            try {
+                flushExecutor.execute(flush);
+            } catch (RejectedExecutionException e) {
+                // every flush thread is busy and the queue is full: the edits wait a little longer
+                flushLater(flush, FLUSH_RETRY_NANOS);
+            }
+        }, delayNanos, TimeUnit.NANOSECONDS);
+    }
+
+    @PreDestroy
+    public void close() {
+        flushExecutor.shutdown();
+    }
+
+    /** Forgets user and document buckets that have refilled, so idle ids do not accumulate. */
+    private void sweep() {
+        long now = System.nanoTime();
+        userBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        documentBuckets.values().removeIf(bucket -> bucket.isFull(now));
+        wheel.schedule(this::sweep, SWEEP_INTERVAL_NANOS, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Per-session state. Submitting and flushing hold the session's monitor, so edits for one
+     * document are applied in the order they arrived even when a flush races a new frame.
+     */
+    public final class SessionLimiter {
+        private final TokenBucket bucket = new TokenBucket(sessionRate, sessionBurst);
+        private final Long userId;
+        private final Consumer<ClientMessage.Edit> apply;
+        // documentId -> latest edit waiting for tokens
+        private final Map<Long, ClientMessage.Edit> pending = new LinkedHashMap<>();
+        private boolean flushScheduled;
+
+        private SessionLimiter(Long userId, Consumer<ClientMessage.Edit> apply) {
+            this.userId = userId;
+            this.apply = apply;
+        }
+
+        public synchronized void submit(ClientMessage.Edit edit) {
+            if (!pending.containsKey(edit.documentId())) {
+                long wait = tryAcquire(bucket, userId, edit);
+                if (wait == 0) {
+                    apply.accept(edit);
+                    return;
+                }
+                pending.put(edit.documentId(), edit);
+                scheduleFlush(wait);
+            } else {
+                pending.put(edit.documentId(), edit);
+                coalesced.increment();
+            }
+        }
+
+        private void scheduleFlush(long delayNanos) {
+            // pending edits always have a flush scheduled, so this is the session becoming throttled
+            if (flushScheduled) return;
+            throttledSessions.incrementAndGet();
+            flushScheduled = true;
+            flushLater(this::flush, delayNanos);
+        }
+
+        private synchronized void flush() {
+            flushScheduled = false;
+            long retry = 0;
+            Iterator<ClientMessage.Edit> it = pending.values().iterator();
+            while (it.hasNext()) {
+                ClientMessage.Edit edit = it.next();
+                long wait = tryAcquire(bucket, userId, edit);
+                if (wait > 0) {
+                    retry = retry == 0 ? wait : Math.min(retry, wait);
+                    continue;
+                }
+                it.remove();
+                try {
+                    apply.accept(edit);
+                } catch (RuntimeException e) {
+                    log.error("Failed to apply throttled edit for document {}", edit.documentId(), e);
+                }
+            }
+            if (pending.isEmpty()) {
+                throttledSessions.decrementAndGet();
+            } else {
+                flushScheduled = true;
+                flushLater(this::flush, retry);
+            }
+        }
+    }
+}
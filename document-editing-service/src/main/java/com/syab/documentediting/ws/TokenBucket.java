@@ -0,0 +1,47 @@
+package com.syab.documentediting.ws;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token bucket in its GCRA form: the whole state is one "theoretical arrival time"
+ * updated with a CAS, so there is no refill thread and no lock. Allows {@code burst} events at
+ * once and {@code ratePerSecond} sustained.
+ */
+final class TokenBucket {
+    private final long intervalNanos;
+    private final long toleranceNanos;
+    private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+
+    TokenBucket(double ratePerSecond, int burst) {
+        if (ratePerSecond <= 0 || burst < 1) {
+            throw new IllegalArgumentException("rate and burst must be positive");
+        }
+        this.intervalNanos = Math.max(1, (long) (1_000_000_000L / ratePerSecond));
+        this.toleranceNanos = intervalNanos * burst;
+    }
+
+    /**
+     * Takes one token if available.
+     *
+     * @return 0 if the token was taken, otherwise the nanoseconds until one will be available
+     */
+    long tryAcquire(long nowNanos) {
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, nowNanos) + intervalNanos;
+            long wait = next - nowNanos - toleranceNanos;
+            if (wait > 0) return wait;
+            if (theoreticalArrival.compareAndSet(tat, next)) return 0;
+        }
+    }
+
+    /** Gives back a token taken by {@link #tryAcquire} when a later check rejected the event. */
+    void refund() {
+        theoreticalArrival.addAndGet(-intervalNanos);
+    }
+
+    /** True once the bucket has refilled completely, i.e. it holds no state worth keeping. */
+    boolean isFull(long nowNanos) {
+        return theoreticalArrival.get() <= nowNanos;
+    }
+}
@@ -0,0 +1,53 @@
+package com.syab.documentediting.checkpoint;
+
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class VersionCheckpointPublisherTest {
+    @Mock
+    private RestTemplate restTemplate;
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 64);
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void testEditsReportedOutOfOrderCheckpointTheNewestContent() {
+        VersionCheckpointPublisher publisher = new VersionCheckpointPublisher(restTemplate, wheel, true, "http://vc/checkpoints",
+                2, 4096, Duration.ofMinutes(1), new SimpleMeterRegistry());
+
+        // revision 2 commits right after revision 1 and is reported first
+        publisher.editCommitted(1L, 2L, 2L, "Hello", "Hello world");
+        publisher.editCommitted(1L, 1L, 1L, "", "Hello");
+
+        ArgumentCaptor<Object> body = ArgumentCaptor.forClass(Object.class);
+        verify(restTemplate, timeout(5000)).postForEntity(eq("http://vc/checkpoints"), body.capture(), eq(Void.class));
+        Map<String, Object> checkpoint = (Map<String, Object>) body.getValue();
+        assertEquals("Hello world", checkpoint.get("content"));
+        assertEquals(2L, checkpoint.get("userId"));
+        assertEquals(List.of(new VersionCheckpointPublisher.Splice(0, 0, 5, 1L),
+                new VersionCheckpointPublisher.Splice(5, 0, 6, 2L)), checkpoint.get("splices"));
+    }
+}
@@ -0,0 +1,69 @@
+package com.syab.documentediting.heartbeat;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class HashedTimingWheelTest {
+    // 4 buckets of 10ms: one round is 40ms
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 4);
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    // nanoseconds from scheduling to running, once it has run
+    private long runAfter(long delayMillis) throws InterruptedException {
+        CountDownLatch ran = new CountDownLatch(1);
+        AtomicLong elapsed = new AtomicLong();
+        long start = System.nanoTime();
+        wheel.schedule(() -> {
+            elapsed.set(System.nanoTime() - start);
+            ran.countDown();
+        }, delayMillis, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        return elapsed.get();
+    }
+
+    @Test
+    void testTaskRunsNoEarlierThanOneTickBeforeItsDelay() throws InterruptedException {
+        long elapsed = runAfter(30);
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(20), "ran after " + elapsed + "ns");
+    }
+
+    @Test
+    void testDelayOfSeveralRoundsWaitsForItsRound() throws InterruptedException {
+        // lands in a bucket the worker passes three times before it is due
+        long elapsed = runAfter(150);
+
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(140), "ran after " + elapsed + "ns");
+    }
+
+    @Test
+    void testCancelledTaskNeverRuns() throws InterruptedException {
+        CountDownLatch cancelledRan = new CountDownLatch(1);
+        HashedTimingWheel.Timeout timeout = wheel.schedule(cancelledRan::countDown, 20, TimeUnit.MILLISECONDS);
+
+        timeout.cancel();
+
+        // a later task running proves the wheel went past the cancelled one
+        runAfter(60);
+        assertEquals(1, cancelledRan.getCount());
+    }
+
+    @Test
+    void testFailingTaskDoesNotStopTheWheel() throws InterruptedException {
+        wheel.schedule(() -> {
+            throw new IllegalStateException("task failed");
+        }, 0, TimeUnit.MILLISECONDS);
+
+        runAfter(20);
+    }
+}
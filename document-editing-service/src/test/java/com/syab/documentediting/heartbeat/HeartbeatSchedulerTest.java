@@ -0,0 +1,102 @@
+package com.syab.documentediting.heartbeat;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.PingMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class HeartbeatSchedulerTest {
+    @Mock
+    private WebSocketSession session;
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 64);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    // ping after 100ms of quiet, close after 300ms
+    private final HeartbeatScheduler heartbeats = new HeartbeatScheduler(wheel, Duration.ofMillis(100),
+            Duration.ofMillis(300), Duration.ofMillis(50), meterRegistry);
+
+    @AfterEach
+    void tearDown() {
+        wheel.close();
+    }
+
+    private double timeouts() {
+        return meterRegistry.get("collab.heartbeat.timeouts").counter().count();
+    }
+
+    @Test
+    void testQuietSessionIsPingedThenClosed() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+
+        heartbeats.watch(session);
+
+        verify(session, timeout(2000)).sendMessage(any(PingMessage.class));
+        verify(session, timeout(2000)).close(argThat(status -> status.getCode() == CloseStatus.SESSION_NOT_RELIABLE.getCode()));
+        assertEquals(1.0, timeouts());
+    }
+
+    @Test
+    void testCheckRearmsWhileFramesKeepArriving() throws Exception {
+        when(session.isOpen()).thenReturn(true);
+        HeartbeatScheduler.Liveness liveness = heartbeats.watch(session);
+
+        // frames every 20ms for well past the idle timeout
+        long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+        while (System.nanoTime() < until) {
+            liveness.markSeen();
+            Thread.sleep(20);
+        }
+
+        verify(session, never()).sendMessage(any());
+        verify(session, never()).close(any());
+        // the check is still armed: once frames stop, the session times out
+        verify(session, timeout(2000)).close(any());
+        assertEquals(1.0, timeouts());
+    }
+
+    @Test
+    void testClosedSessionIsNoLongerChecked() throws Exception {
+        when(session.isOpen()).thenReturn(false);
+
+        heartbeats.watch(session);
+        Thread.sleep(400);
+
+        verify(session, never()).sendMessage(any());
+        verify(session, never()).close(any());
+        assertEquals(0.0, timeouts());
+    }
+
+    @Test
+    void testSseHeartbeatsStopOnceUnsubscribed() throws InterruptedException {
+        AtomicBoolean subscribed = new AtomicBoolean(true);
+        AtomicInteger beats = new AtomicInteger();
+
+        heartbeats.keepAlive(subscribed::get, beats::incrementAndGet);
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (beats.get() < 2 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertTrue(beats.get() >= 2);
+        subscribed.set(false);
+        // one beat may already be on its way
+        Thread.sleep(100);
+        int stopped = beats.get();
+        Thread.sleep(200);
+
+        assertEquals(stopped, beats.get());
+    }
+}
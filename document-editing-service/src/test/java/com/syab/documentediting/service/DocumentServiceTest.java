@@ -1,18 +1,35 @@
 package com.syab.documentediting.service;
 
+import com.syab.documentediting.dto.BatchShareItem;
+import com.syab.documentediting.dto.BulkItemResult;
+import com.syab.documentediting.dto.BulkItemStatus;
 import com.syab.documentediting.dto.DocumentChangeDTO;
 import com.syab.documentediting.dto.DocumentDTO;
 import com.syab.documentediting.dto.EditDocumentRequest;
+import com.syab.documentediting.checkpoint.VersionCheckpointPublisher;
+import com.syab.documentediting.config.DocumentGauges;
+import com.syab.common.compression.TextCodec;
+import com.syab.documentediting.heartbeat.HeartbeatScheduler;
 import com.syab.documentediting.model.Document;
 import com.syab.documentediting.model.DocumentChange;
+import com.syab.documentediting.model.DocumentShare;
 import com.syab.documentediting.repository.DocumentChangeRepository;
 import com.syab.documentediting.repository.DocumentRepository;
+import com.syab.documentediting.repository.DocumentShareRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.web.client.RestTemplate;
 
 import java.time.LocalDateTime;
 import java.util.Arrays;
@@ -31,6 +48,30 @@ class DocumentServiceTest {
     @Mock
     private DocumentChangeRepository changeRepository;
 
+    @Mock
+    private DocumentShareRepository shareRepository;
+
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Spy
+    private ObservationRegistry observationRegistry = ObservationRegistry.create();
+
+    @Mock
+    private RestTemplate restTemplate;
+
+    @Mock
+    private HeartbeatScheduler heartbeats;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Mock
+    private VersionCheckpointPublisher checkpoints;
+
+    @Spy
+    private DocumentGauges documentGauges = new DocumentGauges(new SimpleMeterRegistry(), 500);
+
     @InjectMocks
     private DocumentService documentService;
 
@@ -39,8 +80,8 @@ class DocumentServiceTest {
 
     @BeforeEach
     void setUp() {
-        document = new Document(1L, "Test Doc", "Content", 1L, LocalDateTime.now(), LocalDateTime.now(), false);
-        change = new DocumentChange(1L, 1L, 1L, "Updated content", "UPDATE", LocalDateTime.now());
+        document = new Document(1L, "Test Doc", "Content", 1L, LocalDateTime.now(), LocalDateTime.now(), false, 0L);
+        change = new DocumentChange(1L, 1L, 1L, "Updated content", "UPDATE", 1L, null, LocalDateTime.now());
     }
 
     @Test
@@ -57,27 +98,139 @@ class DocumentServiceTest {
 
     @Test
     void testEditDocumentSuccess() {
-        EditDocumentRequest request = new EditDocumentRequest("Updated content", "UPDATE");
+        EditDocumentRequest request = new EditDocumentRequest("Updated content", "UPDATE", null);
         
         when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
-        when(documentRepository.save(any(Document.class))).thenReturn(document);
+        when(documentRepository.saveAndFlush(any(Document.class))).thenReturn(document);
         when(changeRepository.save(any(DocumentChange.class))).thenReturn(change);
 
         DocumentDTO result = documentService.editDocument(1L, 1L, request);
 
         assertNotNull(result);
-        verify(documentRepository, times(1)).save(any(Document.class));
+        verify(documentRepository, times(1)).saveAndFlush(any(Document.class));
         verify(changeRepository, times(1)).save(any(DocumentChange.class));
+        assertEquals(1, meterRegistry.get("collab.document.edit").timer().count());
+        assertEquals(1, meterRegistry.get("collab.document.edit.phase").tag("phase", "db").timer().count());
+    }
+
+    @Test
+    void testLongContentStoredCompressedOnce() {
+        String content = "<p class=\"body\">Section notes for the quarterly review.</p>\n".repeat(40);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.saveAndFlush(any(Document.class))).thenAnswer(inv -> inv.getArgument(0));
+        when(changeRepository.save(any(DocumentChange.class))).thenAnswer(inv -> inv.getArgument(0));
+        long rawBefore = TextCodec.rawBytes();
+        long storedBefore = TextCodec.storedBytes();
+        TextCodec.configure(256, 3);
+        try {
+            documentService.editDocument(1L, 1L, new EditDocumentRequest(content, "UPDATE", null));
+        } finally {
+            TextCodec.configure(Integer.MAX_VALUE, 3);
+        }
+
+        // the document and its change share one compression
+        assertEquals(content.length(), TextCodec.rawBytes() - rawBefore);
+        assertTrue(TextCodec.storedBytes() - storedBefore < content.length() / 10);
+        ArgumentCaptor<DocumentChange> saved = ArgumentCaptor.forClass(DocumentChange.class);
+        verify(changeRepository).save(saved.capture());
+        assertEquals(content, saved.getValue().getChangeContent());
+        assertEquals(content, document.getContent());
+    }
+
+    @Test
+    void testEditBumpsRevisionServedFromMemory() {
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.saveAndFlush(any(Document.class))).thenAnswer(inv -> flushed(inv.getArgument(0)));
+        when(changeRepository.save(any(DocumentChange.class))).thenReturn(change);
+
+        DocumentDTO result = documentService.editDocument(1L, 1L, new EditDocumentRequest("Updated content", "UPDATE", null));
+
+        assertEquals(1L, result.getRevision());
+        assertEquals(1L, documentService.getRevision(1L));
+        verify(documentRepository, never()).findRevisionById(any());
+        verify(checkpoints).editCommitted(1L, 1L, 1L, "Content", "Updated content");
+    }
+
+    @Test
+    void testStaleEditIsRebasedOntoCurrentContent() {
+        // revision 1 was "a b c"; someone else has since changed b, this client changed c
+        document.setContent("a\nB\nc\n");
+        document.setRevision(2L);
+        change.setChangeContent("a\nb\nc\n");
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(changeRepository.findFirstByDocumentIdAndRevisionLessThanEqualOrderByRevisionDesc(1L, 1L)).thenReturn(Optional.of(change));
+        when(documentRepository.saveAndFlush(any(Document.class))).thenAnswer(inv -> flushed(inv.getArgument(0)));
+
+        DocumentService.EditResult edit = documentService.editDocument(1L, 2L, new EditDocumentRequest("a\nb\nC\n", "UPDATE", 1L), null);
+        DocumentDTO result = edit.document();
+
+        assertEquals("a\nB\nC\n", result.getContent());
+        assertEquals(3L, result.getRevision());
+        assertEquals(1L, edit.rebasedFrom());
+        assertEquals(1, meterRegistry.get("collab.document.edit.rebase").tag("outcome", "clean").counter().count());
+    }
+
+    @Test
+    void testEditRetriedUnderLockAfterConcurrentCommit() {
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.findByIdForUpdate(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.saveAndFlush(any(Document.class)))
+                .thenThrow(new ObjectOptimisticLockingFailureException(Document.class, 1L))
+                .thenAnswer(inv -> flushed(inv.getArgument(0)));
+
+        DocumentDTO result = documentService.editDocument(1L, 1L, new EditDocumentRequest("Updated content", "UPDATE", null));
+
+        assertEquals("Updated content", result.getContent());
+        verify(documentRepository, times(2)).saveAndFlush(any(Document.class));
+        assertEquals(1, meterRegistry.get("collab.document.edit.retries").counter().count());
+    }
+
+    // what Hibernate does with the @Version column on flush
+    private static Document flushed(Document document) {
+        document.setRevision(document.getRevision() + 1);
+        return document;
     }
 
     @Test
     void testEditDocumentNotFound() {
-        EditDocumentRequest request = new EditDocumentRequest("Updated content", "UPDATE");
+        EditDocumentRequest request = new EditDocumentRequest("Updated content", "UPDATE", null);
         when(documentRepository.findById(1L)).thenReturn(Optional.empty());
 
         assertThrows(IllegalArgumentException.class, () -> documentService.editDocument(1L, 1L, request));
     }
 
+    @Test
+    void testEditWithRepeatedIdempotencyKeyIsNotApplied() {
+        when(changeRepository.existsByDocumentIdAndIdempotencyKey(1L, "revert-7")).thenReturn(true);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+
+        // the document has moved on since the original edit's base, but a replay rebases nothing
+        document.setRevision(9L);
+        DocumentService.EditResult result = documentService.editDocument(1L, 1L,
+                new EditDocumentRequest("Reverted content", "REVERT", 2L), "revert-7");
+
+        assertEquals(document.getContent(), result.document().getContent());
+        assertFalse(result.rebased());
+        verify(documentRepository, never()).saveAndFlush(any(Document.class));
+        verify(changeRepository, never()).save(any(DocumentChange.class));
+    }
+
+    @Test
+    void testRacingRetryWithSameIdempotencyKeyIsReplayed() {
+        // both retries pass the check; the other one commits its change first
+        when(changeRepository.existsByDocumentIdAndIdempotencyKey(1L, "revert-7")).thenReturn(false, true);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(documentRepository.saveAndFlush(any(Document.class))).thenAnswer(inv -> flushed(inv.getArgument(0)));
+        when(changeRepository.save(any(DocumentChange.class)))
+                .thenThrow(new DataIntegrityViolationException("uk_document_changes_idempotency_key"));
+
+        DocumentService.EditResult result = documentService.editDocument(1L, 1L,
+                new EditDocumentRequest("Reverted content", "REVERT", null), "revert-7");
+
+        assertFalse(result.rebased());
+        verify(checkpoints, never()).editCommitted(anyLong(), anyLong(), anyLong(), any(), any());
+    }
+
     @Test
     void testGetDocumentChangesSuccess() {
         List<DocumentChange> changes = Arrays.asList(change);
@@ -102,6 +255,28 @@ class DocumentServiceTest {
         assertEquals("Test Doc", result.getTitle());
     }
 
+    @Test
+    void testGetDocumentAtReturnsContentOfLastChangeBefore() {
+        LocalDateTime at = document.getCreatedAt().plusMinutes(5);
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+        when(changeRepository.findFirstByDocumentIdAndTimestampLessThanEqualOrderByTimestampDescIdDesc(1L, at))
+                .thenReturn(Optional.of(change));
+
+        DocumentDTO result = documentService.getDocumentAt(1L, at);
+
+        assertEquals("Updated content", result.getContent());
+        assertEquals(1L, result.getRevision());
+        verify(changeRepository, never()).findByDocumentId(any());
+    }
+
+    @Test
+    void testGetDocumentAtBeforeCreationNotFound() {
+        when(documentRepository.findById(1L)).thenReturn(Optional.of(document));
+
+        assertThrows(IllegalArgumentException.class,
+                () -> documentService.getDocumentAt(1L, document.getCreatedAt().minusDays(1)));
+    }
+
     @Test
     void testGetUserDocumentsSuccess() {
         List<Document> documents = Arrays.asList(document);
@@ -113,4 +288,31 @@ class DocumentServiceTest {
         assertNotNull(result);
         assertEquals(1, result.size());
     }
+
+    @Test
+    void testGetDocumentsReportsMissingIds() {
+        when(documentRepository.findAllById(any())).thenReturn(List.of(document));
+
+        List<BulkItemResult> result = documentService.getDocuments(List.of(1L, 2L));
+
+        assertEquals(2, result.size());
+        assertEquals(BulkItemStatus.OK, result.get(0).getStatus());
+        assertEquals("Test Doc", result.get(0).getDocument().getTitle());
+        assertEquals(BulkItemStatus.NOT_FOUND, result.get(1).getStatus());
+    }
+
+    @Test
+    void testShareDocumentsSkipsExistingShares() {
+        when(documentRepository.findAllById(any())).thenReturn(List.of(document));
+        when(shareRepository.findByDocumentIdIn(any())).thenReturn(List.of(new DocumentShare(1L, 1L, 2L, 1L, LocalDateTime.now())));
+
+        List<BulkItemResult> result = documentService.shareDocuments(1L, List.of(
+                new BatchShareItem(1L, 2L), new BatchShareItem(1L, 3L), new BatchShareItem(9L, 3L)));
+
+        assertEquals(BulkItemStatus.ALREADY_SHARED, result.get(0).getStatus());
+        assertEquals(BulkItemStatus.CREATED, result.get(1).getStatus());
+        assertEquals(BulkItemStatus.NOT_FOUND, result.get(2).getStatus());
+        assertTrue(document.getIsShared());
+        verify(shareRepository).saveAll(argThat(shares -> ((List<?>) shares).size() == 1));
+    }
 }
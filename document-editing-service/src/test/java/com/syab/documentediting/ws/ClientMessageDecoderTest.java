@@ -0,0 +1,73 @@
+package com.syab.documentediting.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientMessageDecoderTest {
+    private final ClientMessageDecoder decoder = new ClientMessageDecoder();
+
+    @Test
+    void testDecodesEditWithNumericIds() throws IOException {
+        ClientMessage decoded = decoder.decode(
+                "{\"documentId\":1,\"userId\":7,\"content\":\"hello\",\"operationType\":\"INSERT\",\"baseRevision\":3}");
+
+        assertEquals(new ClientMessage.Edit(1, 7, "hello", "INSERT", 3L), decoded);
+    }
+
+    @Test
+    void testDecodesEditWithStringIds() throws IOException {
+        ClientMessage decoded = decoder.decode(
+                "{\"documentId\":\"1\",\"userId\":\" 7 \",\"content\":\"hello\",\"baseRevision\":\"3\"}");
+
+        assertEquals(new ClientMessage.Edit(1, 7, "hello", "UPDATE", 3L), decoded);
+    }
+
+    @Test
+    void testOptionalFieldsDefault() throws IOException {
+        ClientMessage decoded = decoder.decode(
+                "{\"documentId\":1,\"userId\":7,\"content\":\"\",\"operationType\":null}");
+
+        assertEquals(new ClientMessage.Edit(1, 7, "", "UPDATE", null), decoded);
+    }
+
+    @Test
+    void testUnknownFieldsAreSkipped() throws IOException {
+        ClientMessage decoded = decoder.decode(
+                "{\"cursor\":{\"line\":2,\"ranges\":[1,2]},\"documentId\":1,\"tags\":[\"a\"],\"userId\":7,\"content\":\"x\"}");
+
+        assertEquals(new ClientMessage.Edit(1, 7, "x", "UPDATE", null), decoded);
+    }
+
+    @Test
+    void testEditWithMissingFieldIsIgnored() throws IOException {
+        assertNull(decoder.decode("{\"userId\":7,\"content\":\"x\"}"));
+        assertNull(decoder.decode("{\"documentId\":1,\"content\":\"x\"}"));
+        assertNull(decoder.decode("{\"documentId\":1,\"userId\":7}"));
+        assertNull(decoder.decode("{\"documentId\":1,\"userId\":7,\"content\":null}"));
+        // an id that is not a number is as good as missing
+        assertNull(decoder.decode("{\"documentId\":{\"id\":1},\"userId\":7,\"content\":\"x\"}"));
+    }
+
+    @Test
+    void testUnknownTypeIsIgnored() throws IOException {
+        assertNull(decoder.decode("{\"type\":\"cursor\",\"line\":2}"));
+        assertNull(decoder.decode("[1,2]"));
+        assertNull(decoder.decode("\"ping\""));
+    }
+
+    @Test
+    void testDecodesPing() throws IOException {
+        assertSame(ClientMessage.Ping.INSTANCE, decoder.decode("{\"type\":\"ping\"}"));
+        // a ping padded past the handler's short-frame check still reaches the decoder
+        assertSame(ClientMessage.Ping.INSTANCE, decoder.decode("{\"type\":\"ping\",\"client\":\"legacy-editor-1.0\"}"));
+    }
+
+    @Test
+    void testMalformedJsonThrows() {
+        assertThrows(IOException.class, () -> decoder.decode("{\"documentId\":1,"));
+        assertThrows(NumberFormatException.class, () -> decoder.decode("{\"documentId\":\"one\"}"));
+    }
+}
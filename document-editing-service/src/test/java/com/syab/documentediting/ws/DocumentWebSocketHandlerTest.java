@@ -0,0 +1,135 @@
+package com.syab.documentediting.ws;
+
+import com.syab.documentediting.config.DocumentGauges;
+import com.syab.documentediting.heartbeat.HeartbeatScheduler;
+import com.syab.documentediting.service.DocumentService;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import io.micrometer.observation.ObservationRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.URI;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+@ExtendWith(MockitoExtension.class)
+class DocumentWebSocketHandlerTest {
+    @Mock
+    private DocumentService documentService;
+    @Mock
+    private HeartbeatScheduler heartbeats;
+    @Mock
+    private EditRateLimiter rateLimiter;
+    @Mock
+    private EditRateLimiter.SessionLimiter sessionLimiter;
+    @Mock
+    private WebSocketSession session;
+
+    private final Map<String, Object> attributes = new HashMap<>();
+    private DocumentWebSocketHandler handler;
+
+    @BeforeEach
+    void setUp() {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        handler = new DocumentWebSocketHandler(documentService, heartbeats, rateLimiter, meterRegistry,
+                ObservationRegistry.NOOP, new DocumentGauges(meterRegistry, 10));
+        when(session.getAttributes()).thenReturn(attributes);
+    }
+
+    private void expectEdits() {
+        when(session.getUri()).thenReturn(URI.create("ws://localhost/ws/documents?documentId=1&userId=7"));
+        when(rateLimiter.newSession(eq(7L), any())).thenReturn(sessionLimiter);
+    }
+
+    private static String edit(String content) {
+        return "{\"documentId\":1,\"userId\":7,\"content\":\"" + content + "\"}";
+    }
+
+    @Test
+    void testFragmentsAreAssembledIntoOneEdit() throws Exception {
+        expectEdits();
+        String frame = edit("a".repeat(100));
+
+        handler.handleMessage(session, new TextMessage(frame.substring(0, 10), false));
+        handler.handleMessage(session, new TextMessage(frame.substring(10, 60), false));
+        verifyNoInteractions(rateLimiter);
+        handler.handleMessage(session, new TextMessage(frame.substring(60), true));
+
+        verify(sessionLimiter).submit(new ClientMessage.Edit(1, 7, "a".repeat(100), "UPDATE", null));
+        assertFalse(attributes.containsKey("collab.partial"));
+    }
+
+    @Test
+    void testWholeMessageAfterFragmentedOneStandsAlone() throws Exception {
+        expectEdits();
+        String frame = edit("first");
+
+        handler.handleMessage(session, new TextMessage(frame.substring(0, 20), false));
+        handler.handleMessage(session, new TextMessage(frame.substring(20), true));
+        handler.handleMessage(session, new TextMessage(edit("second"), true));
+
+        verify(sessionLimiter).submit(new ClientMessage.Edit(1, 7, "first", "UPDATE", null));
+        verify(sessionLimiter).submit(new ClientMessage.Edit(1, 7, "second", "UPDATE", null));
+    }
+
+    @Test
+    void testMessageOverTheCapClosesTheSession() throws Exception {
+        String half = "a".repeat(DocumentWebSocketHandler.MAX_MESSAGE_CHARS / 2);
+
+        handler.handleMessage(session, new TextMessage("{\"content\":\"" + half, false));
+        handler.handleMessage(session, new TextMessage(half, false));
+
+        verify(session).close(argThat(status -> status.getCode() == CloseStatus.TOO_BIG_TO_PROCESS.getCode()));
+        assertFalse(attributes.containsKey("collab.partial"));
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    void testMessageAtTheCapIsAccepted() throws Exception {
+        expectEdits();
+        String prefix = "{\"documentId\":1,\"userId\":7,\"content\":\"";
+        String content = "a".repeat(DocumentWebSocketHandler.MAX_MESSAGE_CHARS - prefix.length() - 2);
+
+        handler.handleMessage(session, new TextMessage(prefix, false));
+        handler.handleMessage(session, new TextMessage(content + "\"}", true));
+
+        verify(session, never()).close(any());
+        verify(sessionLimiter).submit(new ClientMessage.Edit(1, 7, content, "UPDATE", null));
+    }
+
+    @Test
+    void testLegacyPingIsAnsweredWithPong() throws Exception {
+        handler.handleMessage(session, new TextMessage("{\"type\":\"ping\"}"));
+
+        verify(session).sendMessage(new TextMessage("{\"type\":\"pong\"}"));
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    void testLongPingIsDecodedAndAnswered() throws Exception {
+        handler.handleMessage(session, new TextMessage("{\"type\":\"ping\",\"client\":\"legacy-editor-1.0\"}"));
+
+        verify(session).sendMessage(new TextMessage("{\"type\":\"pong\"}"));
+        verifyNoInteractions(rateLimiter);
+    }
+
+    @Test
+    void testUnknownMessageIsDropped() throws Exception {
+        handler.handleMessage(session, new TextMessage("{\"type\":\"cursor\",\"line\":2}"));
+
+        verify(session, never()).sendMessage(any());
+        verifyNoInteractions(rateLimiter);
+    }
+}
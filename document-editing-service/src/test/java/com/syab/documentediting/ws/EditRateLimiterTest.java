@@ -0,0 +1,107 @@
+package com.syab.documentediting.ws;
+
+import com.syab.documentediting.heartbeat.HashedTimingWheel;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class EditRateLimiterTest {
+    // effectively never refills within a test
+    private static final double SLOW = 0.001;
+    private static final double FAST = 1e9;
+
+    private final HashedTimingWheel wheel = new HashedTimingWheel("test-wheel", 10, TimeUnit.MILLISECONDS, 64);
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private final List<ClientMessage.Edit> applied = new CopyOnWriteArrayList<>();
+    private EditRateLimiter limiter;
+
+    @AfterEach
+    void tearDown() {
+        if (limiter != null) limiter.close();
+        wheel.close();
+    }
+
+    private EditRateLimiter limiter(double sessionRate, int sessionBurst, double userRate, int userBurst,
+                                    double documentRate, int documentBurst) {
+        limiter = new EditRateLimiter(wheel, sessionRate, sessionBurst, userRate, userBurst, documentRate, documentBurst,
+                1, meterRegistry);
+        return limiter;
+    }
+
+    private static ClientMessage.Edit edit(long documentId, long userId, String content) {
+        return new ClientMessage.Edit(documentId, userId, content, "UPDATE", null);
+    }
+
+    private void awaitApplied(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (applied.size() < count && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(count, applied.size());
+    }
+
+    private double throttledSessions() {
+        return meterRegistry.get("collab.ratelimit.throttled.sessions").gauge().value();
+    }
+
+    @Test
+    void testThrottledEditsCoalesceToTheLast() throws InterruptedException {
+        EditRateLimiter.SessionLimiter session = limiter(20, 1, FAST, 1000, FAST, 1000).newSession(1L, applied::add);
+
+        session.submit(edit(1L, 1L, "a"));
+        session.submit(edit(1L, 1L, "ab"));
+        session.submit(edit(1L, 1L, "abc"));
+
+        assertEquals(List.of("a"), applied.stream().map(ClientMessage.Edit::content).toList());
+        awaitApplied(2);
+        assertEquals(List.of("a", "abc"), applied.stream().map(ClientMessage.Edit::content).toList());
+        assertEquals(1.0, meterRegistry.get("collab.ratelimit.coalesced").counter().count());
+    }
+
+    @Test
+    void testTokensRefundedWhenTheDocumentLimitRejects() {
+        // two session tokens: one for document 1, one lost to document 1's limit unless refunded
+        EditRateLimiter.SessionLimiter session = limiter(SLOW, 2, FAST, 1000, SLOW, 1).newSession(1L, applied::add);
+
+        session.submit(edit(1L, 1L, "first"));
+        session.submit(edit(1L, 1L, "second"));
+        session.submit(edit(2L, 1L, "other document"));
+
+        assertEquals(List.of("first", "other document"), applied.stream().map(ClientMessage.Edit::content).toList());
+        assertEquals(1.0, meterRegistry.get("collab.ratelimit.limited").tag("scope", "document").counter().count());
+    }
+
+    @Test
+    void testUserLimitFollowsTheSessionUserNotTheFrame() {
+        EditRateLimiter.SessionLimiter session = limiter(FAST, 1000, SLOW, 1, FAST, 1000).newSession(7L, applied::add);
+
+        session.submit(edit(1L, 1L, "first"));
+        // a new userId in the frame does not get a fresh bucket
+        session.submit(edit(2L, 2L, "second"));
+
+        assertEquals(List.of("first"), applied.stream().map(ClientMessage.Edit::content).toList());
+        assertEquals(1.0, meterRegistry.get("collab.ratelimit.limited").tag("scope", "user").counter().count());
+    }
+
+    @Test
+    void testFlushRearmsUntilEveryDocumentIsApplied() throws InterruptedException {
+        // one user token per 50ms: the first flush applies one pending edit and has to come back for the other
+        EditRateLimiter.SessionLimiter session = limiter(FAST, 1000, 20, 1, FAST, 1000).newSession(1L, applied::add);
+
+        session.submit(edit(1L, 1L, "one"));
+        session.submit(edit(2L, 1L, "two"));
+        session.submit(edit(3L, 1L, "three"));
+        assertEquals(1.0, throttledSessions());
+
+        awaitApplied(3);
+        assertEquals(List.of("one", "two", "three"), applied.stream().map(ClientMessage.Edit::content).toList());
+        // the flush that applied the last edit stops counting the session right after
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (throttledSessions() > 0 && System.nanoTime() < deadline) Thread.sleep(10);
+        assertEquals(0.0, throttledSessions());
+    }
+}
@@ -0,0 +1,45 @@
+package com.syab.documentediting.ws;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenBucketTest {
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void testBurstThenSustainedRate() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = 0;
+
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        // empty: the next token comes one interval later
+        assertEquals(SECOND / 10, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now + SECOND / 10));
+    }
+
+    @Test
+    void testRefundGivesTheTokenBack() {
+        TokenBucket bucket = new TokenBucket(1, 1);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertTrue(bucket.tryAcquire(0) > 0);
+
+        bucket.refund();
+
+        assertEquals(0, bucket.tryAcquire(0));
+    }
+
+    @Test
+    void testFullOnceRefilled() {
+        TokenBucket bucket = new TokenBucket(10, 2);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+
+        assertFalse(bucket.isFull(SECOND / 10));
+        assertTrue(bucket.isFull(2 * SECOND / 10));
+    }
+}
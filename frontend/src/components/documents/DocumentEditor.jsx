@@ -61,6 +61,8 @@ const DocumentEditor = () => {
   const [moreMenuAnchor, setMoreMenuAnchor] = useState(null);
 
   const contentRef = useRef(content);
+  // revision that lastFetchedContent corresponds to, sent as the edit's base
+  const baseRevisionRef = useRef(undefined);
   const wsTimerRef = useRef(null);
 
   const handleSave = useCallback(async () => {
@@ -71,13 +73,20 @@ const DocumentEditor = () => {
 
     setIsSaving(true);
     try {
-      await documentAPI.editDocument(id, user.id, content, "UPDATE");
+      const response = await documentAPI.editDocument(id, user.id, content, "UPDATE", baseRevisionRef.current);
+      // the server may have rebased our edit onto changes made since our base
+      const saved = response.data?.content ?? content;
+      baseRevisionRef.current = response.data?.revision;
       try {
-        wsSendEdit(Number(id), user.id, content, "UPDATE");
+        wsSendEdit(Number(id), user.id, saved, "UPDATE");
       } catch (e) {
         void e;
       }
-      setLastFetchedContent(content);
+      if (saved !== content) {
+        if (contentRef.current === content) setContent(saved);
+        setRemoteChangeDetected(false);
+      }
+      setLastFetchedContent(saved);
     } catch {
       setError("Failed to save document");
     } finally {
@@ -113,6 +122,7 @@ const DocumentEditor = () => {
         setDoc(response.data);
         setContent(response.data.content || "");
         setLastFetchedContent(response.data.content || "");
+        baseRevisionRef.current = response.data.revision;
       } catch {
         setError("Failed to load document");
       }
@@ -137,6 +147,7 @@ const DocumentEditor = () => {
           if (contentRef.current === lastFetchedContent) {
             setContent(serverContent);
             setLastFetchedContent(serverContent);
+            baseRevisionRef.current = payload?.document?.revision;
           } else {
             const isMine = String(change?.userId) === String(user?.id);
             setRemoteChangeIsMine(isMine);
@@ -157,6 +168,7 @@ const DocumentEditor = () => {
             setRemoteChangeAuthor(author);
             if (isMine) {
               setLastFetchedContent(serverContent);
+              baseRevisionRef.current = payload?.document?.revision;
             }
           }
         }
@@ -430,6 +442,7 @@ const DocumentEditor = () => {
                 onClick={() => {
                   setContent(remoteContent);
                   setLastFetchedContent(remoteContent);
+                  baseRevisionRef.current = doc?.revision;
                   setRemoteChangeDetected(false);
                 }}
                 sx={{ borderRadius: 1 }}
@@ -1,13 +1,17 @@
 import React, { useEffect, useState, useCallback } from "react";
 import { useParams, useNavigate } from "react-router-dom";
 import { versionAPI, authAPI, documentAPI } from "../../services/endpoints";
+import { useAuth } from "../../context/AuthContext";
 import { formatDate } from "../../utils/helpers";
 import "../styles/VersionHistory.css";
 
 const VersionHistory = () => {
   const { documentId } = useParams();
   const navigate = useNavigate();
+  const { user } = useAuth();
   const [versions, setVersions] = useState([]);
+  const [nextBefore, setNextBefore] = useState(null);
+  const [openVersions, setOpenVersions] = useState({});
   const [contributions, setContributions] = useState([]);
   const [loading, setLoading] = useState(false);
   const [error, setError] = useState("");
@@ -41,22 +45,48 @@ const VersionHistory = () => {
     [userDetails]
   );
 
-  const fetchVersions = useCallback(async () => {
-    setLoading(true);
-    try {
-      const response = await versionAPI.getVersionHistory(documentId);
-      const versionList = response.data || [];
-      setVersions(versionList);
+  const fetchVersions = useCallback(
+    async (before = null) => {
+      setLoading(true);
+      try {
+        const response = await versionAPI.getVersionHistory(documentId, before);
+        const page = response.data || {};
+        const versionList = page.versions || [];
+        setVersions((current) =>
+          before == null ? versionList : [...current, ...versionList]
+        );
+        setNextBefore(page.nextBefore ?? null);
 
-      // Fetch user details for version creators
-      const userIds = [...new Set(versionList.map((v) => v.createdBy))];
-      await fetchUserDetails(userIds);
+        // Fetch user details for version creators
+        const userIds = [...new Set(versionList.map((v) => v.createdBy))];
+        await fetchUserDetails(userIds);
+      } catch (err) {
+        setError("Failed to load version history");
+      } finally {
+        setLoading(false);
+      }
+    },
+    [documentId, fetchUserDetails]
+  );
+
+  // Content is only fetched when a version is opened
+  const toggleContent = async (versionNumber) => {
+    if (openVersions[versionNumber] !== undefined) {
+      setOpenVersions(({ [versionNumber]: _, ...rest }) => rest);
+      return;
+    }
+    setOpenVersions((open) => ({ ...open, [versionNumber]: null }));
+    try {
+      const response = await versionAPI.getVersionContent(
+        documentId,
+        versionNumber
+      );
+      setOpenVersions((open) => ({ ...open, [versionNumber]: response.data }));
     } catch (err) {
-      setError("Failed to load version history");
-    } finally {
-      setLoading(false);
+      setOpenVersions(({ [versionNumber]: _, ...rest }) => rest);
+      setError(`Failed to load version ${versionNumber}`);
     }
-  }, [documentId, fetchUserDetails]);
+  };
 
   const fetchContributions = useCallback(async () => {
     try {
@@ -74,10 +104,30 @@ const VersionHistory = () => {
     }
   }, [documentId, fetchUserDetails]);
 
+  // Reverts are applied in the background; wait for the outcome before leaving
+  const waitForRevert = async (revertId) => {
+    for (let delay = 250; ; delay = Math.min(delay * 2, 2000)) {
+      const response = await versionAPI.getRevertStatus(revertId);
+      if (response.data.status === "SUCCEEDED" || response.data.status === "FAILED") {
+        return response.data;
+      }
+      await new Promise((resolve) => setTimeout(resolve, delay));
+    }
+  };
+
   const handleRevert = async (versionNumber) => {
     if (window.confirm(`Revert to version ${versionNumber}?`)) {
       try {
-        await versionAPI.revertToVersion(documentId, versionNumber);
+        const response = await versionAPI.revertToVersion(
+          documentId,
+          versionNumber,
+          user?.id
+        );
+        const revert = await waitForRevert(response.data.id);
+        if (revert.status === "FAILED") {
+          setError(`Failed to revert version: ${revert.lastError || "unknown error"}`);
+          return;
+        }
         alert(
           "Document reverted successfully! Returning to editor to refresh content."
         );
@@ -129,29 +179,45 @@ const VersionHistory = () => {
 
       <div className="versions-section">
         <h3>Version Timeline</h3>
-        {loading ? (
+        {loading && versions.length === 0 ? (
           <p>Loading versions...</p>
         ) : versions.length === 0 ? (
           <p>No versions yet</p>
         ) : (
           <div className="versions-list">
-            {versions.map((version, index) => {
+            {versions.map((version) => {
               const user = userDetails[version.createdBy];
               const userName = user
                 ? `${user.firstName} ${user.lastName}`.trim() || user.username
                 : `User ${version.createdBy ?? "Unknown"}`;
+              const content = openVersions[version.versionNumber];
               return (
                 <div key={version.id} className="version-item">
                   <div className="version-info">
-                    <h4>Version {versions.length - index}</h4>
+                    <h4>Version {version.versionNumber}</h4>
                     <p>Created by: {userName}</p>
                     <p>Created: {formatDate(version.createdAt)}</p>
                     <p>
                       Description: {version.description || "No description"}
                     </p>
                   </div>
+                  {content !== undefined && (
+                    <div className="changes-preview">
+                      {content === null ? (
+                        <p>Loading content...</p>
+                      ) : (
+                        <pre>{content}</pre>
+                      )}
+                    </div>
+                  )}
+                  <button
+                    onClick={() => toggleContent(version.versionNumber)}
+                    className="revert-btn"
+                  >
+                    {content !== undefined ? "Hide Content" : "View Content"}
+                  </button>
                   <button
-                    onClick={() => handleRevert(versions.length - index)}
+                    onClick={() => handleRevert(version.versionNumber)}
                     className="revert-btn"
                   >
                     Revert to This Version
@@ -161,6 +227,15 @@ const VersionHistory = () => {
             })}
           </div>
         )}
+        {nextBefore != null && (
+          <button
+            onClick={() => fetchVersions(nextBefore)}
+            className="revert-btn"
+            disabled={loading}
+          >
+            {loading ? "Loading..." : "Load Older Versions"}
+          </button>
+        )}
       </div>
     </div>
   );
@@ -253,17 +253,8 @@ export const DocumentProvider = ({ children }) => {
           const key = String(documentId);
           wsReconnectAttemptsRef.current[key] = 0;
           wsGracefulCloseRef.current = false;
-
-          // Heartbeat mechanism: send ping every 30 seconds
-          ws.heartbeatInterval = setInterval(() => {
-            if (ws.readyState === WebSocket.OPEN) {
-              try {
-                ws.send(JSON.stringify({ type: "ping" }));
-              } catch (e) {
-                /* ignore */
-              }
-            }
-          }, 30000);
+          // Liveness is server-driven: the service sends WebSocket ping frames and
+          // the browser answers them automatically, so no app-level ping is needed.
         };
         ws.onmessage = (ev) => {
           try {
@@ -288,10 +279,6 @@ export const DocumentProvider = ({ children }) => {
           // mark graceful close (1000) so UI can treat it differently
           wsGracefulCloseRef.current = code === 1000;
 
-          // Clear heartbeat interval
-          if (ws.heartbeatInterval) {
-            clearInterval(ws.heartbeatInterval);
-          }
 
           // try reconnect a few times for abnormal closures
           const key = String(documentId);
@@ -323,10 +310,6 @@ export const DocumentProvider = ({ children }) => {
             setWsLastError(err?.message || String(err));
           } catch (e) {}
 
-          // Clear heartbeat interval
-          if (ws.heartbeatInterval) {
-            clearInterval(ws.heartbeatInterval);
-          }
         };
       } catch (err) {
         console.error("Failed to open WebSocket", err);
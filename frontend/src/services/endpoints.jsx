@@ -22,10 +22,11 @@ export const documentAPI = {
   getUserDocuments: (userId) => apiClient.get("/documents/user/" + userId),
   getSharedDocuments: (userId) => apiClient.get("/documents/shared/" + userId),
 
-  editDocument: (documentId, userId, content, operationType = "UPDATE") =>
+  // baseRevision: revision the content was edited from; the server rebases onto newer changes
+  editDocument: (documentId, userId, content, operationType = "UPDATE", baseRevision) =>
     apiClient.put(
       `/documents/${documentId}/edit`,
-      { content, operationType },
+      { content, operationType, baseRevision },
       { params: { userId } }
     ),
 
@@ -37,20 +38,40 @@ export const documentAPI = {
     apiClient.post(`/documents/${documentId}/invite`, null, {
       params: { email, inviterId },
     }),
+
+  // Bulk endpoints: one round trip, one result per item ({ index, documentId, status, document, error })
+  getDocuments: (documentIds) =>
+    apiClient.get("/documents", { params: { ids: documentIds.join(",") } }),
+  createDocuments: (userId, documents) =>
+    apiClient.post("/documents/batch", { userId, documents }),
+  shareDocuments: (invitedBy, shares) =>
+    apiClient.post("/documents/batch/share", { invitedBy, shares }),
 };
 
 // Version Control APIs
 export const versionAPI = {
   createVersion: (documentId, userId, content, description = "") =>
-    apiClient.post("/versions", null, {
-      params: { documentId, userId, content, description },
+    apiClient.post("/versions", { documentId, userId, content, description }),
+
+  // metadata only, newest first; pass the previous page's nextBefore for older versions
+  getVersionHistory: (documentId, before = null, limit = 50) =>
+    apiClient.get(`/versions/${documentId}/history`, {
+      params: { limit, ...(before != null && { before }) },
     }),
 
-  getVersionHistory: (documentId) =>
-    apiClient.get(`/versions/${documentId}/history`),
+  getVersionContent: (documentId, versionNumber) =>
+    apiClient.get(`/versions/${documentId}/${versionNumber}/content`, {
+      responseType: "text",
+    }),
+
+  // queued server-side; poll getRevertStatus with the returned id until it settles
+  revertToVersion: (documentId, versionNumber, userId) =>
+    apiClient.post(`/versions/${documentId}/revert/${versionNumber}`, null, {
+      params: { ...(userId != null && { userId }) },
+      headers: { "Idempotency-Key": crypto.randomUUID() },
+    }),
 
-  revertToVersion: (documentId, versionNumber) =>
-    apiClient.get(`/versions/${documentId}/revert/${versionNumber}`),
+  getRevertStatus: (revertId) => apiClient.get(`/versions/reverts/${revertId}`),
 
   getUserContributions: (documentId) =>
     apiClient.get(`/versions/${documentId}/contributions`),
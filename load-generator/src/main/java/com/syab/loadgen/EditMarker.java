@@ -0,0 +1,49 @@
+package com.syab.loadgen;
+
+/**
+ * Edits carry their origin and send time at the start of the content, so any receiver can
+ * compute edit-to-delivery latency by scanning the raw frame instead of parsing the JSON.
+ * Format: {@code lg|<editorIndex>|<sendNanos>|<padding>}.
+ */
+final class EditMarker {
+    private static final String PREFIX = "lg|";
+
+    private EditMarker() {
+    }
+
+    static String content(int editorIndex, long sendNanos, int length) {
+        String header = PREFIX + editorIndex + '|' + sendNanos + '|';
+        StringBuilder sb = new StringBuilder(Math.max(length, header.length())).append(header);
+        while (sb.length() < length) {
+            sb.append("lorem ipsum dolor sit amet ");
+        }
+        sb.setLength(Math.max(length, header.length()));
+        return sb.toString();
+    }
+
+    /** Returns the editor index from the first marker in {@code frame}, or -1 if there is none. */
+    static int editorIndex(String frame) {
+        int start = frame.indexOf(PREFIX);
+        if (start < 0) return -1;
+        int from = start + PREFIX.length();
+        int end = frame.indexOf('|', from);
+        return end < 0 ? -1 : (int) parseLong(frame, from, end);
+    }
+
+    /** Returns the send time from the first marker in {@code frame}, or -1 if there is none. */
+    static long sendNanos(String frame) {
+        int start = frame.indexOf(PREFIX);
+        if (start < 0) return -1;
+        int first = frame.indexOf('|', start + PREFIX.length());
+        int second = first < 0 ? -1 : frame.indexOf('|', first + 1);
+        return second < 0 ? -1 : parseLong(frame, first + 1, second);
+    }
+
+    private static long parseLong(String s, int from, int to) {
+        try {
+            return Long.parseLong(s, from, to, 10);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package com.syab.loadgen;
+
+import com.syab.documentediting.DocumentEditingApplication;
+import io.zonky.test.db.postgres.embedded.EmbeddedPostgres;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.net.URI;
+
+/**
+ * Runs document-editing-service inside the load generator JVM on a random port, backed by
+ * the in-memory H2 profile or by an embedded PostgreSQL instance, for self-contained runs.
+ */
+class EmbeddedTarget implements AutoCloseable {
+    private final ConfigurableApplicationContext context;
+    private final EmbeddedPostgres postgres;
+    private final URI baseUri;
+
+    private EmbeddedTarget(ConfigurableApplicationContext context, EmbeddedPostgres postgres) {
+        this.context = context;
+        this.postgres = postgres;
+        this.baseUri = URI.create("http://localhost:" + context.getEnvironment().getProperty("local.server.port"));
+    }
+
+    static EmbeddedTarget start(LoadConfig.Embedded kind) throws IOException {
+        String[] common = {
+                "--server.port=0",
+                "--spring.main.banner-mode=off",
+                // the service logs every frame at DEBUG; that would dominate a load run
+                "--logging.level.root=WARN",
+                "--logging.level.com.syab.documentediting.ws=WARN",
+                "--logging.level.com.syab.documentediting.service=WARN"
+        };
+        if (kind == LoadConfig.Embedded.H2) {
+            return new EmbeddedTarget(new SpringApplicationBuilder(DocumentEditingApplication.class)
+                    .profiles("h2")
+                    .run(common), null);
+        }
+        EmbeddedPostgres postgres = EmbeddedPostgres.start();
+        try {
+            ConfigurableApplicationContext context = new SpringApplicationBuilder(DocumentEditingApplication.class)
+                    .properties(
+                            "spring.datasource.url=" + postgres.getJdbcUrl("postgres", "postgres"),
+                            "spring.datasource.username=postgres",
+                            "spring.datasource.password=")
+                    .run(common);
+            return new EmbeddedTarget(context, postgres);
+        } catch (RuntimeException e) {
+            postgres.close();
+            throw e;
+        }
+    }
+
+    URI baseUri() {
+        return baseUri;
+    }
+
+    @Override
+    public void close() throws IOException {
+        context.close();
+        if (postgres != null) postgres.close();
+    }
+}
@@ -0,0 +1,103 @@
+package com.syab.loadgen;
+
+import java.net.URI;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Command line settings for a load run. Options are given as {@code --name=value}.
+ */
+public record LoadConfig(
+        URI target,
+        Embedded embedded,
+        int documents,
+        int usersPerDocument,
+        double editsPerSecond,
+        int contentLength,
+        boolean webSocket,
+        boolean sse,
+        Duration rampUp,
+        Duration duration,
+        Duration reconnectInterval,
+        String histogramDir) {
+
+    public enum Embedded { NONE, H2, POSTGRES }
+
+    public static final String USAGE = """
+            Usage: java -jar load-generator.jar [options]
+              --target=URL            gateway or document-editing-service base URL (default http://localhost:8081)
+              --embedded=none|h2|postgres
+                                      start document-editing-service in-process instead of using --target
+              --documents=N           number of documents (default 10)
+              --users=N               simulated editors per document (default 10)
+              --edit-rate=R           edits per second per editor (default 1.0)
+              --content-length=N      characters per edit payload (default 512)
+              --transport=ws,sse      channels each editor opens; edits go over ws, or REST when ws is off
+              --ramp-up=10s           spread connection setup over this period
+              --duration=60s          measured run length after ramp-up
+              --reconnect-interval=0s drop and reconnect each editor this often (0 = never)
+              --histogram-dir=DIR     also write .hgrm percentile distributions to DIR
+            """;
+
+    public int totalEditors() {
+        return documents * usersPerDocument;
+    }
+
+    public URI webSocketUri(long documentId, long userId) {
+        String scheme = "https".equals(target.getScheme()) ? "wss" : "ws";
+        return URI.create(scheme + "://" + target.getAuthority() + "/ws/documents?documentId=" + documentId + "&userId=" + userId);
+    }
+
+    public URI streamUri(long documentId, long userId) {
+        return target.resolve("/api/documents/" + documentId + "/stream?userId=" + userId);
+    }
+
+    public LoadConfig withTarget(URI newTarget) {
+        return new LoadConfig(newTarget, embedded, documents, usersPerDocument, editsPerSecond, contentLength,
+                webSocket, sse, rampUp, duration, reconnectInterval, histogramDir);
+    }
+
+    public static LoadConfig parse(String[] args) {
+        Map<String, String> options = new HashMap<>();
+        for (String arg : args) {
+            if ("--help".equals(arg)) {
+                throw new IllegalArgumentException("Collaborative editing load generator");
+            }
+            if (!arg.startsWith("--") || !arg.contains("=")) {
+                throw new IllegalArgumentException("Unrecognized argument: " + arg);
+            }
+            int eq = arg.indexOf('=');
+            options.put(arg.substring(2, eq), arg.substring(eq + 1));
+        }
+        String transport = options.getOrDefault("transport", "ws,sse");
+        LoadConfig config = new LoadConfig(
+                URI.create(options.getOrDefault("target", "http://localhost:8081")),
+                Embedded.valueOf(options.getOrDefault("embedded", "none").toUpperCase()),
+                Integer.parseInt(options.getOrDefault("documents", "10")),
+                Integer.parseInt(options.getOrDefault("users", "10")),
+                Double.parseDouble(options.getOrDefault("edit-rate", "1.0")),
+                Integer.parseInt(options.getOrDefault("content-length", "512")),
+                transport.contains("ws"),
+                transport.contains("sse"),
+                parseDuration(options.getOrDefault("ramp-up", "10s")),
+                parseDuration(options.getOrDefault("duration", "60s")),
+                parseDuration(options.getOrDefault("reconnect-interval", "0s")),
+                options.get("histogram-dir"));
+        if (!config.webSocket && !config.sse) {
+            throw new IllegalArgumentException("--transport must include ws and/or sse");
+        }
+        if (config.documents < 1 || config.usersPerDocument < 1 || config.editsPerSecond <= 0) {
+            throw new IllegalArgumentException("--documents, --users and --edit-rate must be positive");
+        }
+        return config;
+    }
+
+    /** Accepts 500ms, 30s, 5m or a bare number of seconds. */
+    static Duration parseDuration(String value) {
+        if (value.endsWith("ms")) return Duration.ofMillis(Long.parseLong(value.substring(0, value.length() - 2)));
+        if (value.endsWith("s")) return Duration.ofSeconds(Long.parseLong(value.substring(0, value.length() - 1)));
+        if (value.endsWith("m")) return Duration.ofMinutes(Long.parseLong(value.substring(0, value.length() - 1)));
+        return Duration.ofSeconds(Long.parseLong(value));
+    }
+}
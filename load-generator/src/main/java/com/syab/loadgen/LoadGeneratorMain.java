@@ -0,0 +1,101 @@
+package com.syab.loadgen;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Spins up documents x users simulated editors against the gateway (or document-editing-service
+ * directly), drives edits at a fixed rate and reports latency percentiles and throughput.
+ */
+public class LoadGeneratorMain {
+    private static final Pattern ID = Pattern.compile("\"id\"\\s*:\\s*(\\d+)");
+
+    public static void main(String[] args) throws Exception {
+        LoadConfig config;
+        try {
+            config = LoadConfig.parse(args);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            System.err.println(LoadConfig.USAGE);
+            System.exit(2);
+            return;
+        }
+
+        EmbeddedTarget embedded = null;
+        if (config.embedded() != LoadConfig.Embedded.NONE) {
+            embedded = EmbeddedTarget.start(config.embedded());
+            config = config.withTarget(embedded.baseUri());
+        }
+
+        int workers = Math.max(4, Runtime.getRuntime().availableProcessors());
+        ExecutorService httpExecutor = Executors.newFixedThreadPool(workers);
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(workers);
+        HttpClient http = HttpClient.newBuilder()
+                .executor(httpExecutor)
+                .connectTimeout(Duration.ofSeconds(10))
+                .version(HttpClient.Version.HTTP_1_1)
+                .build();
+        LoadMetrics metrics = new LoadMetrics();
+        PresenceTracker presence = new PresenceTracker();
+
+        try {
+            System.out.printf("Target %s: creating %d documents for %d editors%n",
+                    config.target(), config.documents(), config.totalEditors());
+            List<SimulatedEditor> editors = new ArrayList<>(config.totalEditors());
+            int index = 0;
+            for (int d = 0; d < config.documents(); d++) {
+                long documentId = createDocument(http, config.target(), "load-" + d);
+                for (int u = 1; u <= config.usersPerDocument(); u++) {
+                    editors.add(new SimulatedEditor(index++, documentId, u, config, http, scheduler, metrics, presence));
+                }
+            }
+
+            long rampNanos = config.rampUp().toNanos();
+            for (int i = 0; i < editors.size(); i++) {
+                long delay = editors.size() == 1 ? 0 : rampNanos * i / (editors.size() - 1);
+                scheduler.schedule(editors.get(i)::start, delay, TimeUnit.NANOSECONDS);
+            }
+            Thread.sleep(config.rampUp().toMillis() + 1_000);
+
+            System.out.printf("All editors started, measuring for %ds%n", config.duration().toSeconds());
+            metrics.startMeasuring();
+            Thread.sleep(config.duration().toMillis());
+            metrics.stopMeasuring();
+
+            editors.forEach(SimulatedEditor::stop);
+            metrics.printReport(config, System.out);
+            if (config.histogramDir() != null) {
+                metrics.writeHistograms(config.histogramDir());
+                System.out.println("Histograms written to " + config.histogramDir());
+            }
+        } finally {
+            scheduler.shutdownNow();
+            httpExecutor.shutdownNow();
+            if (embedded != null) embedded.close();
+        }
+        System.exit(0);
+    }
+
+    private static long createDocument(HttpClient http, URI target, String title) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(target.resolve("/api/documents?title=" + title + "&userId=1"))
+                .POST(HttpRequest.BodyPublishers.noBody())
+                .build();
+        HttpResponse<String> response = http.send(request, HttpResponse.BodyHandlers.ofString());
+        Matcher m = ID.matcher(response.body());
+        if (response.statusCode() / 100 != 2 || !m.find()) {
+            throw new IllegalStateException("Could not create document: HTTP " + response.statusCode() + " " + response.body());
+        }
+        return Long.parseLong(m.group(1));
+    }
+}
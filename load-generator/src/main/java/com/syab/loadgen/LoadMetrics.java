@@ -0,0 +1,110 @@
+package com.syab.loadgen;
+
+import org.HdrHistogram.ConcurrentHistogram;
+import org.HdrHistogram.Histogram;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Latency histograms and throughput counters shared by all simulated editors.
+ * Nothing is recorded until {@link #startMeasuring()} so ramp-up noise stays out of the results.
+ */
+public class LoadMetrics {
+    private static final long MAX_TRACKABLE_NANOS = TimeUnit.MINUTES.toNanos(10);
+
+    final Histogram wsDelivery = histogram();
+    final Histogram sseDelivery = histogram();
+    final Histogram presence = histogram();
+    final Histogram wsReconnect = histogram();
+    final Histogram sseReconnect = histogram();
+
+    final LongAdder editsSent = new LongAdder();
+    final LongAdder editsSkipped = new LongAdder();
+    final LongAdder wsMessages = new LongAdder();
+    final LongAdder sseEvents = new LongAdder();
+    final LongAdder errors = new LongAdder();
+
+    private volatile boolean measuring;
+    private volatile long startNanos;
+    private volatile long stopNanos;
+
+    private static Histogram histogram() {
+        return new ConcurrentHistogram(MAX_TRACKABLE_NANOS, 3);
+    }
+
+    public void startMeasuring() {
+        startNanos = System.nanoTime();
+        measuring = true;
+    }
+
+    public void stopMeasuring() {
+        stopNanos = System.nanoTime();
+        measuring = false;
+    }
+
+    public boolean measuring() {
+        return measuring;
+    }
+
+    void record(Histogram histogram, long nanos) {
+        if (measuring && nanos >= 0) {
+            histogram.recordValue(Math.min(nanos, MAX_TRACKABLE_NANOS));
+        }
+    }
+
+    void count(LongAdder counter) {
+        if (measuring) counter.increment();
+    }
+
+    private Map<String, Histogram> histograms() {
+        Map<String, Histogram> all = new LinkedHashMap<>();
+        all.put("edit->peer (ws)", wsDelivery);
+        all.put("edit->peer (sse)", sseDelivery);
+        all.put("presence propagation", presence);
+        all.put("reconnect (ws)", wsReconnect);
+        all.put("reconnect (sse)", sseReconnect);
+        return all;
+    }
+
+    public void printReport(LoadConfig config, PrintStream out) {
+        double seconds = Math.max(1, stopNanos - startNanos) / 1e9;
+        out.printf("%nLoad run: %d documents x %d users, %.2f edits/s per user, %.0fs measured%n",
+                config.documents(), config.usersPerDocument(), config.editsPerSecond(), seconds);
+        out.printf("%-22s %9s %9s %9s %9s %9s %9s%n", "latency (ms)", "count", "p50", "p90", "p99", "p99.9", "max");
+        histograms().forEach((name, h) -> {
+            if (h.getTotalCount() == 0) {
+                out.printf("%-22s %9d %9s %9s %9s %9s %9s%n", name, 0, "-", "-", "-", "-", "-");
+            } else {
+                out.printf("%-22s %9d %9.2f %9.2f %9.2f %9.2f %9.2f%n", name, h.getTotalCount(),
+                        ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                        ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+            }
+        });
+        out.printf("%nthroughput: %.1f edits/s sent, %.1f ws msgs/s, %.1f sse events/s received%n",
+                editsSent.sum() / seconds, wsMessages.sum() / seconds, sseEvents.sum() / seconds);
+        out.printf("edits skipped (previous send still pending): %d, errors: %d%n", editsSkipped.sum(), errors.sum());
+    }
+
+    public void writeHistograms(String dir) throws IOException {
+        Path path = Files.createDirectories(Path.of(dir));
+        for (Map.Entry<String, Histogram> entry : histograms().entrySet()) {
+            String file = entry.getKey().replaceAll("[^a-z]+", "-").replaceAll("-$", "") + ".hgrm";
+            try (PrintStream out = new PrintStream(new FileOutputStream(path.resolve(file).toFile()))) {
+                // values are recorded in nanoseconds; the .hgrm output is in milliseconds
+                entry.getValue().outputPercentileDistribution(out, 1_000_000.0);
+            }
+        }
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
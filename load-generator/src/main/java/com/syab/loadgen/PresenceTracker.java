@@ -0,0 +1,23 @@
+package com.syab.loadgen;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Remembers when each editor (re)joined a document so SSE receivers can measure how long it
+ * took until the join showed up in their presence list.
+ */
+class PresenceTracker {
+    private final Map<Long, Map<Long, Long>> joinedAt = new ConcurrentHashMap<>();
+
+    void joining(long documentId, long userId, long nanos) {
+        joinedAt.computeIfAbsent(documentId, k -> new ConcurrentHashMap<>()).put(userId, nanos);
+    }
+
+    /** Join time of {@code userId} on the document, or -1 if unknown. */
+    long joinedAt(long documentId, long userId) {
+        Map<Long, Long> users = joinedAt.get(documentId);
+        Long nanos = users == null ? null : users.get(userId);
+        return nanos == null ? -1 : nanos;
+    }
+}
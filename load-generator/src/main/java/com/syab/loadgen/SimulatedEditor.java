@@ -0,0 +1,269 @@
+package com.syab.loadgen;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.net.http.WebSocket;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One user editing one document: an optional WebSocket for edits and peer broadcasts, an
+ * optional SSE stream for document and presence events, a fixed edit rate and optional
+ * periodic reconnects.
+ */
+class SimulatedEditor {
+    private static final Duration RETRY_DELAY = Duration.ofSeconds(1);
+
+    private final int index;
+    private final long documentId;
+    private final long userId;
+    private final LoadConfig config;
+    private final HttpClient http;
+    private final ScheduledExecutorService scheduler;
+    private final LoadMetrics metrics;
+    private final PresenceTracker presenceTracker;
+
+    private volatile boolean running;
+    private volatile WebSocket webSocket;
+    private volatile CompletableFuture<?> pendingEdit = CompletableFuture.completedFuture(null);
+    private volatile SseSubscriber sse;
+    private volatile long sseReconnectStartedAt = -1;
+    // only touched from the SSE subscriber callbacks, which are serialized per connection
+    private Set<Long> visibleUsers;
+    private ScheduledFuture<?> editTask;
+    private ScheduledFuture<?> reconnectTask;
+
+    SimulatedEditor(int index, long documentId, long userId, LoadConfig config, HttpClient http,
+                    ScheduledExecutorService scheduler, LoadMetrics metrics, PresenceTracker presenceTracker) {
+        this.index = index;
+        this.documentId = documentId;
+        this.userId = userId;
+        this.config = config;
+        this.http = http;
+        this.scheduler = scheduler;
+        this.metrics = metrics;
+        this.presenceTracker = presenceTracker;
+    }
+
+    void start() {
+        running = true;
+        long now = System.nanoTime();
+        if (config.webSocket()) connectWebSocket(now, false);
+        if (config.sse()) connectSse(now, false);
+
+        long periodNanos = (long) (1_000_000_000L / config.editsPerSecond());
+        long initialDelay = ThreadLocalRandom.current().nextLong(periodNanos);
+        editTask = scheduler.scheduleAtFixedRate(this::sendEdit, initialDelay, periodNanos, TimeUnit.NANOSECONDS);
+
+        long reconnectNanos = config.reconnectInterval().toNanos();
+        if (reconnectNanos > 0) {
+            long jitter = ThreadLocalRandom.current().nextLong(reconnectNanos);
+            reconnectTask = scheduler.scheduleAtFixedRate(this::reconnect, reconnectNanos + jitter, reconnectNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    void stop() {
+        running = false;
+        if (editTask != null) editTask.cancel(false);
+        if (reconnectTask != null) reconnectTask.cancel(false);
+        WebSocket ws = webSocket;
+        if (ws != null) ws.sendClose(WebSocket.NORMAL_CLOSURE, "load run finished");
+        SseSubscriber subscriber = sse;
+        sse = null;
+        if (subscriber != null) subscriber.cancel();
+    }
+
+    private void sendEdit() {
+        if (!running) return;
+        if (!pendingEdit.isDone()) {
+            metrics.count(metrics.editsSkipped);
+            return;
+        }
+        String content = EditMarker.content(index, System.nanoTime(), config.contentLength());
+        if (config.webSocket()) {
+            WebSocket ws = webSocket;
+            if (ws == null) {
+                metrics.count(metrics.editsSkipped);
+                return;
+            }
+            String frame = "{\"documentId\":" + documentId + ",\"userId\":" + userId
+                    + ",\"content\":\"" + content + "\",\"operationType\":\"UPDATE\"}";
+            pendingEdit = ws.sendText(frame, true).exceptionally(this::failed);
+        } else {
+            HttpRequest request = HttpRequest.newBuilder(config.target().resolve("/api/documents/" + documentId + "/edit?userId=" + userId))
+                    .header("Content-Type", "application/json")
+                    .PUT(HttpRequest.BodyPublishers.ofString("{\"content\":\"" + content + "\",\"operationType\":\"UPDATE\"}"))
+                    .build();
+            pendingEdit = http.sendAsync(request, HttpResponse.BodyHandlers.discarding()).exceptionally(this::failed);
+        }
+        metrics.count(metrics.editsSent);
+    }
+
+    private void reconnect() {
+        if (!running) return;
+        long startedAt = System.nanoTime();
+        if (config.webSocket()) {
+            WebSocket ws = webSocket;
+            webSocket = null;
+            if (ws != null) ws.abort();
+            connectWebSocket(startedAt, true);
+        }
+        if (config.sse()) {
+            SseSubscriber subscriber = sse;
+            sse = null;
+            if (subscriber != null) subscriber.cancel();
+            connectSse(startedAt, true);
+        }
+    }
+
+    private void connectWebSocket(long startedAt, boolean reconnecting) {
+        URI uri = config.webSocketUri(documentId, userId);
+        http.newWebSocketBuilder()
+                .connectTimeout(Duration.ofSeconds(10))
+                .buildAsync(uri, new Listener())
+                .whenComplete((ws, error) -> {
+                    if (error != null) {
+                        failed(error);
+                        retry(() -> connectWebSocket(startedAt, reconnecting));
+                    } else {
+                        webSocket = ws;
+                        if (reconnecting) metrics.record(metrics.wsReconnect, System.nanoTime() - startedAt);
+                    }
+                });
+    }
+
+    private void connectSse(long startedAt, boolean reconnecting) {
+        presenceTracker.joining(documentId, userId, startedAt);
+        sseReconnectStartedAt = reconnecting ? startedAt : -1;
+        SseSubscriber subscriber = new SseSubscriber(this::onSseEvent, closed -> {
+            if (running && sse == closed) {
+                // dropped by the server rather than by us: count it as a reconnect
+                sse = null;
+                long droppedAt = System.nanoTime();
+                retry(() -> connectSse(droppedAt, true));
+            }
+        });
+        sse = subscriber;
+        visibleUsers = null;
+        HttpRequest request = HttpRequest.newBuilder(config.streamUri(documentId, userId))
+                .header("Accept", "text/event-stream")
+                .GET()
+                .build();
+        http.sendAsync(request, HttpResponse.BodyHandlers.fromLineSubscriber(subscriber))
+                .exceptionally(error -> {
+                    failed(error);
+                    return null;
+                });
+    }
+
+    private void onSseEvent(String event, String data) {
+        long now = System.nanoTime();
+        switch (event) {
+            case "init" -> {
+                long startedAt = sseReconnectStartedAt;
+                if (startedAt >= 0) {
+                    metrics.record(metrics.sseReconnect, now - startedAt);
+                    sseReconnectStartedAt = -1;
+                }
+            }
+            case "document" -> {
+                metrics.count(metrics.sseEvents);
+                if (EditMarker.editorIndex(data) != index) {
+                    metrics.record(metrics.sseDelivery, now - EditMarker.sendNanos(data));
+                }
+            }
+            case "presence" -> {
+                metrics.count(metrics.sseEvents);
+                onPresence(parseUserIds(data), now);
+            }
+            default -> metrics.count(metrics.sseEvents);
+        }
+    }
+
+    private void onPresence(Set<Long> users, long now) {
+        Set<Long> previous = visibleUsers;
+        visibleUsers = users;
+        // the first list after connecting is a snapshot, not a join we could time
+        if (previous == null) return;
+        for (Long user : users) {
+            if (user == userId || previous.contains(user)) continue;
+            long joinedAt = presenceTracker.joinedAt(documentId, user);
+            if (joinedAt >= 0) metrics.record(metrics.presence, now - joinedAt);
+        }
+    }
+
+    private static Set<Long> parseUserIds(String json) {
+        Set<Long> ids = new HashSet<>();
+        long value = 0;
+        boolean inNumber = false;
+        for (int i = 0; i < json.length(); i++) {
+            char c = json.charAt(i);
+            if (c >= '0' && c <= '9') {
+                value = value * 10 + (c - '0');
+                inNumber = true;
+            } else if (inNumber) {
+                ids.add(value);
+                value = 0;
+                inNumber = false;
+            }
+        }
+        if (inNumber) ids.add(value);
+        return ids;
+    }
+
+    private void retry(Runnable action) {
+        if (running) scheduler.schedule(action, RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private <T> T failed(Throwable error) {
+        metrics.errors.increment();
+        return null;
+    }
+
+    private class Listener implements WebSocket.Listener {
+        private final StringBuilder partial = new StringBuilder();
+
+        @Override
+        public CompletionStage<?> onText(WebSocket ws, CharSequence data, boolean last) {
+            partial.append(data);
+            if (last) {
+                String frame = partial.toString();
+                partial.setLength(0);
+                metrics.count(metrics.wsMessages);
+                long sentAt = EditMarker.sendNanos(frame);
+                if (sentAt >= 0) metrics.record(metrics.wsDelivery, System.nanoTime() - sentAt);
+            }
+            ws.request(1);
+            return null;
+        }
+
+        @Override
+        public CompletionStage<?> onClose(WebSocket ws, int statusCode, String reason) {
+            if (running && webSocket == ws) {
+                webSocket = null;
+                long droppedAt = System.nanoTime();
+                retry(() -> connectWebSocket(droppedAt, true));
+            }
+            return null;
+        }
+
+        @Override
+        public void onError(WebSocket ws, Throwable error) {
+            if (webSocket == ws) {
+                failed(error);
+                webSocket = null;
+                long droppedAt = System.nanoTime();
+                retry(() -> connectWebSocket(droppedAt, true));
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.syab.loadgen;
+
+import java.util.concurrent.Flow;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Minimal text/event-stream parser on top of the JDK HttpClient line subscriber.
+ * Collects {@code event:} / {@code data:} lines and hands each complete event to the callback,
+ * without holding a thread per connection.
+ */
+class SseSubscriber implements Flow.Subscriber<String> {
+    private final BiConsumer<String, String> onEvent;
+    private final Consumer<SseSubscriber> onClosed;
+    private volatile Flow.Subscription subscription;
+    private String event = "message";
+    private final StringBuilder data = new StringBuilder();
+
+    SseSubscriber(BiConsumer<String, String> onEvent, Consumer<SseSubscriber> onClosed) {
+        this.onEvent = onEvent;
+        this.onClosed = onClosed;
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(Long.MAX_VALUE);
+    }
+
+    @Override
+    public void onNext(String line) {
+        if (line.isEmpty()) {
+            if (data.length() > 0) {
+                onEvent.accept(event, data.toString());
+            }
+            event = "message";
+            data.setLength(0);
+        } else if (line.startsWith("event:")) {
+            event = line.substring(6).trim();
+        } else if (line.startsWith("data:")) {
+            if (data.length() > 0) data.append('\n');
+            data.append(line, line.startsWith("data: ") ? 6 : 5, line.length());
+        }
+        // comments (":...") and other fields are ignored
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        onClosed.accept(this);
+    }
+
+    @Override
+    public void onComplete() {
+        onClosed.accept(this);
+    }
+
+    void cancel() {
+        Flow.Subscription s = subscription;
+        if (s != null) s.cancel();
+    }
+}
@@ -1,5 +1,7 @@
 package com.syab.usermanagement.config;
 
+import com.syab.usermanagement.password.PasswordHasher;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.security.config.annotation.web.builders.HttpSecurity;
@@ -9,6 +11,8 @@ import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
 
+import java.time.Duration;
+
 @Configuration
 public class SecurityConfig {
 
@@ -32,8 +36,13 @@ public class SecurityConfig {
         return http.build();
     }
 
+    /**
+     * BCrypt at {@code collab.auth.password.cost}, or when that is 0 at the highest cost that hashes
+     * within {@code target} on this machine. Hashes made at a lower cost are upgraded at login.
+     */
     @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder();
+    public PasswordEncoder passwordEncoder(@Value("${collab.auth.password.cost:0}") int cost,
+                                           @Value("${collab.auth.password.target:100ms}") Duration target) {
+        return new BCryptPasswordEncoder(cost > 0 ? cost : PasswordHasher.calibrateCost(target));
     }
 }
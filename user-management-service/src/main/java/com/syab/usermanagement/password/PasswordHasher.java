@@ -0,0 +1,134 @@
+package com.syab.usermanagement.password;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs password hashing and verification on a pool of one thread per core, so a burst of logins
+ * cannot take more CPU than the machine has, nor every request thread: callers wait in a bounded
+ * queue, and once it is full, or a caller has waited {@code max-wait}, they get
+ * {@link PasswordHasherBusyException} (503) at once.
+ */
+@Component
+public class PasswordHasher {
+    private static final Logger log = LoggerFactory.getLogger(PasswordHasher.class);
+    // the floor OWASP recommends for BCrypt, and a ceiling that keeps a bad calibration usable
+    private static final int MIN_COST = 10;
+    private static final int MAX_COST = 16;
+
+    private final PasswordEncoder passwordEncoder;
+    private final long maxWaitNanos;
+    private final ThreadPoolExecutor workers;
+    private final Timer waitTimer;
+    private final Counter rejected;
+
+    public PasswordHasher(PasswordEncoder passwordEncoder,
+                          @Value("${collab.auth.password.threads:0}") int threads,
+                          @Value("${collab.auth.password.queue-capacity:64}") int queueCapacity,
+                          @Value("${collab.auth.password.max-wait:3s}") Duration maxWait,
+                          MeterRegistry meterRegistry) {
+        this.passwordEncoder = passwordEncoder;
+        this.maxWaitNanos = maxWait.toNanos();
+        int size = threads > 0 ? threads : Runtime.getRuntime().availableProcessors();
+        AtomicInteger count = new AtomicInteger();
+        this.workers = new ThreadPoolExecutor(size, size, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "password-hash-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.waitTimer = Timer.builder("collab.auth.password.wait")
+                .description("Time a password hash waited for a worker")
+                .register(meterRegistry);
+        this.rejected = Counter.builder("collab.auth.password.rejected").register(meterRegistry);
+        Gauge.builder("collab.auth.password.queue", workers.getQueue(), Collection::size).register(meterRegistry);
+    }
+
+    /**
+     * The largest BCrypt cost from {@value #MIN_COST} to {@value #MAX_COST} whose hash takes no
+     * longer than {@code target} on this machine. Each step up doubles the work.
+     */
+    public static int calibrateCost(Duration target) {
+        BCryptPasswordEncoder probe = new BCryptPasswordEncoder(MIN_COST);
+        long best = Long.MAX_VALUE;
+        // best of three, past the first run's class loading and JIT
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            probe.encode("calibration");
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        int cost = MIN_COST;
+        for (long nanos = best * 2; cost < MAX_COST && nanos <= target.toNanos(); nanos *= 2) {
+            cost++;
+        }
+        log.info("BCrypt cost {} chosen for a {} ms target (cost {} took {} ms)", cost, target.toMillis(), MIN_COST,
+                best / 1_000_000);
+        return cost;
+    }
+
+    public boolean matches(String rawPassword, String encodedPassword) {
+        return run(() -> passwordEncoder.matches(rawPassword, encodedPassword));
+    }
+
+    public String encode(String rawPassword) {
+        return run(() -> passwordEncoder.encode(rawPassword));
+    }
+
+    /** Whether a hash was made at a lower cost than the current one; answered without hashing. */
+    public boolean needsRehash(String encodedPassword) {
+        return passwordEncoder.upgradeEncoding(encodedPassword);
+    }
+
+    private <T> T run(Callable<T> task) {
+        long queued = System.nanoTime();
+        Future<T> future;
+        try {
+            future = workers.submit(() -> {
+                waitTimer.record(System.nanoTime() - queued, TimeUnit.NANOSECONDS);
+                return task.call();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.increment();
+            throw new PasswordHasherBusyException("Too many logins in progress, try again shortly");
+        }
+        try {
+            return future.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            rejected.increment();
+            throw new PasswordHasherBusyException("Too many logins in progress, try again shortly");
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new PasswordHasherBusyException("Interrupted while waiting for a password hash");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException cause) throw cause;
+            throw new IllegalStateException("Password hashing failed", e.getCause());
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        workers.shutdownNow();
+    }
+}
@@ -0,0 +1,11 @@
+package com.syab.usermanagement.password;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class PasswordHasherBusyException extends RuntimeException {
+    public PasswordHasherBusyException(String message) {
+        super(message);
+    }
+}
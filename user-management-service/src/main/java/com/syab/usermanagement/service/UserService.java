@@ -5,23 +5,35 @@ import com.syab.usermanagement.dto.AuthResponse;
 import com.syab.usermanagement.dto.UserDTO;
 import com.syab.usermanagement.dto.UserRegistrationRequest;
 import com.syab.usermanagement.model.User;
+import com.syab.usermanagement.password.PasswordHasher;
+import com.syab.usermanagement.password.PasswordHasherBusyException;
 import com.syab.usermanagement.repository.UserRepository;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
 import java.util.Optional;
 
 @Service
 @Transactional
 public class UserService {
+    private static final Logger log = LoggerFactory.getLogger(UserService.class);
+
     private final UserRepository userRepository;
-    private final PasswordEncoder passwordEncoder;
+    private final PasswordHasher passwordHasher;
     private final JwtService jwtService;
+    private final Timer passwordVerifyTimer;
 
-    public UserService(UserRepository userRepository, PasswordEncoder passwordEncoder, JwtService jwtService) {
+    public UserService(UserRepository userRepository, PasswordHasher passwordHasher, JwtService jwtService, MeterRegistry meterRegistry) {
         this.userRepository = userRepository;
-        this.passwordEncoder = passwordEncoder;
+        this.passwordHasher = passwordHasher;
         this.jwtService = jwtService;
+        this.passwordVerifyTimer = Timer.builder("collab.auth.password.verify")
+                .description("BCrypt verification in authenticateUser, including the wait for a worker")
+                .register(meterRegistry);
     }
 
     /**
@@ -38,7 +50,7 @@ public class UserService {
         User user = new User();
         user.setUsername(request.getUsername());
         user.setEmail(request.getEmail());
-        user.setPassword(passwordEncoder.encode(request.getPassword()));
+        user.setPassword(passwordHasher.encode(request.getPassword()));
         user.setFirstName(request.getFirstName());
         user.setLastName(request.getLastName());
         user.setIsActive(true);
@@ -49,7 +61,10 @@ public class UserService {
 
     /**
      * Operation 2: User Authentication
+     * Runs outside a transaction, so no connection is held while the password is checked. A hash
+     * made at a lower cost than the current one is replaced by a new one.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public AuthResponse authenticateUser(AuthRequest request) {
         Optional<User> userOptional = userRepository.findByUsername(request.getUsername());
         
@@ -58,14 +73,30 @@ public class UserService {
         }
 
         User user = userOptional.get();
-        if (!passwordEncoder.matches(request.getPassword(), user.getPassword())) {
+        boolean matches = passwordVerifyTimer.record(() -> passwordHasher.matches(request.getPassword(), user.getPassword()));
+        if (!matches) {
             throw new IllegalArgumentException("Invalid username or password");
         }
+        if (passwordHasher.needsRehash(user.getPassword())) {
+            rehash(user, request.getPassword());
+        }
 
         String token = jwtService.generateToken(user);
         return new AuthResponse(token, convertToDTO(user));
     }
 
+    // best effort: the login succeeds either way, and the next one tries again
+    private void rehash(User user, String rawPassword) {
+        try {
+            String hash = passwordHasher.encode(rawPassword);
+            if (userRepository.replacePasswordHash(user.getId(), user.getPassword(), hash) > 0) {
+                user.setPassword(hash);
+            }
+        } catch (PasswordHasherBusyException e) {
+            log.debug("Password rehash for user {} skipped under load", user.getId());
+        }
+    }
+
     /**
      * Operation 3: User Profile Management (Get user profile)
      */
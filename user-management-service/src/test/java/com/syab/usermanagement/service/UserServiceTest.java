@@ -5,16 +5,32 @@ import com.syab.usermanagement.dto.AuthResponse;
 import com.syab.usermanagement.dto.UserDTO;
 import com.syab.usermanagement.dto.UserRegistrationRequest;
 import com.syab.usermanagement.model.User;
+import com.syab.usermanagement.password.PasswordHasher;
+import com.syab.usermanagement.password.PasswordHasherBusyException;
 import com.syab.usermanagement.repository.UserRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
@@ -22,15 +38,22 @@ import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
 class UserServiceTest {
+    private static final Logger log = LoggerFactory.getLogger(UserServiceTest.class);
+
     @Mock
     private UserRepository userRepository;
 
-    @Mock
-    private PasswordEncoder passwordEncoder;
+    private final PasswordEncoder passwordEncoder = mock(PasswordEncoder.class);
+
+    @Spy
+    private PasswordHasher passwordHasher = new PasswordHasher(passwordEncoder, 2, 8, Duration.ofSeconds(5), new SimpleMeterRegistry());
 
     @Mock
     private JwtService jwtService;
 
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
     @InjectMocks
     private UserService userService;
 
@@ -43,6 +66,11 @@ class UserServiceTest {
         user = new User(1L, "testuser", "test@example.com", "encodedPassword", "Test", "User", true, null, null);
     }
 
+    @AfterEach
+    void tearDown() {
+        passwordHasher.close();
+    }
+
     @Test
     void testRegisterUserSuccess() {
         when(userRepository.existsByUsername("testuser")).thenReturn(false);
@@ -89,6 +117,115 @@ class UserServiceTest {
         assertThrows(IllegalArgumentException.class, () -> userService.authenticateUser(authRequest));
     }
 
+    @Test
+    void testAuthenticateUserRehashesPasswordMadeAtLowerCost() {
+        AuthRequest authRequest = new AuthRequest("testuser", "password123");
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        when(passwordEncoder.matches("password123", "encodedPassword")).thenReturn(true);
+        when(passwordEncoder.upgradeEncoding("encodedPassword")).thenReturn(true);
+        when(passwordEncoder.encode("password123")).thenReturn("strongerPassword");
+        when(userRepository.replacePasswordHash(1L, "encodedPassword", "strongerPassword")).thenReturn(1);
+        when(jwtService.generateToken(user)).thenReturn("jwtToken");
+
+        AuthResponse result = userService.authenticateUser(authRequest);
+
+        assertEquals("jwtToken", result.getToken());
+        assertEquals("strongerPassword", user.getPassword());
+        verify(userRepository).replacePasswordHash(1L, "encodedPassword", "strongerPassword");
+    }
+
+    @Test
+    void testAuthenticateUserShedWhenHashingQueueIsFull() throws Exception {
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder slowEncoder = mock(PasswordEncoder.class);
+        when(slowEncoder.matches("password123", "encodedPassword")).thenAnswer(invocation -> {
+            started.countDown();
+            return release.await(10, TimeUnit.SECONDS);
+        });
+        SimpleMeterRegistry hasherMetrics = new SimpleMeterRegistry();
+        PasswordHasher busyHasher = new PasswordHasher(slowEncoder, 1, 1, Duration.ofSeconds(10), hasherMetrics);
+        UserService busyService = new UserService(userRepository, busyHasher, jwtService, meterRegistry);
+        AuthRequest authRequest = new AuthRequest("testuser", "password123");
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(user));
+        when(jwtService.generateToken(user)).thenReturn("jwtToken");
+
+        ExecutorService callers = Executors.newFixedThreadPool(2);
+        try {
+            // one login hashing, one queued behind it: the next is turned away without waiting
+            Future<AuthResponse> running = callers.submit(() -> busyService.authenticateUser(authRequest));
+            assertTrue(started.await(10, TimeUnit.SECONDS));
+            Future<AuthResponse> queued = callers.submit(() -> busyService.authenticateUser(authRequest));
+            while (hasherMetrics.get("collab.auth.password.queue").gauge().value() < 1) {
+                Thread.sleep(5);
+            }
+
+            assertThrows(PasswordHasherBusyException.class, () -> busyService.authenticateUser(authRequest));
+            assertEquals(1.0, hasherMetrics.get("collab.auth.password.rejected").counter().count());
+
+            release.countDown();
+            assertEquals("jwtToken", running.get(10, TimeUnit.SECONDS).getToken());
+            assertEquals("jwtToken", queued.get(10, TimeUnit.SECONDS).getToken());
+        } finally {
+            release.countDown();
+            callers.shutdownNow();
+            busyHasher.close();
+        }
+    }
+
+    @Test
+    void testConcurrentLoginsOnHashingPool() throws Exception {
+        // real BCrypt at its lowest cost, so the run exercises the pool rather than the hash
+        BCryptPasswordEncoder bcrypt = new BCryptPasswordEncoder(4);
+        int threads = Runtime.getRuntime().availableProcessors();
+        int callers = threads * 4;
+        int loginsPerCaller = 50;
+        SimpleMeterRegistry hasherMetrics = new SimpleMeterRegistry();
+        // every caller can queue, so nothing should be shed
+        PasswordHasher hasher = new PasswordHasher(bcrypt, threads, callers, Duration.ofSeconds(30), hasherMetrics);
+        UserService benchService = new UserService(userRepository, hasher, jwtService, meterRegistry);
+        User stored = new User(1L, "testuser", "test@example.com", bcrypt.encode("password123"), "Test", "User", true, null, null);
+        when(userRepository.findByUsername("testuser")).thenReturn(Optional.of(stored));
+        when(jwtService.generateToken(stored)).thenReturn("jwtToken");
+        AuthRequest authRequest = new AuthRequest("testuser", "password123");
+
+        // the same checks on the calling thread, without the pool
+        long baselineStart = System.nanoTime();
+        for (int i = 0; i < loginsPerCaller; i++) {
+            assertTrue(bcrypt.matches("password123", stored.getPassword()));
+        }
+        double baselinePerSecond = loginsPerCaller / ((System.nanoTime() - baselineStart) / 1e9);
+
+        ExecutorService pool = Executors.newFixedThreadPool(callers);
+        try {
+            long start = System.nanoTime();
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < callers; i++) {
+                results.add(pool.submit(() -> {
+                    int ok = 0;
+                    for (int j = 0; j < loginsPerCaller; j++) {
+                        if ("jwtToken".equals(benchService.authenticateUser(authRequest).getToken())) ok++;
+                    }
+                    return ok;
+                }));
+            }
+            int succeeded = 0;
+            for (Future<Integer> result : results) {
+                succeeded += result.get(60, TimeUnit.SECONDS);
+            }
+            long elapsedNanos = System.nanoTime() - start;
+
+            assertEquals(callers * loginsPerCaller, succeeded);
+            assertEquals(0.0, hasherMetrics.get("collab.auth.password.rejected").counter().count());
+            // logged rather than asserted: timings on a shared machine are too noisy to compare
+            log.info("{} logins through the pool at {} logins/s, one thread checks {} logins/s", succeeded,
+                    Math.round(succeeded / (elapsedNanos / 1e9)), Math.round(baselinePerSecond));
+        } finally {
+            pool.shutdownNow();
+            hasher.close();
+        }
+    }
+
     @Test
     void testGetUserProfileSuccess() {
         when(userRepository.findById(1L)).thenReturn(Optional.of(user));
@@ -0,0 +1,223 @@
+package com.syab.versioncontrol.blame;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Who wrote each character of a document, as runs of consecutive characters by one user. Runs are
+ * kept in an implicit treap: ordered by position, with each node knowing the length of its subtree,
+ * so a position is found by walking down from the root. Replacing a range of text splits the tree
+ * around it, drops what was removed and joins the rest around the new run, which costs O(log n)
+ * expected for n runs however long the document is. Neighbouring runs by the same user are merged.
+ */
+public final class AuthorshipIndex {
+    /** Author of text written before authorship was tracked. */
+    public static final long UNKNOWN = -1;
+
+    private Node root;
+
+    public record Run(int start, int length, long userId) {
+    }
+
+    private AuthorshipIndex(Node root) {
+        this.root = root;
+    }
+
+    /** A document of {@code length} characters by no known author. */
+    public static AuthorshipIndex unattributed(int length) {
+        return new AuthorshipIndex(length > 0 ? new Node(UNKNOWN, length) : null);
+    }
+
+    public int length() {
+        return total(root);
+    }
+
+    public int runCount() {
+        return runs(root);
+    }
+
+    /**
+     * Replaces {@code removed} characters at {@code offset} with {@code inserted} characters written
+     * by {@code userId}.
+     *
+     * @throws IllegalArgumentException if the range is not inside the text
+     */
+    public void splice(int offset, int removed, int inserted, long userId) {
+        if (offset < 0 || removed < 0 || inserted < 0 || (long) offset + removed > length()) {
+            throw new IllegalArgumentException("Splice " + offset + "+" + removed + " outside text of length " + length());
+        }
+        Node[] head = split(root, offset);
+        Node left = head[0];
+        Node right = split(head[1], removed)[1];
+        if (inserted > 0) {
+            if (left != null && last(left).userId == userId) {
+                extendLast(left, inserted);
+            } else {
+                left = join(left, new Node(userId, inserted));
+            }
+        }
+        // the edit may have brought two runs by the same user together
+        if (left != null && right != null) {
+            Node first = first(right);
+            if (first.userId == last(left).userId) {
+                int length = first.length;
+                right = split(right, length)[1];
+                extendLast(left, length);
+            }
+        }
+        root = join(left, right);
+    }
+
+    /** Runs in text order. */
+    public List<Run> runs() {
+        List<Run> runs = new ArrayList<>(runCount());
+        Deque<Node> path = new ArrayDeque<>();
+        int position = 0;
+        for (Node node = root; node != null || !path.isEmpty(); node = node.right) {
+            while (node != null) {
+                path.push(node);
+                node = node.left;
+            }
+            node = path.pop();
+            runs.add(new Run(position, node.length, node.userId));
+            position += node.length;
+        }
+        return runs;
+    }
+
+    /** Runs as (author + 1, length) varint pairs. */
+    public byte[] toBytes() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(runCount() * 3);
+        for (Run run : runs()) {
+            writeVarint(out, run.userId() + 1);
+            writeVarint(out, run.length());
+        }
+        return out.toByteArray();
+    }
+
+    public static AuthorshipIndex fromBytes(byte[] data) {
+        Node root = null;
+        int[] pos = {0};
+        while (pos[0] < data.length) {
+            long userId = readVarint(data, pos) - 1;
+            root = join(root, new Node(userId, (int) readVarint(data, pos)));
+        }
+        return new AuthorshipIndex(root);
+    }
+
+    /** Splits into the first {@code position} characters and the rest, cutting a run if needed. */
+    private static Node[] split(Node node, int position) {
+        if (node == null) return new Node[]{null, null};
+        int leftLength = total(node.left);
+        if (position <= leftLength) {
+            Node[] parts = split(node.left, position);
+            node.left = parts[1];
+            update(node);
+            return new Node[]{parts[0], node};
+        }
+        if (position >= leftLength + node.length) {
+            Node[] parts = split(node.right, position - leftLength - node.length);
+            node.right = parts[0];
+            update(node);
+            return new Node[]{node, parts[1]};
+        }
+        // inside this run; the tail takes over the right subtree and, to keep the heap order, the priority
+        int cut = position - leftLength;
+        Node tail = new Node(node.userId, node.length - cut, node.priority);
+        tail.right = node.right;
+        node.right = null;
+        node.length = cut;
+        update(tail);
+        update(node);
+        return new Node[]{node, tail};
+    }
+
+    /** Joins two trees, all of {@code a} coming before {@code b}. */
+    private static Node join(Node a, Node b) {
+        if (a == null) return b;
+        if (b == null) return a;
+        if (a.priority > b.priority) {
+            a.right = join(a.right, b);
+            update(a);
+            return a;
+        }
+        b.left = join(a, b.left);
+        update(b);
+        return b;
+    }
+
+    private static void extendLast(Node node, int length) {
+        if (node.right != null) {
+            extendLast(node.right, length);
+        } else {
+            node.length += length;
+        }
+        update(node);
+    }
+
+    private static Node first(Node node) {
+        while (node.left != null) node = node.left;
+        return node;
+    }
+
+    private static Node last(Node node) {
+        while (node.right != null) node = node.right;
+        return node;
+    }
+
+    private static int total(Node node) {
+        return node == null ? 0 : node.total;
+    }
+
+    private static int runs(Node node) {
+        return node == null ? 0 : node.runs;
+    }
+
+    private static void update(Node node) {
+        node.total = total(node.left) + node.length + total(node.right);
+        node.runs = runs(node.left) + 1 + runs(node.right);
+    }
+
+    static void writeVarint(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    static long readVarint(byte[] data, int[] pos) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+
+    private static final class Node {
+        final long userId;
+        final int priority;
+        int length;
+        int total;
+        int runs;
+        Node left;
+        Node right;
+
+        Node(long userId, int length) {
+            this(userId, length, ThreadLocalRandom.current().nextInt());
+        }
+
+        Node(long userId, int length, int priority) {
+            this.userId = userId;
+            this.length = length;
+            this.priority = priority;
+            this.total = length;
+            this.runs = 1;
+        }
+    }
+}
@@ -0,0 +1,239 @@
+package com.syab.versioncontrol.blame;
+
+import com.syab.versioncontrol.dto.EditSpliceDTO;
+import com.syab.versioncontrol.model.AuthorshipSplices;
+import com.syab.versioncontrol.model.DocumentAuthorship;
+import com.syab.versioncontrol.repository.AuthorshipSplicesRepository;
+import com.syab.versioncontrol.repository.DocumentAuthorshipRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * Keeps each document's {@link AuthorshipIndex} up to date from the edits reported with its
+ * checkpoints, and stores it so it survives restarts. An index that does not fit a checkpoint (edits
+ * lost on the way, or a document with no tracked history) starts over with the whole text unattributed.
+ * <p>
+ * A checkpoint with s edits costs O(s log n) for n runs when the document's index is in memory: the
+ * cached index is changed in place, and only the edits are stored, as {@link AuthorshipSplices}. Every
+ * {@code compact-every} checkpoints the whole index is written instead, in O(n), and the stored edits
+ * are dropped. Loading an index that is not in memory reads the runs and replays the edits since.
+ * <p>
+ * Recently used indexes stay in memory, in an LRU bounded by their number of runs; the stored revision
+ * tells whether a cached one is still current, so several instances can share the table.
+ */
+@Component
+public class AuthorshipTracker {
+    private static final Logger log = LoggerFactory.getLogger(AuthorshipTracker.class);
+
+    private final DocumentAuthorshipRepository authorshipRepository;
+    private final AuthorshipSplicesRepository splicesRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final long cacheMaxRuns;
+    private final int compactEvery;
+    // a document's index is changed and read under its lock
+    private final Object[] locks = new Object[64];
+    private final LinkedHashMap<Long, Snapshot> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedRuns;
+    private final Counter resets;
+
+    /** Who wrote each character of version {@code versionNumber}. */
+    public record Authorship(int versionNumber, List<AuthorshipIndex.Run> runs) {
+    }
+
+    // pending: checkpoints stored as splices since the runs were last written
+    private record Snapshot(long revision, int versionNumber, AuthorshipIndex index, int pending) {
+    }
+
+    public AuthorshipTracker(DocumentAuthorshipRepository authorshipRepository,
+                             AuthorshipSplicesRepository splicesRepository,
+                             PlatformTransactionManager transactionManager,
+                             @Value("${collab.versions.blame.cache-max-runs:1000000}") long cacheMaxRuns,
+                             @Value("${collab.versions.blame.compact-every:32}") int compactEvery,
+                             MeterRegistry meterRegistry) {
+        this.authorshipRepository = authorshipRepository;
+        this.splicesRepository = splicesRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.cacheMaxRuns = cacheMaxRuns;
+        this.compactEvery = Math.max(1, compactEvery);
+        this.resets = Counter.builder("collab.version.blame.resets").register(meterRegistry);
+        for (int i = 0; i < locks.length; i++) locks[i] = new Object();
+    }
+
+    /**
+     * Applies the edits of one checkpoint, in order, and records the result as the authorship of
+     * {@code versionNumber}. Failures are logged, not thrown: the checkpoint itself has been applied.
+     *
+     * @param length length of the checkpoint's text, which the edits must lead to
+     */
+    public void apply(long documentId, int versionNumber, int length, List<EditSpliceDTO> splices) {
+        synchronized (lock(documentId)) {
+            try {
+                Snapshot updated = transactionTemplate.execute(status -> update(documentId, versionNumber, length, splices));
+                remember(documentId, updated);
+            } catch (RuntimeException e) {
+                // the cached index may hold edits that were rolled back
+                forget(documentId);
+                log.warn("Authorship of document {} not updated: {}", documentId, e.getMessage());
+            }
+        }
+    }
+
+    private Snapshot update(long documentId, int versionNumber, int length, List<EditSpliceDTO> splices) {
+        Optional<Long> revision = authorshipRepository.findRevision(documentId);
+        Snapshot current = revision.isPresent() ? current(documentId, revision.get()) : null;
+        // the cached index itself, changed in place; its run count changes, so it leaves the LRU meanwhile
+        forget(documentId);
+        AuthorshipIndex index = current != null ? current.index() : untracked(length, splices);
+        boolean reset = !replay(index, splices, length);
+        if (reset) {
+            resets.increment();
+            log.debug("Authorship of document {} does not match its checkpoint, starting over", documentId);
+            index = AuthorshipIndex.unattributed(length);
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (current == null) {
+            DocumentAuthorship row = authorshipRepository.saveAndFlush(
+                    new DocumentAuthorship(documentId, versionNumber, index.toBytes(), null, now, 0L));
+            return new Snapshot(row.getRevision(), versionNumber, index, 0);
+        }
+        long next = revision.get() + 1;
+        int pending = current.pending() + 1;
+        if (reset || pending >= compactEvery) {
+            if (authorshipRepository.update(documentId, revision.get(), versionNumber, index.toBytes(), now) == 0) {
+                throw concurrentChange(documentId);
+            }
+            splicesRepository.deleteUpTo(documentId, next);
+            return new Snapshot(next, versionNumber, index, 0);
+        }
+        if (authorshipRepository.advance(documentId, revision.get(), versionNumber, now) == 0) {
+            throw concurrentChange(documentId);
+        }
+        splicesRepository.insert(documentId, next, encode(splices));
+        return new Snapshot(next, versionNumber, index, pending);
+    }
+
+    private static OptimisticLockingFailureException concurrentChange(long documentId) {
+        return new OptimisticLockingFailureException("Authorship of document " + documentId + " changed concurrently");
+    }
+
+    /** The latest recorded authorship of a document, if any edits of it have been attributed. */
+    public Optional<Authorship> find(long documentId) {
+        synchronized (lock(documentId)) {
+            return authorshipRepository.findRevision(documentId).map(revision -> {
+                Snapshot snapshot = current(documentId, revision);
+                return new Authorship(snapshot.versionNumber(), snapshot.index().runs());
+            });
+        }
+    }
+
+    private Object lock(long documentId) {
+        return locks[(int) Math.floorMod(documentId, (long) locks.length)];
+    }
+
+    private Snapshot current(long documentId, long revision) {
+        Snapshot cached = lookup(documentId);
+        if (cached != null && cached.revision() == revision) {
+            return cached;
+        }
+        DocumentAuthorship row = authorshipRepository.findById(documentId)
+                .orElseThrow(() -> new IllegalStateException("Authorship of document " + documentId + " disappeared"));
+        AuthorshipIndex index = AuthorshipIndex.fromBytes(row.getRuns());
+        List<AuthorshipSplices> since = row.getRunsRevision() == null ? List.of()
+                : splicesRepository.findByDocumentIdAndRevisionGreaterThanOrderByRevisionAsc(documentId, row.getRunsRevision());
+        for (AuthorshipSplices checkpoint : since) {
+            List<EditSpliceDTO> splices = decode(checkpoint.getSplices());
+            if (!replay(index, splices, (int) (index.length() + delta(splices)))) {
+                throw new IllegalStateException("Stored edits of document " + documentId + " do not fit its authorship");
+            }
+        }
+        Snapshot loaded = new Snapshot(row.getRevision(), row.getVersionNumber(), index, since.size());
+        remember(documentId, loaded);
+        return loaded;
+    }
+
+    /** Index for a document seen for the first time: whatever text preceded these edits has no known author. */
+    private static AuthorshipIndex untracked(int length, List<EditSpliceDTO> splices) {
+        return AuthorshipIndex.unattributed((int) Math.max(0, length - delta(splices)));
+    }
+
+    // how much the edits lengthen the text
+    private static long delta(List<EditSpliceDTO> splices) {
+        long delta = 0;
+        for (EditSpliceDTO splice : splices) {
+            delta += splice.getInserted() - splice.getRemoved();
+        }
+        return delta;
+    }
+
+    private static byte[] encode(List<EditSpliceDTO> splices) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(splices.size() * 8);
+        for (EditSpliceDTO splice : splices) {
+            AuthorshipIndex.writeVarint(out, splice.getOffset());
+            AuthorshipIndex.writeVarint(out, splice.getRemoved());
+            AuthorshipIndex.writeVarint(out, splice.getInserted());
+            AuthorshipIndex.writeVarint(out, splice.getUserId() + 1);
+        }
+        return out.toByteArray();
+    }
+
+    private static List<EditSpliceDTO> decode(byte[] data) {
+        List<EditSpliceDTO> splices = new ArrayList<>();
+        int[] pos = {0};
+        while (pos[0] < data.length) {
+            int offset = (int) AuthorshipIndex.readVarint(data, pos);
+            int removed = (int) AuthorshipIndex.readVarint(data, pos);
+            int inserted = (int) AuthorshipIndex.readVarint(data, pos);
+            long userId = AuthorshipIndex.readVarint(data, pos) - 1;
+            splices.add(new EditSpliceDTO(offset, removed, inserted, userId));
+        }
+        return splices;
+    }
+
+    private static boolean replay(AuthorshipIndex index, List<EditSpliceDTO> splices, int length) {
+        try {
+            for (EditSpliceDTO splice : splices) {
+                index.splice(splice.getOffset(), splice.getRemoved(), splice.getInserted(), splice.getUserId());
+            }
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+        return index.length() == length;
+    }
+
+    private synchronized Snapshot lookup(long documentId) {
+        return cache.get(documentId);
+    }
+
+    private synchronized void remember(long documentId, Snapshot snapshot) {
+        forget(documentId);
+        int runs = snapshot.index().runCount();
+        if (runs > cacheMaxRuns) return;
+        cache.put(documentId, snapshot);
+        cachedRuns += runs;
+        Iterator<Snapshot> eldest = cache.values().iterator();
+        while (cachedRuns > cacheMaxRuns && eldest.hasNext()) {
+            cachedRuns -= eldest.next().index().runCount();
+            eldest.remove();
+        }
+    }
+
+    private synchronized void forget(long documentId) {
+        Snapshot old = cache.remove(documentId);
+        if (old != null) cachedRuns -= old.index().runCount();
+    }
+}
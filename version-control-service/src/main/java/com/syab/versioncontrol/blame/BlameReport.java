@@ -0,0 +1,107 @@
+package com.syab.versioncontrol.blame;
+
+import com.syab.versioncontrol.dto.AuthorStatsDTO;
+import com.syab.versioncontrol.dto.BlameDTO;
+import com.syab.versioncontrol.dto.BlameLinesDTO;
+import com.syab.versioncontrol.dto.BlameRangeDTO;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Turns the runs of an {@link AuthorshipIndex} and the text they describe into a blame: character
+ * ranges, line ranges and per-author totals. A line belongs to whoever wrote most of its characters,
+ * its newline included. One pass over the text.
+ */
+public final class BlameReport {
+    private BlameReport() {
+    }
+
+    public static BlameDTO of(Long documentId, int versionNumber, List<AuthorshipIndex.Run> runs, String text) {
+        List<BlameRangeDTO> ranges = new ArrayList<>(runs.size());
+        Map<Long, AuthorStatsDTO> authors = new LinkedHashMap<>();
+        for (AuthorshipIndex.Run run : runs) {
+            int start = Math.min(run.start(), text.length());
+            int end = Math.min(run.start() + run.length(), text.length());
+            ranges.add(new BlameRangeDTO(start, end, userId(run.userId())));
+            AuthorStatsDTO stats = author(authors, run.userId());
+            stats.setChars(stats.getChars() + end - start);
+            stats.setBytes(stats.getBytes() + utf8Length(text, start, end));
+        }
+        List<BlameLinesDTO> lines = attributeLines(runs, text, authors);
+        List<AuthorStatsDTO> byBytes = new ArrayList<>(authors.values());
+        byBytes.sort(Comparator.comparingLong(AuthorStatsDTO::getBytes).reversed());
+        return new BlameDTO(documentId, versionNumber, ranges, lines, byBytes);
+    }
+
+    private static List<BlameLinesDTO> attributeLines(List<AuthorshipIndex.Run> runs, String text,
+                                                      Map<Long, AuthorStatsDTO> authors) {
+        List<BlameLinesDTO> lines = new ArrayList<>();
+        Map<Long, Integer> charsByUser = new HashMap<>();
+        int firstRun = 0;
+        int lineNumber = 0;
+        for (int lineStart = 0; lineStart < text.length(); ) {
+            int newline = text.indexOf('\n', lineStart);
+            int lineEnd = newline < 0 ? text.length() : newline + 1;
+            lineNumber++;
+            while (firstRun < runs.size() && end(runs.get(firstRun)) <= lineStart) firstRun++;
+
+            long author = AuthorshipIndex.UNKNOWN;
+            if (firstRun < runs.size() && end(runs.get(firstRun)) >= lineEnd) {
+                // the usual case: one run covers the whole line
+                author = runs.get(firstRun).userId();
+            } else {
+                charsByUser.clear();
+                int most = 0;
+                for (int i = firstRun; i < runs.size() && runs.get(i).start() < lineEnd; i++) {
+                    AuthorshipIndex.Run run = runs.get(i);
+                    int chars = charsByUser.merge(run.userId(),
+                            Math.min(lineEnd, end(run)) - Math.max(lineStart, run.start()), Integer::sum);
+                    if (chars > most) {
+                        most = chars;
+                        author = run.userId();
+                    }
+                }
+            }
+
+            BlameLinesDTO previous = lines.isEmpty() ? null : lines.get(lines.size() - 1);
+            Long userId = userId(author);
+            if (previous != null && Objects.equals(previous.getUserId(), userId)) {
+                previous.setLastLine(lineNumber);
+            } else {
+                lines.add(new BlameLinesDTO(lineNumber, lineNumber, userId));
+            }
+            AuthorStatsDTO stats = author(authors, author);
+            stats.setLines(stats.getLines() + 1);
+            lineStart = lineEnd;
+        }
+        return lines;
+    }
+
+    private static AuthorStatsDTO author(Map<Long, AuthorStatsDTO> authors, long userId) {
+        return authors.computeIfAbsent(userId, id -> new AuthorStatsDTO(userId(id), 0, 0, 0));
+    }
+
+    private static int end(AuthorshipIndex.Run run) {
+        return run.start() + run.length();
+    }
+
+    private static Long userId(long userId) {
+        return userId == AuthorshipIndex.UNKNOWN ? null : userId;
+    }
+
+    private static long utf8Length(String text, int start, int end) {
+        long bytes = 0;
+        for (int i = start; i < end; i++) {
+            char c = text.charAt(i);
+            // each half of a surrogate pair counts 2 of the pair's 4 bytes
+            bytes += c < 0x80 ? 1 : c < 0x800 || Character.isSurrogate(c) ? 2 : 3;
+        }
+        return bytes;
+    }
+}
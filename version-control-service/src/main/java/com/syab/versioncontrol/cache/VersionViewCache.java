@@ -0,0 +1,69 @@
+package com.syab.versioncontrol.cache;
+
+import com.syab.versioncontrol.contribution.ContributionCounter;
+import com.syab.versioncontrol.dto.UserContributionDTO;
+import com.syab.versioncontrol.dto.VersionHistoryPageDTO;
+import com.syab.versioncontrol.dto.VersionSummaryDTO;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * Cached read views of a document's history: pages of version metadata, dropped when a version of
+ * the document commits, and its flushed contribution counts, dropped when a flush writes to it.
+ * Both are {@link WeightedCache}s bounded in bytes. Entries expire after {@code ttl}, for versions
+ * and flushes committed by other instances.
+ */
+@Component
+public class VersionViewCache {
+    private final WeightedCache<HistoryKey, VersionHistoryPageDTO> history;
+    private final WeightedCache<Integer, List<UserContributionDTO>> contributions;
+
+    public VersionViewCache(ContributionCounter contributionCounter,
+                            @Value("${collab.versions.cache.history-max-size:8MB}") DataSize historyMaxSize,
+                            @Value("${collab.versions.cache.contributions-max-size:4MB}") DataSize contributionsMaxSize,
+                            @Value("${collab.versions.cache.ttl:1m}") Duration ttl,
+                            MeterRegistry meterRegistry) {
+        this.history = new WeightedCache<>("history", historyMaxSize.toBytes(), ttl, VersionViewCache::weigh, meterRegistry);
+        this.contributions = new WeightedCache<>("contributions", contributionsMaxSize.toBytes(), ttl,
+                rows -> 56 + 112L * rows.size(), meterRegistry);
+        // runs before the flush lets readers in again
+        contributionCounter.addFlushListener(documentIds -> documentIds.forEach(contributions::invalidate));
+    }
+
+    /** A history page, shared between callers: do not modify it. */
+    public VersionHistoryPageDTO history(long documentId, Integer before, int limit, Supplier<VersionHistoryPageDTO> loader) {
+        return history.get(documentId, new HistoryKey(before, limit), loader);
+    }
+
+    /** Contribution counts in {@code user_contributions}, shared between callers: do not modify them. */
+    public List<UserContributionDTO> flushedContributions(long documentId, Supplier<List<UserContributionDTO>> loader) {
+        return contributions.get(documentId, 0, loader);
+    }
+
+    /** Call once a new version of the document has committed. */
+    public void versionCreated(long documentId) {
+        history.invalidate(documentId);
+    }
+
+    // object headers, boxed numbers and UTF-16 strings, roughly
+    private static long weigh(VersionHistoryPageDTO page) {
+        long bytes = 64;
+        for (VersionSummaryDTO version : page.getVersions()) {
+            bytes += 160 + 2L * (length(version.getCreatedAt()) + length(version.getDescription()));
+        }
+        return bytes;
+    }
+
+    private static int length(String text) {
+        return text == null ? 0 : text.length();
+    }
+
+    private record HistoryKey(Integer before, int limit) {
+    }
+}
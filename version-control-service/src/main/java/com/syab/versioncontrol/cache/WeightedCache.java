@@ -0,0 +1,169 @@
+package com.syab.versioncontrol.cache;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import java.util.function.ToLongFunction;
+
+/**
+ * An LRU cache bounded by the estimated heap size of its values in bytes rather than by their
+ * number. Entries belong to a group, a document, and {@link #invalidate} drops a whole group. A
+ * value loaded through {@link #get} is kept only if no group hashing to the same stripe was
+ * invalidated while it loaded, so a read racing with a write cannot put back what the write
+ * replaced. Entries may also expire, which bounds how long writes made through another instance
+ * go unseen.
+ * <p>
+ * Reports {@code collab.version.cache.requests} (hit or miss), {@code .evictions}, {@code .bytes},
+ * {@code .entries} and {@code .hit.ratio}, tagged with the cache's name.
+ */
+public class WeightedCache<K, V> {
+    private static final int STRIPES = 1024;
+
+    private final long maxBytes;
+    private final long ttlNanos;
+    private final ToLongFunction<V> weigher;
+    private final LinkedHashMap<Key<K>, Entry<V>> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final Map<Long, Set<Key<K>>> groups = new HashMap<>();
+    // bumped by every invalidation of a group in the stripe
+    private final long[] generations = new long[STRIPES];
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+    private long bytes;
+
+    /**
+     * @param ttl     how long an entry is served, or {@code null} for as long as it fits
+     * @param weigher estimated bytes a value keeps reachable
+     */
+    public WeightedCache(String name, long maxBytes, Duration ttl, ToLongFunction<V> weigher, MeterRegistry meterRegistry) {
+        this.maxBytes = maxBytes;
+        this.ttlNanos = ttl == null ? 0 : ttl.toNanos();
+        this.weigher = weigher;
+        this.hits = Counter.builder("collab.version.cache.requests").tag("cache", name).tag("result", "hit").register(meterRegistry);
+        this.misses = Counter.builder("collab.version.cache.requests").tag("cache", name).tag("result", "miss").register(meterRegistry);
+        this.evictions = Counter.builder("collab.version.cache.evictions").tag("cache", name).register(meterRegistry);
+        Gauge.builder("collab.version.cache.bytes", this, WeightedCache::bytes).tag("cache", name).register(meterRegistry);
+        Gauge.builder("collab.version.cache.entries", this, WeightedCache::size).tag("cache", name).register(meterRegistry);
+        Gauge.builder("collab.version.cache.hit.ratio", this, WeightedCache::hitRatio).tag("cache", name).register(meterRegistry);
+    }
+
+    /** The cached value, or the one {@code loader} returns, which is cached unless it is {@code null}. */
+    public V get(long group, K key, Supplier<V> loader) {
+        Key<K> k = new Key<>(group, key);
+        long generation;
+        synchronized (this) {
+            V value = lookup(k);
+            if (value != null) {
+                hits.increment();
+                return value;
+            }
+            generation = generations[stripe(group)];
+        }
+        misses.increment();
+        V value = loader.get();
+        if (value != null) {
+            synchronized (this) {
+                if (generations[stripe(group)] == generation) store(k, value);
+            }
+        }
+        return value;
+    }
+
+    /** The cached value or {@code null}, counted as a hit or miss. */
+    public synchronized V getIfPresent(long group, K key) {
+        V value = lookup(new Key<>(group, key));
+        (value != null ? hits : misses).increment();
+        return value;
+    }
+
+    /** The cached value or {@code null}, not counted. */
+    public synchronized V peek(long group, K key) {
+        return lookup(new Key<>(group, key));
+    }
+
+    public synchronized void put(long group, K key, V value) {
+        store(new Key<>(group, key), value);
+    }
+
+    /** Drops every entry of the group, and any value of it still loading. */
+    public synchronized void invalidate(long group) {
+        generations[stripe(group)]++;
+        Set<Key<K>> keys = groups.remove(group);
+        if (keys == null) return;
+        for (Key<K> key : keys) {
+            Entry<V> entry = entries.remove(key);
+            if (entry != null) bytes -= entry.weight;
+        }
+    }
+
+    public synchronized long bytes() {
+        return bytes;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    private double hitRatio() {
+        double requests = hits.count() + misses.count();
+        return requests == 0 ? 0 : hits.count() / requests;
+    }
+
+    private V lookup(Key<K> key) {
+        Entry<V> entry = entries.get(key);
+        if (entry == null) return null;
+        if (ttlNanos > 0 && System.nanoTime() - entry.expiresAt > 0) {
+            remove(key);
+            return null;
+        }
+        return entry.value;
+    }
+
+    private void store(Key<K> key, V value) {
+        long weight = weigher.applyAsLong(value);
+        if (weight > maxBytes) return;
+        remove(key);
+        entries.put(key, new Entry<>(value, weight, System.nanoTime() + ttlNanos));
+        groups.computeIfAbsent(key.group(), g -> new HashSet<>()).add(key);
+        bytes += weight;
+        Iterator<Map.Entry<Key<K>, Entry<V>>> eldest = entries.entrySet().iterator();
+        while (bytes > maxBytes && eldest.hasNext()) {
+            Map.Entry<Key<K>, Entry<V>> entry = eldest.next();
+            eldest.remove();
+            forget(entry.getKey());
+            bytes -= entry.getValue().weight;
+            evictions.increment();
+        }
+    }
+
+    private void remove(Key<K> key) {
+        Entry<V> old = entries.remove(key);
+        if (old == null) return;
+        forget(key);
+        bytes -= old.weight;
+    }
+
+    private void forget(Key<K> key) {
+        Set<Key<K>> keys = groups.get(key.group());
+        if (keys != null && keys.remove(key) && keys.isEmpty()) groups.remove(key.group());
+    }
+
+    private static int stripe(long group) {
+        return Long.hashCode(group * 0x9E3779B97F4A7C15L) & (STRIPES - 1);
+    }
+
+    private record Key<K>(long group, K key) {
+    }
+
+    private record Entry<V>(V value, long weight, long expiresAt) {
+    }
+}
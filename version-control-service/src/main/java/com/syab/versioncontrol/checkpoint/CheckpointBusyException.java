@@ -0,0 +1,11 @@
+package com.syab.versioncontrol.checkpoint;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class CheckpointBusyException extends RuntimeException {
+    public CheckpointBusyException(String message) {
+        super(message);
+    }
+}
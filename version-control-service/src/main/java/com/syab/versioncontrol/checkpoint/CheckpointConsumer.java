@@ -0,0 +1,129 @@
+package com.syab.versioncontrol.checkpoint;
+
+import com.syab.versioncontrol.dto.CreateVersionRequest;
+import com.syab.versioncontrol.dto.DocumentVersionDTO;
+import com.syab.versioncontrol.service.VersionControlService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Optional;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Applies the version checkpoints document-editing-service posts. A single worker keeps each
+ * document's checkpoints in arrival order, and the request waits for its checkpoint to be applied,
+ * so the sender only drops a checkpoint once it is stored. When the queue is full, or a checkpoint
+ * is still queued after {@code max-wait}, it is refused, and the sender keeps it and tries again
+ * later; so does a checkpoint that fails.
+ */
+@Component
+public class CheckpointConsumer {
+    private static final Logger log = LoggerFactory.getLogger(CheckpointConsumer.class);
+
+    private final VersionControlService versionControlService;
+    private final MeterRegistry meterRegistry;
+    private final ThreadPoolExecutor worker;
+    private final long maxWaitNanos;
+
+    public CheckpointConsumer(VersionControlService versionControlService,
+                              @Value("${collab.checkpoint.queue-capacity:1000}") int queueCapacity,
+                              @Value("${collab.checkpoint.max-wait:30s}") Duration maxWait,
+                              MeterRegistry meterRegistry) {
+        this.versionControlService = versionControlService;
+        this.meterRegistry = meterRegistry;
+        this.maxWaitNanos = maxWait.toNanos();
+        this.worker = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(queueCapacity), r -> {
+            Thread thread = new Thread(r, "version-checkpoints");
+            thread.setDaemon(true);
+            return thread;
+        });
+        Gauge.builder("collab.version.checkpoint.queue", worker.getQueue(), Collection::size).register(meterRegistry);
+    }
+
+    /**
+     * @return the new version, or empty if the content was unchanged
+     * @throws CheckpointBusyException if the checkpoint was not applied because the worker is behind
+     */
+    public Optional<DocumentVersionDTO> apply(CreateVersionRequest checkpoint) {
+        Future<DocumentVersionDTO> applied;
+        try {
+            applied = worker.submit(() -> createCheckpoint(checkpoint));
+        } catch (RejectedExecutionException e) {
+            count("rejected");
+            throw new CheckpointBusyException("Checkpoint queue is full, try again later");
+        }
+        try {
+            return Optional.ofNullable(await(applied));
+        } catch (TimeoutException e) {
+            // only a checkpoint that has not started can be withdrawn; one that has is waited for
+            if (applied.cancel(false)) {
+                count("rejected");
+                throw new CheckpointBusyException("Checkpoint still queued after " + maxWaitNanos / 1_000_000 + " ms, try again later");
+            }
+            return Optional.ofNullable(awaitStarted(applied));
+        }
+    }
+
+    private DocumentVersionDTO await(Future<DocumentVersionDTO> applied) throws TimeoutException {
+        try {
+            return applied.get(maxWaitNanos, TimeUnit.NANOSECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying a checkpoint", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private DocumentVersionDTO awaitStarted(Future<DocumentVersionDTO> applied) {
+        try {
+            return applied.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while applying a checkpoint", e);
+        } catch (ExecutionException e) {
+            throw unwrap(e);
+        }
+    }
+
+    private static RuntimeException unwrap(ExecutionException e) {
+        return e.getCause() instanceof RuntimeException cause ? cause : new IllegalStateException(e.getCause());
+    }
+
+    private DocumentVersionDTO createCheckpoint(CreateVersionRequest checkpoint) {
+        try {
+            DocumentVersionDTO version = versionControlService.createCheckpoint(checkpoint.getDocumentId(),
+                    checkpoint.getContent(), checkpoint.getUserId(), checkpoint.getDescription(),
+                    checkpoint.getContributions(), checkpoint.getSplices());
+            count(version == null ? "unchanged" : "created");
+            return version;
+        } catch (RuntimeException e) {
+            count("failed");
+            log.warn("Checkpoint for document {} failed; the sender will retry it", checkpoint.getDocumentId(), e);
+            throw e;
+        }
+    }
+
+    private void count(String outcome) {
+        meterRegistry.counter("collab.version.checkpoints", "outcome", outcome).increment();
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        worker.shutdown();
+        worker.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -0,0 +1,204 @@
+package com.syab.versioncontrol.contribution;
+
+import com.syab.versioncontrol.repository.UserContributionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Counts user contributions in memory and adds them to {@code user_contributions} every
+ * {@code flush-interval}, one upsert per document and user. Recording a change touches only a
+ * {@link LongAdder}, so concurrent edits of the same document never wait on each other or on a row.
+ * <p>
+ * A flush drains the counters and commits them while holding a lock that {@link #read} also takes,
+ * so a reader sees each change exactly once: either still in memory or already in the table. Counters
+ * idle for a whole flush interval are dropped; a change that races with the drop is moved to a new one.
+ */
+@Component
+public class ContributionCounter {
+    private static final Logger log = LoggerFactory.getLogger(ContributionCounter.class);
+
+    private final UserContributionRepository contributionRepository;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration flushInterval;
+    private final Map<Key, Cell> cells = new ConcurrentHashMap<>();
+    private final ReentrantReadWriteLock flushLock = new ReentrantReadWriteLock();
+    private final List<Consumer<Set<Long>>> flushListeners = new CopyOnWriteArrayList<>();
+    private final Timer flushTimer;
+    private final Counter failures;
+    private final ScheduledExecutorService flusher;
+
+    public ContributionCounter(UserContributionRepository contributionRepository,
+                               PlatformTransactionManager transactionManager,
+                               @Value("${collab.contributions.flush-interval:1s}") Duration flushInterval,
+                               MeterRegistry meterRegistry) {
+        this.contributionRepository = contributionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.flushInterval = flushInterval;
+        this.flushTimer = Timer.builder("collab.version.contributions.flush").register(meterRegistry);
+        this.failures = Counter.builder("collab.version.contributions.flush.failures").register(meterRegistry);
+        Gauge.builder("collab.version.contributions.pending", cells, Map::size).register(meterRegistry);
+        this.flusher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "contribution-flush");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        flusher.scheduleWithFixedDelay(this::flush, flushInterval.toMillis(), flushInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Adds {@code changes} to the user's count for the document; never blocks. */
+    public void record(long documentId, long userId, long changes) {
+        if (changes == 0) return;
+        Key key = new Key(documentId, userId);
+        Cell cell = cells.get(key);
+        if (cell != null) {
+            cell.count.add(changes);
+            if (!cell.retired) return;
+            // the flusher is dropping this cell and may not have seen the add: take it back and retry
+            cell.count.add(-changes);
+        }
+        // under the map's lock for the key, so never a retired cell
+        cells.compute(key, (k, c) -> {
+            if (c == null) c = new Cell();
+            c.count.add(changes);
+            return c;
+        });
+    }
+
+    /**
+     * Runs {@code readFlushed} and {@link #unflushed} with no flush committing in between, so their
+     * sum counts every recorded change once.
+     */
+    public <T> T read(Supplier<T> readFlushed) {
+        flushLock.readLock().lock();
+        try {
+            return readFlushed.get();
+        } finally {
+            flushLock.readLock().unlock();
+        }
+    }
+
+    /** Changes per user of a document not yet flushed; call it inside {@link #read}. */
+    public Map<Long, Long> unflushed(long documentId) {
+        Map<Long, Long> counts = new HashMap<>();
+        cells.forEach((key, cell) -> {
+            if (key.documentId() == documentId) {
+                long changes = cell.count.sum();
+                if (changes != 0) counts.merge(key.userId(), changes, Long::sum);
+            }
+        });
+        return counts;
+    }
+
+    /**
+     * Calls {@code listener} with the documents of each flush once it has committed, before
+     * {@link #read} can see the new counts.
+     */
+    public void addFlushListener(Consumer<Set<Long>> listener) {
+        flushListeners.add(listener);
+    }
+
+    /** Adds the changes recorded so far to the table; runs on its own every {@code flush-interval}. */
+    public void flush() {
+        flushLock.writeLock().lock();
+        try {
+            flushTimer.record(this::drainAndStore);
+        } catch (RuntimeException e) {
+            // keep the schedule alive; drained counts were put back
+            log.warn("Contribution flush failed", e);
+        } finally {
+            flushLock.writeLock().unlock();
+        }
+    }
+
+    private void drainAndStore() {
+        List<Drained> batch = new ArrayList<>();
+        cells.forEach((key, cell) -> {
+            long changes = cell.count.sumThenReset();
+            if (changes != 0) {
+                batch.add(new Drained(key, changes));
+                cell.idle = false;
+            } else if (cell.idle) {
+                cells.computeIfPresent(key, (k, c) -> retire(c));
+            } else {
+                cell.idle = true;
+            }
+        });
+        if (batch.isEmpty()) return;
+        // the same order on every instance, so concurrent flushes cannot deadlock on the rows
+        batch.sort(Comparator.comparingLong((Drained d) -> d.key().documentId()).thenComparingLong(d -> d.key().userId()));
+        LocalDateTime now = LocalDateTime.now();
+        try {
+            transactionTemplate.executeWithoutResult(status -> batch.forEach(d ->
+                    contributionRepository.addChanges(d.key().documentId(), d.key().userId(), d.changes(), now)));
+        } catch (RuntimeException e) {
+            failures.increment();
+            batch.forEach(d -> record(d.key().documentId(), d.key().userId(), d.changes()));
+            throw e;
+        }
+        Set<Long> documentIds = new TreeSet<>();
+        batch.forEach(d -> documentIds.add(d.key().documentId()));
+        flushListeners.forEach(listener -> listener.accept(documentIds));
+    }
+
+    private static Cell retire(Cell cell) {
+        cell.retired = true;
+        if (cell.count.sum() == 0) return null;
+        // a change arrived after all
+        cell.retired = false;
+        return cell;
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        flusher.shutdown();
+        flusher.awaitTermination(10, TimeUnit.SECONDS);
+        flush();
+    }
+
+    private record Key(long documentId, long userId) {
+    }
+
+    private record Drained(Key key, long changes) {
+    }
+
+    private static final class Cell {
+        final LongAdder count = new LongAdder();
+        volatile boolean retired;
+        // only touched by the flusher
+        boolean idle;
+    }
+}
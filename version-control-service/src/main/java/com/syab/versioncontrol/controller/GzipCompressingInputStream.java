@@ -0,0 +1,63 @@
+package com.syab.versioncontrol.controller;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Enumeration;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedInputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterInputStream;
+
+/**
+ * Gzips a stream as it is read: a gzip header, the raw deflate stream and a trailer with the CRC32
+ * and length of what was read. For bodies returned as a Resource, which cannot be written through a
+ * {@link java.util.zip.GZIPOutputStream}.
+ */
+final class GzipCompressingInputStream extends SequenceInputStream {
+    // magic, deflate, no flags, no mtime, no extra flags, unknown OS
+    private static final byte[] HEADER = {0x1f, (byte) 0x8b, 8, 0, 0, 0, 0, 0, 0, (byte) 0xff};
+
+    private final Deflater deflater;
+
+    private GzipCompressingInputStream(Enumeration<InputStream> parts, Deflater deflater) {
+        super(parts);
+        this.deflater = deflater;
+    }
+
+    static InputStream of(InputStream in) {
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+        CRC32 crc = new CRC32();
+        return new GzipCompressingInputStream(new Enumeration<>() {
+            private int part;
+
+            @Override
+            public boolean hasMoreElements() {
+                return part < 3;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return switch (part++) {
+                    case 0 -> new ByteArrayInputStream(HEADER);
+                    case 1 -> new DeflaterInputStream(new CheckedInputStream(in, crc), deflater, 1 << 16);
+                    // asked for only once the deflate stream has ended, so the checksum is complete
+                    default -> new ByteArrayInputStream(ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                            .putInt((int) crc.getValue()).putInt((int) deflater.getBytesRead()).array());
+                };
+            }
+        }, deflater);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            deflater.end();
+        }
+    }
+}
@@ -1,47 +1,133 @@
 package com.syab.versioncontrol.controller;
 
+import com.syab.versioncontrol.checkpoint.CheckpointConsumer;
+import com.syab.versioncontrol.dto.BlameDTO;
+import com.syab.versioncontrol.dto.CreateVersionRequest;
 import com.syab.versioncontrol.dto.DocumentVersionDTO;
+import com.syab.versioncontrol.dto.RevertStatusDTO;
+import com.syab.versioncontrol.dto.StorageReportDTO;
 import com.syab.versioncontrol.dto.UserContributionDTO;
+import com.syab.versioncontrol.dto.VersionDiffDTO;
+import com.syab.versioncontrol.dto.VersionHistoryPageDTO;
+import com.syab.versioncontrol.revert.RevertDispatcher;
 import com.syab.versioncontrol.service.VersionControlService;
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.InputStreamResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import jakarta.validation.Valid;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
 
 @RestController
 @RequestMapping("/api/versions")
 public class VersionControlController {
     private final VersionControlService versionControlService;
+    private final CheckpointConsumer checkpointConsumer;
+    private final RevertDispatcher revertDispatcher;
+    // below this, gzip framing costs more than it saves
+    private static final int MIN_GZIP_BYTES = 1024;
 
-    public VersionControlController(VersionControlService versionControlService) {
+    public VersionControlController(VersionControlService versionControlService, CheckpointConsumer checkpointConsumer,
+                                    RevertDispatcher revertDispatcher) {
         this.versionControlService = versionControlService;
+        this.checkpointConsumer = checkpointConsumer;
+        this.revertDispatcher = revertDispatcher;
     }
 
     /**
      * Operation 1: Create a new version (maintain version history)
-     * POST /api/versions
+     * POST /api/versions with a JSON body, so content size is not bounded by the query string
      */
     @PostMapping
-    public ResponseEntity<DocumentVersionDTO> createVersion(
-            @RequestParam Long documentId,
-            @RequestParam Long userId,
-            @RequestParam String content,
-            @RequestParam(required = false) String description) {
+    public ResponseEntity<DocumentVersionDTO> createVersion(@Valid @RequestBody CreateVersionRequest request) {
+        DocumentVersionDTO version = versionControlService.createVersion(request.getDocumentId(), request.getContent(),
+                request.getUserId(), request.getDescription());
+        return ResponseEntity.status(HttpStatus.CREATED).body(version);
+    }
+
+    /**
+     * Create a new version from the request body as UTF-8 text, for documents too large for JSON
+     * POST /api/versions/{documentId}/content?userId={userId}&description={description}
+     * The body may be sent with Content-Encoding: gzip. It is streamed to disk, not read into memory.
+     * Form content types are refused, as the container would consume the body parsing them.
+     */
+    @PostMapping(value = "/{documentId}/content", consumes = {MediaType.TEXT_PLAIN_VALUE, MediaType.APPLICATION_OCTET_STREAM_VALUE})
+    public ResponseEntity<DocumentVersionDTO> uploadVersion(@PathVariable Long documentId, @RequestParam Long userId,
+                                                            @RequestParam(required = false) String description,
+                                                            @RequestHeader(value = HttpHeaders.CONTENT_ENCODING, required = false) String contentEncoding,
+                                                            InputStream body) throws IOException {
+        InputStream content;
+        if (contentEncoding == null || contentEncoding.equalsIgnoreCase("identity")) {
+            content = body;
+        } else if (contentEncoding.equalsIgnoreCase("gzip")) {
+            content = new GZIPInputStream(body, 1 << 16);
+        } else {
+            return ResponseEntity.status(HttpStatus.UNSUPPORTED_MEDIA_TYPE).build();
+        }
         DocumentVersionDTO version = versionControlService.createVersion(documentId, content, userId, description);
         return ResponseEntity.status(HttpStatus.CREATED).body(version);
     }
 
     /**
-     * Operation 2: Revert to a previous version
-     * GET /api/versions/{documentId}/revert/{versionNumber}
+     * Automatic checkpoint from document-editing-service, answered once it is applied
+     * POST /api/versions/checkpoints
+     */
+    @PostMapping("/checkpoints")
+    public ResponseEntity<DocumentVersionDTO> submitCheckpoint(@Valid @RequestBody CreateVersionRequest request) {
+        return checkpointConsumer.apply(request)
+                .map(version -> ResponseEntity.status(HttpStatus.CREATED).body(version))
+                .orElseGet(() -> ResponseEntity.noContent().build());
+    }
+
+    /**
+     * Operation 2: Revert to a previous version, applied in the background
+     * POST /api/versions/{documentId}/revert/{versionNumber}?userId={userId}
+     * Answers 202 with the revert's status; poll its Location until it is SUCCEEDED or FAILED.
+     * Send an Idempotency-Key header to make retrying the request safe.
      */
-    @GetMapping("/{documentId}/revert/{versionNumber}")
-    public ResponseEntity<DocumentVersionDTO> revertToVersion(
+    @PostMapping("/{documentId}/revert/{versionNumber}")
+    public ResponseEntity<RevertStatusDTO> revertToVersion(
             @PathVariable Long documentId,
-            @PathVariable Integer versionNumber) {
-        DocumentVersionDTO version = versionControlService.revertToVersion(documentId, versionNumber);
-        return ResponseEntity.ok(version);
+            @PathVariable Integer versionNumber,
+            @RequestParam(required = false) Long userId,
+            @RequestHeader(value = "Idempotency-Key", required = false) String idempotencyKey) {
+        Optional<RevertStatusDTO> revert = versionControlService.revertToVersion(documentId, versionNumber, userId, idempotencyKey);
+        if (revert.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        revertDispatcher.wake();
+        return ResponseEntity.accepted()
+                .location(URI.create("/api/versions/reverts/" + revert.get().getId()))
+                .body(revert.get());
+    }
+
+    /**
+     * Status of a revert
+     * GET /api/versions/reverts/{revertId}
+     */
+    @GetMapping("/reverts/{revertId}")
+    public ResponseEntity<RevertStatusDTO> getRevertStatus(@PathVariable Long revertId) {
+        return versionControlService.getRevertStatus(revertId)
+                .map(status -> ResponseEntity.ok().cacheControl(CacheControl.noStore()).body(status))
+                .orElseGet(() -> ResponseEntity.notFound().build());
     }
 
     /**
@@ -55,12 +141,120 @@ public class VersionControlController {
     }
 
     /**
-     * Get document version history
-     * GET /api/versions/{documentId}/history
+     * Get document version history: metadata only, newest first, one page at a time
+     * GET /api/versions/{documentId}/history?before={versionNumber}&limit={n}
      */
     @GetMapping("/{documentId}/history")
-    public ResponseEntity<List<DocumentVersionDTO>> getVersionHistory(@PathVariable Long documentId) {
-        List<DocumentVersionDTO> history = versionControlService.getDocumentVersionHistory(documentId);
-        return ResponseEntity.ok(history);
+    public ResponseEntity<VersionHistoryPageDTO> getVersionHistory(@PathVariable Long documentId,
+                                                                   @RequestParam(required = false) Integer before,
+                                                                   @RequestParam(defaultValue = "50") int limit,
+                                                                   WebRequest webRequest) {
+        String etag = "\"v" + versionControlService.getHistoryRevision(documentId) + "\"";
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(CacheControl.noCache()).build();
+        }
+        VersionHistoryPageDTO history = versionControlService.getDocumentVersionHistory(documentId, before, limit);
+        return ResponseEntity.ok().cacheControl(CacheControl.noCache()).eTag(etag).body(history);
+    }
+
+    /**
+     * Text of one version, fetched when a user opens it
+     * GET /api/versions/{documentId}/{versionNumber}/content
+     * <p>
+     * Versions never change, so responses are cacheable indefinitely. Range requests get the
+     * identity encoding, byte ranges and all; otherwise the text is gzipped when the client accepts it.
+     * Versions stored in chunks are streamed out a chunk at a time, without range support: a Range
+     * header is ignored and the whole text is sent with 200.
+     */
+    @GetMapping("/{documentId}/{versionNumber}/content")
+    public ResponseEntity<Resource> getVersionContent(@PathVariable Long documentId, @PathVariable Integer versionNumber,
+                                                      @RequestHeader HttpHeaders requestHeaders, WebRequest webRequest) {
+        boolean gzip = requestHeaders.getRange().isEmpty() && acceptsGzip(requestHeaders);
+        String etag = "\"" + documentId + "-" + versionNumber + (gzip ? "-gzip" : "") + "\"";
+        CacheControl cacheControl = CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable();
+        if (webRequest.checkNotModified(etag)) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).cacheControl(cacheControl).varyBy(HttpHeaders.ACCEPT_ENCODING).build();
+        }
+        Optional<VersionControlService.VersionText> content = versionControlService.findVersionText(documentId, versionNumber);
+        if (content.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok()
+                .contentType(new MediaType(MediaType.TEXT_PLAIN, StandardCharsets.UTF_8))
+                .cacheControl(cacheControl)
+                .varyBy(HttpHeaders.ACCEPT_ENCODING)
+                .eTag(etag);
+        if (content.get().chunked()) {
+            return streamChunks(content.get(), gzip, response);
+        }
+        byte[] bytes = content.get().text().getBytes(StandardCharsets.UTF_8);
+        if (gzip && bytes.length >= MIN_GZIP_BYTES) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(new ByteArrayResource(gzip(bytes)));
+        }
+        return response.body(new ByteArrayResource(bytes));
+    }
+
+    // opened only when the body is written, by the converter that also closes it
+    private ResponseEntity<Resource> streamChunks(VersionControlService.VersionText content, boolean gzip,
+                                                  ResponseEntity.BodyBuilder response) {
+        String hash = content.chunkedHash();
+        response.header(HttpHeaders.ACCEPT_RANGES, "none");
+        if (gzip) {
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip")
+                    .body(new InputStreamResource(() -> GzipCompressingInputStream.of(versionControlService.openChunks(hash))));
+        }
+        return response.contentLength(content.size())
+                .body(new InputStreamResource(() -> versionControlService.openChunks(hash)));
+    }
+
+    private static boolean acceptsGzip(HttpHeaders requestHeaders) {
+        String acceptEncoding = requestHeaders.getFirst(HttpHeaders.ACCEPT_ENCODING);
+        return acceptEncoding != null && acceptEncoding.toLowerCase(Locale.ROOT).contains("gzip");
+    }
+
+    private static byte[] gzip(byte[] bytes) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(bytes.length / 3 + 64);
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(bytes);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * Line diff between two versions, as unified-diff hunks
+     * GET /api/versions/{documentId}/diff?from={versionNumber}&to={versionNumber}
+     */
+    @GetMapping("/{documentId}/diff")
+    public ResponseEntity<VersionDiffDTO> diffVersions(@PathVariable Long documentId,
+                                                       @RequestParam Integer from, @RequestParam Integer to) {
+        // a coarser diff, cut short under load, may be replaced by the smallest one on a later request
+        return versionControlService.diffVersions(documentId, from, to)
+                .map(diff -> ResponseEntity.ok()
+                        .cacheControl(diff.isComplete() ? CacheControl.maxAge(Duration.ofDays(365)).cachePrivate().immutable()
+                                : CacheControl.noStore())
+                        .body(diff))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Who wrote what in the latest version with recorded authorship
+     * GET /api/versions/{documentId}/blame
+     */
+    @GetMapping("/{documentId}/blame")
+    public ResponseEntity<BlameDTO> blame(@PathVariable Long documentId) {
+        return versionControlService.blame(documentId)
+                .map(blame -> ResponseEntity.ok().cacheControl(CacheControl.noCache()).body(blame))
+                .orElseGet(() -> ResponseEntity.notFound().build());
+    }
+
+    /**
+     * Storage used by version history and how much delta storage saves
+     * GET /api/versions/storage
+     */
+    @GetMapping("/storage")
+    public ResponseEntity<StorageReportDTO> getStorageReport() {
+        return ResponseEntity.ok(versionControlService.getStorageReport());
     }
 }
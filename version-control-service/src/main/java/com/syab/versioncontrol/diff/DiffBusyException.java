@@ -0,0 +1,11 @@
+package com.syab.versioncontrol.diff;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.SERVICE_UNAVAILABLE)
+public class DiffBusyException extends RuntimeException {
+    public DiffBusyException(String message) {
+        super(message);
+    }
+}
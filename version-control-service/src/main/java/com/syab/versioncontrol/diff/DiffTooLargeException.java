@@ -0,0 +1,11 @@
+package com.syab.versioncontrol.diff;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.UNPROCESSABLE_ENTITY)
+public class DiffTooLargeException extends RuntimeException {
+    public DiffTooLargeException(String message) {
+        super(message);
+    }
+}
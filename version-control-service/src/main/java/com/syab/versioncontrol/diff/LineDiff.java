@@ -0,0 +1,217 @@
+package com.syab.versioncontrol.diff;
+
+import com.syab.versioncontrol.dto.DiffHunkDTO;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Line diff with Myers' algorithm in its linear-space form: each region is split at a point on an
+ * optimal edit path, found by running the greedy search from both ends until they meet, and the two
+ * halves are diffed on their own. Memory stays O(lines); time is O((N + M) * D) for D changed lines.
+ * <p>
+ * Lines are compared as interned ids, and a common prefix and suffix are stripped before every
+ * search, so the usual case of one edited region costs little more than reading the texts. Past
+ * the deadline the search stops splitting and marks what is left as replaced: the result is still
+ * a correct diff, just not a minimal one, and {@link Result#complete()} says so.
+ */
+public final class LineDiff {
+    private final int[] a;
+    private final int[] b;
+    private final boolean[] removed;
+    private final boolean[] added;
+    private final long deadline;
+    private boolean complete = true;
+
+    private LineDiff(int[] a, int[] b, long deadline) {
+        this.a = a;
+        this.b = b;
+        this.removed = new boolean[a.length];
+        this.added = new boolean[b.length];
+        this.deadline = deadline;
+    }
+
+    public record Result(List<DiffHunkDTO> hunks, int added, int removed, boolean complete) {
+    }
+
+    /**
+     * @param context        unchanged lines shown around each change
+     * @param deadlineNanos  {@link System#nanoTime()} after which the search gives up on minimality
+     */
+    public static Result diff(String from, String to, int context, long deadlineNanos) {
+        String[] fromLines = from.split("\n", -1);
+        String[] toLines = to.split("\n", -1);
+        Map<String, Integer> ids = new HashMap<>(fromLines.length * 2);
+        LineDiff diff = new LineDiff(intern(fromLines, ids), intern(toLines, ids), deadlineNanos);
+        diff.compare(0, fromLines.length, 0, toLines.length);
+        return diff.result(fromLines, toLines, context);
+    }
+
+    private static int[] intern(String[] lines, Map<String, Integer> ids) {
+        int[] result = new int[lines.length];
+        for (int i = 0; i < lines.length; i++) {
+            Integer id = ids.putIfAbsent(lines[i], ids.size());
+            result[i] = id != null ? id : ids.size() - 1;
+        }
+        return result;
+    }
+
+    private void compare(int aStart, int aEnd, int bStart, int bEnd) {
+        while (aStart < aEnd && bStart < bEnd && a[aStart] == b[bStart]) {
+            aStart++;
+            bStart++;
+        }
+        while (aStart < aEnd && bStart < bEnd && a[aEnd - 1] == b[bEnd - 1]) {
+            aEnd--;
+            bEnd--;
+        }
+        if (aStart == aEnd || bStart == bEnd || !bisect(aStart, aEnd, bStart, bEnd)) {
+            Arrays.fill(removed, aStart, aEnd, true);
+            Arrays.fill(added, bStart, bEnd, true);
+        }
+    }
+
+    /**
+     * Finds where the forward and backward searches meet and diffs both sides of that point.
+     *
+     * @return false if the deadline passed first
+     */
+    private boolean bisect(int aStart, int aEnd, int bStart, int bEnd) {
+        int n = aEnd - aStart;
+        int m = bEnd - bStart;
+        int maxD = (n + m + 1) / 2;
+        int offset = maxD;
+        int length = 2 * maxD + 2;
+        int[] forward = new int[length];
+        int[] backward = new int[length];
+        Arrays.fill(forward, -1);
+        Arrays.fill(backward, -1);
+        forward[offset + 1] = 0;
+        backward[offset + 1] = 0;
+        int delta = n - m;
+        // with an odd delta the paths meet while extending forward, otherwise backward
+        boolean meetForward = (delta & 1) != 0;
+        // diagonals that ran off the edge of the grid are not extended again
+        int forwardStart = 0, forwardEnd = 0, backwardStart = 0, backwardEnd = 0;
+
+        for (int d = 0; d < maxD; d++) {
+            if (System.nanoTime() - deadline > 0) {
+                complete = false;
+                return false;
+            }
+            for (int k = -d + forwardStart; k <= d - forwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x = k == -d || (k != d && forward[kOffset - 1] < forward[kOffset + 1])
+                        ? forward[kOffset + 1] : forward[kOffset - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aStart + x] == b[bStart + y]) {
+                    x++;
+                    y++;
+                }
+                forward[kOffset] = x;
+                if (x > n) {
+                    forwardEnd += 2;
+                } else if (y > m) {
+                    forwardStart += 2;
+                } else if (meetForward) {
+                    int backwardOffset = offset + delta - k;
+                    if (backwardOffset >= 0 && backwardOffset < length && backward[backwardOffset] != -1
+                            && x >= n - backward[backwardOffset]) {
+                        split(aStart, aEnd, bStart, bEnd, x, y);
+                        return true;
+                    }
+                }
+            }
+            for (int k = -d + backwardStart; k <= d - backwardEnd; k += 2) {
+                int kOffset = offset + k;
+                int x = k == -d || (k != d && backward[kOffset - 1] < backward[kOffset + 1])
+                        ? backward[kOffset + 1] : backward[kOffset - 1] + 1;
+                int y = x - k;
+                while (x < n && y < m && a[aEnd - 1 - x] == b[bEnd - 1 - y]) {
+                    x++;
+                    y++;
+                }
+                backward[kOffset] = x;
+                if (x > n) {
+                    backwardEnd += 2;
+                } else if (y > m) {
+                    backwardStart += 2;
+                } else if (!meetForward) {
+                    int forwardOffset = offset + delta - k;
+                    if (forwardOffset >= 0 && forwardOffset < length && forward[forwardOffset] != -1) {
+                        int forwardX = forward[forwardOffset];
+                        if (forwardX >= n - x) {
+                            split(aStart, aEnd, bStart, bEnd, forwardX, offset + forwardX - forwardOffset);
+                            return true;
+                        }
+                    }
+                }
+            }
+        }
+        // no common line at all
+        return false;
+    }
+
+    private void split(int aStart, int aEnd, int bStart, int bEnd, int x, int y) {
+        compare(aStart, aStart + x, bStart, bStart + y);
+        compare(aStart + x, aEnd, bStart + y, bEnd);
+    }
+
+    private Result result(String[] fromLines, String[] toLines, int context) {
+        List<DiffHunkDTO> hunks = new ArrayList<>();
+        int addedCount = 0;
+        int removedCount = 0;
+        int i = 0;
+        int j = 0;
+        while (i < a.length || j < b.length) {
+            // skip to the next change
+            int nextI = i;
+            int nextJ = j;
+            while (nextI < a.length && nextJ < b.length && !removed[nextI] && !added[nextJ]) {
+                nextI++;
+                nextJ++;
+            }
+            if (nextI == a.length && nextJ == b.length) break;
+
+            int start = Math.max(0, Math.min(nextI - i, context));
+            i = nextI - start;
+            j = nextJ - start;
+            DiffHunkDTO hunk = new DiffHunkDTO(i + 1, 0, j + 1, 0, new ArrayList<>());
+            int unchangedRun = 0;
+            while (i < a.length || j < b.length) {
+                if (i < a.length && removed[i]) {
+                    hunk.getLines().add("-" + fromLines[i++]);
+                    hunk.setFromLines(hunk.getFromLines() + 1);
+                    removedCount++;
+                    unchangedRun = 0;
+                } else if (j < b.length && added[j]) {
+                    hunk.getLines().add("+" + toLines[j++]);
+                    hunk.setToLines(hunk.getToLines() + 1);
+                    addedCount++;
+                    unchangedRun = 0;
+                } else {
+                    // an unchanged line; close the hunk once the gap to the next change is too wide
+                    if (unchangedRun == context && !changeWithin(i, j, context + 1)) break;
+                    hunk.getLines().add(" " + fromLines[i++]);
+                    j++;
+                    hunk.setFromLines(hunk.getFromLines() + 1);
+                    hunk.setToLines(hunk.getToLines() + 1);
+                    unchangedRun++;
+                }
+            }
+            hunks.add(hunk);
+        }
+        return new Result(hunks, addedCount, removedCount, complete);
+    }
+
+    private boolean changeWithin(int i, int j, int lines) {
+        for (int step = 0; step < lines; step++, i++, j++) {
+            if (i >= a.length || j >= b.length) return i < a.length || j < b.length;
+            if (removed[i] || added[j]) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,150 @@
+package com.syab.versioncontrol.diff;
+
+import com.syab.versioncontrol.dto.DiffHunkDTO;
+import com.syab.versioncontrol.dto.VersionDiffDTO;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Optional;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Computes version diffs under limits, and keeps the results. Inputs above {@code max-chars} are
+ * refused, each diff gets {@code timeout} of CPU before it settles for a coarser result, and at most
+ * {@code max-concurrent} diffs run at once, so large documents cannot take over the service.
+ * <p>
+ * Versions never change, so a diff stays valid; the cache is an LRU bounded by the characters of
+ * the diff lines it holds, and entries expire after {@code cache-ttl} so rarely compared pairs do
+ * not pin memory. Coarser diffs cut short by the timeout are not cached, so a later request, when
+ * the service is less busy, can compute the smallest one.
+ */
+@Component
+public class VersionDiffer {
+    private static final int CONTEXT_LINES = 3;
+
+    private final long maxChars;
+    private final long timeoutNanos;
+    private final Semaphore running;
+    private final long cacheMaxChars;
+    private final long cacheTtlNanos;
+    private final LinkedHashMap<Key, Entry> cache = new LinkedHashMap<>(256, 0.75f, true);
+    private long cachedChars;
+    private final Timer diffTimer;
+    private final Counter incomplete;
+    private final MeterRegistry meterRegistry;
+
+    public VersionDiffer(@Value("${collab.versions.diff.max-chars:4000000}") long maxChars,
+                         @Value("${collab.versions.diff.timeout:2s}") Duration timeout,
+                         @Value("${collab.versions.diff.max-concurrent:0}") int maxConcurrent,
+                         @Value("${collab.versions.diff.cache-max-chars:8000000}") long cacheMaxChars,
+                         @Value("${collab.versions.diff.cache-ttl:10m}") Duration cacheTtl,
+                         MeterRegistry meterRegistry) {
+        this.maxChars = maxChars;
+        this.timeoutNanos = timeout.toNanos();
+        // 0: leave a core free for everything else
+        this.running = new Semaphore(maxConcurrent > 0 ? maxConcurrent
+                : Math.max(1, Runtime.getRuntime().availableProcessors() - 1));
+        this.cacheMaxChars = cacheMaxChars;
+        this.cacheTtlNanos = cacheTtl.toNanos();
+        this.meterRegistry = meterRegistry;
+        this.diffTimer = Timer.builder("collab.version.diff").register(meterRegistry);
+        this.incomplete = Counter.builder("collab.version.diff.incomplete").register(meterRegistry);
+    }
+
+    public Optional<VersionDiffDTO> cached(long documentId, int fromVersion, int toVersion) {
+        Optional<VersionDiffDTO> diff = Optional.ofNullable(lookup(new Key(documentId, fromVersion, toVersion)));
+        meterRegistry.counter("collab.version.diff.cache", "result", diff.isPresent() ? "hit" : "miss").increment();
+        return diff;
+    }
+
+    /**
+     * Refuses versions from their UTF-8 sizes, before their texts are read. A character takes at
+     * most three bytes, so this only refuses texts that {@link #diff} would refuse too.
+     *
+     * @throws DiffTooLargeException if the texts together must exceed the size limit
+     */
+    public void checkSize(int fromVersion, int toVersion, Integer fromBytes, Integer toBytes) {
+        if (fromBytes == null || toBytes == null) return;
+        if (((long) fromBytes + toBytes + 2) / 3 > maxChars) {
+            throw tooLarge(fromVersion, toVersion);
+        }
+    }
+
+    /**
+     * @throws DiffTooLargeException if the texts together exceed the size limit
+     * @throws DiffBusyException     if all diff slots are taken
+     */
+    public VersionDiffDTO diff(long documentId, int fromVersion, int toVersion, String from, String to) {
+        if ((long) from.length() + to.length() > maxChars) {
+            throw tooLarge(fromVersion, toVersion);
+        }
+        if (!running.tryAcquire()) {
+            meterRegistry.counter("collab.version.diff.rejected").increment();
+            throw new DiffBusyException("Too many diffs in progress, try again shortly");
+        }
+        try {
+            LineDiff.Result result = diffTimer.record(() ->
+                    LineDiff.diff(from, to, CONTEXT_LINES, System.nanoTime() + timeoutNanos));
+            if (!result.complete()) incomplete.increment();
+            VersionDiffDTO diff = new VersionDiffDTO(documentId, fromVersion, toVersion, result.added(), result.removed(),
+                    result.complete(), result.hunks());
+            if (result.complete()) store(new Key(documentId, fromVersion, toVersion), diff);
+            return diff;
+        } finally {
+            running.release();
+        }
+    }
+
+    private DiffTooLargeException tooLarge(int fromVersion, int toVersion) {
+        return new DiffTooLargeException("Versions " + fromVersion + " and " + toVersion
+                + " are too large to compare (limit " + maxChars + " characters)");
+    }
+
+    private synchronized VersionDiffDTO lookup(Key key) {
+        Entry entry = cache.get(key);
+        if (entry == null) return null;
+        if (System.nanoTime() - entry.expiresAt > 0) {
+            evict(key);
+            return null;
+        }
+        return entry.diff;
+    }
+
+    private synchronized void store(Key key, VersionDiffDTO diff) {
+        long chars = weigh(diff);
+        if (chars > cacheMaxChars) return;
+        evict(key);
+        cache.put(key, new Entry(diff, chars, System.nanoTime() + cacheTtlNanos));
+        cachedChars += chars;
+        Iterator<Entry> eldest = cache.values().iterator();
+        while (cachedChars > cacheMaxChars && eldest.hasNext()) {
+            cachedChars -= eldest.next().chars;
+            eldest.remove();
+        }
+    }
+
+    private void evict(Key key) {
+        Entry old = cache.remove(key);
+        if (old != null) cachedChars -= old.chars;
+    }
+
+    private static long weigh(VersionDiffDTO diff) {
+        long chars = 0;
+        for (DiffHunkDTO hunk : diff.getHunks()) {
+            for (String line : hunk.getLines()) chars += line.length();
+        }
+        return chars;
+    }
+
+    private record Key(long documentId, int fromVersion, int toVersion) {
+    }
+
+    private record Entry(VersionDiffDTO diff, long chars, long expiresAt) {
+    }
+}
@@ -0,0 +1,17 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuthorStatsDTO {
+    private Long userId;
+    private long chars;
+    // UTF-8
+    private long bytes;
+    // lines where the user wrote most of the characters
+    private int lines;
+}
@@ -0,0 +1,20 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlameDTO {
+    private Long documentId;
+    // the version whose text is attributed
+    private Integer versionNumber;
+    private List<BlameRangeDTO> ranges;
+    private List<BlameLinesDTO> lines;
+    // most bytes first
+    private List<AuthorStatsDTO> authors;
+}
@@ -0,0 +1,15 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Lines {@code firstLine} to {@code lastLine} (from 1, inclusive), each mostly written by one user. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlameLinesDTO {
+    private int firstLine;
+    private int lastLine;
+    private Long userId;
+}
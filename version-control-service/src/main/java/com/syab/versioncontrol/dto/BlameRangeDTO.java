@@ -0,0 +1,16 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** Characters {@code start} (inclusive) to {@code end} (exclusive) of the text, written by one user. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class BlameRangeDTO {
+    private int start;
+    private int end;
+    // null for text from before authorship was tracked
+    private Long userId;
+}
@@ -0,0 +1,31 @@
+package com.syab.versioncontrol.dto;
+
+import jakarta.validation.constraints.NotNull;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+import java.util.Map;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class CreateVersionRequest {
+    @NotNull(message = "documentId is required")
+    private Long documentId;
+
+    @NotNull(message = "userId is required")
+    private Long userId;
+
+    @NotNull(message = "content is required")
+    private String content;
+
+    private String description;
+
+    // checkpoints only: edits per user since the previous checkpoint
+    private Map<Long, Integer> contributions;
+
+    // checkpoints only: the edits since the previous checkpoint, oldest first
+    private List<EditSpliceDTO> splices;
+}
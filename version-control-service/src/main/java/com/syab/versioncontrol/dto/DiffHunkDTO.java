@@ -0,0 +1,20 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+/** One unified-diff hunk; line numbers start at 1. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DiffHunkDTO {
+    private int fromStart;
+    private int fromLines;
+    private int toStart;
+    private int toLines;
+    // each line prefixed with ' ' (unchanged), '-' (removed) or '+' (added)
+    private List<String> lines;
+}
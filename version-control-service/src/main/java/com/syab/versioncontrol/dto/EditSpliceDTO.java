@@ -0,0 +1,16 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/** One edit as a text replacement: {@code removed} characters at {@code offset} replaced by {@code inserted} new ones. */
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class EditSpliceDTO {
+    private int offset;
+    private int removed;
+    private int inserted;
+    private long userId;
+}
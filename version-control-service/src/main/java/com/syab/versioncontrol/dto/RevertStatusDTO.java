@@ -0,0 +1,21 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevertStatusDTO {
+    private Long id;
+    private Long documentId;
+    private Integer versionNumber;
+    // PENDING, DISPATCHING, SUCCEEDED or FAILED
+    private String status;
+    private int attempts;
+    private String lastError;
+    private Long documentRevision;
+    private String createdAt;
+    private String completedAt;
+}
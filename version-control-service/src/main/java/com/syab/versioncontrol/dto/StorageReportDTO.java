@@ -0,0 +1,25 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class StorageReportDTO {
+    private long versions;
+    private long keyframes;
+    private long deltas;
+    // rows still holding full text from before delta storage; not counted in the byte totals
+    private long unconverted;
+    // rows whose text was moved to archive segments; their bytes are counted in storedBytes
+    private long archived;
+    // distinct texts in content_blobs, and keyframes that reused one instead of storing their text again
+    private long blobs;
+    private long dedupedVersions;
+    private long contentBytes;
+    private long storedBytes;
+    private long savedBytes;
+    private double savedPercent;
+}
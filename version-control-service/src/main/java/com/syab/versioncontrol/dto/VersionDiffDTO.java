@@ -0,0 +1,21 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionDiffDTO {
+    private Long documentId;
+    private Integer fromVersion;
+    private Integer toVersion;
+    private int added;
+    private int removed;
+    // false when the time limit cut the search short: still correct, but not the smallest diff
+    private boolean complete;
+    private List<DiffHunkDTO> hunks;
+}
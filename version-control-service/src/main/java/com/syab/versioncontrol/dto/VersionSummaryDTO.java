@@ -0,0 +1,19 @@
+package com.syab.versioncontrol.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class VersionSummaryDTO {
+    private Long id;
+    private Long documentId;
+    private Integer versionNumber;
+    private Long createdBy;
+    private String createdAt;
+    private String description;
+    // UTF-8 size of the text; null for rows from before delta storage
+    private Integer contentSize;
+}
@@ -0,0 +1,40 @@
+package com.syab.versioncontrol.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+/**
+ * The edits of one checkpoint, stored instead of rewriting a document's whole authorship: applied in
+ * {@code revision} order to the runs of its {@link DocumentAuthorship} row, they give the current
+ * authorship. Deleted once the runs are rewritten.
+ */
+@Entity
+@Table(name = "authorship_splices")
+@IdClass(AuthorshipSplices.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class AuthorshipSplices {
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    @Id
+    @Column(name = "revision")
+    private Long revision;
+
+    // (offset, removed, inserted, author + 1) varints per edit
+    @Column(name = "splices", nullable = false, columnDefinition = "bytea")
+    private byte[] splices;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private Long documentId;
+        private Long revision;
+    }
+}
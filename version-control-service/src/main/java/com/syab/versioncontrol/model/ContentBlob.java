@@ -0,0 +1,58 @@
+package com.syab.versioncontrol.model;
+
+import com.syab.common.compression.PackedText;
+import jakarta.persistence.*;
+import lombok.AccessLevel;
+import lombok.Data;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+import java.time.LocalDateTime;
+
+/**
+ * One distinct version text, keyed by its SHA-256, shared by every {@code BLOB} version row with
+ * that text in any document. {@code refCount} is the number of such rows.
+ */
+@Entity
+@Table(name = "content_blobs")
+@Data
+@NoArgsConstructor
+public class ContentBlob {
+    // lowercase hex
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    // long texts are compressed into content_packed
+    @Embedded
+    @AttributeOverride(name = "inline", column = @Column(name = "content", columnDefinition = "TEXT", nullable = false))
+    @AttributeOverride(name = "packed", column = @Column(name = "content_packed", columnDefinition = "bytea"))
+    @Getter(AccessLevel.NONE)
+    @Setter(AccessLevel.NONE)
+    private PackedText content;
+
+    // UTF-8 size of the content
+    @Column(name = "size", nullable = false)
+    private Integer size;
+
+    // number of content_blob_chunks rows holding the text when it was streamed in; content is empty then
+    @Column(name = "chunks")
+    private Integer chunks;
+
+    @Column(name = "ref_count", nullable = false)
+    private Long refCount;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    public String getContent() {
+        return PackedText.textOf(content);
+    }
+
+    public void setContent(String content) {
+        this.content = PackedText.of(content);
+    }
+}
@@ -0,0 +1,38 @@
+package com.syab.versioncontrol.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.io.Serializable;
+
+/**
+ * One piece of a content blob too large to hold in memory whole, as UTF-8 bytes. Piece
+ * {@code seq} starts at byte {@code seq * chunk-size} of the text; pieces may split a character.
+ */
+@Entity
+@Table(name = "content_blob_chunks")
+@IdClass(ContentBlobChunk.Key.class)
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ContentBlobChunk {
+    @Id
+    @Column(name = "hash", length = 64)
+    private String hash;
+
+    @Id
+    @Column(name = "seq")
+    private Integer seq;
+
+    @Column(name = "data", nullable = false, columnDefinition = "bytea")
+    private byte[] data;
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Key implements Serializable {
+        private String hash;
+        private Integer seq;
+    }
+}
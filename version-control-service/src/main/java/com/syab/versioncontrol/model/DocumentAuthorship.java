@@ -0,0 +1,43 @@
+package com.syab.versioncontrol.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Latest authorship snapshot of a document: who wrote each character of version
+ * {@code versionNumber}, as encoded by {@link com.syab.versioncontrol.blame.AuthorshipIndex#toBytes()}.
+ * {@code runs} is as of {@code runsRevision}; the {@link AuthorshipSplices} of later revisions bring
+ * it up to date, until the runs are rewritten every {@code collab.versions.blame.compact-every}
+ * checkpoints.
+ */
+@Entity
+@Table(name = "document_authorship")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentAuthorship {
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    @Column(name = "version_number", nullable = false)
+    private Integer versionNumber;
+
+    @Column(name = "runs", nullable = false, columnDefinition = "bytea")
+    private byte[] runs;
+
+    // bumped on every write; tells a cached index whether it is still current
+    @Version
+    @Column(name = "revision")
+    private Long revision;
+
+    @Column(name = "updated_at")
+    private LocalDateTime updatedAt;
+
+    // null for rows written before incremental updates, whose runs are as of revision
+    @Column(name = "runs_revision")
+    private Long runsRevision;
+}
@@ -7,7 +7,12 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "document_versions")
+@Table(name = "document_versions", uniqueConstraints = @UniqueConstraint(
+        name = "uk_document_versions_document_version", columnNames = {"document_id", "version_number"}),
+        indexes = {
+                @Index(name = "idx_document_versions_content_hash", columnList = "content_hash"),
+                @Index(name = "idx_document_versions_archive_segment", columnList = "archive_segment")
+        })
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -22,6 +27,7 @@ public class DocumentVersion {
     @Column(name = "version_number", nullable = false)
     private Integer versionNumber;
 
+    // full text for FULL rows (and rows from before delta storage); empty for the others
     @Column(columnDefinition = "TEXT", nullable = false)
     private String content;
 
@@ -34,6 +40,32 @@ public class DocumentVersion {
     @Column(columnDefinition = "TEXT")
     private String description;
 
+    @Enumerated(EnumType.STRING)
+    @Column(name = "storage", length = 8)
+    private VersionStorage storage;
+
+    @Column(name = "delta", columnDefinition = "bytea")
+    private byte[] delta;
+
+    // version number of the keyframe this row's delta chain starts from
+    @Column(name = "keyframe_version")
+    private Integer keyframeVersion;
+
+    // UTF-8 size of the full text, and of what is actually stored for it
+    @Column(name = "content_size")
+    private Integer contentSize;
+
+    @Column(name = "stored_size")
+    private Integer storedSize;
+
+    // SHA-256 of the full text, lowercase hex; names the ContentBlob of BLOB rows
+    @Column(name = "content_hash", length = 64)
+    private String contentHash;
+
+    // archive segment holding the text of ARCHIVED rows
+    @Column(name = "archive_segment")
+    private Integer archiveSegment;
+
     @PrePersist
     protected void onCreate() {
         createdAt = LocalDateTime.now();
@@ -0,0 +1,24 @@
+package com.syab.versioncontrol.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * Last version number handed out for a document. Version creation locks this row, so numbers are
+ * allocated one writer at a time without reading the document's history.
+ */
+@Entity
+@Table(name = "document_version_counters")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class DocumentVersionCounter {
+    @Id
+    @Column(name = "document_id")
+    private Long documentId;
+
+    @Column(name = "last_version", nullable = false)
+    private Integer lastVersion;
+}
@@ -0,0 +1,65 @@
+package com.syab.versioncontrol.model;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import java.time.LocalDateTime;
+
+/**
+ * Outbox row for a revert: written with the request, then applied to document-editing-service by
+ * {@link com.syab.versioncontrol.revert.RevertDispatcher}, which records the outcome here.
+ */
+@Entity
+@Table(name = "revert_commands",
+        indexes = @Index(name = "idx_revert_commands_due", columnList = "status, next_attempt_at"),
+        uniqueConstraints = @UniqueConstraint(name = "uk_revert_commands_idempotency_key", columnNames = "idempotency_key"))
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class RevertCommand {
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "document_id", nullable = false)
+    private Long documentId;
+
+    @Column(name = "version_number", nullable = false)
+    private Integer versionNumber;
+
+    @Column(name = "user_id", nullable = false)
+    private Long userId;
+
+    // also sent to document-editing-service, so a retried revert is applied at most once
+    @Column(name = "idempotency_key", nullable = false, length = 100)
+    private String idempotencyKey;
+
+    @Enumerated(EnumType.STRING)
+    @Column(name = "status", nullable = false, length = 16)
+    private RevertStatus status;
+
+    @Column(name = "attempts", nullable = false)
+    private int attempts;
+
+    @Column(name = "next_attempt_at")
+    private LocalDateTime nextAttemptAt;
+
+    @Column(name = "last_error", length = 500)
+    private String lastError;
+
+    // document revision produced by the revert
+    @Column(name = "document_revision")
+    private Long documentRevision;
+
+    @Column(name = "created_at")
+    private LocalDateTime createdAt;
+
+    @Column(name = "completed_at")
+    private LocalDateTime completedAt;
+
+    @PrePersist
+    protected void onCreate() {
+        createdAt = LocalDateTime.now();
+    }
+}
@@ -0,0 +1,10 @@
+package com.syab.versioncontrol.model;
+
+public enum RevertStatus {
+    // waiting for its first or next attempt
+    PENDING,
+    // claimed by the dispatcher; due again if the claim lapses, e.g. after a crash
+    DISPATCHING,
+    SUCCEEDED,
+    FAILED
+}
@@ -7,7 +7,8 @@ import lombok.NoArgsConstructor;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "user_contributions")
+@Table(name = "user_contributions", uniqueConstraints = @UniqueConstraint(
+        name = "uk_user_contributions_document_user", columnNames = {"document_id", "user_id"}))
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
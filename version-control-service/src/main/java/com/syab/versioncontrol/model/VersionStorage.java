@@ -0,0 +1,16 @@
+package com.syab.versioncontrol.model;
+
+/**
+ * How a {@link DocumentVersion} row holds its text. Rows written before delta storage have no
+ * value and hold the full text, like {@code FULL}.
+ */
+public enum VersionStorage {
+    /** Keyframe: the whole text is in {@code content}. Written before content-addressed storage. */
+    FULL,
+    /** A {@code BinaryDelta} from the previous version's text, in {@code delta}. */
+    DELTA,
+    /** Keyframe whose text is the {@link ContentBlob} named by {@code contentHash}, shared with identical versions. */
+    BLOB,
+    /** Old version moved to the archive tier: the whole text is in the archive segment {@code archiveSegment}. */
+    ARCHIVED
+}
@@ -0,0 +1,25 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.versioncontrol.model.AuthorshipSplices;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.List;
+
+@Repository
+public interface AuthorshipSplicesRepository extends JpaRepository<AuthorshipSplices, AuthorshipSplices.Key> {
+    List<AuthorshipSplices> findByDocumentIdAndRevisionGreaterThanOrderByRevisionAsc(Long documentId, Long revision);
+
+    // a plain insert: the authorship row updated before it keeps concurrent writers out
+    @Modifying
+    @Query(value = "insert into authorship_splices (document_id, revision, splices) "
+            + "values (:documentId, :revision, cast(:splices as bytea))", nativeQuery = true)
+    int insert(@Param("documentId") Long documentId, @Param("revision") long revision, @Param("splices") byte[] splices);
+
+    @Modifying
+    @Query("delete from AuthorshipSplices s where s.documentId = :documentId and s.revision <= :revision")
+    int deleteUpTo(@Param("documentId") Long documentId, @Param("revision") long revision);
+}
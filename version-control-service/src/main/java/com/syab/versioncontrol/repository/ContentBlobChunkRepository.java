@@ -0,0 +1,27 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.versioncontrol.model.ContentBlobChunk;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobChunkRepository extends JpaRepository<ContentBlobChunk, ContentBlobChunk.Key> {
+    @Query("select c.data from ContentBlobChunk c where c.hash = :hash and c.seq = :seq")
+    Optional<byte[]> findData(@Param("hash") String hash, @Param("seq") int seq);
+
+    // a plain insert: the blob row taken before it keeps concurrent writers of the same text out
+    @Modifying
+    @Query(value = "insert into content_blob_chunks (hash, seq, data) values (:hash, :seq, cast(:data as bytea))",
+            nativeQuery = true)
+    int insertChunk(@Param("hash") String hash, @Param("seq") int seq, @Param("data") byte[] data);
+
+    @Modifying
+    @Query(value = "delete from content_blob_chunks c where not exists "
+            + "(select 1 from content_blobs b where b.hash = c.hash)", nativeQuery = true)
+    int deleteOrphaned();
+}
@@ -0,0 +1,69 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.common.compression.PackedText;
+import com.syab.versioncontrol.model.ContentBlob;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface ContentBlobRepository extends JpaRepository<ContentBlob, String> {
+    @Query("select b.content from ContentBlob b where b.hash = :hash")
+    Optional<PackedText> findContent(@Param("hash") String hash);
+
+    /** @return 0 if there is no blob with this hash */
+    @Modifying
+    @Query("update ContentBlob b set b.refCount = b.refCount + :references, b.updatedAt = :updatedAt where b.hash = :hash")
+    int addReferences(@Param("hash") String hash, @Param("references") long references,
+                      @Param("updatedAt") LocalDateTime updatedAt);
+
+    /**
+     * Waits for a concurrent insert of the same hash rather than failing on it.
+     *
+     * @return 0 if a blob with this hash already exists
+     */
+    @Modifying
+    @Query(value = "insert into content_blobs (hash, content, content_packed, size, ref_count, created_at, updated_at) "
+            + "values (:hash, :content, cast(:packed as bytea), :size, 1, :createdAt, :createdAt) on conflict do nothing",
+            nativeQuery = true)
+    int insertIfAbsent(@Param("hash") String hash, @Param("content") String content, @Param("packed") byte[] packed,
+                       @Param("size") int size, @Param("createdAt") LocalDateTime createdAt);
+
+    /** @return the chunk count of a streamed blob; empty for one stored inline */
+    @Query("select b.chunks from ContentBlob b where b.hash = :hash")
+    Optional<Integer> findChunks(@Param("hash") String hash);
+
+    /**
+     * Like {@link #insertIfAbsent} for a text stored as {@code chunks} rows of content_blob_chunks.
+     *
+     * @return 0 if a blob with this hash already exists
+     */
+    @Modifying
+    @Query(value = "insert into content_blobs (hash, content, size, chunks, ref_count, created_at, updated_at) "
+            + "values (:hash, '', :size, :chunks, 1, :createdAt, :createdAt) on conflict do nothing", nativeQuery = true)
+    int insertChunkedIfAbsent(@Param("hash") String hash, @Param("size") int size, @Param("chunks") int chunks,
+                              @Param("createdAt") LocalDateTime createdAt);
+
+    // the version check covers counts that drifted, e.g. rows edited by hand
+    @Modifying
+    @Query(value = "delete from content_blobs b where b.ref_count <= 0 and not exists "
+            + "(select 1 from document_versions v where v.content_hash = b.hash and v.storage = 'BLOB')", nativeQuery = true)
+    int deleteUnreferenced();
+
+    // bytes as stored, compressed or not
+    @Query(value = "select count(*) as blobs, "
+            + "coalesce(sum(coalesce(octet_length(content_packed), octet_length(content))), 0) "
+            + "+ (select coalesce(sum(octet_length(data)), 0) from content_blob_chunks) as bytes "
+            + "from content_blobs", nativeQuery = true)
+    BlobTotals findTotals();
+
+    interface BlobTotals {
+        long getBlobs();
+        long getBytes();
+    }
+}
@@ -0,0 +1,35 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.versioncontrol.model.DocumentAuthorship;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Optional;
+
+@Repository
+public interface DocumentAuthorshipRepository extends JpaRepository<DocumentAuthorship, Long> {
+    // enough to tell whether a cached index is current, without loading the runs
+    @Query("select a.revision from DocumentAuthorship a where a.documentId = :documentId")
+    Optional<Long> findRevision(@Param("documentId") Long documentId);
+
+    /** Rewrites the runs as of the next revision. @return 0 if the row is no longer at {@code revision} */
+    @Modifying
+    @Query("update DocumentAuthorship a set a.versionNumber = :versionNumber, a.runs = :runs, "
+            + "a.revision = a.revision + 1, a.runsRevision = a.revision + 1, a.updatedAt = :updatedAt "
+            + "where a.documentId = :documentId and a.revision = :revision")
+    int update(@Param("documentId") Long documentId, @Param("revision") long revision,
+               @Param("versionNumber") int versionNumber, @Param("runs") byte[] runs,
+               @Param("updatedAt") LocalDateTime updatedAt);
+
+    /** Moves to the next revision, whose edits are stored as splices. @return 0 if the row is no longer at {@code revision} */
+    @Modifying
+    @Query("update DocumentAuthorship a set a.versionNumber = :versionNumber, a.revision = a.revision + 1, "
+            + "a.runsRevision = coalesce(a.runsRevision, a.revision), a.updatedAt = :updatedAt "
+            + "where a.documentId = :documentId and a.revision = :revision")
+    int advance(@Param("documentId") Long documentId, @Param("revision") long revision,
+                @Param("versionNumber") int versionNumber, @Param("updatedAt") LocalDateTime updatedAt);
+}
@@ -0,0 +1,25 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.versioncontrol.model.DocumentVersionCounter;
+import jakarta.persistence.LockModeType;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+
+import java.util.Optional;
+
+@Repository
+public interface DocumentVersionCounterRepository extends JpaRepository<DocumentVersionCounter, Long> {
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @Query("select c from DocumentVersionCounter c where c.documentId = :documentId")
+    Optional<DocumentVersionCounter> findByIdForUpdate(@Param("documentId") Long documentId);
+
+    // a plain insert: save() would merge, and could overwrite a counter another writer just created
+    @Modifying
+    @Query(value = "insert into document_version_counters (document_id, last_version) values (:documentId, :lastVersion)",
+            nativeQuery = true)
+    void insert(@Param("documentId") Long documentId, @Param("lastVersion") int lastVersion);
+}
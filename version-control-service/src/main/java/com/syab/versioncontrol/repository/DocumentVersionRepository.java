@@ -1,14 +1,92 @@
 package com.syab.versioncontrol.repository;
 
 import com.syab.versioncontrol.model.DocumentVersion;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
 import java.util.Optional;
 
 @Repository
 public interface DocumentVersionRepository extends JpaRepository<DocumentVersion, Long> {
-    List<DocumentVersion> findByDocumentIdOrderByVersionNumberDesc(Long documentId);
+    String NOT_CHUNKED = " and not exists (select b from ContentBlob b where v.storage = com.syab.versioncontrol.model.VersionStorage.BLOB"
+            + " and b.hash = v.contentHash and b.chunks > 0)";
+
     Optional<DocumentVersion> findByDocumentIdAndVersionNumber(Long documentId, Integer versionNumber);
+    Optional<DocumentVersion> findFirstByDocumentIdOrderByVersionNumberDesc(Long documentId);
+    List<DocumentVersion> findByDocumentIdOrderByVersionNumberAsc(Long documentId);
+    List<DocumentVersion> findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(Long documentId, Integer from, Integer to);
+
+    // one keyset page of history; the projection keeps content and delta out of the select
+    List<VersionSummary> findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(Long documentId, Integer before, Limit limit);
+
+    // documents with rows written before content-addressed storage, for VersionStorageMigration
+    @Query("select distinct v.documentId from DocumentVersion v where v.storage is null"
+            + " or v.storage = com.syab.versioncontrol.model.VersionStorage.FULL")
+    List<Long> findDocumentIdsWithUnconvertedVersions();
+
+    // documents with versions due for the archive tier, for VersionArchive; keyset-paged by document.
+    // Versions on chunked blobs stay where they are: already off-row and shared, and too large to rebuild
+    @Query("select distinct v.documentId from DocumentVersion v where v.documentId > :after and v.createdAt < :cutoff"
+            + " and (v.storage is null or v.storage <> com.syab.versioncontrol.model.VersionStorage.ARCHIVED)"
+            + NOT_CHUNKED
+            + " order by v.documentId")
+    List<Long> findDocumentIdsToArchive(@Param("after") Long after, @Param("cutoff") LocalDateTime cutoff, Limit limit);
+
+    @Query("select v from DocumentVersion v where v.documentId = :documentId and v.createdAt < :cutoff"
+            + " and (v.storage is null or v.storage <> com.syab.versioncontrol.model.VersionStorage.ARCHIVED)"
+            + NOT_CHUNKED
+            + " order by v.versionNumber")
+    List<DocumentVersion> findVersionsToArchive(@Param("documentId") Long documentId, @Param("cutoff") LocalDateTime cutoff);
+
+    List<DocumentVersion> findByArchiveSegmentIn(Collection<Integer> segments);
+
+    // versions per archive segment, to find segments worth compacting
+    @Query("select v.archiveSegment as segment, count(v) as versions from DocumentVersion v"
+            + " where v.archiveSegment is not null group by v.archiveSegment")
+    List<SegmentUsage> countByArchiveSegment();
+
+    interface SegmentUsage {
+        Integer getSegment();
+        long getVersions();
+    }
+
+    @Query("select count(v) as versions,"
+            + " coalesce(sum(case when v.storage is null then 1 else 0 end), 0) as unconverted,"
+            + " coalesce(sum(case when v.storage = com.syab.versioncontrol.model.VersionStorage.DELTA then 1 else 0 end), 0) as deltas,"
+            + " coalesce(sum(case when v.storage = com.syab.versioncontrol.model.VersionStorage.BLOB then 1 else 0 end), 0) as blobVersions,"
+            + " coalesce(sum(case when v.storage = com.syab.versioncontrol.model.VersionStorage.ARCHIVED then 1 else 0 end), 0) as archived,"
+            + " coalesce(sum(v.contentSize), 0) as contentBytes,"
+            // blobs are counted from content_blobs, once however many rows share them
+            + " coalesce(sum(case when v.storage = com.syab.versioncontrol.model.VersionStorage.BLOB then 0 else v.storedSize end), 0) as storedBytes"
+            + " from DocumentVersion v")
+    StorageTotals findStorageTotals();
+
+    interface VersionSummary {
+        Long getId();
+        Long getDocumentId();
+        Integer getVersionNumber();
+        Long getCreatedBy();
+        LocalDateTime getCreatedAt();
+        String getDescription();
+        Integer getContentSize();
+    }
+
+    interface StorageTotals {
+        long getVersions();
+        long getUnconverted();
+        long getDeltas();
+        long getBlobVersions();
+        long getArchived();
+        long getContentBytes();
+        long getStoredBytes();
+    }
+
+    @Query("select coalesce(max(v.versionNumber), 0) from DocumentVersion v where v.documentId = :documentId")
+    int findLatestVersionNumber(@Param("documentId") Long documentId);
 }
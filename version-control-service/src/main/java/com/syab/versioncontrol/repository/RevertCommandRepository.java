@@ -0,0 +1,27 @@
+package com.syab.versioncontrol.repository;
+
+import com.syab.versioncontrol.model.RevertCommand;
+import com.syab.versioncontrol.model.RevertStatus;
+import jakarta.persistence.LockModeType;
+import jakarta.persistence.QueryHint;
+import org.springframework.data.domain.Limit;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
+import java.util.Optional;
+
+@Repository
+public interface RevertCommandRepository extends JpaRepository<RevertCommand, Long> {
+    Optional<RevertCommand> findByIdempotencyKey(String idempotencyKey);
+
+    // due commands, locked; rows another dispatcher holds are skipped rather than waited for
+    @Lock(LockModeType.PESSIMISTIC_WRITE)
+    @QueryHints(@QueryHint(name = "jakarta.persistence.lock.timeout", value = "-2"))
+    List<RevertCommand> findByStatusInAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+            Collection<RevertStatus> statuses, LocalDateTime now, Limit limit);
+}
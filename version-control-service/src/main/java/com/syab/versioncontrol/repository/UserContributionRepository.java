@@ -2,13 +2,25 @@ package com.syab.versioncontrol.repository;
 
 import com.syab.versioncontrol.model.UserContribution;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
 import java.util.List;
-import java.util.Optional;
 
 @Repository
 public interface UserContributionRepository extends JpaRepository<UserContribution, Long> {
     List<UserContribution> findByDocumentId(Long documentId);
-    Optional<UserContribution> findByDocumentIdAndUserId(Long documentId, Long userId);
+
+    // one atomic statement whether or not the row exists yet
+    @Modifying
+    @Query(value = "insert into user_contributions (document_id, user_id, changes_count, last_edited_at) "
+            + "values (:documentId, :userId, :changes, :editedAt) "
+            + "on conflict (document_id, user_id) do update set "
+            + "changes_count = coalesce(user_contributions.changes_count, 0) + excluded.changes_count, "
+            + "last_edited_at = excluded.last_edited_at", nativeQuery = true)
+    void addChanges(@Param("documentId") long documentId, @Param("userId") long userId,
+                    @Param("changes") long changes, @Param("editedAt") LocalDateTime editedAt);
 }
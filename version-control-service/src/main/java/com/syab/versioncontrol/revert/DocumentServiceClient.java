@@ -0,0 +1,50 @@
+package com.syab.versioncontrol.revert;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Map;
+
+/**
+ * Calls document-editing-service directly rather than through the gateway. One JDK HttpClient
+ * keeps connections alive across calls, and every call is bounded by the connect and read timeouts.
+ * Built from Boot's RestClient.Builder, so calls are observed and carry the trace context.
+ */
+@Component
+public class DocumentServiceClient {
+    private final RestClient restClient;
+
+    public DocumentServiceClient(RestClient.Builder builder,
+                                 @Value("${collab.documents.url:http://localhost:8083}") String baseUrl,
+                                 @Value("${collab.documents.connect-timeout:2s}") Duration connectTimeout,
+                                 @Value("${collab.documents.read-timeout:5s}") Duration readTimeout) {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(readTimeout);
+        this.restClient = builder.baseUrl(baseUrl).requestFactory(requestFactory).build();
+    }
+
+    /**
+     * Replaces the document's content. Repeating a call with the same key does not apply it twice.
+     *
+     * @return the document's revision afterwards, if it reported one
+     */
+    public Long applyRevert(long documentId, long userId, String content, String idempotencyKey) {
+        Map<?, ?> document = restClient.put()
+                .uri("/api/documents/{documentId}/edit?userId={userId}", documentId, userId)
+                .header("Idempotency-Key", idempotencyKey)
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(Map.of("content", content, "operationType", "REVERT"))
+                .retrieve()
+                .body(Map.class);
+        return document != null && document.get("revision") instanceof Number revision ? revision.longValue() : null;
+    }
+}
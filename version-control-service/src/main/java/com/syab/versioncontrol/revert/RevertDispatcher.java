@@ -0,0 +1,184 @@
+package com.syab.versioncontrol.revert;
+
+import com.syab.versioncontrol.model.RevertCommand;
+import com.syab.versioncontrol.model.RevertStatus;
+import com.syab.versioncontrol.repository.RevertCommandRepository;
+import com.syab.versioncontrol.service.VersionControlService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.client.RestClientResponseException;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+
+/**
+ * Applies revert commands from the outbox to document-editing-service. Commands are claimed in
+ * batches under a lease, so a dispatcher that dies mid-call leaves them due again once the lease
+ * runs out, and the idempotency key sent with each call keeps a repeated revert from applying twice.
+ * Failures are retried with exponential backoff up to {@code max-attempts}; a 4xx answer other than
+ * 408 or 429 will not get better and fails the command at once.
+ * <p>
+ * Runs on one thread: every {@code poll-interval}, and right away when a revert is requested.
+ */
+@Component
+public class RevertDispatcher {
+    private static final Logger log = LoggerFactory.getLogger(RevertDispatcher.class);
+    private static final List<RevertStatus> DUE = List.of(RevertStatus.PENDING, RevertStatus.DISPATCHING);
+    private static final int BATCH_SIZE = 20;
+    private static final Duration LEASE = Duration.ofMinutes(1);
+    private static final Duration MAX_BACKOFF = Duration.ofMinutes(5);
+
+    private final RevertCommandRepository revertRepository;
+    private final VersionControlService versionControlService;
+    private final DocumentServiceClient documentServiceClient;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration pollInterval;
+    private final int maxAttempts;
+    private final Duration retryBackoff;
+    private final MeterRegistry meterRegistry;
+    private final ScheduledExecutorService dispatcher;
+    private final AtomicBoolean wakeQueued = new AtomicBoolean();
+
+    public RevertDispatcher(RevertCommandRepository revertRepository, VersionControlService versionControlService,
+                            DocumentServiceClient documentServiceClient, PlatformTransactionManager transactionManager,
+                            @Value("${collab.revert.poll-interval:5s}") Duration pollInterval,
+                            @Value("${collab.revert.max-attempts:8}") int maxAttempts,
+                            @Value("${collab.revert.retry-backoff:1s}") Duration retryBackoff,
+                            MeterRegistry meterRegistry) {
+        this.revertRepository = revertRepository;
+        this.versionControlService = versionControlService;
+        this.documentServiceClient = documentServiceClient;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.pollInterval = pollInterval;
+        this.maxAttempts = maxAttempts;
+        this.retryBackoff = retryBackoff;
+        this.meterRegistry = meterRegistry;
+        this.dispatcher = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "revert-dispatcher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        // also picks up commands left over from before a restart
+        dispatcher.scheduleWithFixedDelay(this::dispatchDue, 0, pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** Dispatches due commands now instead of at the next poll; call after the command has committed. */
+    public void wake() {
+        if (wakeQueued.compareAndSet(false, true)) {
+            dispatcher.execute(() -> {
+                wakeQueued.set(false);
+                dispatchDue();
+            });
+        }
+    }
+
+    private void dispatchDue() {
+        try {
+            List<RevertCommand> batch;
+            do {
+                batch = claim();
+                batch.forEach(this::dispatch);
+            } while (batch.size() == BATCH_SIZE);
+        } catch (RuntimeException e) {
+            // keep the schedule alive; whatever was claimed is due again when its lease runs out
+            log.warn("Revert dispatch failed", e);
+        }
+    }
+
+    private List<RevertCommand> claim() {
+        return transactionTemplate.execute(status -> {
+            LocalDateTime now = LocalDateTime.now();
+            List<RevertCommand> due = revertRepository.findByStatusInAndNextAttemptAtLessThanEqualOrderByNextAttemptAtAsc(
+                    DUE, now, Limit.of(BATCH_SIZE));
+            for (RevertCommand command : due) {
+                command.setStatus(RevertStatus.DISPATCHING);
+                command.setAttempts(command.getAttempts() + 1);
+                command.setNextAttemptAt(now.plus(LEASE));
+            }
+            return due;
+        });
+    }
+
+    private void dispatch(RevertCommand command) {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        String outcome;
+        try {
+            String content = versionControlService.findVersionContent(command.getDocumentId(), command.getVersionNumber())
+                    .orElseThrow(() -> new IllegalStateException("Version " + command.getVersionNumber() + " no longer exists"));
+            Long revision = documentServiceClient.applyRevert(command.getDocumentId(), command.getUserId(), content,
+                    command.getIdempotencyKey());
+            update(command, c -> {
+                c.setStatus(RevertStatus.SUCCEEDED);
+                c.setDocumentRevision(revision);
+                c.setLastError(null);
+                c.setCompletedAt(LocalDateTime.now());
+            });
+            outcome = "succeeded";
+        } catch (RestClientResponseException e) {
+            HttpStatus status = HttpStatus.resolve(e.getStatusCode().value());
+            boolean permanent = e.getStatusCode().is4xxClientError()
+                    && status != HttpStatus.REQUEST_TIMEOUT && status != HttpStatus.TOO_MANY_REQUESTS;
+            outcome = failed(command, e.getStatusCode() + " " + e.getResponseBodyAsString(), permanent);
+        } catch (IllegalStateException e) {
+            outcome = failed(command, e.getMessage(), true);
+        } catch (RuntimeException e) {
+            outcome = failed(command, e.toString(), false);
+        }
+        sample.stop(Timer.builder("collab.version.revert").tag("outcome", outcome).register(meterRegistry));
+    }
+
+    private String failed(RevertCommand command, String error, boolean permanent) {
+        boolean giveUp = permanent || command.getAttempts() >= maxAttempts;
+        update(command, c -> {
+            c.setLastError(error.length() > 500 ? error.substring(0, 500) : error);
+            if (giveUp) {
+                c.setStatus(RevertStatus.FAILED);
+                c.setCompletedAt(LocalDateTime.now());
+            } else {
+                c.setStatus(RevertStatus.PENDING);
+                c.setNextAttemptAt(LocalDateTime.now().plus(backoff(c.getAttempts())));
+            }
+        });
+        if (giveUp) {
+            log.warn("Revert {} of document {} to version {} failed after {} attempts: {}", command.getId(),
+                    command.getDocumentId(), command.getVersionNumber(), command.getAttempts(), error);
+        }
+        return giveUp ? "failed" : "retry";
+    }
+
+    private Duration backoff(int attempts) {
+        Duration delay = retryBackoff.multipliedBy(1L << Math.min(attempts - 1, 20));
+        return delay.compareTo(MAX_BACKOFF) > 0 ? MAX_BACKOFF : delay;
+    }
+
+    private void update(RevertCommand command, Consumer<RevertCommand> change) {
+        transactionTemplate.executeWithoutResult(status -> revertRepository.findById(command.getId()).ifPresent(change));
+    }
+
+    @PreDestroy
+    public void close() throws InterruptedException {
+        dispatcher.shutdown();
+        dispatcher.awaitTermination(10, TimeUnit.SECONDS);
+    }
+}
@@ -1,125 +1,450 @@
 package com.syab.versioncontrol.service;
 
+import com.syab.versioncontrol.blame.AuthorshipTracker;
+import com.syab.versioncontrol.blame.BlameReport;
+import com.syab.versioncontrol.cache.VersionViewCache;
+import com.syab.versioncontrol.contribution.ContributionCounter;
+import com.syab.versioncontrol.diff.VersionDiffer;
+import com.syab.versioncontrol.dto.BlameDTO;
 import com.syab.versioncontrol.dto.DocumentVersionDTO;
+import com.syab.versioncontrol.dto.EditSpliceDTO;
+import com.syab.versioncontrol.dto.RevertStatusDTO;
+import com.syab.versioncontrol.dto.StorageReportDTO;
 import com.syab.versioncontrol.dto.UserContributionDTO;
+import com.syab.versioncontrol.dto.VersionDiffDTO;
+import com.syab.versioncontrol.dto.VersionHistoryPageDTO;
+import com.syab.versioncontrol.dto.VersionSummaryDTO;
 import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.RevertCommand;
+import com.syab.versioncontrol.model.RevertStatus;
 import com.syab.versioncontrol.model.UserContribution;
+import com.syab.versioncontrol.repository.ContentBlobRepository;
 import com.syab.versioncontrol.repository.DocumentVersionRepository;
+import com.syab.versioncontrol.repository.RevertCommandRepository;
 import com.syab.versioncontrol.repository.UserContributionRepository;
+import com.syab.versioncontrol.revert.IdempotencyKeyReusedException;
+import com.syab.versioncontrol.revert.RevertDispatcher;
+import com.syab.versioncontrol.storage.ContentBlobStore;
+import com.syab.versioncontrol.storage.SpooledText;
+import com.syab.versioncontrol.storage.VersionArchive;
+import com.syab.versioncontrol.storage.VersionContentStore;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.data.domain.Limit;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Optional;
-import java.util.stream.Collectors;
-import org.springframework.web.client.RestTemplate;
-import org.springframework.http.HttpEntity;
-import org.springframework.http.HttpHeaders;
-import org.springframework.http.MediaType;
-import org.springframework.http.HttpMethod;
-import org.springframework.http.ResponseEntity;
+import java.util.UUID;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 @Service
 @Transactional
 public class VersionControlService {
     private final DocumentVersionRepository versionRepository;
     private final UserContributionRepository contributionRepository;
+    private final Timer createTimer;
+    private final VersionContentStore contentStore;
+    private final VersionNumberAllocator versionNumbers;
+    private final TransactionTemplate transactionTemplate;
+    private final VersionDiffer versionDiffer;
+    private final RevertCommandRepository revertRepository;
+    private final ContributionCounter contributionCounter;
+    private final AuthorshipTracker authorshipTracker;
+    private final ContentBlobStore blobStore;
+    private final ContentBlobRepository blobRepository;
+    private final VersionArchive archive;
+    private final VersionViewCache viewCache;
+    // documentId -> latest committed version number. History is append-only, so this is all a
+    // conditional GET needs; it assumes this instance is the only writer.
+    private final Map<Long, Integer> latestVersions = new ConcurrentHashMap<>();
+    private static final int MAX_CACHED_HISTORIES = 100_000;
+    private static final int MAX_HISTORY_PAGE = 200;
 
-    public VersionControlService(DocumentVersionRepository versionRepository, UserContributionRepository contributionRepository) {
+    public VersionControlService(DocumentVersionRepository versionRepository, UserContributionRepository contributionRepository,
+                                 MeterRegistry meterRegistry, VersionContentStore contentStore,
+                                 VersionNumberAllocator versionNumbers, PlatformTransactionManager transactionManager,
+                                 VersionDiffer versionDiffer, RevertCommandRepository revertRepository,
+                                 ContributionCounter contributionCounter, AuthorshipTracker authorshipTracker,
+                                 ContentBlobStore blobStore, ContentBlobRepository blobRepository, VersionArchive archive,
+                                 VersionViewCache viewCache) {
         this.versionRepository = versionRepository;
+        this.contentStore = contentStore;
+        this.versionNumbers = versionNumbers;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.versionDiffer = versionDiffer;
         this.contributionRepository = contributionRepository;
+        this.revertRepository = revertRepository;
+        this.contributionCounter = contributionCounter;
+        this.authorshipTracker = authorshipTracker;
+        this.blobStore = blobStore;
+        this.blobRepository = blobRepository;
+        this.archive = archive;
+        this.viewCache = viewCache;
+        this.createTimer = Timer.builder("collab.version.create").register(meterRegistry);
     }
 
     /**
      * Operation 1: Maintain version history of documents
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public DocumentVersionDTO createVersion(Long documentId, String content, Long userId, String description) {
-        // Get the next version number
-        List<DocumentVersion> versions = versionRepository.findByDocumentIdOrderByVersionNumberDesc(documentId);
-        int nextVersionNumber = versions.isEmpty() ? 1 : versions.get(0).getVersionNumber() + 1;
+        DocumentVersionDTO version = insertVersion(documentId, content, userId, description);
+        contributionCounter.record(documentId, userId, 1);
+        return version;
+    }
+
+    private DocumentVersionDTO insertVersion(Long documentId, String content, Long userId, String description) {
+        versionNumbers.ensureCounter(documentId);
+        return createTimer.record(() -> transactionTemplate.execute(status ->
+                doCreateVersion(documentId, content, userId, description)));
+    }
+
+    private DocumentVersionDTO doCreateVersion(Long documentId, String content, Long userId, String description) {
+        // Allocate the next version number; the counter stays locked until this transaction ends
+        int nextVersionNumber = versionNumbers.next(documentId);
+        DocumentVersion previous = nextVersionNumber == 1 ? null
+                : versionRepository.findByDocumentIdAndVersionNumber(documentId, nextVersionNumber - 1).orElse(null);
 
         DocumentVersion version = new DocumentVersion();
         version.setDocumentId(documentId);
         version.setVersionNumber(nextVersionNumber);
-        version.setContent(content);
         version.setCreatedBy(userId);
         version.setDescription(description);
+        // stored as a delta from the previous version unless a keyframe is due or the text is stored already;
+        // a chunked predecessor is never read whole, so the version after it is a keyframe
+        DocumentVersion base = previous == null || blobStore.isChunked(previous) ? null : previous;
+        blobStore.store(version, content, base, base == null ? null : contentOf(base));
 
         DocumentVersion savedVersion = versionRepository.save(version);
+        contentStore.remember(savedVersion, content);
+        afterVersionCommit(documentId, nextVersionNumber);
 
-        // Update user contribution
-        updateUserContribution(documentId, userId);
-
-        return convertToDTO(savedVersion);
+        return convertToDTO(savedVersion, content);
     }
 
     /**
-     * Operation 2: Revert to previous document versions
+     * Version from a text streamed in by a client, for texts too large to post as JSON. The text is
+     * spooled to disk first; over {@code stream.chunk-size} it is stored as a chunked blob without
+     * ever being held in memory whole, and the returned version leaves its content out.
      */
-    public DocumentVersionDTO revertToVersion(Long documentId, Integer versionNumber) {
-        Optional<DocumentVersion> versionOptional = versionRepository.findByDocumentIdAndVersionNumber(documentId, versionNumber);
-        if (versionOptional.isEmpty()) {
-            throw new IllegalArgumentException("Version not found");
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public DocumentVersionDTO createVersion(Long documentId, InputStream content, Long userId, String description)
+            throws IOException {
+        DocumentVersionDTO version;
+        try (SpooledText text = blobStore.spool(content)) {
+            if (!blobStore.isChunked(text.size())) {
+                version = insertVersion(documentId, text.read(), userId, description);
+                version.setContent(null);
+            } else {
+                versionNumbers.ensureCounter(documentId);
+                version = createTimer.record(() -> transactionTemplate.execute(status ->
+                        doCreateChunkedVersion(documentId, text, userId, description)));
+            }
         }
+        contributionCounter.record(documentId, userId, 1);
+        return version;
+    }
 
-        DocumentVersion version = versionOptional.get();
-        // Additionally, apply the version to the actual document via the API Gateway.
-        // This keeps the revert operation consistent across services.
+    private DocumentVersionDTO doCreateChunkedVersion(Long documentId, SpooledText text, Long userId, String description) {
+        int nextVersionNumber = versionNumbers.next(documentId);
+        DocumentVersion version = new DocumentVersion();
+        version.setDocumentId(documentId);
+        version.setVersionNumber(nextVersionNumber);
+        version.setCreatedBy(userId);
+        version.setDescription(description);
+        // always a keyframe: a delta would need both texts in memory
         try {
-            RestTemplate rest = new RestTemplate();
-            HttpHeaders headers = new HttpHeaders();
-            headers.setContentType(MediaType.APPLICATION_JSON);
-            var body = Map.of("content", version.getContent(), "operationType", "REVERT");
-            HttpEntity<Map<String, String>> entity = new HttpEntity(body, headers);
-            // call gateway which will proxy to document service to apply the content change
-            String url = String.format("http://localhost:8081/api/documents/%d/edit?userId=%d", documentId, version.getCreatedBy());
-            ResponseEntity<String> resp = rest.exchange(url, HttpMethod.PUT, entity, String.class);
-        } catch (Exception e) {
-            // don't fail revert; just log and return version info
-            // logging omitted to keep dependency minimal
+            blobStore.storeChunked(version, text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
         }
-        return convertToDTO(version);
+        DocumentVersion savedVersion = versionRepository.save(version);
+        afterVersionCommit(documentId, nextVersionNumber);
+        return convertToDTO(savedVersion, null);
+    }
+
+    /**
+     * Version checkpoint sent by document-editing-service; skipped when the content has not changed
+     * since the latest version, so idle checkpoints after a manual save add nothing. The edits it
+     * reports count as contributions and update the document's authorship either way.
+     *
+     * @param editsByUser edits per user since the previous checkpoint; without it the version counts
+     *                    as one change by {@code userId}, like a manual save
+     * @param splices     the same edits as text replacements, oldest first
+     * @return the new version, or {@code null} if none was needed
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public DocumentVersionDTO createCheckpoint(Long documentId, String content, Long userId, String description,
+                                               Map<Long, Integer> editsByUser, List<EditSpliceDTO> splices) {
+        Optional<DocumentVersion> latest = versionRepository.findFirstByDocumentIdOrderByVersionNumberDesc(documentId);
+        DocumentVersionDTO version = latest.isPresent() && sameContent(latest.get(), content) ? null
+                : insertVersion(documentId, content, userId, description);
+        if (editsByUser != null && !editsByUser.isEmpty()) {
+            editsByUser.forEach((editor, edits) -> contributionCounter.record(documentId, editor, edits));
+        } else if (version != null) {
+            contributionCounter.record(documentId, userId, 1);
+        }
+        if (splices != null && !splices.isEmpty()) {
+            // the checkpoint's text is that of the new version, or of the latest one if unchanged
+            int versionNumber = version != null ? version.getVersionNumber() : latest.get().getVersionNumber();
+            authorshipTracker.apply(documentId, versionNumber, content.length(), splices);
+        }
+        return version;
+    }
+
+    /**
+     * Operation 2: Revert to previous document versions.
+     * Records a revert command that {@link RevertDispatcher} applies to the document in the
+     * background; its progress is read with {@link #getRevertStatus}. A repeated idempotency key
+     * returns the command it created the first time instead of a new one.
+     *
+     * @param userId the user reverting, or {@code null} to revert as the version's author
+     * @return the new (or earlier) command, or empty if the version does not exist
+     */
+    public Optional<RevertStatusDTO> revertToVersion(Long documentId, Integer versionNumber, Long userId, String idempotencyKey) {
+        if (idempotencyKey != null) {
+            Optional<RevertCommand> existing = revertRepository.findByIdempotencyKey(idempotencyKey);
+            if (existing.isPresent()) {
+                RevertCommand command = existing.get();
+                if (!command.getDocumentId().equals(documentId) || !command.getVersionNumber().equals(versionNumber)) {
+                    throw new IdempotencyKeyReusedException("Idempotency key was already used for another revert");
+                }
+                return Optional.of(convertRevertToDTO(command));
+            }
+        }
+        Optional<DocumentVersion> version = versionRepository.findByDocumentIdAndVersionNumber(documentId, versionNumber);
+        if (version.isEmpty()) {
+            return Optional.empty();
+        }
+        RevertCommand command = new RevertCommand();
+        command.setDocumentId(documentId);
+        command.setVersionNumber(versionNumber);
+        command.setUserId(userId != null ? userId : version.get().getCreatedBy());
+        command.setIdempotencyKey(idempotencyKey != null ? idempotencyKey : UUID.randomUUID().toString());
+        command.setStatus(RevertStatus.PENDING);
+        command.setNextAttemptAt(LocalDateTime.now());
+        return Optional.of(convertRevertToDTO(revertRepository.save(command)));
+    }
+
+    @Transactional(readOnly = true)
+    public Optional<RevertStatusDTO> getRevertStatus(Long revertId) {
+        return revertRepository.findById(revertId).map(this::convertRevertToDTO);
     }
 
     /**
      * Operation 3: Track user contributions
+     * Runs outside a transaction, so a cache hit touches no connection.
      */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
     public List<UserContributionDTO> getUserContributions(Long documentId) {
-        List<UserContribution> contributions = contributionRepository.findByDocumentId(documentId);
-        return contributions.stream().map(this::convertContributionToDTO).collect(Collectors.toList());
+        // flushed counts plus what is still in memory
+        return contributionCounter.read(() -> {
+            Map<Long, UserContributionDTO> byUser = new LinkedHashMap<>();
+            for (UserContributionDTO flushed : viewCache.flushedContributions(documentId, () ->
+                    contributionRepository.findByDocumentId(documentId).stream().map(this::convertContributionToDTO).toList())) {
+                // the cached rows are shared
+                byUser.put(flushed.getUserId(), new UserContributionDTO(flushed.getId(), flushed.getDocumentId(),
+                        flushed.getUserId(), flushed.getChangesCount()));
+            }
+            contributionCounter.unflushed(documentId).forEach((userId, changes) -> {
+                UserContributionDTO dto = byUser.computeIfAbsent(userId,
+                        id -> new UserContributionDTO(null, documentId, id, 0));
+                dto.setChangesCount((int) (dto.getChangesCount() + changes));
+            });
+            return new ArrayList<>(byUser.values());
+        });
+    }
+
+    /**
+     * One page of version metadata, newest first, starting below {@code before} (or at the latest
+     * version). Text is never loaded here; clients fetch it per version with {@link #findVersionContent}.
+     * Pages are cached until a version of the document is created; a hit touches no connection.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public VersionHistoryPageDTO getDocumentVersionHistory(Long documentId, Integer before, int limit) {
+        int pageSize = Math.max(1, Math.min(limit, MAX_HISTORY_PAGE));
+        return viewCache.history(documentId, before, pageSize, () -> loadHistoryPage(documentId, before, pageSize));
     }
 
-    public List<DocumentVersionDTO> getDocumentVersionHistory(Long documentId) {
-        List<DocumentVersion> versions = versionRepository.findByDocumentIdOrderByVersionNumberDesc(documentId);
-        return versions.stream().map(this::convertToDTO).collect(Collectors.toList());
+    private VersionHistoryPageDTO loadHistoryPage(Long documentId, Integer before, int pageSize) {
+        // one extra row tells whether there is an older page
+        List<DocumentVersionRepository.VersionSummary> rows = versionRepository.findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(
+                documentId, before == null ? Integer.MAX_VALUE : before, Limit.of(pageSize + 1));
+        boolean more = rows.size() > pageSize;
+        List<VersionSummaryDTO> versions = new ArrayList<>(Math.min(rows.size(), pageSize));
+        for (DocumentVersionRepository.VersionSummary row : rows.subList(0, Math.min(rows.size(), pageSize))) {
+            versions.add(new VersionSummaryDTO(row.getId(), row.getDocumentId(), row.getVersionNumber(), row.getCreatedBy(),
+                    row.getCreatedAt() != null ? row.getCreatedAt().toString() : null, row.getDescription(), row.getContentSize()));
+        }
+        return new VersionHistoryPageDTO(versions, more ? versions.get(versions.size() - 1).getVersionNumber() : null);
     }
 
-    private void updateUserContribution(Long documentId, Long userId) {
-        Optional<UserContribution> contributionOptional = contributionRepository.findByDocumentIdAndUserId(documentId, userId);
-        
-        if (contributionOptional.isPresent()) {
-            UserContribution contribution = contributionOptional.get();
-            contribution.setChangesCount(contribution.getChangesCount() + 1);
-            contribution.setLastEditedAt(LocalDateTime.now());
-            contributionRepository.save(contribution);
+    /**
+     * Full text of one version, rebuilt from its keyframe if stored as a delta.
+     */
+    @Transactional(readOnly = true)
+    public Optional<String> findVersionContent(Long documentId, Integer versionNumber) {
+        return versionRepository.findByDocumentIdAndVersionNumber(documentId, versionNumber).map(this::contentOf);
+    }
+
+    /**
+     * Text of one version for download: in memory, or for a version on a chunked blob only its blob
+     * and size, to be streamed with {@link #openChunks}.
+     */
+    @Transactional(readOnly = true)
+    public Optional<VersionText> findVersionText(Long documentId, Integer versionNumber) {
+        return versionRepository.findByDocumentIdAndVersionNumber(documentId, versionNumber).map(version ->
+                blobStore.isChunked(version)
+                        ? new VersionText(null, version.getContentHash(), version.getContentSize())
+                        : new VersionText(contentOf(version), null, 0));
+    }
+
+    /** Reads a chunked blob found by {@link #findVersionText}, one chunk query at a time. */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public InputStream openChunks(String hash) {
+        return blobStore.openChunks(hash);
+    }
+
+    /** Either {@code text} or, for a chunked blob, {@code chunkedHash} and its UTF-8 {@code size}. */
+    public record VersionText(String text, String chunkedHash, long size) {
+        public boolean chunked() {
+            return chunkedHash != null;
+        }
+    }
+
+    /**
+     * Who wrote each part of the latest version with recorded authorship: character and line
+     * ranges per user, and each user's share. Empty until a checkpoint with edits has been applied.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<BlameDTO> blame(Long documentId) {
+        return authorshipTracker.find(documentId).flatMap(authorship ->
+                findVersionContent(documentId, authorship.versionNumber())
+                        .map(text -> BlameReport.of(documentId, authorship.versionNumber(), authorship.runs(), text)));
+    }
+
+    /**
+     * Line diff between two versions of a document, from the cache when it has been computed before.
+     * Runs outside a transaction: both texts are read first, so no connection is held while diffing.
+     * Versions whose stored sizes are already over the limit are refused before either text is read.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public Optional<VersionDiffDTO> diffVersions(Long documentId, Integer fromVersion, Integer toVersion) {
+        Optional<VersionDiffDTO> cached = versionDiffer.cached(documentId, fromVersion, toVersion);
+        if (cached.isPresent()) {
+            return cached;
+        }
+        Optional<DocumentVersion> from = versionRepository.findByDocumentIdAndVersionNumber(documentId, fromVersion);
+        Optional<DocumentVersion> to = from.isEmpty() ? Optional.empty()
+                : versionRepository.findByDocumentIdAndVersionNumber(documentId, toVersion);
+        if (to.isEmpty()) {
+            return Optional.empty();
+        }
+        versionDiffer.checkSize(fromVersion, toVersion, from.get().getContentSize(), to.get().getContentSize());
+        return Optional.of(versionDiffer.diff(documentId, fromVersion, toVersion, contentOf(from.get()), contentOf(to.get())));
+    }
+
+    /**
+     * Storage used by version history: full text size against what deltas and shared blobs actually keep.
+     */
+    @Transactional(readOnly = true)
+    public StorageReportDTO getStorageReport() {
+        DocumentVersionRepository.StorageTotals totals = versionRepository.findStorageTotals();
+        ContentBlobRepository.BlobTotals blobs = blobRepository.findTotals();
+        long stored = totals.getStoredBytes() + blobs.getBytes();
+        long saved = totals.getContentBytes() - stored;
+        double percent = totals.getContentBytes() == 0 ? 0 : 100.0 * saved / totals.getContentBytes();
+        return new StorageReportDTO(totals.getVersions(),
+                totals.getVersions() - totals.getDeltas() - totals.getUnconverted() - totals.getArchived(),
+                totals.getDeltas(), totals.getUnconverted(), totals.getArchived(), blobs.getBlobs(),
+                Math.max(0, totals.getBlobVersions() - blobs.getBlobs()), totals.getContentBytes(), stored,
+                saved, Math.round(percent * 10) / 10.0);
+    }
+
+    private String contentOf(DocumentVersion version) {
+        if (!contentStore.needsChain(version)) {
+            return contentStore.content(List.of(version), archive::keyframeText);
+        }
+        // at most keyframe-interval rows
+        return contentStore.content(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(
+                version.getDocumentId(), contentStore.keyframeOf(version), version.getVersionNumber()), archive::keyframeText);
+    }
+
+    // comparing hashes spares rebuilding the latest text
+    private boolean sameContent(DocumentVersion version, String content) {
+        return version.getContentHash() != null ? version.getContentHash().equals(ContentBlobStore.hash(content))
+                : content.equals(contentOf(version));
+    }
+
+    /**
+     * Latest version number of a document's history (0 when it has none), from memory when possible.
+     */
+    @Transactional(readOnly = true)
+    public int getHistoryRevision(Long documentId) {
+        Integer cached = latestVersions.get(documentId);
+        if (cached != null) return cached;
+        int latest = versionRepository.findLatestVersionNumber(documentId);
+        cacheLatestVersion(documentId, latest);
+        return latest;
+    }
+
+    // readers must not see the new version number before the row, nor cached pages without it after
+    private void afterVersionCommit(Long documentId, int versionNumber) {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    cacheLatestVersion(documentId, versionNumber);
+                    viewCache.versionCreated(documentId);
+                }
+            });
         } else {
-            UserContribution contribution = new UserContribution();
-            contribution.setDocumentId(documentId);
-            contribution.setUserId(userId);
-            contribution.setChangesCount(1);
-            contribution.setLastEditedAt(LocalDateTime.now());
-            contributionRepository.save(contribution);
+            cacheLatestVersion(documentId, versionNumber);
+            viewCache.versionCreated(documentId);
         }
     }
 
-    private DocumentVersionDTO convertToDTO(DocumentVersion version) {
+    private void cacheLatestVersion(Long documentId, int versionNumber) {
+        if (latestVersions.size() >= MAX_CACHED_HISTORIES && !latestVersions.containsKey(documentId)) {
+            latestVersions.clear();
+        }
+        latestVersions.merge(documentId, versionNumber, Math::max);
+    }
+
+    private RevertStatusDTO convertRevertToDTO(RevertCommand command) {
+        return new RevertStatusDTO(
+            command.getId(),
+            command.getDocumentId(),
+            command.getVersionNumber(),
+            command.getStatus().name(),
+            command.getAttempts(),
+            command.getLastError(),
+            command.getDocumentRevision(),
+            command.getCreatedAt() != null ? command.getCreatedAt().toString() : null,
+            command.getCompletedAt() != null ? command.getCompletedAt().toString() : null
+        );
+    }
+
+    private DocumentVersionDTO convertToDTO(DocumentVersion version, String content) {
         return new DocumentVersionDTO(
             version.getId(),
             version.getDocumentId(),
             version.getVersionNumber(),
-            version.getContent(),
+            content,
             version.getCreatedBy(),
             version.getCreatedAt() != null ? version.getCreatedAt().toString() : null,
             version.getDescription()
@@ -128,6 +453,6 @@ public class VersionControlService {
 
     private UserContributionDTO convertContributionToDTO(UserContribution contribution) {
         return new UserContributionDTO(contribution.getId(), contribution.getDocumentId(),
-                contribution.getUserId(), contribution.getChangesCount());
+                contribution.getUserId(), contribution.getChangesCount() != null ? contribution.getChangesCount() : 0);
     }
 }
@@ -0,0 +1,67 @@
+package com.syab.versioncontrol.service;
+
+import com.syab.versioncontrol.model.DocumentVersionCounter;
+import com.syab.versioncontrol.repository.DocumentVersionCounterRepository;
+import com.syab.versioncontrol.repository.DocumentVersionRepository;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Propagation;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out version numbers from a per-document counter row. The row stays locked until the
+ * caller's transaction ends, so concurrent creators of the same document queue up behind it and
+ * each gets the next number; a rolled-back creation gives its number back. The cost is one
+ * primary-key lookup whatever the length of the history.
+ */
+@Component
+public class VersionNumberAllocator {
+    private final DocumentVersionCounterRepository counterRepository;
+    private final DocumentVersionRepository versionRepository;
+    private final TransactionTemplate transactionTemplate;
+    // documents whose counter row is known to exist, so ensureCounter costs nothing after the first call
+    private final Set<Long> knownCounters = ConcurrentHashMap.newKeySet();
+    private static final int MAX_KNOWN_COUNTERS = 100_000;
+
+    public VersionNumberAllocator(DocumentVersionCounterRepository counterRepository,
+                                  DocumentVersionRepository versionRepository,
+                                  PlatformTransactionManager transactionManager) {
+        this.counterRepository = counterRepository;
+        this.versionRepository = versionRepository;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+    }
+
+    /**
+     * Makes sure the document has a counter, committing it if not; call it before the transaction
+     * that allocates, which would otherwise hold a second connection while this one commits.
+     * Documents with history from before the counter start at their latest version.
+     */
+    @Transactional(propagation = Propagation.NOT_SUPPORTED)
+    public void ensureCounter(Long documentId) {
+        if (knownCounters.contains(documentId)) return;
+        if (!counterRepository.existsById(documentId)) {
+            try {
+                transactionTemplate.executeWithoutResult(status ->
+                        counterRepository.insert(documentId, versionRepository.findLatestVersionNumber(documentId)));
+            } catch (DataIntegrityViolationException e) {
+                // another writer created it first
+            }
+        }
+        if (knownCounters.size() >= MAX_KNOWN_COUNTERS) knownCounters.clear();
+        knownCounters.add(documentId);
+    }
+
+    /** Next version number of a document whose counter exists; locks the counter until the transaction ends. */
+    @Transactional(propagation = Propagation.MANDATORY)
+    public int next(Long documentId) {
+        DocumentVersionCounter counter = counterRepository.findByIdForUpdate(documentId)
+                .orElseThrow(() -> new IllegalStateException("No version counter for document " + documentId));
+        counter.setLastVersion(counter.getLastVersion() + 1);
+        return counter.getLastVersion();
+    }
+}
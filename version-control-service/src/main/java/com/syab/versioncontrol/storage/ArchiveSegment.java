@@ -0,0 +1,255 @@
+package com.syab.versioncontrol.storage;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * One archive segment: a data file of version texts, written once from start to end, and an
+ * offset index beside it, both memory-mapped for reading. Texts are decoded straight from the
+ * mapped pages, so a read makes no system call and copies no bytes onto the heap first.
+ * <p>
+ * Data file {@code segment-N.dat}: magic, then per version its document id (8 bytes), version
+ * number (4), text length (4), CRC32 of the text (4) and the UTF-8 text. Index file
+ * {@code segment-N.idx}: magic, entry count, then per version its document id (8), version number
+ * (4) and record offset (8), sorted, then a CRC32 of the entries. The index is written last, so a
+ * segment without one was never finished.
+ */
+final class ArchiveSegment {
+    private static final int DATA_MAGIC = 0x43564144;  // "CVAD"
+    private static final int INDEX_MAGIC = 0x43564149; // "CVAI"
+    private static final int RECORD_HEADER = 20;
+    private static final int ENTRY = 20;
+    private static final int INDEX_HEADER = 8;
+
+    private final int id;
+    private final Path dataPath;
+    private final Path indexPath;
+    private final MappedByteBuffer data;
+    private final MappedByteBuffer index;
+    private final int entries;
+
+    private ArchiveSegment(int id, Path dataPath, Path indexPath, MappedByteBuffer data, MappedByteBuffer index) {
+        this.id = id;
+        this.dataPath = dataPath;
+        this.indexPath = indexPath;
+        this.data = data;
+        this.index = index;
+        this.entries = index.getInt(4);
+    }
+
+    static Path dataPath(Path dir, int id) {
+        return dir.resolve(String.format("segment-%06d.dat", id));
+    }
+
+    static Path indexPath(Path dir, int id) {
+        return dir.resolve(String.format("segment-%06d.idx", id));
+    }
+
+    /** Maps a finished segment, checking its magic numbers and the checksum of its index. */
+    static ArchiveSegment open(Path dir, int id) throws IOException {
+        Path dataPath = dataPath(dir, id);
+        Path indexPath = indexPath(dir, id);
+        MappedByteBuffer data = map(dataPath);
+        MappedByteBuffer index = map(indexPath);
+        if (data.capacity() < 4 || data.getInt(0) != DATA_MAGIC
+                || index.capacity() < INDEX_HEADER + 4 || index.getInt(0) != INDEX_MAGIC) {
+            throw new IOException("Not an archive segment: " + dataPath);
+        }
+        int count = index.getInt(4);
+        int end = INDEX_HEADER + count * ENTRY;
+        if (count < 0 || end + 4 != index.capacity()) {
+            throw new IOException("Archive segment index is truncated: " + indexPath);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(index.slice(INDEX_HEADER, count * ENTRY));
+        if ((int) crc.getValue() != index.getInt(end)) {
+            throw new IOException("Archive segment index is corrupt: " + indexPath);
+        }
+        return new ArchiveSegment(id, dataPath, indexPath, data, index);
+    }
+
+    private static MappedByteBuffer map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            // the mapping outlives the channel
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+    }
+
+    int id() {
+        return id;
+    }
+
+    int entries() {
+        return entries;
+    }
+
+    long bytes() {
+        return data.capacity();
+    }
+
+    /** @return the text of this version, or {@code null} if the segment does not hold it */
+    String text(long documentId, int versionNumber) {
+        int entry = find(documentId, versionNumber);
+        if (entry < 0) return null;
+        int offset = (int) index.getLong(INDEX_HEADER + entry * ENTRY + 12);
+        if (data.getLong(offset) != documentId || data.getInt(offset + 8) != versionNumber) {
+            throw new IllegalStateException("Archive segment " + id + " does not match its index at " + offset);
+        }
+        int length = data.getInt(offset + 12);
+        ByteBuffer text = data.slice(offset + RECORD_HEADER, length);
+        CRC32 crc = new CRC32();
+        crc.update(text);
+        if ((int) crc.getValue() != data.getInt(offset + 16)) {
+            throw new IllegalStateException("Version " + versionNumber + " of document " + documentId
+                    + " is corrupt in archive segment " + id);
+        }
+        return StandardCharsets.UTF_8.decode(text.rewind()).toString();
+    }
+
+    // binary search over the sorted index, read in place
+    private int find(long documentId, int versionNumber) {
+        int low = 0;
+        int high = entries - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int at = INDEX_HEADER + mid * ENTRY;
+            int cmp = Long.compare(index.getLong(at), documentId);
+            if (cmp == 0) cmp = Integer.compare(index.getInt(at + 8), versionNumber);
+            if (cmp < 0) low = mid + 1;
+            else if (cmp > 0) high = mid - 1;
+            else return mid;
+        }
+        return -1;
+    }
+
+    /** Removes the files; the mappings stay readable until they are garbage collected. */
+    void delete() throws IOException {
+        Files.deleteIfExists(indexPath);
+        Files.deleteIfExists(dataPath);
+    }
+
+    /**
+     * Writes a new segment. Versions must be appended in (document, version) order; nothing is
+     * visible under the segment's name until {@link #finish}.
+     */
+    static final class Writer implements AutoCloseable {
+        private final Path dir;
+        private final int id;
+        private final Path dataTemp;
+        private final FileChannel channel;
+        private final DataOutputStream out;
+        private long[] documentIds = new long[256];
+        private int[] versionNumbers = new int[256];
+        private long[] offsets = new long[256];
+        private int count;
+        private long size;
+        private boolean finished;
+
+        Writer(Path dir, int id) throws IOException {
+            this.dir = dir;
+            this.id = id;
+            this.dataTemp = dir.resolve(dataPath(dir, id).getFileName() + ".tmp");
+            this.channel = FileChannel.open(dataTemp, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                    StandardOpenOption.WRITE);
+            this.out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            out.writeInt(DATA_MAGIC);
+            size = 4;
+        }
+
+        int id() {
+            return id;
+        }
+
+        int count() {
+            return count;
+        }
+
+        /** Bytes written so far. */
+        long size() {
+            return size;
+        }
+
+        /** @return the size of the record written for this text */
+        int append(long documentId, int versionNumber, String text) throws IOException {
+            if (count > 0 && (Long.compare(documentId, documentIds[count - 1]) < 0
+                    || documentId == documentIds[count - 1] && versionNumber <= versionNumbers[count - 1])) {
+                throw new IllegalArgumentException("Versions must be appended in order");
+            }
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            if (size + RECORD_HEADER + bytes.length > Integer.MAX_VALUE) {
+                throw new IllegalStateException("Archive segment " + id + " is full");
+            }
+            if (count == offsets.length) {
+                documentIds = Arrays.copyOf(documentIds, count * 2);
+                versionNumbers = Arrays.copyOf(versionNumbers, count * 2);
+                offsets = Arrays.copyOf(offsets, count * 2);
+            }
+            documentIds[count] = documentId;
+            versionNumbers[count] = versionNumber;
+            offsets[count++] = size;
+            CRC32 crc = new CRC32();
+            crc.update(bytes);
+            out.writeLong(documentId);
+            out.writeInt(versionNumber);
+            out.writeInt(bytes.length);
+            out.writeInt((int) crc.getValue());
+            out.write(bytes);
+            size += RECORD_HEADER + bytes.length;
+            return RECORD_HEADER + bytes.length;
+        }
+
+        /** Syncs both files to disk and maps the finished segment. */
+        ArchiveSegment finish() throws IOException {
+            out.flush();
+            channel.force(true);
+            out.close();
+            Files.move(dataTemp, dataPath(dir, id), StandardCopyOption.ATOMIC_MOVE);
+
+            ByteBuffer entries = ByteBuffer.allocate(count * ENTRY);
+            for (int i = 0; i < count; i++) {
+                entries.putLong(documentIds[i]).putInt(versionNumbers[i]).putLong(offsets[i]);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(entries.flip());
+            Path indexTemp = dir.resolve(indexPath(dir, id).getFileName() + ".tmp");
+            try (FileChannel index = FileChannel.open(indexTemp, StandardOpenOption.CREATE,
+                    StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+                ByteBuffer header = ByteBuffer.allocate(INDEX_HEADER).putInt(INDEX_MAGIC).putInt(count).flip();
+                ByteBuffer trailer = ByteBuffer.allocate(4).putInt((int) crc.getValue()).flip();
+                entries.rewind();
+                while (header.hasRemaining() || entries.hasRemaining() || trailer.hasRemaining()) {
+                    index.write(new ByteBuffer[]{header, entries, trailer});
+                }
+                index.force(true);
+            }
+            Files.move(indexTemp, indexPath(dir, id), StandardCopyOption.ATOMIC_MOVE);
+            finished = true;
+            return open(dir, id);
+        }
+
+        /** Discards an unfinished segment. */
+        @Override
+        public void close() {
+            if (finished) return;
+            try {
+                out.close();
+                Files.deleteIfExists(dataTemp);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.syab.versioncontrol.storage;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Copy/insert binary delta, in the spirit of git's pack deltas. The base is indexed in
+ * {@value #BLOCK}-byte blocks; the target is scanned with a rolling hash, and every block match is
+ * extended in both directions and emitted as a copy from the base. Everything else is inserted
+ * literally.
+ * <p>
+ * Format: varint base length, varint target length, then a sequence of
+ * {@code 0, varint n, n bytes} (insert) and {@code 1, varint offset, varint n} (copy).
+ */
+public final class BinaryDelta {
+    private static final int BLOCK = 16;
+    private static final int PRIME = 31;
+    private static final int PRIME_POW = pow(PRIME, BLOCK - 1);
+    private static final byte INSERT = 0;
+    private static final byte COPY = 1;
+
+    private BinaryDelta() {
+    }
+
+    public static byte[] encode(byte[] base, byte[] target) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(32 + target.length / 8);
+        writeVarint(out, base.length);
+        writeVarint(out, target.length);
+
+        int literalStart = 0;
+        if (base.length >= BLOCK && target.length >= BLOCK) {
+            Map<Integer, Integer> blocks = new HashMap<>(base.length / BLOCK * 2);
+            for (int offset = 0; offset + BLOCK <= base.length; offset += BLOCK) {
+                blocks.putIfAbsent(hash(base, offset), offset);
+            }
+            int i = 0;
+            int h = hash(target, 0);
+            while (i + BLOCK <= target.length) {
+                Integer offset = blocks.get(h);
+                if (offset != null && Arrays.equals(base, offset, offset + BLOCK, target, i, i + BLOCK)) {
+                    int start = i;
+                    int baseStart = offset;
+                    while (start > literalStart && baseStart > 0 && target[start - 1] == base[baseStart - 1]) {
+                        start--;
+                        baseStart--;
+                    }
+                    int end = i + BLOCK;
+                    int baseEnd = offset + BLOCK;
+                    while (end < target.length && baseEnd < base.length && target[end] == base[baseEnd]) {
+                        end++;
+                        baseEnd++;
+                    }
+                    writeInsert(out, target, literalStart, start);
+                    out.write(COPY);
+                    writeVarint(out, baseStart);
+                    writeVarint(out, end - start);
+                    i = end;
+                    literalStart = end;
+                    if (i + BLOCK <= target.length) h = hash(target, i);
+                    continue;
+                }
+                if (i + BLOCK < target.length) {
+                    h = (h - target[i] * PRIME_POW) * PRIME + target[i + BLOCK];
+                }
+                i++;
+            }
+        }
+        writeInsert(out, target, literalStart, target.length);
+        return out.toByteArray();
+    }
+
+    public static byte[] apply(byte[] base, byte[] delta) {
+        int[] pos = {0};
+        if (readVarint(delta, pos) != base.length) {
+            throw new IllegalStateException("Delta was made against a different base");
+        }
+        byte[] target = new byte[readVarint(delta, pos)];
+        int written = 0;
+        while (pos[0] < delta.length) {
+            byte op = delta[pos[0]++];
+            if (op == INSERT) {
+                int length = readVarint(delta, pos);
+                System.arraycopy(delta, pos[0], target, written, length);
+                pos[0] += length;
+                written += length;
+            } else if (op == COPY) {
+                int offset = readVarint(delta, pos);
+                int length = readVarint(delta, pos);
+                System.arraycopy(base, offset, target, written, length);
+                written += length;
+            } else {
+                throw new IllegalStateException("Corrupt delta: unknown op " + op);
+            }
+        }
+        if (written != target.length) {
+            throw new IllegalStateException("Corrupt delta: " + written + " of " + target.length + " bytes");
+        }
+        return target;
+    }
+
+    private static void writeInsert(ByteArrayOutputStream out, byte[] data, int from, int to) {
+        if (to <= from) return;
+        out.write(INSERT);
+        writeVarint(out, to - from);
+        out.write(data, from, to - from);
+    }
+
+    private static int hash(byte[] data, int offset) {
+        int h = 0;
+        for (int k = 0; k < BLOCK; k++) h = h * PRIME + data[offset + k];
+        return h;
+    }
+
+    private static int pow(int base, int exponent) {
+        int result = 1;
+        for (int k = 0; k < exponent; k++) result *= base;
+        return result;
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7F) != 0) {
+            out.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(byte[] data, int[] pos) {
+        int value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[pos[0]++];
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) return value;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+package com.syab.versioncontrol.storage;
+
+import com.syab.common.compression.PackedText;
+import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.VersionStorage;
+import com.syab.versioncontrol.repository.ContentBlobChunkRepository;
+import com.syab.versioncontrol.repository.ContentBlobRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.Enumeration;
+import java.util.HexFormat;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Content-addressed version text: each distinct text is stored once in {@code content_blobs}, under
+ * its SHA-256, however many versions of however many documents have it. Writes go through here so
+ * the reference counts change in the same transaction as the version rows; blobs nothing refers to
+ * any more are deleted every {@code gc-interval}.
+ * <p>
+ * Texts streamed in over {@code stream.chunk-size} are stored as a blob of {@code chunk-size}
+ * pieces in {@code content_blob_chunks}, written and read one piece at a time.
+ */
+@Component
+public class ContentBlobStore {
+    private static final Logger log = LoggerFactory.getLogger(ContentBlobStore.class);
+
+    private final ContentBlobRepository blobRepository;
+    private final ContentBlobChunkRepository chunkRepository;
+    private final VersionContentStore contentStore;
+    private final TransactionTemplate transactionTemplate;
+    private final Duration gcInterval;
+    private final int chunkSize;
+    private final long maxStreamBytes;
+    private final Counter collected;
+    private final ScheduledExecutorService collector;
+
+    public ContentBlobStore(ContentBlobRepository blobRepository, ContentBlobChunkRepository chunkRepository,
+                            VersionContentStore contentStore, PlatformTransactionManager transactionManager,
+                            @Value("${collab.versions.blobs.gc-interval:1h}") Duration gcInterval,
+                            @Value("${collab.versions.stream.chunk-size:1MB}") DataSize chunkSize,
+                            @Value("${collab.versions.stream.max-size:512MB}") DataSize maxStreamSize,
+                            MeterRegistry meterRegistry) {
+        this.blobRepository = blobRepository;
+        this.chunkRepository = chunkRepository;
+        this.contentStore = contentStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.gcInterval = gcInterval;
+        this.chunkSize = (int) chunkSize.toBytes();
+        this.maxStreamBytes = Math.min(maxStreamSize.toBytes(), Integer.MAX_VALUE);
+        this.collected = Counter.builder("collab.version.blobs.collected").register(meterRegistry);
+        this.collector = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "blob-gc");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        collector.scheduleWithFixedDelay(this::collectGarbage, gcInterval.toMillis(), gcInterval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /** SHA-256 of the UTF-8 text, lowercase hex. */
+    public static String hash(String content) {
+        try {
+            return HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(content.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Fills the storage columns of {@code version} like {@link VersionContentStore#store}, taking a
+     * reference to its blob if it becomes a keyframe. Call it in the transaction that saves the row.
+     */
+    public void store(DocumentVersion version, String content, DocumentVersion previous, String previousContent) {
+        String hash = hash(content);
+        version.setContentHash(hash);
+        LocalDateTime now = LocalDateTime.now();
+        // an existing blob is always used, so the reference taken here is never wasted
+        boolean exists = blobRepository.addReferences(hash, 1, now) > 0;
+        contentStore.store(version, content, exists, previous, previousContent);
+        if (version.getStorage() == VersionStorage.BLOB && !exists) {
+            PackedText text = PackedText.of(content);
+            if (blobRepository.insertIfAbsent(hash, text.inline(), text.packed(), version.getContentSize(), now) == 0) {
+                // stored by a concurrent version in the meantime
+                blobRepository.addReferences(hash, 1, now);
+                version.setStoredSize(0);
+            } else if (text.packed() != null) {
+                version.setStoredSize(text.packed().length);
+            }
+        }
+    }
+
+    /** Copies a streamed text to a temporary file, checking it against {@code stream.max-size}. */
+    public SpooledText spool(InputStream in) throws IOException {
+        return SpooledText.spool(in, maxStreamBytes);
+    }
+
+    /** Whether a streamed text of this size is stored in chunks rather than held in memory. */
+    public boolean isChunked(long size) {
+        return size > chunkSize;
+    }
+
+    /** Whether reading {@code version} should stream its blob's chunks. */
+    public boolean isChunked(DocumentVersion version) {
+        return version.getStorage() == VersionStorage.BLOB && version.getContentSize() != null
+                && isChunked(version.getContentSize())
+                && blobRepository.findChunks(version.getContentHash()).orElse(0) > 0;
+    }
+
+    /**
+     * Makes {@code version} a keyframe on the blob of a streamed text, writing the blob one chunk
+     * at a time from the spooled file if it is not stored yet. Call it in the transaction that
+     * saves the row.
+     */
+    public void storeChunked(DocumentVersion version, SpooledText text) throws IOException {
+        String hash = text.hash();
+        LocalDateTime now = LocalDateTime.now();
+        version.setContentHash(hash);
+        version.setStorage(VersionStorage.BLOB);
+        version.setContent("");
+        version.setDelta(null);
+        version.setKeyframeVersion(version.getVersionNumber());
+        version.setContentSize((int) text.size());
+        version.setStoredSize(0);
+        if (blobRepository.addReferences(hash, 1, now) > 0) {
+            return;
+        }
+        int chunks = (int) ((text.size() + chunkSize - 1) / chunkSize);
+        if (blobRepository.insertChunkedIfAbsent(hash, (int) text.size(), chunks, now) == 0) {
+            // stored by a concurrent version in the meantime
+            blobRepository.addReferences(hash, 1, now);
+            return;
+        }
+        // each insert binds the buffer and runs before it is refilled
+        byte[] buffer = new byte[chunkSize];
+        try (InputStream in = text.open()) {
+            for (int seq = 0; seq < chunks; seq++) {
+                int n = in.readNBytes(buffer, 0, chunkSize);
+                chunkRepository.insertChunk(hash, seq, n == chunkSize ? buffer : Arrays.copyOf(buffer, n));
+            }
+        }
+        version.setStoredSize((int) text.size());
+    }
+
+    /**
+     * Text of a chunked blob as a stream that queries one chunk at a time as it is read, so
+     * neither the text nor a connection is held while a client downloads it.
+     */
+    public InputStream openChunks(String hash) {
+        int chunks = blobRepository.findChunks(hash)
+                .orElseThrow(() -> new IllegalStateException("Content blob " + hash + " is missing"));
+        return new SequenceInputStream(new Enumeration<>() {
+            private int seq;
+
+            @Override
+            public boolean hasMoreElements() {
+                return seq < chunks;
+            }
+
+            @Override
+            public InputStream nextElement() {
+                return new ByteArrayInputStream(chunk(hash, seq++));
+            }
+        });
+    }
+
+    private byte[] chunk(String hash, int seq) {
+        return chunkRepository.findData(hash, seq)
+                .orElseThrow(() -> new IllegalStateException("Chunk " + seq + " of content blob " + hash + " is missing"));
+    }
+
+    /** Drops the reference {@code version} holds, before its storage is rewritten. */
+    public void release(DocumentVersion version) {
+        if (version.getStorage() == VersionStorage.BLOB) {
+            blobRepository.addReferences(version.getContentHash(), -1, LocalDateTime.now());
+        }
+    }
+
+    /** Text of a blob, for {@link VersionContentStore#content}; chunked blobs are read whole. */
+    public String text(String hash) {
+        String text = blobRepository.findContent(hash).map(PackedText::text)
+                .orElseThrow(() -> new IllegalStateException("Content blob " + hash + " is missing"));
+        int chunks = text.isEmpty() ? blobRepository.findChunks(hash).orElse(0) : 0;
+        if (chunks == 0) {
+            return text;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        for (int seq = 0; seq < chunks; seq++) {
+            bytes.writeBytes(chunk(hash, seq));
+        }
+        return bytes.toString(StandardCharsets.UTF_8);
+    }
+
+    /** Deletes blobs no version refers to; runs on its own every {@code gc-interval}. */
+    public int collectGarbage() {
+        try {
+            Integer deleted = transactionTemplate.execute(status -> {
+                int blobs = blobRepository.deleteUnreferenced();
+                chunkRepository.deleteOrphaned();
+                return blobs;
+            });
+            if (deleted != null && deleted > 0) {
+                collected.increment(deleted);
+                log.info("Deleted {} unreferenced content blobs", deleted);
+            }
+            return deleted == null ? 0 : deleted;
+        } catch (RuntimeException e) {
+            // keep the schedule alive
+            log.warn("Content blob collection failed", e);
+            return 0;
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        collector.shutdownNow();
+    }
+}
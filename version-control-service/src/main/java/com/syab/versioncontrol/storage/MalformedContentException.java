@@ -0,0 +1,11 @@
+package com.syab.versioncontrol.storage;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+@ResponseStatus(HttpStatus.BAD_REQUEST)
+public class MalformedContentException extends RuntimeException {
+    public MalformedContentException(String message) {
+        super(message);
+    }
+}
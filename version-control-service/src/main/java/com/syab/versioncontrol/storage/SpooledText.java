@@ -0,0 +1,109 @@
+package com.syab.versioncontrol.storage;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * A version text streamed in by a client, copied to a temporary file while its SHA-256 and size
+ * are computed and its UTF-8 is checked, so an upload of any size costs one buffer of heap.
+ * Closing it deletes the file.
+ */
+public final class SpooledText implements AutoCloseable {
+    private static final int BUFFER = 1 << 16;
+
+    private final Path file;
+    private final String hash;
+    private final long size;
+
+    private SpooledText(Path file, String hash, long size) {
+        this.file = file;
+        this.hash = hash;
+        this.size = size;
+    }
+
+    /**
+     * @throws ContentTooLargeException if the text is longer than {@code maxBytes}
+     * @throws MalformedContentException if it is not UTF-8
+     */
+    public static SpooledText spool(InputStream in, long maxBytes) throws IOException {
+        Path file = Files.createTempFile("version-", ".txt");
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            // reports malformed input rather than replacing it
+            CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder();
+            byte[] buffer = new byte[BUFFER];
+            // the tail of a character split across reads carries over to the next
+            ByteBuffer pending = ByteBuffer.allocate(BUFFER + 4);
+            CharBuffer chars = CharBuffer.allocate(BUFFER + 4);
+            long size = 0;
+            try (OutputStream out = Files.newOutputStream(file)) {
+                for (int n; (n = in.read(buffer)) != -1; ) {
+                    size += n;
+                    if (size > maxBytes) {
+                        throw new ContentTooLargeException("Version content is larger than " + maxBytes + " bytes");
+                    }
+                    digest.update(buffer, 0, n);
+                    out.write(buffer, 0, n);
+                    pending.put(buffer, 0, n).flip();
+                    check(decoder.decode(pending, chars.clear(), false));
+                    pending.compact();
+                }
+            }
+            check(decoder.decode(pending.flip(), chars.clear(), true));
+            check(decoder.flush(chars.clear()));
+            return new SpooledText(file, HexFormat.of().formatHex(digest.digest()), size);
+        } catch (NoSuchAlgorithmException e) {
+            Files.deleteIfExists(file);
+            throw new IllegalStateException("SHA-256 is not available", e);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(file);
+            throw e;
+        }
+    }
+
+    private static void check(CoderResult result) {
+        if (result.isError()) {
+            throw new MalformedContentException("Version content is not valid UTF-8");
+        }
+    }
+
+    /** SHA-256 of the text, lowercase hex, as {@link ContentBlobStore#hash}. */
+    public String hash() {
+        return hash;
+    }
+
+    /** UTF-8 size in bytes. */
+    public long size() {
+        return size;
+    }
+
+    public InputStream open() throws IOException {
+        return Files.newInputStream(file);
+    }
+
+    /** The whole text; only for texts known to be small. */
+    public String read() throws IOException {
+        return Files.readString(file, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public void close() {
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package com.syab.versioncontrol.storage;
+
+import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.VersionStorage;
+import com.syab.versioncontrol.repository.DocumentVersionRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.domain.Limit;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Cold tier for old versions. Rows created more than {@code after} ago get their whole text written
+ * to an {@link ArchiveSegment} under {@code dir} and give up their delta, blob reference and inline
+ * text, so only metadata stays in the database. History pages, version texts, diffs and reverts
+ * read them like any other row, through {@link #keyframeText}. Versions on chunked blobs are left
+ * where they are: they are already off-row and shared, and archiving would read them whole.
+ * <p>
+ * Every {@code interval} (when enabled) versions due are archived, one segment of up to
+ * {@code segment-size} per transaction, and segments are compacted: a segment no row points to (left
+ * by a transaction that rolled back) is deleted, and segments mostly unreferenced, or small, are
+ * rewritten into new ones. Segments are local files, so like the caches here this assumes a single
+ * instance; {@code dir} belongs on a persistent volume.
+ */
+@Component
+public class VersionArchive {
+    private static final Logger log = LoggerFactory.getLogger(VersionArchive.class);
+    private static final Pattern SEGMENT_FILE = Pattern.compile("segment-(\\d+)\\.(dat|idx)(\\.tmp)?");
+    private static final int DOCUMENTS_PER_QUERY = 100;
+
+    private final DocumentVersionRepository versionRepository;
+    private final VersionContentStore contentStore;
+    private final ContentBlobStore blobStore;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+    private final Path dir;
+    private final Duration after;
+    private final Duration interval;
+    private final long segmentBytes;
+    private final double compactBelow;
+    private final Map<Integer, ArchiveSegment> segments = new ConcurrentHashMap<>();
+    // replaced by the last compaction; still mapped for reads that loaded their row before it
+    private volatile List<ArchiveSegment> retired = List.of();
+    private final AtomicInteger lastSegment = new AtomicInteger();
+    private final Counter archived;
+    private final Counter compacted;
+    private final ScheduledExecutorService worker;
+
+    public VersionArchive(DocumentVersionRepository versionRepository, VersionContentStore contentStore,
+                          ContentBlobStore blobStore, PlatformTransactionManager transactionManager,
+                          @Value("${collab.versions.archive.enabled:false}") boolean enabled,
+                          @Value("${collab.versions.archive.dir:data/version-archive}") String dir,
+                          @Value("${collab.versions.archive.after:180d}") Duration after,
+                          @Value("${collab.versions.archive.interval:1h}") Duration interval,
+                          @Value("${collab.versions.archive.segment-size:64MB}") DataSize segmentSize,
+                          @Value("${collab.versions.archive.compact-below:0.5}") double compactBelow,
+                          MeterRegistry meterRegistry) {
+        this.versionRepository = versionRepository;
+        this.contentStore = contentStore;
+        this.blobStore = blobStore;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+        this.dir = Path.of(dir);
+        this.after = after;
+        this.interval = interval;
+        // segments are mapped whole, and a mapping is at most 2 GB
+        this.segmentBytes = Math.min(segmentSize.toBytes(), 1L << 30);
+        this.compactBelow = compactBelow;
+        this.archived = Counter.builder("collab.version.archive.archived").register(meterRegistry);
+        this.compacted = Counter.builder("collab.version.archive.compacted").register(meterRegistry);
+        Gauge.builder("collab.version.archive.segments", segments, Map::size).register(meterRegistry);
+        Gauge.builder("collab.version.archive.bytes", segments,
+                s -> s.values().stream().mapToLong(ArchiveSegment::bytes).sum()).register(meterRegistry);
+        this.worker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "version-archive");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /** Maps the segments already on disk, enabled or not, and drops ones that were never finished. */
+    @PostConstruct
+    public void open() throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        Set<Integer> finished = new HashSet<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Matcher name = SEGMENT_FILE.matcher(file.getFileName().toString());
+                if (!name.matches()) continue;
+                int id = Integer.parseInt(name.group(1));
+                lastSegment.accumulateAndGet(id, Math::max);
+                if (name.group(3) != null) {
+                    Files.delete(file);
+                } else if (name.group(2).equals("idx")) {
+                    finished.add(id);
+                }
+            }
+        }
+        for (int id = 1; id <= lastSegment.get(); id++) {
+            if (!finished.contains(id)) {
+                Files.deleteIfExists(ArchiveSegment.dataPath(dir, id));
+                continue;
+            }
+            try {
+                segments.put(id, ArchiveSegment.open(dir, id));
+            } catch (IOException e) {
+                // left in place; versions in it fail to read until it is restored
+                log.error("Archive segment {} cannot be opened", id, e);
+            }
+        }
+        log.info("Opened {} archive segments in {}", segments.size(), dir);
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void start() {
+        if (!enabled) return;
+        worker.scheduleWithFixedDelay(this::run, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    private void run() {
+        try {
+            archive();
+            compact();
+        } catch (RuntimeException e) {
+            // keep the schedule alive; a segment left behind is dropped by the next compaction
+            log.warn("Version archival failed", e);
+        }
+    }
+
+    /** Text of a keyframe kept outside its row, for {@link VersionContentStore#content}. */
+    public String keyframeText(DocumentVersion version) {
+        return version.getStorage() == VersionStorage.ARCHIVED ? text(version) : blobStore.text(version.getContentHash());
+    }
+
+    private String text(DocumentVersion version) {
+        ArchiveSegment segment = segment(version.getArchiveSegment());
+        String text = segment == null ? null : segment.text(version.getDocumentId(), version.getVersionNumber());
+        if (text == null) {
+            throw new IllegalStateException("Version " + version.getVersionNumber() + " of document "
+                    + version.getDocumentId() + " is missing from archive segment " + version.getArchiveSegment());
+        }
+        return text;
+    }
+
+    private ArchiveSegment segment(Integer id) {
+        ArchiveSegment segment = segments.get(id);
+        if (segment != null) return segment;
+        for (ArchiveSegment old : retired) {
+            if (old.id() == id) return old;
+        }
+        return null;
+    }
+
+    /** Archives every version created before {@code after} ago. */
+    public int archive() {
+        LocalDateTime cutoff = LocalDateTime.now().minus(after);
+        long[] cursor = {0};
+        int total = 0;
+        while (true) {
+            Integer count = transactionTemplate.execute(status -> archiveSegment(cutoff, cursor));
+            if (count == null || count == 0) break;
+            total += count;
+        }
+        if (total > 0) {
+            log.info("Archived {} versions created before {}", total, cutoff);
+        }
+        return total;
+    }
+
+    // fills one segment, resuming after the document in cursor
+    private int archiveSegment(LocalDateTime cutoff, long[] cursor) {
+        ArchiveSegment.Writer writer = null;
+        List<DocumentVersion> moved = new ArrayList<>();
+        try {
+            List<Long> documentIds;
+            while ((writer == null || writer.size() < segmentBytes)
+                    && !(documentIds = versionRepository.findDocumentIdsToArchive(cursor[0], cutoff, Limit.of(DOCUMENTS_PER_QUERY))).isEmpty()) {
+                for (Long documentId : documentIds) {
+                    if (writer != null && writer.size() >= segmentBytes) break;
+                    List<DocumentVersion> due = versionRepository.findVersionsToArchive(documentId, cutoff);
+                    if (!due.isEmpty()) {
+                        if (writer == null) {
+                            Files.createDirectories(dir);
+                            writer = new ArchiveSegment.Writer(dir, lastSegment.incrementAndGet());
+                        }
+                        archiveDocument(documentId, due, writer, moved);
+                    }
+                    cursor[0] = documentId;
+                }
+            }
+            if (writer == null) return 0;
+            ArchiveSegment segment = writer.finish();
+            segments.put(segment.id(), segment);
+            versionRepository.saveAll(moved);
+            archived.increment(moved.size());
+            return moved.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (writer != null) writer.close();
+        }
+    }
+
+    private void archiveDocument(Long documentId, List<DocumentVersion> due, ArchiveSegment.Writer writer,
+                                 List<DocumentVersion> moved) throws IOException {
+        // one chain per keyframe, so a chunked version between them (never due) is not read
+        int start = 0;
+        for (int i = 1; i <= due.size(); i++) {
+            if (i == due.size() || contentStore.keyframeOf(due.get(i)) != contentStore.keyframeOf(due.get(start))) {
+                archiveChain(documentId, due.subList(start, i), writer, moved);
+                start = i;
+            }
+        }
+    }
+
+    private void archiveChain(Long documentId, List<DocumentVersion> due, ArchiveSegment.Writer writer,
+                              List<DocumentVersion> moved) throws IOException {
+        // rebuilt from the keyframe of the oldest one, like any read
+        List<DocumentVersion> chain = versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(
+                documentId, contentStore.keyframeOf(due.get(0)), due.get(due.size() - 1).getVersionNumber());
+        if (chain.isEmpty() || blobStore.isChunked(chain.get(0))) return;
+        String[] texts = contentStore.contents(chain, this::keyframeText);
+        Set<Long> dueIds = new HashSet<>();
+        for (DocumentVersion version : due) dueIds.add(version.getId());
+        for (int i = 0; i < chain.size(); i++) {
+            DocumentVersion version = chain.get(i);
+            if (!dueIds.contains(version.getId())) continue;
+            int size = writer.append(documentId, version.getVersionNumber(), texts[i]);
+            blobStore.release(version);
+            version.setStorage(VersionStorage.ARCHIVED);
+            version.setContent("");
+            version.setDelta(null);
+            // self-contained now: later deltas can rebuild from it
+            version.setKeyframeVersion(version.getVersionNumber());
+            version.setStoredSize(size);
+            version.setArchiveSegment(writer.id());
+            moved.add(version);
+        }
+    }
+
+    /** Deletes segments no version points to and rewrites mostly unreferenced or small ones. */
+    public int compact() {
+        Map<Integer, Long> live = new HashMap<>();
+        transactionTemplate.executeWithoutResult(status -> versionRepository.countByArchiveSegment()
+                .forEach(usage -> live.put(usage.getSegment(), usage.getVersions())));
+        List<ArchiveSegment> drop = new ArrayList<>();
+        List<ArchiveSegment> rewrite = new ArrayList<>();
+        List<ArchiveSegment> small = new ArrayList<>();
+        for (ArchiveSegment segment : segments.values()) {
+            long versions = live.getOrDefault(segment.id(), 0L);
+            if (versions == 0) drop.add(segment);
+            else if (versions < segment.entries() * compactBelow) rewrite.add(segment);
+            else if (segment.bytes() < segmentBytes / 4) small.add(segment);
+        }
+        // each run ends with a partly filled segment; merge them once there are several
+        if (small.size() > 1) rewrite.addAll(small);
+        if (!rewrite.isEmpty()) {
+            transactionTemplate.executeWithoutResult(status -> rewrite(rewrite));
+        }
+        List<ArchiveSegment> replaced = new ArrayList<>(drop);
+        replaced.addAll(rewrite);
+        for (ArchiveSegment segment : replaced) {
+            segments.remove(segment.id());
+            try {
+                segment.delete();
+            } catch (IOException e) {
+                log.warn("Archive segment {} could not be deleted", segment.id(), e);
+            }
+        }
+        retired = replaced;
+        if (!replaced.isEmpty()) {
+            compacted.increment(replaced.size());
+            log.info("Compacted {} archive segments ({} deleted, {} rewritten)", replaced.size(), drop.size(), rewrite.size());
+        }
+        return replaced.size();
+    }
+
+    private void rewrite(List<ArchiveSegment> old) {
+        List<Integer> ids = old.stream().map(ArchiveSegment::id).toList();
+        List<DocumentVersion> versions = new ArrayList<>(versionRepository.findByArchiveSegmentIn(ids));
+        versions.sort(Comparator.comparing(DocumentVersion::getDocumentId).thenComparing(DocumentVersion::getVersionNumber));
+        ArchiveSegment.Writer writer = null;
+        try {
+            for (DocumentVersion version : versions) {
+                if (writer != null && writer.size() >= segmentBytes) {
+                    install(writer);
+                    writer = null;
+                }
+                if (writer == null) {
+                    writer = new ArchiveSegment.Writer(dir, lastSegment.incrementAndGet());
+                }
+                version.setStoredSize(writer.append(version.getDocumentId(), version.getVersionNumber(), text(version)));
+                version.setArchiveSegment(writer.id());
+            }
+            if (writer != null) install(writer);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            if (writer != null) writer.close();
+        }
+        versionRepository.saveAll(versions);
+    }
+
+    private void install(ArchiveSegment.Writer writer) throws IOException {
+        try (writer) {
+            ArchiveSegment segment = writer.finish();
+            segments.put(segment.id(), segment);
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        worker.shutdownNow();
+    }
+}
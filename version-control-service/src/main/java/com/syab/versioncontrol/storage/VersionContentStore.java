@@ -0,0 +1,153 @@
+package com.syab.versioncontrol.storage;
+
+import com.syab.versioncontrol.cache.WeightedCache;
+import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.VersionStorage;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * Stores version text as a binary delta from the previous version, with a keyframe at least every
+ * {@code keyframeInterval} versions, so rebuilding any version applies fewer than that many deltas.
+ * Keyframes are {@link VersionStorage#BLOB} rows naming a shared content blob; a version whose text
+ * already has a blob becomes a keyframe for free, and {@link VersionArchive} turns old rows of any
+ * kind into {@link VersionStorage#ARCHIVED} ones, which also hold their whole text. Rebuilt texts are kept in a
+ * {@link WeightedCache} bounded by their size in bytes, keyed by row id, which is never reused (not even after a
+ * rollback), so entries never need invalidating.
+ * <p>
+ * This class does no I/O: callers load the rows, from the keyframe up, and hand them in, along with
+ * a way to read keyframe texts kept outside the row ({@link VersionArchive#keyframeText}).
+ * {@link ContentBlobStore} writes through it.
+ */
+@Component
+public class VersionContentStore {
+    private final int keyframeInterval;
+    private final WeightedCache<Long, String> cache;
+
+    public VersionContentStore(@Value("${collab.versions.keyframe-interval:16}") int keyframeInterval,
+                               @Value("${collab.versions.cache.content-max-size:32MB}") DataSize cacheMaxSize,
+                               MeterRegistry meterRegistry) {
+        if (keyframeInterval < 1) {
+            throw new IllegalArgumentException("collab.versions.keyframe-interval must be at least 1");
+        }
+        this.keyframeInterval = keyframeInterval;
+        // UTF-16, as a string with any non-Latin-1 character is held
+        this.cache = new WeightedCache<>("content", cacheMaxSize.toBytes(), null, text -> 40 + 2L * text.length(),
+                meterRegistry);
+    }
+
+    /**
+     * Fills the storage columns of {@code version}, whose number and content hash are already set.
+     *
+     * @param blobExists      whether a blob with this text is already stored, so a keyframe costs nothing
+     * @param previous        the version before it, or {@code null} for the first one
+     * @param previousContent the text of {@code previous}
+     */
+    public void store(DocumentVersion version, String content, boolean blobExists,
+                      DocumentVersion previous, String previousContent) {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        version.setContentSize(bytes.length);
+        if (!blobExists && previous != null && version.getVersionNumber() - keyframeOf(previous) < keyframeInterval) {
+            byte[] delta = BinaryDelta.encode(previousContent.getBytes(StandardCharsets.UTF_8), bytes);
+            if (delta.length < bytes.length) {
+                version.setStorage(VersionStorage.DELTA);
+                version.setContent("");
+                version.setDelta(delta);
+                version.setKeyframeVersion(keyframeOf(previous));
+                version.setStoredSize(delta.length);
+                return;
+            }
+        }
+        version.setStorage(VersionStorage.BLOB);
+        version.setContent("");
+        version.setDelta(null);
+        version.setKeyframeVersion(version.getVersionNumber());
+        version.setStoredSize(blobExists ? 0 : bytes.length);
+    }
+
+    /** Whether {@link #content} needs the rows from {@link #keyframeOf} onwards rather than just this one. */
+    public boolean needsChain(DocumentVersion version) {
+        return isDelta(version) && peek(version.getId()) == null;
+    }
+
+    public int keyframeOf(DocumentVersion version) {
+        return version.getKeyframeVersion() != null ? version.getKeyframeVersion() : version.getVersionNumber();
+    }
+
+    /**
+     * Text of the last row of {@code chain}, which runs in version order from a keyframe.
+     *
+     * @param keyframes text of a BLOB or ARCHIVED row
+     */
+    public String content(List<DocumentVersion> chain, Function<DocumentVersion, String> keyframes) {
+        // start from the newest row whose text is at hand
+        int from = chain.size() - 1;
+        while (from > 0 && isDelta(chain.get(from)) && peek(chain.get(from).getId()) == null) from--;
+        String text = null;
+        for (int i = from; i < chain.size(); i++) {
+            text = textOf(chain.get(i), text, keyframes);
+        }
+        return text;
+    }
+
+    /** Texts of all rows of {@code chain}, in order. */
+    public String[] contents(List<DocumentVersion> chain, Function<DocumentVersion, String> keyframes) {
+        String[] texts = new String[chain.size()];
+        for (int i = 0; i < chain.size(); i++) {
+            texts[i] = textOf(chain.get(i), i == 0 ? null : texts[i - 1], keyframes);
+        }
+        return texts;
+    }
+
+    /** Makes a just-saved version's text available without rebuilding it. */
+    public void remember(DocumentVersion version, String content) {
+        if (!isInline(version)) cache(version.getId(), content);
+    }
+
+    private String textOf(DocumentVersion version, String previous, Function<DocumentVersion, String> keyframes) {
+        if (isInline(version)) return version.getContent();
+        String text = cached(version.getId());
+        if (text != null) return text;
+        if (version.getStorage() == VersionStorage.BLOB || version.getStorage() == VersionStorage.ARCHIVED) {
+            text = keyframes.apply(version);
+            cache(version.getId(), text);
+            return text;
+        }
+        if (previous == null) {
+            throw new IllegalStateException("Version " + version.getVersionNumber() + " of document "
+                    + version.getDocumentId() + " has no keyframe to rebuild from");
+        }
+        text = new String(BinaryDelta.apply(previous.getBytes(StandardCharsets.UTF_8), version.getDelta()),
+                StandardCharsets.UTF_8);
+        cache(version.getId(), text);
+        return text;
+    }
+
+    private static boolean isDelta(DocumentVersion version) {
+        return version.getStorage() == VersionStorage.DELTA;
+    }
+
+    private static boolean isInline(DocumentVersion version) {
+        return version.getStorage() == null || version.getStorage() == VersionStorage.FULL;
+    }
+
+    // texts by row id are never invalidated, so they all share group 0
+    private String cached(Long id) {
+        return id == null ? null : cache.getIfPresent(0, id);
+    }
+
+    // not counted as a cache request
+    private String peek(Long id) {
+        return id == null ? null : cache.peek(0, id);
+    }
+
+    private void cache(Long id, String text) {
+        if (id != null) cache.put(0, id, text);
+    }
+}
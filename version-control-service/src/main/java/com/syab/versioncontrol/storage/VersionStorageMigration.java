@@ -0,0 +1,84 @@
+package com.syab.versioncontrol.storage;
+
+import com.syab.versioncontrol.dto.StorageReportDTO;
+import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.VersionStorage;
+import com.syab.versioncontrol.repository.DocumentVersionRepository;
+import com.syab.versioncontrol.service.VersionControlService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.ApplicationArguments;
+import org.springframework.boot.ApplicationRunner;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.List;
+
+/**
+ * Converts version rows written before delta storage or before content-addressed keyframes, one
+ * document per transaction, and logs a storage report. Runs at startup when
+ * {@code collab.versions.migrate=true}; it is idempotent and safe to interrupt, since only documents
+ * that still have such rows are touched.
+ */
+@Component
+public class VersionStorageMigration implements ApplicationRunner {
+    private static final Logger log = LoggerFactory.getLogger(VersionStorageMigration.class);
+
+    private final DocumentVersionRepository versionRepository;
+    private final VersionContentStore contentStore;
+    private final ContentBlobStore blobStore;
+    private final VersionArchive archive;
+    private final VersionControlService versionControlService;
+    private final TransactionTemplate transactionTemplate;
+    private final boolean enabled;
+
+    public VersionStorageMigration(DocumentVersionRepository versionRepository, VersionContentStore contentStore,
+                                   ContentBlobStore blobStore, VersionArchive archive, VersionControlService versionControlService,
+                                   PlatformTransactionManager transactionManager,
+                                   @Value("${collab.versions.migrate:false}") boolean enabled) {
+        this.versionRepository = versionRepository;
+        this.contentStore = contentStore;
+        this.blobStore = blobStore;
+        this.archive = archive;
+        this.versionControlService = versionControlService;
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.enabled = enabled;
+    }
+
+    @Override
+    public void run(ApplicationArguments args) {
+        if (!enabled) return;
+        StorageReportDTO before = versionControlService.getStorageReport();
+        List<Long> documentIds = versionRepository.findDocumentIdsWithUnconvertedVersions();
+        log.info("Converting versions of {} documents to delta and blob storage ({} rows from before delta storage)",
+                documentIds.size(), before.getUnconverted());
+        int converted = 0;
+        for (Long documentId : documentIds) {
+            transactionTemplate.executeWithoutResult(status -> convert(documentId));
+            if (++converted % 100 == 0) {
+                log.info("Converted {}/{} documents", converted, documentIds.size());
+            }
+        }
+        StorageReportDTO after = versionControlService.getStorageReport();
+        log.info("Version storage: {} versions ({} keyframes, {} deltas, {} unconverted), {} blobs shared by {} more versions, "
+                        + "{} bytes of content stored in {} bytes, {} bytes ({}%) saved",
+                after.getVersions(), after.getKeyframes(), after.getDeltas(), after.getUnconverted(),
+                after.getBlobs(), after.getDedupedVersions(), after.getContentBytes(), after.getStoredBytes(), after.getSavedBytes(), after.getSavedPercent());
+    }
+
+    private void convert(Long documentId) {
+        // re-encode the whole history: rows added since the upgrade may sit on unconverted ones
+        List<DocumentVersion> versions = versionRepository.findByDocumentIdOrderByVersionNumberAsc(documentId);
+        String[] contents = contentStore.contents(versions, archive::keyframeText);
+        for (int i = 0; i < versions.size(); i++) {
+            // archived rows hold their whole text already
+            if (versions.get(i).getStorage() == VersionStorage.ARCHIVED) continue;
+            // blobs left without references here are collected later
+            blobStore.release(versions.get(i));
+            blobStore.store(versions.get(i), contents[i], i == 0 ? null : versions.get(i - 1), i == 0 ? null : contents[i - 1]);
+        }
+        versionRepository.saveAll(versions);
+    }
+}
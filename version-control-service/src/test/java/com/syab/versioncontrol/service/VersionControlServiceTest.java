@@ -1,25 +1,79 @@
 package com.syab.versioncontrol.service;
 
+import com.syab.versioncontrol.blame.AuthorshipIndex;
+import com.syab.versioncontrol.blame.AuthorshipTracker;
+import com.syab.versioncontrol.cache.VersionViewCache;
+import com.syab.versioncontrol.checkpoint.CheckpointConsumer;
+import com.syab.common.compression.PackedText;
+import com.syab.versioncontrol.contribution.ContributionCounter;
+import com.syab.versioncontrol.diff.DiffTooLargeException;
+import com.syab.versioncontrol.diff.VersionDiffer;
+import com.syab.versioncontrol.dto.BlameDTO;
+import com.syab.versioncontrol.dto.BlameLinesDTO;
+import com.syab.versioncontrol.dto.BlameRangeDTO;
+import com.syab.versioncontrol.dto.CreateVersionRequest;
 import com.syab.versioncontrol.dto.DocumentVersionDTO;
+import com.syab.versioncontrol.dto.EditSpliceDTO;
+import com.syab.versioncontrol.dto.RevertStatusDTO;
 import com.syab.versioncontrol.dto.UserContributionDTO;
+import com.syab.versioncontrol.dto.VersionDiffDTO;
+import com.syab.versioncontrol.dto.VersionHistoryPageDTO;
+import com.syab.versioncontrol.model.AuthorshipSplices;
+import com.syab.versioncontrol.model.DocumentAuthorship;
 import com.syab.versioncontrol.model.DocumentVersion;
+import com.syab.versioncontrol.model.RevertCommand;
+import com.syab.versioncontrol.model.RevertStatus;
 import com.syab.versioncontrol.model.UserContribution;
+import com.syab.versioncontrol.model.VersionStorage;
+import com.syab.versioncontrol.repository.AuthorshipSplicesRepository;
+import com.syab.versioncontrol.repository.ContentBlobChunkRepository;
+import com.syab.versioncontrol.repository.ContentBlobRepository;
+import com.syab.versioncontrol.repository.DocumentAuthorshipRepository;
 import com.syab.versioncontrol.repository.DocumentVersionRepository;
+import com.syab.versioncontrol.repository.RevertCommandRepository;
 import com.syab.versioncontrol.repository.UserContributionRepository;
+import com.syab.versioncontrol.revert.IdempotencyKeyReusedException;
+import com.syab.versioncontrol.storage.BinaryDelta;
+import com.syab.versioncontrol.storage.ContentBlobStore;
+import com.syab.versioncontrol.storage.VersionArchive;
+import com.syab.versioncontrol.storage.VersionContentStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
+import org.mockito.Spy;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.data.domain.Limit;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.util.unit.DataSize;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.Arrays;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 @ExtendWith(MockitoExtension.class)
@@ -30,6 +84,61 @@ class VersionControlServiceTest {
     @Mock
     private UserContributionRepository contributionRepository;
 
+    @Spy
+    private SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    @Mock
+    private RevertCommandRepository revertRepository;
+
+    @Mock
+    private VersionNumberAllocator versionNumbers;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    @Spy
+    private VersionDiffer versionDiffer = new VersionDiffer(1_000_000, Duration.ofSeconds(2), 1,
+            1_000_000, Duration.ofMinutes(10), new SimpleMeterRegistry());
+
+    @Spy
+    private VersionContentStore contentStore = new VersionContentStore(16, DataSize.ofMegabytes(2), new SimpleMeterRegistry());
+
+    // also injected into the service, which reads blob totals from it
+    private ContentBlobRepository blobRepository = mock(ContentBlobRepository.class);
+
+    // stub-only: recording every chunk it is passed would hold a streamed text on the heap
+    private ContentBlobChunkRepository chunkRepository = mock(ContentBlobChunkRepository.class, withSettings().stubOnly());
+
+    @Spy
+    private ContentBlobStore blobStore = new ContentBlobStore(blobRepository, chunkRepository, contentStore,
+            mock(PlatformTransactionManager.class), Duration.ofHours(1), DataSize.ofMegabytes(1),
+            DataSize.ofMegabytes(512), new SimpleMeterRegistry());
+
+    // disabled: reads archived versions, archives only when called
+    @Spy
+    private VersionArchive archive = new VersionArchive(mock(DocumentVersionRepository.class), contentStore, blobStore,
+            mock(PlatformTransactionManager.class), false, "unused", Duration.ofDays(180), Duration.ofHours(1),
+            DataSize.ofMegabytes(64), 0.5, new SimpleMeterRegistry());
+
+    @Spy
+    private ContributionCounter contributionCounter = new ContributionCounter(mock(UserContributionRepository.class),
+            mock(PlatformTransactionManager.class), Duration.ofSeconds(1), new SimpleMeterRegistry());
+
+    private SimpleMeterRegistry cacheMetrics = new SimpleMeterRegistry();
+
+    @Spy
+    private VersionViewCache viewCache = new VersionViewCache(contributionCounter, DataSize.ofMegabytes(1),
+            DataSize.ofMegabytes(1), Duration.ofMinutes(1), cacheMetrics);
+
+    @Mock
+    private AuthorshipTracker authorshipTracker;
+
+    @Mock
+    private DocumentAuthorshipRepository authorshipRepository;
+
+    @Mock
+    private AuthorshipSplicesRepository splicesRepository;
+
     @InjectMocks
     private VersionControlService versionControlService;
 
@@ -38,40 +147,109 @@ class VersionControlServiceTest {
 
     @BeforeEach
     void setUp() {
-        version = new DocumentVersion(1L, 1L, 1, "Content v1", 1L, LocalDateTime.now(), "Initial version");
+        version = new DocumentVersion(1L, 1L, 1, "Content v1", 1L, LocalDateTime.now(), "Initial version",
+                null, null, null, null, null, null, null);
         contribution = new UserContribution(1L, 1L, 1L, 5, LocalDateTime.now());
     }
 
     @Test
     void testCreateVersionSuccess() {
-        when(versionRepository.findByDocumentIdOrderByVersionNumberDesc(1L)).thenReturn(Arrays.asList());
+        when(versionNumbers.next(1L)).thenReturn(1);
         when(versionRepository.save(any(DocumentVersion.class))).thenReturn(version);
-        when(contributionRepository.findByDocumentIdAndUserId(1L, 1L)).thenReturn(Optional.empty());
-        when(contributionRepository.save(any(UserContribution.class))).thenReturn(contribution);
 
         DocumentVersionDTO result = versionControlService.createVersion(1L, "Content v1", 1L, "Initial version");
 
         assertNotNull(result);
         assertEquals(1, result.getVersionNumber());
         verify(versionRepository, times(1)).save(any(DocumentVersion.class));
+        verify(contributionCounter).record(1L, 1L, 1);
+    }
+
+    @Test
+    void testCheckpointSkippedWhenContentUnchanged() {
+        when(versionRepository.findFirstByDocumentIdOrderByVersionNumberDesc(1L)).thenReturn(Optional.of(version));
+
+        DocumentVersionDTO result = versionControlService.createCheckpoint(1L, "Content v1", 2L, "Automatic checkpoint",
+                Map.of(2L, 3), null);
+
+        assertNull(result);
+        verify(versionRepository, never()).save(any(DocumentVersion.class));
+        // the edits still count
+        assertEquals(Map.of(2L, 3L), contributionCounter.unflushed(1L));
     }
 
     @Test
-    void testRevertToVersionSuccess() {
+    void testCheckpointCountsEditsPerUser() {
+        when(versionRepository.findFirstByDocumentIdOrderByVersionNumberDesc(1L)).thenReturn(Optional.of(version));
+        when(versionNumbers.next(1L)).thenReturn(2);
         when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(version));
+        when(versionRepository.save(any(DocumentVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
 
-        DocumentVersionDTO result = versionControlService.revertToVersion(1L, 1);
+        List<EditSpliceDTO> splices = List.of(new EditSpliceDTO(9, 1, 1, 2L));
 
-        assertNotNull(result);
-        assertEquals(1, result.getVersionNumber());
-        assertEquals("Content v1", result.getContent());
+        versionControlService.createCheckpoint(1L, "Content v2", 2L, "Automatic checkpoint", Map.of(1L, 4, 2L, 7), splices);
+
+        assertEquals(Map.of(1L, 4L, 2L, 7L), contributionCounter.unflushed(1L));
+        verify(authorshipTracker).apply(1L, 2, 10, splices);
+    }
+
+    @Test
+    void testFailedCheckpointIsReportedToTheSender() throws InterruptedException {
+        when(versionRepository.findFirstByDocumentIdOrderByVersionNumberDesc(1L))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+        CheckpointConsumer consumer = new CheckpointConsumer(versionControlService, 10, Duration.ofSeconds(5),
+                new SimpleMeterRegistry());
+        CreateVersionRequest checkpoint = new CreateVersionRequest(1L, 2L, "Content v2", "Automatic checkpoint",
+                Map.of(2L, 3), null);
+
+        // not answered as accepted: the sender keeps the checkpoint, with its edits, and retries it
+        try {
+            assertThrows(DataAccessResourceFailureException.class, () -> consumer.apply(checkpoint));
+            assertTrue(contributionCounter.unflushed(1L).isEmpty());
+        } finally {
+            consumer.close();
+        }
+    }
+
+    @Test
+    void testRevertToVersionRecordsCommand() {
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(version));
+        when(revertRepository.save(any(RevertCommand.class))).thenAnswer(invocation -> {
+            RevertCommand command = invocation.getArgument(0);
+            command.setId(5L);
+            return command;
+        });
+
+        RevertStatusDTO result = versionControlService.revertToVersion(1L, 1, 2L, "key-1").orElseThrow();
+
+        assertEquals(5L, result.getId());
+        assertEquals("PENDING", result.getStatus());
+        ArgumentCaptor<RevertCommand> captor = ArgumentCaptor.forClass(RevertCommand.class);
+        verify(revertRepository).save(captor.capture());
+        assertEquals(2L, captor.getValue().getUserId());
+        assertEquals("key-1", captor.getValue().getIdempotencyKey());
+    }
+
+    @Test
+    void testRevertWithRepeatedIdempotencyKeyReturnsFirstCommand() {
+        RevertCommand first = new RevertCommand(5L, 1L, 1, 2L, "key-1", RevertStatus.SUCCEEDED, 1,
+                null, null, 8L, LocalDateTime.now(), LocalDateTime.now());
+        when(revertRepository.findByIdempotencyKey("key-1")).thenReturn(Optional.of(first));
+
+        RevertStatusDTO result = versionControlService.revertToVersion(1L, 1, 2L, "key-1").orElseThrow();
+
+        assertEquals("SUCCEEDED", result.getStatus());
+        assertEquals(8L, result.getDocumentRevision());
+        verify(revertRepository, never()).save(any(RevertCommand.class));
+        assertThrows(IdempotencyKeyReusedException.class, () -> versionControlService.revertToVersion(1L, 2, 2L, "key-1"));
     }
 
     @Test
     void testRevertToVersionNotFound() {
         when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.empty());
 
-        assertThrows(IllegalArgumentException.class, () -> versionControlService.revertToVersion(1L, 1));
+        assertTrue(versionControlService.revertToVersion(1L, 1, null, null).isEmpty());
+        verify(revertRepository, never()).save(any(RevertCommand.class));
     }
 
     @Test
@@ -88,14 +266,463 @@ class VersionControlServiceTest {
     }
 
     @Test
-    void testGetDocumentVersionHistorySuccess() {
-        List<DocumentVersion> versions = Arrays.asList(version);
-        
-        when(versionRepository.findByDocumentIdOrderByVersionNumberDesc(1L)).thenReturn(versions);
+    void testGetUserContributionsIncludesUnflushedCounts() {
+        when(contributionRepository.findByDocumentId(1L)).thenReturn(Arrays.asList(contribution));
+        contributionCounter.record(1L, 1L, 2);
+        contributionCounter.record(1L, 3L, 1);
+        contributionCounter.record(2L, 1L, 9);
 
-        List<DocumentVersionDTO> result = versionControlService.getDocumentVersionHistory(1L);
+        List<UserContributionDTO> result = versionControlService.getUserContributions(1L);
 
-        assertNotNull(result);
-        assertEquals(1, result.size());
+        assertEquals(2, result.size());
+        assertEquals(7, result.get(0).getChangesCount());
+        assertEquals(3L, result.get(1).getUserId());
+        assertEquals(1, result.get(1).getChangesCount());
+    }
+
+    @Test
+    void testContributionFlushUpsertsAndClearsMemory() {
+        ContributionCounter counter = new ContributionCounter(contributionRepository, transactionManager,
+                Duration.ofSeconds(1), new SimpleMeterRegistry());
+        counter.record(1L, 1L, 2);
+        counter.record(1L, 1L, 3);
+
+        counter.flush();
+
+        verify(contributionRepository).addChanges(eq(1L), eq(1L), eq(5L), any(LocalDateTime.class));
+        assertTrue(counter.unflushed(1L).isEmpty());
+    }
+
+    @Test
+    void testBlameAttributesCharactersAndLines() {
+        AuthorshipTracker tracker = new AuthorshipTracker(authorshipRepository, splicesRepository, transactionManager,
+                1000, 32, new SimpleMeterRegistry());
+        when(authorshipRepository.findRevision(1L)).thenReturn(Optional.empty(), Optional.of(0L));
+        when(authorshipRepository.saveAndFlush(any(DocumentAuthorship.class))).thenAnswer(invocation -> {
+            DocumentAuthorship row = invocation.getArgument(0);
+            row.setRevision(0L);
+            return row;
+        });
+        // user 1 writes a line, user 2 adds one and changes the first letter of the first
+        tracker.apply(1L, 3, 12, List.of(new EditSpliceDTO(0, 0, 6, 1L), new EditSpliceDTO(6, 0, 6, 2L),
+                new EditSpliceDTO(0, 1, 1, 2L)));
+        version.setContent("Jello\nworld\n");
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 3)).thenReturn(Optional.of(version));
+
+        BlameDTO blame = serviceWith(contentStore, tracker, archive).blame(1L).orElseThrow();
+
+        assertEquals(3, blame.getVersionNumber());
+        assertEquals(List.of(new BlameRangeDTO(0, 1, 2L), new BlameRangeDTO(1, 6, 1L), new BlameRangeDTO(6, 12, 2L)),
+                blame.getRanges());
+        assertEquals(List.of(new BlameLinesDTO(1, 1, 1L), new BlameLinesDTO(2, 2, 2L)), blame.getLines());
+        assertEquals(2L, blame.getAuthors().get(0).getUserId());
+        assertEquals(7, blame.getAuthors().get(0).getBytes());
+        assertEquals(1, blame.getAuthors().get(0).getLines());
+    }
+
+    @Test
+    void testLaterCheckpointsStoreOnlyTheirEdits() {
+        AuthorshipTracker tracker = new AuthorshipTracker(authorshipRepository, splicesRepository, transactionManager,
+                1000, 32, new SimpleMeterRegistry());
+        when(authorshipRepository.findRevision(1L)).thenReturn(Optional.empty(), Optional.of(0L), Optional.of(1L));
+        DocumentAuthorship[] stored = new DocumentAuthorship[1];
+        when(authorshipRepository.saveAndFlush(any(DocumentAuthorship.class))).thenAnswer(invocation -> {
+            stored[0] = invocation.getArgument(0);
+            stored[0].setRevision(0L);
+            return stored[0];
+        });
+        when(authorshipRepository.advance(eq(1L), eq(0L), eq(2), any(LocalDateTime.class))).thenReturn(1);
+        tracker.apply(1L, 1, 6, List.of(new EditSpliceDTO(0, 0, 6, 1L)));
+
+        tracker.apply(1L, 2, 8, List.of(new EditSpliceDTO(6, 0, 2, 2L)));
+
+        ArgumentCaptor<byte[]> splices = ArgumentCaptor.forClass(byte[].class);
+        verify(splicesRepository).insert(eq(1L), eq(1L), splices.capture());
+        verify(authorshipRepository, never()).update(any(), anyLong(), anyInt(), any(), any());
+        assertEquals(List.of(new AuthorshipIndex.Run(0, 6, 1L), new AuthorshipIndex.Run(6, 2, 2L)),
+                tracker.find(1L).orElseThrow().runs());
+
+        // another instance reads the stored runs and replays the edits since
+        AuthorshipTracker restarted = new AuthorshipTracker(authorshipRepository, splicesRepository, transactionManager,
+                1000, 32, new SimpleMeterRegistry());
+        when(authorshipRepository.findById(1L)).thenReturn(Optional.of(new DocumentAuthorship(1L, 2,
+                stored[0].getRuns(), 1L, LocalDateTime.now(), 0L)));
+        when(splicesRepository.findByDocumentIdAndRevisionGreaterThanOrderByRevisionAsc(1L, 0L))
+                .thenReturn(List.of(new AuthorshipSplices(1L, 1L, splices.getValue())));
+        assertEquals(List.of(new AuthorshipIndex.Run(0, 6, 1L), new AuthorshipIndex.Run(6, 2, 2L)),
+                restarted.find(1L).orElseThrow().runs());
+    }
+
+    @Test
+    void testGetDocumentVersionHistoryPagesMetadata() {
+        List<DocumentVersionRepository.VersionSummary> rows = Arrays.asList(summary(7), summary(6), summary(5));
+        when(versionRepository.findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(1L, 8, Limit.of(3)))
+                .thenReturn(rows);
+
+        VersionHistoryPageDTO result = versionControlService.getDocumentVersionHistory(1L, 8, 2);
+
+        assertEquals(2, result.getVersions().size());
+        assertEquals(7, result.getVersions().get(0).getVersionNumber());
+        assertEquals(6, result.getNextBefore());
+        verify(versionRepository, never()).findByDocumentIdAndVersionNumber(any(), any());
+    }
+
+    @Test
+    void testHistoryPageCachedUntilVersionCreated() {
+        List<DocumentVersionRepository.VersionSummary> rows = List.of(summary(1));
+        when(versionRepository.findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(1L, Integer.MAX_VALUE, Limit.of(51)))
+                .thenReturn(rows);
+        versionControlService.getDocumentVersionHistory(1L, null, 50);
+        versionControlService.getDocumentVersionHistory(1L, null, 50);
+        verify(versionRepository, times(1)).findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(1L, Integer.MAX_VALUE, Limit.of(51));
+
+        when(versionNumbers.next(1L)).thenReturn(2);
+        when(versionRepository.save(any(DocumentVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        versionControlService.createVersion(1L, "Content v2", 1L, "Second");
+        versionControlService.getDocumentVersionHistory(1L, null, 50);
+
+        verify(versionRepository, times(2)).findByDocumentIdAndVersionNumberLessThanOrderByVersionNumberDesc(1L, Integer.MAX_VALUE, Limit.of(51));
+    }
+
+    @Test
+    void testFlushedContributionsCachedUntilFlush() {
+        when(contributionRepository.findByDocumentId(1L)).thenReturn(List.of(contribution));
+        contributionCounter.record(1L, 1L, 2);
+
+        assertEquals(7, versionControlService.getUserContributions(1L).get(0).getChangesCount());
+        // the cached row is not the one the unflushed count was added to
+        assertEquals(7, versionControlService.getUserContributions(1L).get(0).getChangesCount());
+        verify(contributionRepository, times(1)).findByDocumentId(1L);
+
+        contributionCounter.flush();
+        versionControlService.getUserContributions(1L);
+
+        verify(contributionRepository, times(2)).findByDocumentId(1L);
+        assertEquals(1.0 / 3, cacheMetrics.find("collab.version.cache.hit.ratio").tag("cache", "contributions").gauge().value(),
+                1e-9);
+    }
+
+    private static DocumentVersionRepository.VersionSummary summary(int versionNumber) {
+        DocumentVersionRepository.VersionSummary summary = mock(DocumentVersionRepository.VersionSummary.class);
+        lenient().when(summary.getVersionNumber()).thenReturn(versionNumber);
+        return summary;
+    }
+
+    @Test
+    void testVersionStoredAsDeltaAndRebuiltInHistory() {
+        String base = "The quick brown fox jumps over the lazy dog. ".repeat(20);
+        version.setContent(base);
+        when(versionNumbers.next(1L)).thenReturn(2);
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(version));
+        when(versionRepository.save(any(DocumentVersion.class))).thenAnswer(invocation -> {
+            DocumentVersion saved = invocation.getArgument(0);
+            saved.setId(2L);
+            return saved;
+        });
+        versionControlService.createVersion(1L, base + "One more sentence.", 1L, "Second version");
+
+        ArgumentCaptor<DocumentVersion> captor = ArgumentCaptor.forClass(DocumentVersion.class);
+        verify(versionRepository).save(captor.capture());
+        DocumentVersion delta = captor.getValue();
+        assertEquals(VersionStorage.DELTA, delta.getStorage());
+        assertEquals("", delta.getContent());
+        assertTrue(delta.getStoredSize() < delta.getContentSize());
+
+        // rebuilt from the full first version, not served from the cache
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 2)).thenReturn(Optional.of(delta));
+        when(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 1, 2))
+                .thenReturn(Arrays.asList(version, delta));
+        Optional<String> content = serviceWith(emptyContentStore(), archive)
+                .findVersionContent(1L, 2);
+        assertEquals(Optional.of(base + "One more sentence."), content);
+    }
+
+    @Test
+    void testKeyframeStoredOnceAsContentBlob() {
+        String text = "Shared template text";
+        String hash = ContentBlobStore.hash(text);
+        when(versionNumbers.next(1L)).thenReturn(1);
+        when(versionRepository.save(any(DocumentVersion.class))).thenAnswer(invocation -> {
+            DocumentVersion saved = invocation.getArgument(0);
+            saved.setId(1L);
+            return saved;
+        });
+        when(blobRepository.insertIfAbsent(eq(hash), eq(text), isNull(), eq(20), any())).thenReturn(1);
+
+        versionControlService.createVersion(1L, text, 1L, "From template");
+
+        ArgumentCaptor<DocumentVersion> captor = ArgumentCaptor.forClass(DocumentVersion.class);
+        verify(versionRepository).save(captor.capture());
+        DocumentVersion keyframe = captor.getValue();
+        assertEquals(VersionStorage.BLOB, keyframe.getStorage());
+        assertEquals(hash, keyframe.getContentHash());
+        assertEquals("", keyframe.getContent());
+        assertEquals(20, keyframe.getStoredSize());
+
+        // read back through the blob, not the cache
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(keyframe));
+        when(blobRepository.findContent(hash)).thenReturn(Optional.of(PackedText.of(text)));
+        Optional<String> content = serviceWith(emptyContentStore(), archive)
+                .findVersionContent(1L, 1);
+        assertEquals(Optional.of(text), content);
+    }
+
+    @Test
+    void testIdenticalContentReferencesExistingBlob() {
+        // the previous version differs by one character, yet an existing blob beats a delta
+        String text = "Shared template text";
+        String hash = ContentBlobStore.hash(text);
+        version.setContent("Shared template text!");
+        when(versionNumbers.next(1L)).thenReturn(2);
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(version));
+        when(versionRepository.save(any(DocumentVersion.class))).thenAnswer(invocation -> invocation.getArgument(0));
+        when(blobRepository.addReferences(eq(hash), eq(1L), any())).thenReturn(1);
+
+        versionControlService.createVersion(1L, text, 1L, "Copied from another document");
+
+        ArgumentCaptor<DocumentVersion> captor = ArgumentCaptor.forClass(DocumentVersion.class);
+        verify(versionRepository).save(captor.capture());
+        assertEquals(VersionStorage.BLOB, captor.getValue().getStorage());
+        assertEquals(hash, captor.getValue().getContentHash());
+        assertEquals(0, captor.getValue().getStoredSize());
+        verify(blobRepository, never()).insertIfAbsent(any(), any(), any(), anyInt(), any());
+    }
+
+    @Test
+    void testDiffVersionsReturnsHunksAndCachesThem() {
+        DocumentVersion second = new DocumentVersion(2L, 1L, 2, "a\nb\nc\nd\ne\nf\ng\nh\ni\nj\nk\nl\nm\nn", 1L, LocalDateTime.now(), null,
+                null, null, null, null, null, null, null);
+        version.setContent("a\nb\nc\nX\ne\nf\ng\nh\ni\nj\nk\nl\nm");
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(version));
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 2)).thenReturn(Optional.of(second));
+
+        VersionDiffDTO diff = versionControlService.diffVersions(1L, 1, 2).orElseThrow();
+
+        assertTrue(diff.isComplete());
+        assertEquals(2, diff.getAdded());
+        assertEquals(1, diff.getRemoved());
+        assertEquals(2, diff.getHunks().size());
+        assertEquals(List.of(" a", " b", " c", "-X", "+d", " e", " f", " g"), diff.getHunks().get(0).getLines());
+        assertEquals(List.of(" k", " l", " m", "+n"), diff.getHunks().get(1).getLines());
+        assertEquals(11, diff.getHunks().get(1).getFromStart());
+
+        assertSame(diff, versionControlService.diffVersions(1L, 1, 2).orElseThrow());
+        verify(versionRepository, times(2)).findByDocumentIdAndVersionNumber(eq(1L), any());
+    }
+
+    @Test
+    void testDiffCutShortByTimeoutIsNotCached() {
+        // no CPU time at all: the search gives up at once and marks the middle as replaced
+        VersionDiffer hurried = new VersionDiffer(1_000_000, Duration.ZERO, 1, 1_000_000, Duration.ofMinutes(10),
+                new SimpleMeterRegistry());
+
+        VersionDiffDTO diff = hurried.diff(1L, 1, 2, "a\nX\nb\nY\nc", "a\nP\nb\nQ\nc");
+
+        assertFalse(diff.isComplete());
+        assertEquals(List.of(" a", "-X", "-b", "-Y", "+P", "+b", "+Q", " c"), diff.getHunks().get(0).getLines());
+        assertTrue(hurried.cached(1L, 1, 2).isEmpty());
+    }
+
+    @Test
+    void testOldVersionsArchivedAndReadFromSegment(@TempDir Path dir) throws IOException {
+        String text = "Quarterly report, first draft";
+        String hash = ContentBlobStore.hash(text);
+        DocumentVersion keyframe = archivable(1, VersionStorage.BLOB, hash);
+        DocumentVersion delta = archivable(2, VersionStorage.DELTA, null);
+        delta.setDelta(BinaryDelta.encode(text.getBytes(StandardCharsets.UTF_8), (text + ", revised").getBytes(StandardCharsets.UTF_8)));
+        when(versionRepository.findDocumentIdsToArchive(eq(0L), any(), any())).thenReturn(List.of(1L));
+        when(versionRepository.findDocumentIdsToArchive(eq(1L), any(), any())).thenReturn(List.of());
+        when(versionRepository.findVersionsToArchive(eq(1L), any())).thenReturn(List.of(keyframe, delta));
+        when(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 1, 2))
+                .thenReturn(List.of(keyframe, delta));
+        when(blobRepository.findContent(hash)).thenReturn(Optional.of(PackedText.of(text)));
+        VersionArchive archive = archive(dir);
+
+        assertEquals(2, archive.archive());
+
+        assertEquals(VersionStorage.ARCHIVED, delta.getStorage());
+        assertNull(delta.getDelta());
+        assertEquals(keyframe.getArchiveSegment(), delta.getArchiveSegment());
+        verify(blobRepository).addReferences(eq(hash), eq(-1L), any());
+        // read through the segment, not the cache, and still there after a restart
+        VersionArchive reopened = archive(dir);
+        reopened.open();
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 2)).thenReturn(Optional.of(delta));
+        Optional<String> content = serviceWith(emptyContentStore(), reopened)
+                .findVersionContent(1L, 2);
+        assertEquals(Optional.of(text + ", revised"), content);
+    }
+
+    @Test
+    void testCorruptArchivedVersionIsRejected(@TempDir Path dir) throws IOException {
+        DocumentVersion old = archivable(1, null, null);
+        old.setContent("Text that will be damaged on disk");
+        when(versionRepository.findDocumentIdsToArchive(eq(0L), any(), any())).thenReturn(List.of(1L));
+        when(versionRepository.findVersionsToArchive(eq(1L), any())).thenReturn(List.of(old));
+        when(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 1, 1))
+                .thenReturn(List.of(old));
+        VersionArchive archive = archive(dir);
+        archive.archive();
+
+        // flip the last byte of the text
+        Path data = Files.list(dir).filter(file -> file.toString().endsWith(".dat")).findFirst().orElseThrow();
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'?'}), channel.size() - 1);
+        }
+
+        assertThrows(IllegalStateException.class, () -> archive.keyframeText(old));
+    }
+
+    @Test
+    void testFiftyMegabyteVersionStreamedThroughChunks() throws Exception {
+        // surefire runs this module with a 128 MB heap, which the text held whole (bytes and chars) would not fit
+        int size = 50 << 20;
+        byte[] line = "Clause 7.2: figures for the quarter were revised after the audit.\n".getBytes(StandardCharsets.UTF_8);
+        MessageDigest written = MessageDigest.getInstance("SHA-256");
+        long[] writtenBytes = {0};
+        when(chunkRepository.insertChunk(any(), anyInt(), any())).thenAnswer(invocation -> {
+            byte[] data = invocation.getArgument(2);
+            written.update(data);
+            writtenBytes[0] += data.length;
+            return 1;
+        });
+        when(versionNumbers.next(1L)).thenReturn(1);
+        when(blobRepository.insertChunkedIfAbsent(any(), eq(size), eq(50), any())).thenReturn(1);
+        when(versionRepository.save(any())).thenAnswer(invocation -> invocation.getArgument(0));
+
+        DocumentVersionDTO created = versionControlService.createVersion(1L, repeating(line, size), 1L, "Import");
+
+        ArgumentCaptor<DocumentVersion> saved = ArgumentCaptor.forClass(DocumentVersion.class);
+        verify(versionRepository).save(saved.capture());
+        String hash = saved.getValue().getContentHash();
+        assertEquals(VersionStorage.BLOB, saved.getValue().getStorage());
+        assertEquals(size, saved.getValue().getContentSize());
+        assertEquals(size, writtenBytes[0]);
+        assertEquals(hash, HexFormat.of().formatHex(written.digest()));
+        assertNull(created.getContent());
+
+        // read back a chunk at a time
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 1)).thenReturn(Optional.of(saved.getValue()));
+        when(blobRepository.findChunks(hash)).thenReturn(Optional.of(50));
+        int[] chunksRead = {0};
+        when(chunkRepository.findData(eq(hash), anyInt())).thenAnswer(invocation -> {
+            chunksRead[0]++;
+            return Optional.of(repeating(line, size).chunk(invocation.<Integer>getArgument(1), 1 << 20));
+        });
+        VersionControlService.VersionText text = versionControlService.findVersionText(1L, 1).orElseThrow();
+        assertTrue(text.chunked());
+        DigestOutputStream read = new DigestOutputStream(OutputStream.nullOutputStream(), MessageDigest.getInstance("SHA-256"));
+        try (InputStream in = versionControlService.openChunks(text.chunkedHash())) {
+            in.transferTo(read);
+        }
+        assertEquals(hash, HexFormat.of().formatHex(read.getMessageDigest().digest()));
+
+        // neither the next version nor a diff reads the chunked text whole
+        when(versionNumbers.next(1L)).thenReturn(2);
+        versionControlService.createVersion(1L, "Summary of the revised figures", 1L, "Edit");
+        verify(versionRepository, times(2)).save(saved.capture());
+        assertEquals(VersionStorage.BLOB, saved.getValue().getStorage());
+        when(versionRepository.findByDocumentIdAndVersionNumber(1L, 2)).thenReturn(Optional.of(saved.getValue()));
+        assertThrows(DiffTooLargeException.class, () -> versionControlService.diffVersions(1L, 1, 2));
+        assertEquals(50, chunksRead[0]);
+    }
+
+    @Test
+    void testChunkedVersionBetweenArchivedOnesIsNotRead(@TempDir Path dir) {
+        String text = "Quarterly report, first draft";
+        String hash = ContentBlobStore.hash(text);
+        // version 2, a 50 MB import on a chunked blob, is not due; versions 1 and 3 around it are
+        DocumentVersion first = archivable(1, VersionStorage.BLOB, hash);
+        DocumentVersion third = archivable(3, VersionStorage.BLOB, hash);
+        third.setKeyframeVersion(3);
+        when(versionRepository.findDocumentIdsToArchive(eq(0L), any(), any())).thenReturn(List.of(1L));
+        when(versionRepository.findDocumentIdsToArchive(eq(1L), any(), any())).thenReturn(List.of());
+        when(versionRepository.findVersionsToArchive(eq(1L), any())).thenReturn(List.of(first, third));
+        when(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 1, 1))
+                .thenReturn(List.of(first));
+        when(versionRepository.findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 3, 3))
+                .thenReturn(List.of(third));
+        when(blobRepository.findContent(hash)).thenReturn(Optional.of(PackedText.of(text)));
+        int[] chunksRead = {0};
+        when(chunkRepository.findData(any(), anyInt())).thenAnswer(invocation -> {
+            chunksRead[0]++;
+            return Optional.empty();
+        });
+
+        assertEquals(2, archive(dir).archive());
+
+        assertEquals(VersionStorage.ARCHIVED, first.getStorage());
+        assertEquals(VersionStorage.ARCHIVED, third.getStorage());
+        verify(versionRepository, never()).findByDocumentIdAndVersionNumberBetweenOrderByVersionNumberAsc(1L, 1, 3);
+        assertEquals(0, chunksRead[0]);
+    }
+
+    // a second service over the same mocks, for tests that need another content store, tracker or archive
+    private VersionControlService serviceWith(VersionContentStore store, VersionArchive versionArchive) {
+        return serviceWith(store, authorshipTracker, versionArchive);
+    }
+
+    private VersionControlService serviceWith(VersionContentStore store, AuthorshipTracker tracker, VersionArchive versionArchive) {
+        return new VersionControlService(versionRepository, contributionRepository, meterRegistry, store, versionNumbers,
+                transactionManager, versionDiffer, revertRepository, contributionCounter, tracker, blobStore,
+                blobRepository, versionArchive, viewCache);
+    }
+
+    // nothing cached, so reads go to the stored form
+    private static VersionContentStore emptyContentStore() {
+        return new VersionContentStore(16, DataSize.ofMegabytes(2), new SimpleMeterRegistry());
+    }
+
+    private DocumentVersion archivable(int versionNumber, VersionStorage storage, String hash) {
+        return new DocumentVersion((long) versionNumber, 1L, versionNumber, "", 1L, LocalDateTime.now().minusYears(1),
+                null, storage, null, 1, null, null, hash, null);
+    }
+
+    private VersionArchive archive(Path dir) {
+        return new VersionArchive(versionRepository, contentStore, blobStore, transactionManager, true, dir.toString(),
+                Duration.ofDays(180), Duration.ofHours(1), DataSize.ofMegabytes(64), 0.5, new SimpleMeterRegistry());
+    }
+
+    // {@code line} over and over, cut off at {@code size} bytes, generated as it is read
+    private static Repeating repeating(byte[] line, long size) {
+        return new Repeating(line, size);
+    }
+
+    private static class Repeating extends InputStream {
+        private final byte[] line;
+        private final long size;
+        private long position;
+
+        Repeating(byte[] line, long size) {
+            this.line = line;
+            this.size = size;
+        }
+
+        @Override
+        public int read() {
+            return position < size ? line[(int) (position++ % line.length)] & 0xff : -1;
+        }
+
+        @Override
+        public long skip(long n) {
+            long skipped = Math.max(0, Math.min(n, size - position));
+            position += skipped;
+            return skipped;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            if (position >= size) return length == 0 ? 0 : -1;
+            int n = (int) Math.min(length, size - position);
+            for (int i = 0; i < n; i++) {
+                buffer[offset + i] = line[(int) (position++ % line.length)];
+            }
+            return n;
+        }
+
+        byte[] chunk(int seq, int chunkSize) throws IOException {
+            skipNBytes((long) seq * chunkSize);
+            return readNBytes(chunkSize);
+        }
     }
 }